@@ -0,0 +1,26 @@
+package com.jvm.mini.api;
+
+import java.io.IOException;
+
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Source from which classes are loaded, abstracting over where their
+ * definitions reside, be it on disk or in memory.
+ *
+ * @author Arno Bastenhof
+ */
+public interface ClassSource {
+
+	/**
+	 * Returns the class with the specified internal name (e.g., {@code
+	 * com/jvm/mini/Loop}), or null if this source does not define it.
+	 * Implementations may return the same instance on subsequent calls, so
+	 * that callers should not modify the result.
+	 *
+	 * @throws NullPointerException if {@code internalName == null}
+	 * @throws IOException if the class could not be read
+	 */
+	ClassNode loadClass(String internalName) throws IOException;
+
+}
@@ -0,0 +1,32 @@
+package com.jvm.mini.api;
+
+import com.jvm.mini.impl.Frame;
+
+/**
+ * Code produced by a {@link MethodCompiler}, executing a guest method or a
+ * loop thereof in place of the interpreter.
+ * <p>
+ * Compiled code operates on the same runtime data structures as the
+ * interpreter, taking over the current {@link Frame} of a {@link JvmFacade}
+ * as it finds it. Code may thus be entered in the middle of a method, with
+ * the frame's locals and operands as left by the interpreter, and be left
+ * likewise, allowing the interpreter to resume where the code stopped.
+ * Instructions the code executes without reading them through the facade
+ * are to be reported through {@link JvmFacade#safepoint} at every backward
+ * branch and before returning, as resource quotas are enforced there.
+ *
+ * @author Arno Bastenhof
+ */
+public interface CompiledCode {
+
+	/**
+	 * Executes the code in the current frame of the given {@code facade},
+	 * starting at the instruction its program counter points at, which must
+	 * be an entry of the code. Upon return, the facade is in the state that
+	 * interpreting the same instructions would have left it in, its program
+	 * counter pointing at the next instruction to be interpreted. The code
+	 * may return early at any instruction, as when it does not support it.
+	 */
+	void execute(JvmFacade facade);
+
+}
@@ -0,0 +1,31 @@
+package com.jvm.mini.api;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.impl.Frame;
+
+/**
+ * {@link ExecutionListener} with empty method bodies, to be extended by
+ * listeners interested in only some of the events.
+ *
+ * @author Arno Bastenhof
+ */
+public abstract class ExecutionAdapter implements ExecutionListener {
+
+	@Override
+	public void beforeInstruction(JvmFacade facade, AbstractInsnNode insn) { }
+
+	@Override
+	public void framePushed(JvmFacade facade, Frame frame) { }
+
+	@Override
+	public void framePopped(JvmFacade facade, Frame frame) { }
+
+	@Override
+	public void branchTaken(JvmFacade facade, AbstractInsnNode branch,
+			AbstractInsnNode target) { }
+
+	@Override
+	public void objectAllocated(JvmFacade facade, Object object) { }
+
+}
@@ -0,0 +1,61 @@
+package com.jvm.mini.api;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.impl.Frame;
+
+/**
+ * Service provider interface for tools observing the execution of a guest
+ * program, such as tracers, coverage tools and profilers.
+ * <p>
+ * Listeners are registered upon creating a {@link JvmInterpreter}, which then
+ * notifies them through the methods declared below. Interpreters created
+ * without any listeners never consult this interface, so that tools cost
+ * nothing when not in use. Implementations may extend {@link
+ * ExecutionAdapter} to override only those methods they are interested in.
+ *
+ * @author Arno Bastenhof
+ */
+public interface ExecutionListener {
+
+	/**
+	 * Invoked right before the given {@code insn} is executed.
+	 *
+	 * @param facade the machine's runtime data structures, with the program
+	 * counter still pointing at {@code insn}
+	 * @param insn the instruction about to be executed
+	 */
+	void beforeInstruction(JvmFacade facade, AbstractInsnNode insn);
+
+	/**
+	 * Invoked after a new {@link Frame} was pushed on the JVM stack.
+	 */
+	void framePushed(JvmFacade facade, Frame frame);
+
+	/**
+	 * Invoked after a {@link Frame} was popped from the JVM stack, be it
+	 * through a return instruction or while unwinding for an exception.
+	 */
+	void framePopped(JvmFacade facade, Frame frame);
+
+	/**
+	 * Invoked after control was transferred to the given {@code target} by a
+	 * jump instruction.
+	 *
+	 * @param facade the machine's runtime data structures
+	 * @param branch the jump or switch instruction taking the branch
+	 * @param target the instruction branched to
+	 */
+	void branchTaken(JvmFacade facade, AbstractInsnNode branch,
+			AbstractInsnNode target);
+
+	/**
+	 * Invoked after the given guest {@code object} was allocated, be it by an
+	 * instruction or implicitly by the runtime, as for a {@link
+	 * NullPointerException} raised by {@code athrow}, a {@link
+	 * NoClassDefFoundError} for an erroneous class or an exception raised by
+	 * an intrinsic (cf. {@link JvmFacade#allocated}).
+	 */
+	void objectAllocated(JvmFacade facade, Object object);
+
+}
@@ -0,0 +1,23 @@
+package com.jvm.mini.api;
+
+/**
+ * The tiers in which guest code can be executed, for reporting where
+ * execution time is spent.
+ *
+ * @author Arno Bastenhof
+ */
+public enum ExecutionTier {
+
+	/**
+	 * Execution by a {@link JvmInterpreter}, dispatching on each instruction.
+	 */
+	INTERPRETER,
+
+	/**
+	 * Execution of code compiled by a {@link
+	 * com.jvm.mini.impl.HandleCompiler}, chaining the instructions of each
+	 * basic block through method handles.
+	 */
+	METHOD_HANDLES;
+
+}
@@ -0,0 +1,52 @@
+package com.jvm.mini.api;
+
+import java.io.Closeable;
+
+/**
+ * Gateway for the nondeterministic inputs to a guest program, such as its
+ * arguments, the current time, the results of host calls and scheduling
+ * decisions. As long as all such inputs are obtained through this interface,
+ * an execution is fully determined by the sequence of values it returned,
+ * allowing it to be recorded and replayed faithfully.
+ *
+ * @author Arno Bastenhof
+ */
+public interface HostInput extends Closeable {
+
+	/**
+	 * The kinds of inputs, recorded along with their values so as to detect
+	 * replays diverging from the original execution.
+	 */
+	enum Kind { ARGUMENT, TIME, HOST_CALL, SCHEDULE }
+
+	/**
+	 * Callback for obtaining the live value of an input.
+	 */
+	interface Source {
+
+		/**
+		 * Returns the live value of the input.
+		 */
+		long read();
+
+	}
+
+	/**
+	 * Returns the next input of the specified {@code kind}. Depending on the
+	 * implementation, this value is either read from the given {@code source}
+	 * or from a previous recording, in which case {@code source} is not
+	 * consulted at all.
+	 *
+	 * @throws IllegalStateException if a replay diverged from the recording
+	 */
+	long readLong(Kind kind, Source source);
+
+	/**
+	 * Returns the next input of the specified {@code kind}, being either the
+	 * given live {@code value} or one taken from a previous recording.
+	 *
+	 * @throws IllegalStateException if a replay diverged from the recording
+	 */
+	String readString(Kind kind, String value);
+
+}
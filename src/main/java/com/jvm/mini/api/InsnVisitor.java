@@ -2,6 +2,13 @@ package com.jvm.mini.api;
 
 import org.objectweb.asm.tree.AbstractInsnNode;
 
+import com.jvm.mini.impl.Intrinsic;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.impl.StandardStream;
+import com.jvm.mini.impl.StaticField;
+import com.jvm.mini.impl.SwitchTable;
+
 /**
  * Interface collecting methods for implementing the JVM's instruction set.
  * <p>
@@ -31,9 +38,24 @@ public interface InsnVisitor {
 	void sipush(int operand);
 
 	/**
-	 * Pushes an entry from the constant pool on the operand stack.
+	 * Pushes the float constant 0, 1 or 2 on the operand stack.
+	 *
+	 * @param value the constant to push
+	 */
+	void fconst(float value);
+
+	/**
+	 * Pushes the double constant 0 or 1 on the operand stack.
+	 *
+	 * @param value the constant to push
+	 */
+	void dconst(double value);
+
+	/**
+	 * Pushes an entry from the runtime constant pool on the operand stack.
 	 *
-	 * @param constant an Integer-, Long- or String value
+	 * @param constant the resolved entry; an Integer-, Long-, Float-, Double-
+	 * or String value, or a Class
 	 */
 	void ldc(Object constant);
 
@@ -57,6 +79,70 @@ public interface InsnVisitor {
 	 */
 	void l2i();
 
+	/**
+	 * Converts an integer value on top of the operand stack to a float,
+	 * rounding to the nearest representable value.
+	 */
+	void i2f();
+
+	/**
+	 * Widens an integer value on top of the operand stack to a double.
+	 */
+	void i2d();
+
+	/**
+	 * Converts a long value on top of the operand stack to a float, rounding
+	 * to the nearest representable value.
+	 */
+	void l2f();
+
+	/**
+	 * Converts a long value on top of the operand stack to a double,
+	 * rounding to the nearest representable value.
+	 */
+	void l2d();
+
+	/**
+	 * Converts a float value on top of the operand stack to an integer,
+	 * rounding towards zero. NaN converts to 0, while values too large in
+	 * magnitude convert to {@link Integer#MAX_VALUE} or {@link
+	 * Integer#MIN_VALUE}.
+	 */
+	void f2i();
+
+	/**
+	 * Converts a float value on top of the operand stack to a long, rounding
+	 * towards zero. NaN converts to 0, while values too large in magnitude
+	 * convert to {@link Long#MAX_VALUE} or {@link Long#MIN_VALUE}.
+	 */
+	void f2l();
+
+	/**
+	 * Widens a float value on top of the operand stack to a double.
+	 */
+	void f2d();
+
+	/**
+	 * Converts a double value on top of the operand stack to an integer,
+	 * rounding towards zero. NaN converts to 0, while values too large in
+	 * magnitude convert to {@link Integer#MAX_VALUE} or {@link
+	 * Integer#MIN_VALUE}.
+	 */
+	void d2i();
+
+	/**
+	 * Converts a double value on top of the operand stack to a long,
+	 * rounding towards zero. NaN converts to 0, while values too large in
+	 * magnitude convert to {@link Long#MAX_VALUE} or {@link Long#MIN_VALUE}.
+	 */
+	void d2l();
+
+	/**
+	 * Narrows a double value on top of the operand stack to a float,
+	 * rounding to the nearest representable value.
+	 */
+	void d2f();
+
 	/**
 	 * Applies addition to two integer values on top of the operand stack.
 	 */
@@ -97,6 +183,77 @@ public interface InsnVisitor {
 	 */
 	void lneg();
 
+	/**
+	 * Applies addition to two float values on top of the operand stack.
+	 */
+	void fadd();
+
+	/**
+	 * Applies addition to two double values on top of the operand stack.
+	 */
+	void dadd();
+
+	/**
+	 * Applies subtraction to two float values on top of the operand stack.
+	 */
+	void fsub();
+
+	/**
+	 * Applies subtraction to two double values on top of the operand stack.
+	 */
+	void dsub();
+
+	/**
+	 * Applies multiplication to two float values on top of the operand stack.
+	 */
+	void fmul();
+
+	/**
+	 * Applies multiplication to two double values on top of the operand
+	 * stack.
+	 */
+	void dmul();
+
+	/**
+	 * Applies division to two float values on top of the operand stack.
+	 */
+	void fdiv();
+
+	/**
+	 * Applies division to two double values on top of the operand stack.
+	 */
+	void ddiv();
+
+	/**
+	 * Computes the remainder of dividing two float values on top of the
+	 * operand stack, truncating the quotient as does Java's {@code %}
+	 * operator, rather than rounding it as does the IEEE 754 remainder
+	 * operation.
+	 */
+	void frem();
+
+	/**
+	 * Computes the remainder of dividing two double values on top of the
+	 * operand stack, truncating the quotient as does Java's {@code %}
+	 * operator, rather than rounding it as does the IEEE 754 remainder
+	 * operation.
+	 */
+	void drem();
+
+	/**
+	 * Negates a float value on top of the operand stack, flipping its sign
+	 * bit. Note that this differs from subtracting it from zero, as negating
+	 * 0 yields -0.
+	 */
+	void fneg();
+
+	/**
+	 * Negates a double value on top of the operand stack, flipping its sign
+	 * bit. Note that this differs from subtracting it from zero, as negating
+	 * 0 yields -0.
+	 */
+	void dneg();
+
 	/**
 	 * Loads an integer value from the specified local variable on the operand
 	 * stack.
@@ -121,6 +278,30 @@ public interface InsnVisitor {
 	 */
 	void lstore(int var);
 
+	/**
+	 * Loads a float value from the specified local variable on the operand
+	 * stack.
+	 */
+	void fload(int var);
+
+	/**
+	 * Loads a double value from the specified local variable on the operand
+	 * stack.
+	 */
+	void dload(int var);
+
+	/**
+	 * Stores a float value from the top of the operand stack in the
+	 * specified local variable.
+	 */
+	void fstore(int var);
+
+	/**
+	 * Stores a double value from the top of the operand stack in the
+	 * specified local variable.
+	 */
+	void dstore(int var);
+
 	/**
 	 * Increments the specified local variable with the given byte value.
 	 *
@@ -135,6 +316,30 @@ public interface InsnVisitor {
 	 */
 	void lcmp();
 
+	/**
+	 * Compares the top two float values on the operand stack, pushing -1 if
+	 * either is NaN.
+	 */
+	void fcmpl();
+
+	/**
+	 * Compares the top two float values on the operand stack, pushing 1 if
+	 * either is NaN.
+	 */
+	void fcmpg();
+
+	/**
+	 * Compares the top two double values on the operand stack, pushing -1 if
+	 * either is NaN.
+	 */
+	void dcmpl();
+
+	/**
+	 * Compares the top two double values on the operand stack, pushing 1 if
+	 * either is NaN.
+	 */
+	void dcmpg();
+
 	/**
 	 * Jumps to the instruction at the given {@code jumpTarget} if {@code i!=j}
 	 * for {@code i, j} the top two integer values on the operand stack.
@@ -238,6 +443,88 @@ public interface InsnVisitor {
 	 */
 	void goTo(AbstractInsnNode jumpTarget);
 
+	/**
+	 * Jumps to the instruction the given {@code table} maps the top integer
+	 * value on the operand stack to, being the jump target at that index
+	 * relative to the table's lowest index if within its bounds, or the
+	 * default target otherwise.
+	 *
+	 * @param table the decoded jump table of the instruction
+	 */
+	void tableswitch(SwitchTable table);
+
+	/**
+	 * Jumps to the instruction the given {@code table} maps the top integer
+	 * value on the operand stack to, being the jump target paired with a
+	 * matching key, or the default target if there is none.
+	 *
+	 * @param table the decoded jump table of the instruction
+	 */
+	void lookupswitch(SwitchTable table);
+
+	/**
+	 * Pushes the value of a static field on the operand stack.
+	 *
+	 * @param field the resolved field, or null if the reference could not be
+	 * resolved to a static field
+	 */
+	void getstatic(StaticField field);
+
+	/**
+	 * Pops a value from the operand stack and assigns it to a static field.
+	 *
+	 * @param field the resolved field, or null if the reference could not be
+	 * resolved to a static field
+	 */
+	void putstatic(StaticField field);
+
+	/**
+	 * Pushes the host's bridge for one of the guest's standard streams onto
+	 * the operand stack, in place of reading a static field.
+	 *
+	 * @param stream the stream the field reference was resolved to
+	 */
+	void getstream(StandardStream stream);
+
+	/**
+	 * Invokes a static method, popping its arguments from the operand stack
+	 * and storing them in the local variables of a new frame.
+	 *
+	 * @param method the resolved method, or null if the reference could not
+	 * be resolved
+	 */
+	void invokestatic(MethodInfo method);
+
+	/**
+	 * Invokes a method of the host in place of the guest, popping its
+	 * arguments, as well as its receiver if an instance method, from the
+	 * operand stack and pushing its result, if any, without creating a new
+	 * frame.
+	 *
+	 * @param intrinsic the method the reference was resolved to
+	 */
+	void invokeintrinsic(Intrinsic intrinsic);
+
+	/**
+	 * Invokes an instance method, selected by the class of the receiver
+	 * popped from the operand stack along with the arguments.
+	 *
+	 * @param method the resolved method, or null if the reference could not
+	 * be resolved
+	 * @param target the implementation to invoke regardless of the receiver's
+	 * class, being the only one among the classes loaded so far, or null if
+	 * it is to be selected by the receiver's class (see {@link
+	 * com.jvm.mini.impl.ClassHierarchy})
+	 */
+	void invokevirtual(MethodInfo method, MethodInfo target);
+
+	/**
+	 * Throws the exception on top of the operand stack, transferring control
+	 * to the nearest matching exception handler in the current method or one
+	 * of its callers.
+	 */
+	void athrow();
+
 	/**
 	 * Returns from a method with return type void.
 	 *
@@ -245,4 +532,15 @@ public interface InsnVisitor {
 	 */
 	void voidReturn();
 
+	/**
+	 * Initializes the given class upon an instruction's first active use of
+	 * it, unless this already happened. Not an instruction in itself, but
+	 * executed by the barrier preceding the instruction.
+	 *
+	 * @param clazz the class referred to by the current instruction
+	 * @return true iff the current instruction can proceed immediately, or
+	 * false if class initializers were scheduled to run first
+	 */
+	boolean initialize(RuntimeClass clazz);
+
 }
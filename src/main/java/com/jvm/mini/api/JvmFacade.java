@@ -3,23 +3,26 @@ package com.jvm.mini.api;
 import org.objectweb.asm.tree.AbstractInsnNode;
 
 import com.jvm.mini.impl.Frame;
+import com.jvm.mini.impl.GuestException;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.OutputBridge;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.impl.StandardStream;
 
 /**
  * A Facade for the JVM's runtime data structures.
  * <p>
- * The current implementation, following a suggestion in [1], leverages the
- * host JVM by populating both the operand stack and local variables of a frame
- * with object references. Thus, integer- and long values translate to
- * instances of {@link Integer} and {@link Long} values respectively. This
- * deviates strongly from the JVM spec, dictating two subsequent operand- or
- * local variable slots should be used for storing long values. A less obvious
- * consequence of the current approach is that the use of Java objects exposes
- * the types of operands at runtime. The JVM spec instead uses raw bit patterns,
- * performing type checking only statically during class file verification on
- * the basis of the type information integrated into opcodes.
- * <p>
- * [1] Taivalsaari, Antero. "Implementing a Java Virtual Machine in the Java
- * Programming Language." (1998).
+ * Primitive values are held unboxed within the slots of a frame, with longs
+ * and doubles occupying two subsequent operand- or local variable slots as
+ * dictated by the JVM spec. They are pushed, popped, stored and loaded
+ * through the methods dedicated to their types only, while methods accepting
+ * Objects, such as {@link #pushOperand}, treat any value as a reference,
+ * including instances of {@link Integer}, {@link Long}, {@link Float} and
+ * {@link Double}. In deviation from the JVM spec, which uses raw bit patterns and
+ * performs type checking only statically during class file verification on
+ * the basis of the type information integrated into opcodes, slots are
+ * tagged with the types of their values. Type errors are thereby detected at
+ * runtime, and the types of operands can be exposed for debugging purposes.
  *
  * @author Arno Bastenhof
  */
@@ -32,11 +35,23 @@ public interface JvmFacade {
 	 *
 	 * @param maxStack the maximum size of the operand stack for the new frame
 	 * @param maxLocals the maximum number of local variables for the new frame
-	 * @param args method arguments to be loaded on the operand stack
+	 * @param args method arguments to be loaded on the operand stack as
+	 * references
 	 * @throws IllegalArgumentException if {@code maxStack < 0 || maxLocals < 0}
 	 */
 	void pushFrame(int maxStack, int maxLocals, Object... args);
 
+	/**
+	 * Pushes a new {@link Frame} on the JVM stack for invoking the specified
+	 * {@code method}, recording the current instruction as its call site.
+	 *
+	 * @param method the method to be invoked
+	 * @param args method arguments to be loaded on the operand stack as
+	 * references
+	 * @throws NullPointerException if {@code method == null}
+	 */
+	void pushFrame(MethodInfo method, Object... args);
+
 	/**
 	 * Pops a {@link Frame} from the JVM stack.
 	 *
@@ -59,10 +74,84 @@ public interface JvmFacade {
 	 */
 	void jump(AbstractInsnNode instruction);
 
+	/**
+	 * Accounts for the given number of instructions executed by {@link
+	 * CompiledCode} without being read through {@link #readInstruction()}.
+	 * Compiled code calls this at its backward branches and before returning
+	 * control, so that resource quotas hold in every execution tier.
+	 *
+	 * @throws IllegalArgumentException if {@code instructions < 0}
+	 */
+	void safepoint(int instructions);
+
+	// === Exceptions ===
+
+	/**
+	 * Throws the specified {@code exception} at the current instruction,
+	 * popping frames from the JVM stack until one is found whose method
+	 * declares a matching exception handler. The operand stack of the latter
+	 * is then cleared, the exception pushed on it and the program counter set
+	 * to the start of the handler. If no handler could be found, the JVM stack
+	 * is left empty and execution ends with {@code exception} uncaught.
+	 * <p>
+	 * Popping the frame of a class initializer marks the classes it was
+	 * initializing as erroneous, and replaces an {@code exception} that is not
+	 * an {@link Error} by an {@link ExceptionInInitializerError}.
+	 *
+	 * @param exception the exception to be thrown; if null, a {@link
+	 * NullPointerException} is thrown instead
+	 * @throws ClassCastException if {@code exception} cannot be cast to a
+	 * {@link GuestException}
+	 */
+	void throwException(Object exception);
+
+	/**
+	 * Accounts for the given guest {@code object}, allocated by the runtime
+	 * on its own accord rather than by an instruction, such as an exception
+	 * raised implicitly by the facade or by an intrinsic. Facades report the
+	 * objects they allocate themselves, such as a {@link
+	 * NullPointerException} thrown in place of null, through the outermost
+	 * facade decorating them, so that every decorator may account for them.
+	 * Callers allocating objects on behalf of the runtime report them
+	 * likewise, after throwing them if exceptions.
+	 *
+	 * @param object the object allocated
+	 */
+	void allocated(Object object);
+
+	/**
+	 * Returns the exception that ended execution by remaining uncaught, or
+	 * null if there is none.
+	 */
+	GuestException getUncaughtException();
+
+	// === Class initialization ===
+
+	/**
+	 * Initializes the given {@code clazz} and its superclasses on behalf of
+	 * the current instruction, as required before the latter's execution (cf.
+	 * Section 5.5 of the JVM spec, SE8 edition). If class initializers are to
+	 * be run, frames are pushed for them such that superclasses are
+	 * initialized first, and the current instruction, being the last one
+	 * read, is executed anew once they returned. If no instruction was read
+	 * yet, execution resumes at the program counter instead. Should the class
+	 * be found erroneous, a {@link NoClassDefFoundError} is thrown.
+	 * <p>
+	 * Blocks while another facade is initializing the class. Classes already
+	 * being initialized by this facade are considered to need no
+	 * initialization.
+	 *
+	 * @return true iff the current instruction can proceed immediately,
+	 * without any class initializer having to be run
+	 * @throws NullPointerException if {@code clazz == null}
+	 */
+	boolean initialize(RuntimeClass clazz);
+
 	// === Operand stack ===
 
 	/**
-	 * Pushes the specified {@code value} on the current frame's operand stack.
+	 * Pushes the specified {@code value} on the current frame's operand stack
+	 * as a reference.
 	 *
 	 * @throws IndexOutOfBoundsException if the current frame's operand stack
 	 * is already filled to its maximum size.
@@ -70,29 +159,96 @@ public interface JvmFacade {
 	void pushOperand(Object value);
 
 	/**
-	 * Pops an {@link Integer} value from the current frame's operand stack.
+	 * Pushes the specified integer {@code value} on the current frame's operand
+	 * stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the current frame's operand stack
+	 * is already filled to its maximum size.
+	 */
+	void pushIntegerOperand(int value);
+
+	/**
+	 * Pushes the specified long {@code value} on the current frame's operand
+	 * stack, occupying two slots.
+	 *
+	 * @throws IndexOutOfBoundsException if the current frame's operand stack
+	 * has less than two slots left.
+	 */
+	void pushLongOperand(long value);
+
+	/**
+	 * Pushes the specified float {@code value} on the current frame's operand
+	 * stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the current frame's operand stack
+	 * is already filled to its maximum size.
+	 */
+	void pushFloatOperand(float value);
+
+	/**
+	 * Pushes the specified double {@code value} on the current frame's operand
+	 * stack, occupying two slots.
+	 *
+	 * @throws IndexOutOfBoundsException if the current frame's operand stack
+	 * has less than two slots left.
+	 */
+	void pushDoubleOperand(double value);
+
+	/**
+	 * Pops an integer value from the current frame's operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the current frame's operand stack
+	 * is empty.
+	 * @throws ClassCastException if the top value on the operand stack is not
+	 * an integer.
+	 */
+	int popIntegerOperand();
+
+	/**
+	 * Pops a long value from the current frame's operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the current frame's operand stack
+	 * is empty.
+	 * @throws ClassCastException if the top value on the operand stack is not
+	 * a long.
+	 */
+	long popLongOperand();
+
+	/**
+	 * Pops a float value from the current frame's operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the current frame's operand stack
+	 * is empty.
+	 * @throws ClassCastException if the top value on the operand stack is not
+	 * a float.
+	 */
+	float popFloatOperand();
+
+	/**
+	 * Pops a double value from the current frame's operand stack.
 	 *
 	 * @throws IndexOutOfBoundsException if the current frame's operand stack
 	 * is empty.
-	 * @throws ClassCastException if the top value on the operand stack cannot
-	 * be cast to an {@link Integer}.
+	 * @throws ClassCastException if the top value on the operand stack is not
+	 * a double.
 	 */
-	Integer popIntegerOperand();
+	double popDoubleOperand();
 
 	/**
-	 * Pops a {@link Long} value from the current frame's operand stack.
+	 * Pops a reference value from the current frame's operand stack.
 	 *
 	 * @throws IndexOutOfBoundsException if the current frame's operand stack
 	 * is empty.
-	 * @throws ClassCastException if the top value on the operand stack cannot
-	 * be cast to a {@link Long}.
+	 * @throws ClassCastException if the top value on the operand stack is not
+	 * a reference.
 	 */
-	Long popLongOperand();
+	Object popReferenceOperand();
 
 	// === Local variables ===
 
 	/**
-	 * Stores the given {@code value} in the specified local variable.
+	 * Stores the given {@code value} in the specified local variable as a
+	 * reference.
 	 *
 	 * @throws NullPointerException if {@code value == null}
 	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
@@ -100,32 +256,99 @@ public interface JvmFacade {
 	void store(int var, Object value);
 
 	/**
-	 * Returns the {@link Integer} value stored at the specified local variable.
+	 * Stores the given integer {@code value} in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 */
+	void storeInteger(int var, int value);
+
+	/**
+	 * Stores the given long {@code value} in the specified local variable and
+	 * its successor.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var + 1 >=
+	 * maxLocals}
+	 */
+	void storeLong(int var, long value);
+
+	/**
+	 * Stores the given float {@code value} in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 */
+	void storeFloat(int var, float value);
+
+	/**
+	 * Stores the given double {@code value} in the specified local variable and
+	 * its successor.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var + 1 >=
+	 * maxLocals}
+	 */
+	void storeDouble(int var, double value);
+
+	/**
+	 * Returns the integer value stored at the specified local variable.
+	 *
+	 * @param var the local variable to load from
+	 * @throws IndexOutOfBoundsException if {@code var} does not fall within
+	 * the address space for local variables in the current frame
+	 * @throws ClassCastException if {@code var} does not hold an integer
+	 */
+	int loadInteger(int var);
+
+	/**
+	 * Returns the long value stored at the specified local variable.
 	 *
 	 * @param var the local variable to load from
 	 * @throws IndexOutOfBoundsException if {@code var} does not fall within
 	 * the address space for local variables in the current frame
-	 * @throws ClassCastException if the value loaded from {@code var} cannot be
-	 * cast to {@link Integer}
+	 * @throws ClassCastException if {@code var} does not hold a long
 	 */
-	Integer loadInteger(int var);
+	long loadLong(int var);
 
 	/**
-	 * Returns the {@link Long} value stored at the specified local variable.
+	 * Returns the float value stored at the specified local variable.
 	 *
 	 * @param var the local variable to load from
 	 * @throws IndexOutOfBoundsException if {@code var} does not fall within
 	 * the address space for local variables in the current frame
-	 * @throws ClassCastException if the value loaded from {@code var} cannot
-	 * be cast to {@link Long}
+	 * @throws ClassCastException if {@code var} does not hold a float
 	 */
-	Long loadLong(int var);
+	float loadFloat(int var);
+
+	/**
+	 * Returns the double value stored at the specified local variable.
+	 *
+	 * @param var the local variable to load from
+	 * @throws IndexOutOfBoundsException if {@code var} does not fall within
+	 * the address space for local variables in the current frame
+	 * @throws ClassCastException if {@code var} does not hold a double
+	 */
+	double loadDouble(int var);
+
+	// === Host ===
+
+	/**
+	 * Returns the {@link HostInput} through which all nondeterministic inputs
+	 * to the guest program are to be obtained.
+	 */
+	HostInput getHostInput();
+
+	/**
+	 * Returns the {@link OutputBridge} through which the guest program writes
+	 * to the given standard stream.
+	 *
+	 * @throws NullPointerException if {@code stream == null}
+	 */
+	OutputBridge getOutput(StandardStream stream);
 
 	// === Debugging ===
 
 	/**
-	 * Returns the field descriptors for the entries on the operand stacks.
-	 * Intended for debugging purposes.
+	 * Returns the types of the entries on the current frame's operand stack,
+	 * as given by {@link Frame#getOperandTypes}. Intended for debugging
+	 * purposes.
 	 */
 	String getOperandTypes();
 
@@ -141,4 +364,10 @@ public interface JvmFacade {
 	 */
 	AbstractInsnNode peekInstruction();
 
+	/**
+	 * Returns the {@link Frame} on top of the JVM stack, or null if the latter
+	 * is empty. Intended for debugging purposes.
+	 */
+	Frame getCurrentFrame();
+
 }
@@ -34,6 +34,13 @@ public interface JvmInterpreter {
 	 */
 	boolean hasNext();
 
+	/**
+	 * Executes all remaining instructions. Clients not in need of querying
+	 * the machine's state in between instructions should prefer this method
+	 * over driving execution through {@link #next()} themselves.
+	 */
+	void run();
+
 	/**
 	 * Returns the {@link JvmFacade} used to initialize this instance. Intended
 	 * for debugging purposes.
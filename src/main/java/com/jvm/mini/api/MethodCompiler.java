@@ -0,0 +1,44 @@
+package com.jvm.mini.api;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.TierController;
+
+/**
+ * Service provider interface for execution strategies translating guest
+ * methods into a form that runs faster than interpreting their bytecode,
+ * invoked by a {@link TierController} for methods found to be hot.
+ * <p>
+ * Implementations are invoked from the controller's compiler threads,
+ * possibly for several methods concurrently, while the methods are being
+ * interpreted by guest threads. They should thus neither modify the
+ * instructions of the method nor any state shared with the interpreter.
+ *
+ * @author Arno Bastenhof
+ */
+public interface MethodCompiler {
+
+	/**
+	 * Returns the tier in which the code produced by this compiler executes.
+	 */
+	ExecutionTier getTier();
+
+	/**
+	 * Translates the given method, returning code entered at its first
+	 * instruction, or null if the method is not supported by this compiler.
+	 */
+	CompiledCode compile(MethodInfo method);
+
+	/**
+	 * Translates the loop of the given method starting at {@code header} for
+	 * on-stack replacement, returning code entered at {@code header} by a
+	 * frame in the middle of executing the loop, or null if the loop is not
+	 * supported by this compiler.
+	 *
+	 * @param method the method containing the loop
+	 * @param header the target of a backward branch in {@code method}
+	 */
+	CompiledCode compileLoop(MethodInfo method, AbstractInsnNode header);
+
+}
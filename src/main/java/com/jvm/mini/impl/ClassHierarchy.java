@@ -0,0 +1,239 @@
+package com.jvm.mini.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.util.Validate;
+
+/**
+ * Class hierarchy analysis over the classes loaded through a {@link
+ * ClassRegistry}, binding virtual call sites to their targets where the
+ * classes loaded so far admit only one.
+ * <p>
+ * For a call site referring to a method of class {@code C}, the candidate
+ * targets are the implementations selected for {@code C} and each of its
+ * loaded subclasses. If these coincide, the site is bound to the single
+ * implementation, and can invoke it without looking up the class of the
+ * receiver. The binding rests on the assumption that no class overriding the
+ * method below {@code C} is loaded later, and is recorded as a dependency of
+ * the site on {@code C} and the method's name and descriptor. Loading a class
+ * that overrides the method invalidates the bindings of all sites depending
+ * on it, which are then analyzed anew. Sites found to have several targets
+ * remain unbound for good, as loading classes can only add targets.
+ * <p>
+ * A call in progress when its binding is invalidated completes with the
+ * target it was bound to, as if it had been made before the overriding class
+ * was loaded. Calls to interface methods are not analyzed.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ClassHierarchy {
+
+	// Marks call sites found to have several targets
+	private static final Object UNBOUND = new Object();
+
+	private final ConcurrentMap<AbstractInsnNode, Object> bindings =
+			new ConcurrentHashMap<>();
+
+	// Guarded by this
+	private final Map<RuntimeClass, List<RuntimeClass>> subclasses =
+			new HashMap<>();
+	private final Map<Dependency, Set<AbstractInsnNode>> dependents =
+			new HashMap<>();
+
+	ClassHierarchy() {
+	}
+
+	/**
+	 * Returns the single implementation the given virtual call {@code site}
+	 * can invoke given the classes loaded so far, or null if there are
+	 * several, or if the site's method could not be resolved.
+	 *
+	 * @param site an {@code invokevirtual} instruction
+	 * @param method the method {@code site} resolves to; allowed to be null
+	 * @throws NullPointerException if {@code site == null}
+	 */
+	public MethodInfo bind(AbstractInsnNode site, MethodInfo method) {
+		Object result = this.bindings.get(Validate.notNull(site));
+		if (result == null) {
+			result = analyze(site, method);
+		}
+		return result == UNBOUND ? null : (MethodInfo)result;
+	}
+
+	/**
+	 * Returns true iff the given call {@code site} is currently bound to a
+	 * single implementation.
+	 *
+	 * @throws NullPointerException if {@code site == null}
+	 */
+	public boolean isBound(AbstractInsnNode site) {
+		Object binding = this.bindings.get(Validate.notNull(site));
+		return binding != null && binding != UNBOUND;
+	}
+
+	/*
+	 * Adds the given, newly loaded class to the hierarchy, invalidating the
+	 * bindings that assumed none of its methods to be overridden.
+	 */
+	synchronized void add(RuntimeClass clazz) {
+		RuntimeClass superclass = clazz.getSuperclass();
+		if (superclass != null) {
+			List<RuntimeClass> siblings = this.subclasses.get(superclass);
+			if (siblings == null) {
+				siblings = new ArrayList<>();
+				this.subclasses.put(superclass, siblings);
+			}
+			siblings.add(clazz);
+		}
+		if (this.dependents.isEmpty()) {
+			return;
+		}
+		for (Object m : clazz.getNode().methods) {
+			MethodNode method = (MethodNode)m;
+			if (!isVirtual(method.access, method.name)) {
+				continue;
+			}
+			for (RuntimeClass c = superclass; c != null;
+					c = c.getSuperclass()) {
+				Set<AbstractInsnNode> sites = this.dependents.remove(
+						new Dependency(c, method.name, method.desc));
+				if (sites != null) {
+					for (AbstractInsnNode site : sites) {
+						this.bindings.remove(site);
+					}
+				}
+			}
+		}
+	}
+
+	// Computes and records the binding for a call site
+	private synchronized Object analyze(AbstractInsnNode site,
+			MethodInfo method) {
+		Object result = this.bindings.get(site);
+		if (result != null) {
+			return result;
+		}
+		RuntimeClass owner = null;
+		if (method != null && site instanceof MethodInsnNode) {
+			RuntimeClass declaring = method.getConstantPool().getRuntimeClass();
+			owner = findOwner(declaring, ((MethodInsnNode)site).owner);
+		}
+		if (owner == null || (owner.getNode().access & Opcodes.ACC_INTERFACE)
+				!= 0) {
+			result = UNBOUND;
+		} else if (!isVirtual(method.getAccess(), method.getName())
+				|| (method.getAccess() & Opcodes.ACC_FINAL) != 0) {
+			result = method; // Cannot be overridden
+		} else {
+			Set<MethodInfo> targets = new HashSet<>();
+			collectTargets(owner, method, targets);
+			result = targets.size() == 1 ? targets.iterator().next() : UNBOUND;
+			if (targets.size() <= 1) { // Loading classes may add a target
+				addDependent(new Dependency(owner, method.getName(),
+						method.getDescriptor()), site);
+			}
+		}
+		this.bindings.put(site, result);
+		return result;
+	}
+
+	private void addDependent(Dependency dependency, AbstractInsnNode site) {
+		Set<AbstractInsnNode> sites = this.dependents.get(dependency);
+		if (sites == null) {
+			sites = new HashSet<>();
+			this.dependents.put(dependency, sites);
+		}
+		sites.add(site);
+	}
+
+	/*
+	 * Adds the implementations selected for the given class and its loaded
+	 * subclasses, being the nearest declarations of the method inherited
+	 * from the method's declaring class, if not abstract.
+	 */
+	private void collectTargets(RuntimeClass clazz, MethodInfo inherited,
+			Set<MethodInfo> targets) {
+		MethodInfo selected = clazz.getMethod(inherited.getName(),
+				inherited.getDescriptor());
+		if (selected == null || !isVirtual(selected.getAccess(),
+				selected.getName())) {
+			selected = inherited;
+		}
+		if ((selected.getAccess() & Opcodes.ACC_ABSTRACT) == 0) {
+			targets.add(selected);
+		}
+		List<RuntimeClass> children = this.subclasses.get(clazz);
+		if (children != null) {
+			for (RuntimeClass child : children) {
+				collectTargets(child, selected, targets);
+			}
+		}
+	}
+
+	// Finds the class named by a call site among the declaring class's
+	// subclasses, returning null if not loaded through the same registry
+	private RuntimeClass findOwner(RuntimeClass declaring, String name) {
+		if (declaring == null || declaring.getName().equals(name)) {
+			return declaring;
+		}
+		List<RuntimeClass> children = this.subclasses.get(declaring);
+		if (children != null) {
+			for (RuntimeClass child : children) {
+				RuntimeClass result = findOwner(child, name);
+				if (result != null) {
+					return result;
+				}
+			}
+		}
+		return null;
+	}
+
+	// Returns true iff a method with the given access flags can be overridden
+	private static boolean isVirtual(int access, String name) {
+		return (access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0
+				&& !name.startsWith("<");
+	}
+
+	// Assumption that a method is not overridden below a given class
+	private static final class Dependency {
+
+		private final RuntimeClass clazz;
+		private final String name;
+		private final String desc;
+
+		private Dependency(RuntimeClass clazz, String name, String desc) {
+			this.clazz = clazz;
+			this.name = name;
+			this.desc = desc;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Dependency)) {
+				return false;
+			}
+			Dependency other = (Dependency)obj;
+			return this.clazz == other.clazz && this.name.equals(other.name)
+					&& this.desc.equals(other.desc);
+		}
+
+		@Override
+		public int hashCode() {
+			return (this.clazz.hashCode() * 31 + this.name.hashCode()) * 31
+					+ this.desc.hashCode();
+		}
+	}
+
+}
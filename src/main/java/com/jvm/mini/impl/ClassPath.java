@@ -0,0 +1,201 @@
+package com.jvm.mini.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.objectweb.asm.tree.ClassNode;
+
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.util.Validate;
+
+/**
+ * {@link ClassSource} searching an ordered list of directories and JAR
+ * archives, as given by a class path such as {@code classes:lib/util.jar}.
+ * Classes are loaded from the first entry defining them.
+ * <p>
+ * By default, classes are read from their entries upon request. Applications
+ * consisting of many classes may instead be loaded eagerly by {@link
+ * #preload}, which parses all classes on the class path in parallel and keeps
+ * the results in memory, subsequently serving requests without reading from
+ * the file system.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ClassPath implements ClassSource {
+
+	// Maximum number of classes parsed by a single task when preloading
+	private static final int PRELOAD_BATCH = 16;
+
+	private final List<ClassSource> entries;
+	private final ConcurrentMap<String, ClassNode> preloaded =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * @param entries the sources to search, in order
+	 * @throws NullPointerException if {@code entries} or any of its elements
+	 * is null
+	 */
+	public ClassPath(List<? extends ClassSource> entries) {
+		this.entries = Collections.unmodifiableList(
+				new ArrayList<>(Validate.notNull(entries)));
+		for (ClassSource entry : this.entries) {
+			Validate.notNull(entry);
+		}
+	}
+
+	/**
+	 * Parses a class path of entries separated by {@link
+	 * File#pathSeparator}. Entries denoting directories are searched as
+	 * package trees, while other existing files are read as JAR archives.
+	 * Entries that do not exist are ignored, as is the case for the host JVM.
+	 *
+	 * @throws NullPointerException if {@code path == null}
+	 * @throws IOException if an archive could not be read
+	 */
+	public static ClassPath parse(String path) throws IOException {
+		List<ClassSource> entries = new ArrayList<>();
+		for (String element : Validate.notNull(path).split(
+				File.pathSeparator)) {
+			File file = new File(element.isEmpty() ? "." : element);
+			if (file.isDirectory()) {
+				entries.add(new DirectoryClassSource(file));
+			} else if (file.isFile()) {
+				entries.add(new JarClassSource(file));
+			}
+		}
+		return new ClassPath(entries);
+	}
+
+	@Override
+	public ClassNode loadClass(String internalName) throws IOException {
+		ClassNode result = this.preloaded.get(Validate.notNull(internalName));
+		for (int i = 0; result == null && i < this.entries.size(); i++) {
+			result = this.entries.get(i).loadClass(internalName);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the sources searched by this class path, in order.
+	 */
+	public List<ClassSource> getEntries() {
+		return this.entries;
+	}
+
+	/**
+	 * Parses all classes found in the directories and archives of this class
+	 * path, dividing the work among the threads of the given {@code pool}.
+	 * Entries other than {@link DirectoryClassSource}s and {@link
+	 * JarClassSource}s cannot be enumerated and are left to be read upon
+	 * request.
+	 *
+	 * @return the number of classes preloaded
+	 * @throws NullPointerException if {@code pool == null}
+	 * @throws IOException if a class could not be read, in which case the
+	 * classes parsed successfully nonetheless remain preloaded
+	 */
+	public int preload(ForkJoinPool pool) throws IOException {
+		Validate.notNull(pool);
+		Map<String, ClassSource> owners = findOwners();
+
+		// Parse in parallel
+		String[] names = owners.keySet().toArray(new String[owners.size()]);
+		AtomicReference<IOException> failure = new AtomicReference<>();
+		pool.invoke(new Preload(names, owners, 0, names.length, failure));
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		return this.preloaded.size();
+	}
+
+	/**
+	 * Returns the internal names of the classes found in the directories and
+	 * archives of this class path, in the order of their entries. Entries
+	 * other than {@link DirectoryClassSource}s and {@link JarClassSource}s
+	 * cannot be enumerated and are skipped.
+	 *
+	 * @throws IOException if a directory could not be listed
+	 */
+	public Set<String> getClassNames() throws IOException {
+		return Collections.unmodifiableSet(findOwners().keySet());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(this.entries.toArray());
+	}
+
+	// Finds the entry defining each class, earlier entries taking precedence
+	private Map<String, ClassSource> findOwners() throws IOException {
+		Map<String, ClassSource> result = new LinkedHashMap<>();
+		for (ClassSource entry : this.entries) {
+			Iterable<String> names = entry instanceof JarClassSource
+					? ((JarClassSource)entry).getClassNames()
+					: entry instanceof DirectoryClassSource
+					? ((DirectoryClassSource)entry).getClassNames()
+					: Collections.<String>emptyList();
+			for (String name : names) {
+				if (!result.containsKey(name)) {
+					result.put(name, entry);
+				}
+			}
+		}
+		return result;
+	}
+
+	// Parses a range of classes, splitting it among subtasks if large
+	private final class Preload extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String[] names;
+		private final Map<String, ClassSource> owners; // Read-only
+		private final int from;
+		private final int to;
+		private final AtomicReference<IOException> failure;
+
+		private Preload(String[] names, Map<String, ClassSource> owners,
+				int from, int to, AtomicReference<IOException> failure) {
+			this.names = names;
+			this.owners = owners;
+			this.from = from;
+			this.to = to;
+			this.failure = failure;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > PRELOAD_BATCH) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new Preload(this.names, this.owners, this.from, mid,
+						this.failure), new Preload(this.names, this.owners,
+						mid, this.to, this.failure));
+				return;
+			}
+			for (int i = this.from; i < this.to; i++) {
+				String name = this.names[i];
+				try {
+					ClassNode node = this.owners.get(name).loadClass(name);
+					if (node != null) {
+						ClassPath.this.preloaded.put(name, node);
+					}
+				} catch (IOException e) {
+					this.failure.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.jvm.mini.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.objectweb.asm.tree.ClassNode;
+
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Registry of the {@link RuntimeClass}es loaded from a {@link ClassSource},
+ * each class being loaded at most once.
+ * <p>
+ * As runtime classes hold the values of static fields and their
+ * initialization state, all guest threads sharing a registry share their
+ * static state as well, and classes are initialized once per registry rather
+ * than once per execution. Superclasses are loaded along with their
+ * subclasses. Classes the source does not define, such as those of the host
+ * platform, are not represented; references to them do not resolve, and
+ * they are considered to need no initialization. Each class is added to the
+ * registry's {@link ClassHierarchy} upon loading. Concurrent first requests
+ * for the same class may each load it, in which case all but one result are
+ * discarded before being used.
+ * <p>
+ * {@link Listener}s added to a registry are notified of each class loaded
+ * thereafter, once it is added to the hierarchy, such as for instrumenting
+ * its methods before any of them runs.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ClassRegistry {
+
+	private final ClassSource source; // Allowed to be null
+	private final ConcurrentMap<String, RuntimeClass> classes =
+			new ConcurrentHashMap<>();
+	private final ClassHierarchy hierarchy = new ClassHierarchy();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param source the source to load classes from; allowed to be null, in
+	 * which case only classes defined through {@link #define} are known
+	 */
+	public ClassRegistry(ClassSource source) {
+		this.source = source;
+	}
+
+	/**
+	 * Returns the class with the given internal name, loading it and its
+	 * superclasses upon the first request, or null if it is not defined.
+	 *
+	 * @throws NullPointerException if {@code internalName == null}
+	 * @throws IOException if the class or one of its superclasses could not
+	 * be read
+	 */
+	public RuntimeClass getClass(String internalName) throws IOException {
+		RuntimeClass result = this.classes.get(Validate.notNull(internalName));
+		if (result == null && this.source != null) {
+			ClassNode node = this.source.loadClass(internalName);
+			if (node != null) {
+				result = define(node);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Defines the given, already parsed class, unless a class by the same name
+	 * was loaded before, in which case the latter is returned instead.
+	 *
+	 * @throws NullPointerException if {@code node == null}
+	 * @throws IOException if a superclass could not be read
+	 */
+	public RuntimeClass define(ClassNode node) throws IOException {
+		RuntimeClass result = this.classes.get(Validate.notNull(node).name);
+		if (result == null) {
+			RuntimeClass superclass = node.superName == null
+					? null : getClass(node.superName);
+			result = new RuntimeClass(this, node, superclass);
+			RuntimeClass previous = this.classes.putIfAbsent(node.name, result);
+			if (previous != null) {
+				result = previous;
+			} else {
+				this.hierarchy.add(result);
+				for (Listener listener : this.listeners) {
+					listener.classLoaded(result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds a listener to notify of the classes loaded from now on. Classes
+	 * loaded before are not reported.
+	 *
+	 * @throws NullPointerException if {@code listener == null}
+	 */
+	public void addListener(Listener listener) {
+		this.listeners.add(Validate.notNull(listener));
+	}
+
+	/**
+	 * Returns the classes loaded so far, in no particular order.
+	 */
+	public List<RuntimeClass> getClasses() {
+		return new ArrayList<>(this.classes.values());
+	}
+
+	/**
+	 * Returns the class hierarchy formed by the classes loaded so far.
+	 */
+	public ClassHierarchy getHierarchy() {
+		return this.hierarchy;
+	}
+
+	/**
+	 * Returns the number of classes loaded.
+	 */
+	public int size() {
+		return this.classes.size();
+	}
+
+	/**
+	 * Callback for the classes loaded by a registry.
+	 */
+	public interface Listener {
+
+		/**
+		 * Invoked when the given class was loaded, before it is returned to
+		 * the requester. Classes loaded concurrently may be reported
+		 * concurrently.
+		 */
+		void classLoaded(RuntimeClass clazz);
+
+	}
+
+}
@@ -0,0 +1,364 @@
+package com.jvm.mini.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+import com.jvm.mini.util.Validate;
+
+/**
+ * Runtime constant pool of a class, holding the constants and symbolic
+ * references used by the instructions of its methods.
+ * <p>
+ * Instructions are registered with the pool as their methods are decoded
+ * into {@link MethodInfo}s, upon which each distinct constant or symbolic
+ * reference is assigned an index into an array of entries. Entries are
+ * resolved lazily upon first use (cf. Section 5.4.3 of the JVM spec, SE8
+ * edition) and cached, so that resolution happens once per entry rather than
+ * once per execution, and is shared between all instructions referring to
+ * the same entry. Resolution yields:
+ * <ul>
+ * <li>numeric constants as their boxed values;</li>
+ * <li>string constants as interned Strings, so that equal literals denote
+ * the same reference across classes, as dictated by Section 5.1;</li>
+ * <li>class references as the host {@link Class}es of the same name, guest
+ * and host classes coinciding as they do for exception types;</li>
+ * <li>references to static fields as {@link StaticField}s, to instance
+ * fields as {@link FieldNode}s and to methods as {@link MethodInfo}s,
+ * searching the referenced class and its superclasses as loaded through the
+ * {@link ClassRegistry} of the pool's class;</li>
+ * <li>references to methods of host classes not loaded by the guest as
+ * {@link Intrinsic}s, if any;</li>
+ * <li>references to {@code System.out} and {@code System.err} as {@link
+ * StandardStream}s.</li>
+ * </ul>
+ * References that cannot be resolved yield null, or the {@link Type} itself
+ * for class constants.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ConstantPool {
+
+	// Marks entries found to be unresolvable
+	private static final Object UNRESOLVABLE = new Object();
+
+	/*
+	 * Entries of the registered instructions not decoded for a RuntimeClass,
+	 * the latter linking their own copies instead. Instructions are held
+	 * weakly, so that their entries are dropped along with their methods.
+	 */
+	private static final Map<AbstractInsnNode, Ref> REFS =
+			Collections.synchronizedMap(
+					new WeakHashMap<AbstractInsnNode, Ref>());
+
+	private final String owner;      // Internal name of the class
+	private final String sourceFile; // Allowed to be null
+	private final RuntimeClass clazz; // Allowed to be null
+	private final Map<Object, Integer> indices = new HashMap<>();
+	private final List<Object> symbols = new ArrayList<>();
+	private volatile Object[] entries = new Object[0]; // Null if unresolved
+
+	// Creates the pool of the given class, as done upon loading it
+	ConstantPool(RuntimeClass clazz) {
+		this.owner = clazz.getName();
+		this.sourceFile = clazz.getNode().sourceFile;
+		this.clazz = clazz;
+	}
+
+	/**
+	 * Creates a pool for a class known by name only, whose field and method
+	 * references will not resolve.
+	 *
+	 * @param owner the internal name of the class owning the pool
+	 * @param sourceFile the name of the source file of the class, or null if
+	 * unknown
+	 * @throws NullPointerException if {@code owner == null}
+	 */
+	public ConstantPool(String owner, String sourceFile) {
+		this.owner = Validate.notNull(owner);
+		this.sourceFile = sourceFile;
+		this.clazz = null;
+	}
+
+	/**
+	 * Returns the resolved constant or symbolic reference used by the given
+	 * {@code insn}. Instructions not registered with any pool, as when
+	 * executed without having been decoded into a {@link MethodInfo}, are
+	 * registered with a pool of their own in which field and method
+	 * references do not resolve.
+	 *
+	 * @param insn an {@code ldc}, field, method or type instruction
+	 * @throws NullPointerException if {@code insn == null}
+	 * @throws IllegalArgumentException if {@code insn} uses neither a
+	 * constant nor a symbolic reference
+	 */
+	public static Object resolve(AbstractInsnNode insn) {
+		Ref ref = getRef(Validate.notNull(insn));
+		if (ref == null) {
+			Validate.argument(new ConstantPool("", null).register(insn) >= 0);
+			ref = getRef(insn);
+		}
+		return ref.pool.get(ref.index);
+	}
+
+	/**
+	 * Returns the internal name of the class owning this pool.
+	 */
+	public String getOwner() {
+		return this.owner;
+	}
+
+	/**
+	 * Returns the name of the source file of the class owning this pool, or
+	 * null if unknown.
+	 */
+	public String getSourceFile() {
+		return this.sourceFile;
+	}
+
+	/**
+	 * Returns the class owning this pool, or null if the pool was created for
+	 * a class known by name only.
+	 */
+	public RuntimeClass getRuntimeClass() {
+		return this.clazz;
+	}
+
+	/**
+	 * Returns the number of entries in this pool.
+	 */
+	public synchronized int size() {
+		return this.symbols.size();
+	}
+
+	/**
+	 * Returns the resolved entry at the given {@code index}, resolving it if
+	 * this was not done before.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code index < 0 || index >=
+	 * size()}
+	 */
+	public Object get(int index) {
+		Object[] entries = this.entries;
+		Object entry = index < entries.length ? entries[index] : null;
+		if (entry == null) {
+			entry = resolveEntry(index);
+		}
+		return entry == UNRESOLVABLE ? null : entry;
+	}
+
+	/*
+	 * Registers the given instruction, returning the index of its entry, or
+	 * -1 if it uses neither a constant nor a symbolic reference. An
+	 * instruction can be registered with one pool only, being linked to its
+	 * entry if decoded for a RuntimeClass (see LinkedMethodNode).
+	 */
+	synchronized int register(AbstractInsnNode insn) {
+		Object symbol = getSymbol(insn);
+		if (symbol == null) {
+			return -1;
+		}
+		Integer index = this.indices.get(symbol);
+		if (index == null) {
+			index = Integer.valueOf(this.symbols.size());
+			this.indices.put(symbol, index);
+			this.symbols.add(symbol);
+		}
+		Ref ref = new Ref(this, index.intValue());
+		if (insn instanceof LinkedMethodNode.Linked) {
+			LinkedMethodNode.Linked linked = (LinkedMethodNode.Linked)insn;
+			if (linked.getLink() == null) {
+				linked.setLink(ref);
+			}
+		} else {
+			synchronized (REFS) {
+				if (!REFS.containsKey(insn)) {
+					REFS.put(insn, ref);
+				}
+			}
+		}
+		return index.intValue();
+	}
+
+	private static Ref getRef(AbstractInsnNode insn) {
+		return insn instanceof LinkedMethodNode.Linked
+				? (Ref)((LinkedMethodNode.Linked)insn).getLink()
+				: REFS.get(insn);
+	}
+
+	private synchronized Object resolveEntry(int index) {
+		Object symbol = this.symbols.get(index);
+		Object[] entries = this.entries;
+		if (entries.length <= index) {
+			Object[] grown = new Object[this.symbols.size()];
+			System.arraycopy(entries, 0, grown, 0, entries.length);
+			entries = grown;
+		}
+		Object entry = entries[index];
+		if (entry == null) {
+			entry = resolveSymbol(symbol);
+			entries[index] = entry == null ? UNRESOLVABLE : entry;
+			this.entries = entries; // Publishes the resolved entry
+		}
+		return entries[index];
+	}
+
+	private Object resolveSymbol(Object symbol) {
+		if (symbol instanceof String) {
+			return ((String)symbol).intern();
+		}
+		if (symbol instanceof Type) {
+			Type type = (Type)symbol;
+			if (type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY) {
+				return type; // Method types remain symbolic
+			}
+			try {
+				return Class.forName(type.getSort() == Type.ARRAY
+						? type.getDescriptor().replace('/', '.')
+						: type.getClassName(), false,
+						ConstantPool.class.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				return type;
+			}
+		}
+		if (symbol instanceof Member) {
+			Member member = (Member)symbol;
+			try {
+				Object resolved = member.method
+						? resolveMethod(member.owner, member.name, member.desc)
+						: resolveField(member.owner, member.name, member.desc);
+				if (resolved != null) {
+					return resolved;
+				}
+			} catch (IOException e) {
+				// Not a guest class, though possibly a host one
+			}
+			return member.method
+					? Intrinsic.forMethod(member.owner, member.name,
+							member.desc)
+					: StandardStream.forField(member.owner, member.name,
+							member.desc);
+		}
+		return symbol; // Numeric constants and method handles
+	}
+
+	// Searches the given class and its superclasses for a method
+	private MethodInfo resolveMethod(String owner, String name, String desc)
+			throws IOException {
+		for (RuntimeClass c = loadClass(owner); c != null;
+				c = c.getSuperclass()) {
+			MethodInfo method = c.getMethod(name, desc);
+			if (method != null) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Searches the given class and its superclasses for a field, returning a
+	 * StaticField or, for instance fields, a FieldNode.
+	 */
+	private Object resolveField(String owner, String name, String desc)
+			throws IOException {
+		for (RuntimeClass c = loadClass(owner); c != null;
+				c = c.getSuperclass()) {
+			for (Object f : c.getNode().fields) {
+				FieldNode field = (FieldNode)f;
+				if (field.name.equals(name) && field.desc.equals(desc)) {
+					return (field.access & Opcodes.ACC_STATIC) != 0
+							? c.getStaticField(name) : field;
+				}
+			}
+		}
+		return null;
+	}
+
+	private RuntimeClass loadClass(String name) throws IOException {
+		if (this.clazz == null) {
+			return null;
+		}
+		return this.clazz.getName().equals(name)
+				? this.clazz : this.clazz.getRegistry().getClass(name);
+	}
+
+	// Returns the unresolved constant or symbolic reference used by insn
+	private static Object getSymbol(AbstractInsnNode insn) {
+		if (insn instanceof LdcInsnNode) {
+			return ((LdcInsnNode)insn).cst;
+		}
+		if (insn instanceof TypeInsnNode) {
+			return Type.getObjectType(((TypeInsnNode)insn).desc);
+		}
+		if (insn instanceof FieldInsnNode) {
+			FieldInsnNode node = (FieldInsnNode)insn;
+			return new Member(false, node.owner, node.name, node.desc);
+		}
+		if (insn instanceof MethodInsnNode) {
+			MethodInsnNode node = (MethodInsnNode)insn;
+			return new Member(true, node.owner, node.name, node.desc);
+		}
+		return null;
+	}
+
+	// Symbolic reference to a field or method
+	private static final class Member {
+
+		private final boolean method;
+		private final String owner;
+		private final String name;
+		private final String desc;
+
+		private Member(boolean method, String owner, String name,
+				String desc) {
+			this.method = method;
+			this.owner = owner;
+			this.name = name;
+			this.desc = desc;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Member)) {
+				return false;
+			}
+			Member other = (Member)obj;
+			return this.method == other.method
+					&& this.owner.equals(other.owner)
+					&& this.name.equals(other.name)
+					&& this.desc.equals(other.desc);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((this.owner.hashCode() * 31 + this.name.hashCode()) * 31
+					+ this.desc.hashCode()) * 2 + (this.method ? 1 : 0);
+		}
+	}
+
+	// Entry of a registered instruction
+	private static final class Ref {
+
+		private final ConstantPool pool;
+		private final int index;
+
+		private Ref(ConstantPool pool, int index) {
+			this.pool = pool;
+			this.index = index;
+		}
+	}
+
+}
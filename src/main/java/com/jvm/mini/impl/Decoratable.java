@@ -0,0 +1,23 @@
+package com.jvm.mini.impl;
+
+import com.jvm.mini.api.JvmFacade;
+
+/**
+ * {@link JvmFacade} that may be decorated, reporting the guest objects the
+ * runtime allocates on its own accord through its outermost decorator (cf.
+ * {@link JvmFacade#allocated}). Decorators register themselves upon
+ * construction, and pass the registrations of their own decorators on to the
+ * facade they decorate.
+ *
+ * @author Arno Bastenhof
+ */
+interface Decoratable {
+
+	/**
+	 * Sets the outermost facade decorating this one.
+	 *
+	 * @throws NullPointerException if {@code outer == null}
+	 */
+	void setOuter(JvmFacade outer);
+
+}
@@ -0,0 +1,88 @@
+package com.jvm.mini.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.util.Validate;
+
+/**
+ * {@link ClassSource} reading class files from a directory tree laid out
+ * according to their packages, as produced by {@code javac -d}. Every call to
+ * {@link #loadClass(String)} reads the class file anew.
+ *
+ * @author Arno Bastenhof
+ */
+public final class DirectoryClassSource implements ClassSource {
+
+	private static final String CLASS_EXTENSION = ".class";
+
+	private final File root;
+
+	/**
+	 * @param root the directory holding the default package
+	 * @throws NullPointerException if {@code root == null}
+	 */
+	public DirectoryClassSource(File root) {
+		this.root = Validate.notNull(root);
+	}
+
+	@Override
+	public ClassNode loadClass(String internalName) throws IOException {
+		File classFile = new File(this.root, internalName.replace('/',
+				File.separatorChar).concat(CLASS_EXTENSION));
+		if (!classFile.isFile()) {
+			return null;
+		}
+		ClassNode result = new ClassNode();
+		try (InputStream is = new FileInputStream(classFile)) {
+			new ClassReader(is).accept(result, 0);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the internal names of the classes in this directory tree.
+	 *
+	 * @throws IOException if the directory tree could not be read
+	 */
+	public Set<String> getClassNames() throws IOException {
+		final Path root = this.root.toPath();
+		final Set<String> result = new HashSet<>();
+		if (!Files.isDirectory(root)) {
+			return result;
+		}
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attrs) {
+				String name = root.relativize(file).toString();
+				if (attrs.isRegularFile() && name.endsWith(CLASS_EXTENSION)) {
+					result.add(name.substring(0, name.length()
+							- CLASS_EXTENSION.length())
+							.replace(File.separatorChar, '/'));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return this.root.toString();
+	}
+
+}
@@ -2,29 +2,52 @@ package com.jvm.mini.impl;
 
 import org.objectweb.asm.tree.AbstractInsnNode;
 
-import com.jvm.mini.util.Operands;
 import com.jvm.mini.util.Validate;
 
 /**
  * Frames are allocated on the Java Virtual Machine stack and hold the operand
  * stack and local variables for a method invocation.
  * <p>
- * The current implementation follows [1] in leveraging the host JVM for
- * populating both the operand stack and local variables with Object
- * references. This leads to a number of fundamental deviations from the JVM
- * spec, documented in the Javadoc for {@link com.jvm.mini.api.JvmFacade}.
+ * Local variables and operands share a single slot area, with the locals
+ * occupying its first {@code maxLocals} slots and the operand stack growing
+ * from there. Primitive values are stored unboxed as raw bit patterns in an
+ * array of longs, with floats and doubles converted through {@link
+ * Float#floatToRawIntBits} and {@link Double#doubleToRawLongBits} so as to
+ * preserve their exact IEEE 754 representations, including NaN payloads.
+ * References are kept in a parallel array of Objects. As dictated by the JVM
+ * spec, longs and doubles occupy two consecutive slots, the second of which
+ * is left unused.
  * <p>
- * [1] Taivalsaari, Antero. "Implementing a Java Virtual Machine in the Java
- * Programming Language." (1998).
+ * Deviating from the JVM spec, each slot is tagged with the type of its
+ * value. This allows type errors to surface as {@link ClassCastException}s,
+ * rather than as silently misinterpreted bits, and supports debugging tools
+ * in describing the contents of a frame. See also the Javadoc for {@link
+ * com.jvm.mini.api.JvmFacade}.
  *
  * @author Arno Bastenhof
  */
 public final class Frame {
 
+	// Slot tags, coinciding with field descriptors where applicable
+	static final byte UNSET = 0;
+	static final byte INTEGER = 'I';
+	static final byte LONG = 'J';
+	static final byte FLOAT = 'F';
+	static final byte DOUBLE = 'D';
+	static final byte REFERENCE = 'L';
+	static final byte TOP = 'T';     // Second half of a long or double
+
+	private final MethodInfo method;        // Null if unknown
 	private final AbstractInsnNode returnAddress;
-	private final Object[] operands; // Operand stack
-	private final Object[] locals;   // Local variables
+	private final AbstractInsnNode callSite; // Invoking instruction, or null
+	private final int maxLocals;     // Start of the operand stack
 	private final Frame previous;    // Previous frame, or null if there is none
+	private final int depth;         // No. of frames up to and including this
+	private RuntimeClass[] initializing; // Classes initialized, or null
+
+	private final long[] values;     // Primitive values, as raw bits
+	private final Object[] refs;     // References
+	private final byte[] tags;       // Types of slots
 	private int stackPtr;            // Operand stack pointer
 
 	/**
@@ -38,25 +61,109 @@ public final class Frame {
 	 */
 	public Frame(int maxStack, int maxLocals, Frame previous,
 			AbstractInsnNode returnAddress) {
+		this(null, maxStack, maxLocals, previous, returnAddress, null);
+	}
+
+	/**
+	 *
+	 * @param method the method invoked; allowed to be null
+	 * @param maxStack the maximum size of the operand stack
+	 * @param maxLocals the maximum number of local variable slots
+	 * @param previous the previous frame on the JVM stack; allowed to be null
+	 * @param returnAddress the bytecode instruction to return control to
+	 * @param callSite the bytecode instruction that invoked {@code method};
+	 * allowed to be null
+	 * @throws IllegalArgumentException if {@code maxStack < 0 || maxLocals < 0}
+	 */
+	public Frame(MethodInfo method, int maxStack, int maxLocals,
+			Frame previous, AbstractInsnNode returnAddress,
+			AbstractInsnNode callSite) {
 		Validate.argument(maxStack >= 0 && maxLocals >= 0);
-		this.operands = new Object[maxStack];
-		this.locals = new Object[maxLocals];
+		this.method = method;
+		this.values = new long[maxLocals + maxStack];
+		this.refs = new Object[maxLocals + maxStack];
+		this.tags = new byte[maxLocals + maxStack];
+		this.maxLocals = maxLocals;
+		this.stackPtr = maxLocals;
 		this.previous = previous;
+		this.depth = previous == null ? 1 : previous.depth + 1;
 		this.returnAddress = returnAddress;
+		this.callSite = callSite;
 	}
 
+	// === Operand stack ===
+
 	/**
-	 * Pushes the specified {@code value} on the operand stack.
+	 * Pushes the specified {@code value} on the operand stack as a reference,
+	 * even if it is a boxed primitive, primitives being pushed through {@link
+	 * #pushInteger}, {@link #pushLong}, {@link #pushFloat} and {@link
+	 * #pushDouble} only.
 	 *
 	 * @throws IndexOutOfBoundsException if the operand stack is already filled
 	 * to its maximum size.
 	 */
 	public void push(Object value) {
-		this.operands[this.stackPtr++] = value;
+		int slot = this.stackPtr++;
+		this.refs[slot] = value;
+		this.tags[slot] = REFERENCE;
+	}
+
+	/**
+	 * Pushes the specified integer {@code value} on the operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack is already filled
+	 * to its maximum size.
+	 */
+	public void pushInteger(int value) {
+		int slot = this.stackPtr++;
+		this.values[slot] = value;
+		this.tags[slot] = INTEGER;
+	}
+
+	/**
+	 * Pushes the specified long {@code value} on the operand stack, occupying
+	 * two slots.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack has less than two
+	 * slots left.
+	 */
+	public void pushLong(long value) {
+		int slot = this.stackPtr;
+		this.tags[slot + 1] = TOP;
+		this.values[slot] = value;
+		this.tags[slot] = LONG;
+		this.stackPtr = slot + 2;
 	}
 
 	/**
-	 * Pops a value from the operand stack.
+	 * Pushes the specified float {@code value} on the operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack is already filled
+	 * to its maximum size.
+	 */
+	public void pushFloat(float value) {
+		int slot = this.stackPtr++;
+		this.values[slot] = Float.floatToRawIntBits(value);
+		this.tags[slot] = FLOAT;
+	}
+
+	/**
+	 * Pushes the specified double {@code value} on the operand stack,
+	 * occupying two slots.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack has less than two
+	 * slots left.
+	 */
+	public void pushDouble(double value) {
+		int slot = this.stackPtr;
+		this.tags[slot + 1] = TOP;
+		this.values[slot] = Double.doubleToRawLongBits(value);
+		this.tags[slot] = DOUBLE;
+		this.stackPtr = slot + 2;
+	}
+
+	/**
+	 * Pops a value from the operand stack, boxing primitive values.
 	 *
 	 * @param clazz the expected runtime class of the popped value
 	 * @throws NullPointerException if {@code clazz == null}
@@ -66,30 +173,155 @@ public final class Frame {
 	 */
 	public <T> T pop(Class<T> clazz) {
 		Validate.notNull(clazz);
-		return clazz.cast(this.operands[--this.stackPtr]);
+		int slot = top();
+		T result = clazz.cast(get(slot));
+		this.refs[slot] = null;
+		this.stackPtr = slot;
+		return result;
 	}
 
 	/**
-	 * Returns the String representation of the value on top of the operand
-	 * stack without popping it. If the operand stack is empty, the empty
-	 * String is returned. Intended for debugging purposes.
+	 * Pops an integer value from the operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack is empty
+	 * @throws ClassCastException if the top value is not an integer
+	 */
+	public int popInteger() {
+		return (int)this.values[pop(INTEGER)];
+	}
+
+	/**
+	 * Pops a long value from the operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack is empty
+	 * @throws ClassCastException if the top value is not a long
+	 */
+	public long popLong() {
+		return this.values[pop(LONG)];
+	}
+
+	/**
+	 * Pops a float value from the operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack is empty
+	 * @throws ClassCastException if the top value is not a float
+	 */
+	public float popFloat() {
+		return Float.intBitsToFloat((int)this.values[pop(FLOAT)]);
+	}
+
+	/**
+	 * Pops a double value from the operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack is empty
+	 * @throws ClassCastException if the top value is not a double
+	 */
+	public double popDouble() {
+		return Double.longBitsToDouble(this.values[pop(DOUBLE)]);
+	}
+
+	/**
+	 * Pops a reference from the operand stack.
+	 *
+	 * @throws IndexOutOfBoundsException if the operand stack is empty
+	 * @throws ClassCastException if the top value is not a reference
+	 */
+	public Object popReference() {
+		int slot = pop(REFERENCE);
+		Object result = this.refs[slot];
+		this.refs[slot] = null;
+		return result;
+	}
+
+	/**
+	 * Empties the operand stack.
+	 */
+	public void clear() {
+		while (this.stackPtr > this.maxLocals) {
+			this.refs[--this.stackPtr] = null;
+		}
+	}
+
+	/**
+	 * Returns the value on top of the operand stack without popping it, or the
+	 * empty String if the operand stack is empty. Intended for debugging
+	 * purposes.
 	 */
 	public Object peek() {
-		return this.stackPtr > 0 ? this.operands[this.stackPtr - 1] : "";
+		return this.stackPtr > this.maxLocals ? get(top()) : "";
 	}
 
+	// === Local variables ===
+
 	/**
-	 * Stores the given {@code value} in the specified local variable.
+	 * Stores the given {@code value} in the specified local variable as a
+	 * reference, even if it is a boxed primitive, primitives being stored
+	 * through {@link #storeInteger}, {@link #storeLong}, {@link #storeFloat}
+	 * and {@link #storeDouble} only.
 	 *
 	 * @throws NullPointerException if {@code value == null}
 	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
 	 */
 	public void store(int var, Object value) {
-		this.locals[var] = Validate.notNull(value);
+		Validate.notNull(value);
+		int slot = local(var, 1);
+		this.refs[slot] = value;
+		this.tags[slot] = REFERENCE;
 	}
 
 	/**
-	 * Returns the value stored in the specified local variable.
+	 * Stores the given integer {@code value} in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 */
+	public void storeInteger(int var, int value) {
+		int slot = local(var, 1);
+		this.values[slot] = value;
+		this.tags[slot] = INTEGER;
+	}
+
+	/**
+	 * Stores the given long {@code value} in the specified local variable and
+	 * its successor.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var + 1 >=
+	 * maxLocals}
+	 */
+	public void storeLong(int var, long value) {
+		int slot = local(var, 2);
+		this.values[slot] = value;
+		this.tags[slot] = LONG;
+		this.tags[slot + 1] = TOP;
+	}
+
+	/**
+	 * Stores the given float {@code value} in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 */
+	public void storeFloat(int var, float value) {
+		int slot = local(var, 1);
+		this.values[slot] = Float.floatToRawIntBits(value);
+		this.tags[slot] = FLOAT;
+	}
+
+	/**
+	 * Stores the given double {@code value} in the specified local variable
+	 * and its successor.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var + 1 >=
+	 * maxLocals}
+	 */
+	public void storeDouble(int var, double value) {
+		int slot = local(var, 2);
+		this.values[slot] = Double.doubleToRawLongBits(value);
+		this.tags[slot] = DOUBLE;
+		this.tags[slot + 1] = TOP;
+	}
+
+	/**
+	 * Returns the value stored in the specified local variable, boxing
+	 * primitive values.
 	 *
 	 * @param clazz the expected runtime class of the returned value
 	 * @throws NullPointerException if {@code clazz == null}
@@ -99,7 +331,49 @@ public final class Frame {
 	 */
 	public <T> T load(int var, Class<T> clazz) {
 		Validate.notNull(clazz);
-		return clazz.cast(this.locals[var]);
+		return clazz.cast(get(checkLocal(var)));
+	}
+
+	/**
+	 * Returns the integer value stored in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 * @throws ClassCastException if {@code var} does not hold an integer
+	 */
+	public int loadInteger(int var) {
+		return (int)this.values[check(checkLocal(var), INTEGER)];
+	}
+
+	/**
+	 * Returns the long value stored in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 * @throws ClassCastException if {@code var} does not hold a long
+	 */
+	public long loadLong(int var) {
+		return this.values[check(checkLocal(var), LONG)];
+	}
+
+	/**
+	 * Returns the float value stored in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 * @throws ClassCastException if {@code var} does not hold a float
+	 */
+	public float loadFloat(int var) {
+		return Float.intBitsToFloat(
+				(int)this.values[check(checkLocal(var), FLOAT)]);
+	}
+
+	/**
+	 * Returns the double value stored in the specified local variable.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 * @throws ClassCastException if {@code var} does not hold a double
+	 */
+	public double loadDouble(int var) {
+		return Double.longBitsToDouble(
+				this.values[check(checkLocal(var), DOUBLE)]);
 	}
 
 	/**
@@ -109,6 +383,73 @@ public final class Frame {
 		return this.previous;
 	}
 
+	/**
+	 * Returns the number of frames on the JVM stack up to and including this
+	 * one.
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+	/**
+	 * Returns the number of slots occupied on the operand stack, counting two
+	 * for longs and doubles. Intended for debugging purposes.
+	 */
+	public int getStackSize() {
+		return this.stackPtr - this.maxLocals;
+	}
+
+	/**
+	 * Returns the value at the specified {@code index} of the operand stack,
+	 * counting slots from the bottom, with primitive values boxed. For the
+	 * second slot of a long or double, null is returned. Intended for
+	 * debugging purposes.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code index < 0 || index >=
+	 * getStackSize()}
+	 */
+	public Object getOperand(int index) {
+		if (index < 0 || index >= getStackSize()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return get(this.maxLocals + index);
+	}
+
+	/**
+	 * Returns the maximum number of local variable slots. Intended for
+	 * debugging purposes.
+	 */
+	public int getMaxLocals() {
+		return this.maxLocals;
+	}
+
+	/**
+	 * Returns the value stored in the specified local variable with primitive
+	 * values boxed, or null if none was stored there yet or if {@code var}
+	 * holds the second slot of a long or double. Intended for debugging
+	 * purposes.
+	 *
+	 * @throws IndexOutOfBoundsException if {@code var < 0 || var >= maxLocals}
+	 */
+	public Object getLocal(int var) {
+		return get(checkLocal(var));
+	}
+
+	/**
+	 * Returns the method this frame was allocated for, or null if unknown.
+	 */
+	public MethodInfo getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * Returns the bytecode instruction in the preceding frame that invoked the
+	 * method this frame was allocated for, or null if unknown.
+	 */
+	public AbstractInsnNode getCallSite() {
+		return this.callSite;
+	}
+
 	/**
 	 * Returns the address of the bytecode instruction to continue execution
 	 * with after popping this frame.
@@ -118,22 +459,154 @@ public final class Frame {
 	}
 
 	/**
-	 * Returns a String concatenation of the field descriptors for the values
-	 * on the operand stack. Intended for debugging purposes.
+	 * Returns the classes whose initialization completes when this frame
+	 * returns, or fails when it is popped by an exception, or null if this
+	 * frame does not run a class initializer.
+	 */
+	public RuntimeClass[] getInitializing() {
+		return this.initializing == null ? null : this.initializing.clone();
+	}
+
+	// Sets the classes whose initialization depends on this frame
+	void setInitializing(RuntimeClass[] classes) {
+		this.initializing = classes;
+	}
+
+	// Returns the classes whose initialization depends on this frame, if any
+	RuntimeClass[] initializing() {
+		return this.initializing;
+	}
+
+	// Returns the maximum size of the operand stack
+	int getMaxStack() {
+		return this.tags.length - this.maxLocals;
+	}
+
+	// Returns the tag of the given slot, counting locals first
+	byte tag(int slot) {
+		return this.tags[slot];
+	}
+
+	// Returns the raw bits of the primitive value in the given slot
+	long bits(int slot) {
+		return this.values[slot];
+	}
+
+	// Returns the reference in the given slot
+	Object reference(int slot) {
+		return this.refs[slot];
+	}
+
+	/*
+	 * Restores the given slot, counting locals first, to the given tag along
+	 * with its raw bits or its reference, as done when restoring a snapshot.
+	 */
+	void restore(int slot, byte tag, long bits, Object ref) {
+		this.tags[slot] = tag;
+		this.values[slot] = bits;
+		this.refs[slot] = ref;
+	}
+
+	// Sets the number of slots occupied on the operand stack
+	void setStackSize(int size) {
+		if (size < 0 || size > getMaxStack()) {
+			throw new IndexOutOfBoundsException(Integer.toString(size));
+		}
+		this.stackPtr = this.maxLocals + size;
+	}
+
+	/**
+	 * Returns a String concatenation of the types of the values on the
+	 * operand stack, each given by the first character of its field
+	 * descriptor, with {@code L} standing for any reference. Intended for
+	 * debugging purposes.
 	 * <p>
 	 * This functionality is counterintuitive to the JVM spec, which restricts
 	 * all type information to the instruction set for static class file
 	 * verification. It is made possible, however, by our deviation from this
-	 * point by our leveraging of the underlying host JVM in the use of Object
-	 * references, which expose their classes at runtime.
+	 * point in tagging each slot with the type of its value.
 	 */
 	public String getOperandTypes() {
 		StringBuilder buffer = new StringBuilder();
-		for (int i = 0; i < this.stackPtr; i++) {
-			Object operand = this.operands[i];
-			buffer.append(Operands.getFieldDescriptor(operand.getClass()));
+		for (int slot = this.maxLocals; slot < this.stackPtr; slot++) {
+			if (this.tags[slot] != TOP) {
+				buffer.append((char)this.tags[slot]);
+			}
 		}
 		return buffer.toString();
 	}
 
+	// Returns the slot of the value on top of the operand stack
+	private int top() {
+		int slot = this.stackPtr - 1;
+		if (slot < this.maxLocals) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.tags[slot] == TOP ? slot - 1 : slot;
+	}
+
+	// Pops the value on top of the operand stack, returning its slot
+	private int pop(byte tag) {
+		int slot = check(top(), tag);
+		this.stackPtr = slot;
+		return slot;
+	}
+
+	// Returns slot, checking it to be tagged with tag
+	private int check(int slot, byte tag) {
+		if (this.tags[slot] != tag) {
+			throw new ClassCastException("Expected " + (char)tag + ", found "
+					+ (this.tags[slot] == UNSET ? "nothing"
+					: String.valueOf((char)this.tags[slot])));
+		}
+		return slot;
+	}
+
+	// Returns the slot of local variable var, checking it to be in range
+	private int checkLocal(int var) {
+		if (var < 0 || var >= this.maxLocals) {
+			throw new IndexOutOfBoundsException(Integer.toString(var));
+		}
+		return var;
+	}
+
+	/*
+	 * Returns the slot of local variable var for storing a value occupying
+	 * size slots, invalidating any long or double partially overwritten.
+	 */
+	private int local(int var, int size) {
+		if (var < 0 || var + size > this.maxLocals) {
+			throw new IndexOutOfBoundsException(Integer.toString(var));
+		}
+		if (this.tags[var] == TOP) {
+			this.tags[var - 1] = UNSET;
+		}
+		int last = var + size - 1;
+		if (last + 1 < this.maxLocals && this.tags[last + 1] == TOP) {
+			this.tags[last + 1] = UNSET;
+		}
+		this.refs[var] = null;
+		this.refs[last] = null;
+		return var;
+	}
+
+	// Returns the value at slot, with primitive values boxed
+	private Object get(int slot) {
+		long bits = this.values[slot];
+		switch (this.tags[slot]) {
+		case INTEGER:
+			return Integer.valueOf((int)bits);
+		case LONG:
+			return Long.valueOf(bits);
+		case FLOAT:
+			return Float.valueOf(Float.intBitsToFloat((int)bits));
+		case DOUBLE:
+			return Double.valueOf(Double.longBitsToDouble(bits));
+		case REFERENCE:
+			return this.refs[slot];
+		default:
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,102 @@
+package com.jvm.mini.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.util.Validate;
+
+/**
+ * An exception thrown by or within the guest program.
+ * <p>
+ * Guest exceptions are deliberately not represented by host {@link
+ * Throwable}s, the construction of which already entails a walk of the host
+ * stack. Their types are nonetheless borrowed from the host, thus allowing the
+ * latter's class hierarchy to be used for matching catch clauses. When thrown,
+ * a guest exception merely records the frame and instruction it was thrown
+ * from. As frames never change their links to their predecessors, this
+ * suffices for materializing the guest stack trace later on, if and when it
+ * is requested.
+ *
+ * @author Arno Bastenhof
+ */
+public final class GuestException {
+
+	private final Class<? extends Throwable> type;
+	private final String message;           // Allowed to be null
+	private Frame origin;                   // Frame thrown from
+	private AbstractInsnNode originInsn;    // Instruction thrown at
+	private StackTraceElement[] stackTrace; // Materialized on demand
+
+	/**
+	 * @param type the exception type
+	 * @throws NullPointerException if {@code type == null}
+	 */
+	public GuestException(Class<? extends Throwable> type) {
+		this(type, null);
+	}
+
+	/**
+	 * @param type the exception type
+	 * @param message the detail message; allowed to be null
+	 * @throws NullPointerException if {@code type == null}
+	 */
+	public GuestException(Class<? extends Throwable> type, String message) {
+		this.type = Validate.notNull(type);
+		this.message = message;
+	}
+
+	/**
+	 * Returns the type of this exception.
+	 */
+	public Class<? extends Throwable> getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the detail message of this exception, or null if there is none.
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+
+	/**
+	 * Returns the guest stack trace for the point this exception was first
+	 * thrown from, or an empty array if it was never thrown.
+	 */
+	public StackTraceElement[] getStackTrace() {
+		if (this.stackTrace == null) {
+			List<StackTraceElement> trace = new ArrayList<>();
+			AbstractInsnNode insn = this.originInsn;
+			for (Frame frame = this.origin; frame != null;
+					frame = frame.getPrevious()) {
+				MethodInfo method = frame.getMethod();
+				if (method != null) {
+					trace.add(method.toStackTraceElement(insn));
+				}
+				insn = frame.getCallSite();
+			}
+			this.stackTrace = trace.toArray(new StackTraceElement[0]);
+		}
+		return this.stackTrace.clone();
+	}
+
+	/**
+	 * Records the point this exception is thrown from, unless it was already
+	 * thrown before, in which case its original stack trace is retained.
+	 */
+	void fillInStackTrace(Frame frame, AbstractInsnNode insn) {
+		if (this.origin == null) {
+			this.origin = frame;
+			this.originInsn = insn;
+		}
+	}
+
+	@Override
+	public String toString() {
+		String name = this.type.getName();
+		return this.message == null ? name : name + ": " + this.message;
+	}
+
+}
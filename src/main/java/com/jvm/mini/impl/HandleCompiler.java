@@ -0,0 +1,335 @@
+package com.jvm.mini.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import com.jvm.mini.api.CompiledCode;
+import com.jvm.mini.api.ExecutionTier;
+import com.jvm.mini.api.InsnVisitor;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.MethodCompiler;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Traps;
+import com.jvm.mini.util.Validate;
+
+/**
+ * {@link MethodCompiler} translating each basic block of a guest method into
+ * a tree of {@link MethodHandle} combinators.
+ * <p>
+ * Every instruction of a block becomes a handle on the {@link InsnVisitor}
+ * method executing it, bound to the instruction itself (see {@link
+ * Instructions#bindInsn}), so that the opcode lookup the interpreter performs
+ * upon every execution takes place once, during compilation. The handles of a
+ * block are chained through {@link MethodHandles#foldArguments}, each next
+ * one guarded through {@link MethodHandles#guardWithTest} by a check that the
+ * program counter still points at it, as it does not after a branch taken, a
+ * call, a return or an exception. A further guard per instruction checks that
+ * its opcode was not replaced by a trap since compilation, as for a
+ * breakpoint or class initialization barrier, in which case the instruction
+ * is dispatched by its current opcode as the interpreter would.
+ * <p>
+ * The handles of the blocks are looked up by the program counter and invoked
+ * as non-constant handles. The host JIT compiler thus cannot treat a block's
+ * tree as a constant at the call site. Whether it still inlines the tree and
+ * folds the bound instructions is up to its own profiling, such as the
+ * customization of hot handles done by HotSpot. Binding each block to a
+ * constant call site instead would require generating bytecode invoking
+ * them, which this compiler does not do.
+ * <p>
+ * Compiled code reads instructions through the {@link JvmFacade} like the
+ * interpreter, keeping the program counter in step with execution, so that
+ * control may pass between code and interpreter at any instruction and
+ * resource quotas account for every instruction. Listeners are notified of
+ * frames and branches, but not of the individual instructions. The code is
+ * entered at the first instruction of any of its blocks, executing blocks
+ * until the current frame changes or the program counter leaves its blocks.
+ * Code for on-stack replacement consists of the blocks of a loop only, from
+ * its header up to its last backward branch, execution returning to the
+ * interpreter once it exits the loop. Visitors executing the instructions
+ * are created by a {@link VisitorFactory}, one per facade, and reused for
+ * as long as a thread keeps executing code for the same facade.
+ *
+ * @author Arno Bastenhof
+ */
+public final class HandleCompiler implements MethodCompiler {
+
+	// Bounds the depth of the tree for a block, splitting longer blocks
+	private static final int MAX_BLOCK_LENGTH = 64;
+
+	// (JvmFacade)void, advancing the program counter
+	private static final MethodHandle READ;
+
+	// (JvmFacade, InsnVisitor)void, dispatching on the current opcode
+	private static final MethodHandle INTERPRET;
+
+	// (JvmFacade, InsnVisitor)void, doing nothing
+	private static final MethodHandle NOP;
+
+	// (AbstractInsnNode, JvmFacade)boolean
+	private static final MethodHandle IS_AT;
+
+	// (AbstractInsnNode, int)boolean
+	private static final MethodHandle HAS_OPCODE;
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			MethodHandle read = lookup.findVirtual(JvmFacade.class,
+					"readInstruction",
+					MethodType.methodType(AbstractInsnNode.class));
+			READ = read.asType(MethodType.methodType(void.class,
+					JvmFacade.class));
+			INTERPRET = MethodHandles.permuteArguments(
+					MethodHandles.filterArguments(lookup.findStatic(
+							Instructions.class, "switchOnInsn",
+							MethodType.methodType(void.class,
+									InsnVisitor.class,
+									AbstractInsnNode.class)), 1, read),
+					MethodType.methodType(void.class, JvmFacade.class,
+							InsnVisitor.class), 1, 0);
+			NOP = lookup.findStatic(HandleCompiler.class, "nop",
+					MethodType.methodType(void.class, JvmFacade.class,
+							InsnVisitor.class));
+			IS_AT = lookup.findStatic(HandleCompiler.class, "isAt",
+					MethodType.methodType(boolean.class,
+							AbstractInsnNode.class, JvmFacade.class));
+			HAS_OPCODE = lookup.findStatic(HandleCompiler.class, "hasOpcode",
+					MethodType.methodType(boolean.class,
+							AbstractInsnNode.class, int.class));
+		} catch (ReflectiveOperationException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private final VisitorFactory factory;
+
+	// Visitor last created by each thread, along with its facade
+	private final ThreadLocal<Visitor> visitors = new ThreadLocal<>();
+
+	/**
+	 * Creates a compiler whose code executes instructions by an {@link
+	 * InsnVisitorImpl}.
+	 */
+	public HandleCompiler() {
+		this(new VisitorFactory() {
+			@Override
+			public InsnVisitor newVisitor(JvmFacade facade) {
+				return new InsnVisitorImpl(facade);
+			}
+		});
+	}
+
+	/**
+	 * @param factory the factory of the visitors executing instructions
+	 * @throws NullPointerException if {@code factory == null}
+	 */
+	public HandleCompiler(VisitorFactory factory) {
+		this.factory = Validate.notNull(factory);
+	}
+
+	@Override
+	public ExecutionTier getTier() {
+		return ExecutionTier.METHOD_HANDLES;
+	}
+
+	/**
+	 * Translates the given method, returning null if it has no instructions
+	 * or any instruction not supported by the interpreter.
+	 *
+	 * @throws NullPointerException if {@code method == null}
+	 */
+	@Override
+	public CompiledCode compile(MethodInfo method) {
+		return compile(Validate.notNull(method), 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Translates the blocks of the loop starting at {@code header}, from the
+	 * header up to its last backward branch, returning null if there is no
+	 * such branch or if the blocks contain any instruction not supported by
+	 * the interpreter.
+	 *
+	 * @throws NullPointerException if any argument is null
+	 */
+	@Override
+	public CompiledCode compileLoop(MethodInfo method,
+			AbstractInsnNode header) {
+		int start = method.getOffset(Validate.notNull(header));
+		int end = -1;
+		for (AbstractInsnNode insn = method.getFirstInstruction();
+				insn != null; insn = Instructions.getNext(insn)) {
+			int offset = method.getOffset(insn);
+			if (offset >= start && offset > end
+					&& Arrays.asList(targets(insn)).contains(header)) {
+				end = offset;
+			}
+		}
+		return end < 0 ? null : compile(method, start, end);
+	}
+
+	// Translates the blocks whose first instructions lie within the offsets
+	private CompiledCode compile(MethodInfo method, int start, int end) {
+		AbstractInsnNode[] leaders = method.getBlockLeaders();
+		Set<AbstractInsnNode> entries = new HashSet<>(Arrays.asList(leaders));
+		Map<AbstractInsnNode, MethodHandle> blocks = new HashMap<>();
+		for (AbstractInsnNode leader : leaders) {
+			int offset = method.getOffset(leader);
+			if (offset < start || offset > end) {
+				continue;
+			}
+			List<AbstractInsnNode> block = new ArrayList<>();
+			for (AbstractInsnNode insn = leader; insn != null
+					&& (insn == leader || !entries.contains(insn));
+					insn = Instructions.getNext(insn)) {
+				if (!Instructions.isSupported(insn)) {
+					return null;
+				}
+				if (block.size() == MAX_BLOCK_LENGTH) {
+					blocks.put(block.get(0), chain(block));
+					block.clear();
+				}
+				block.add(insn);
+			}
+			blocks.put(block.get(0), chain(block));
+		}
+		return blocks.isEmpty() ? null : new Code(method, blocks);
+	}
+
+	// Returns the targets of a jump or switch instruction, if any
+	private static AbstractInsnNode[] targets(AbstractInsnNode insn) {
+		if (insn instanceof JumpInsnNode) {
+			return new AbstractInsnNode[] {
+					Instructions.getNext(((JumpInsnNode)insn).label)};
+		} else if (insn instanceof TableSwitchInsnNode
+				|| insn instanceof LookupSwitchInsnNode) {
+			return SwitchTable.forInsn(insn).getTargets();
+		}
+		return new AbstractInsnNode[0];
+	}
+
+	// Returns the visitor for the facade, reusing the thread's last one
+	private InsnVisitor getVisitor(JvmFacade facade) {
+		Visitor result = this.visitors.get();
+		if (result == null || result.facade != facade) {
+			result = new Visitor(facade, this.factory.newVisitor(facade));
+			this.visitors.set(result);
+		}
+		return result.visitor;
+	}
+
+	// Chains the handles for a sequence of instructions, innermost last
+	private static MethodHandle chain(List<AbstractInsnNode> block) {
+		int last = block.size() - 1;
+		MethodHandle result = bind(block.get(last));
+		for (int i = last - 1; i >= 0; i--) {
+			MethodHandle next = MethodHandles.guardWithTest(
+					MethodHandles.insertArguments(IS_AT, 0, block.get(i + 1)),
+					result, NOP);
+			result = MethodHandles.foldArguments(next, bind(block.get(i)));
+		}
+		return result;
+	}
+
+	// Binds an instruction, falling back to the interpreter if trapped
+	private static MethodHandle bind(AbstractInsnNode insn) {
+		MethodHandle execute = MethodHandles.foldArguments(
+				MethodHandles.dropArguments(Instructions.bindInsn(insn), 0,
+						JvmFacade.class), READ);
+		return MethodHandles.guardWithTest(MethodHandles.insertArguments(
+				HAS_OPCODE, 0, insn, Traps.getOpcode(insn)), execute,
+				INTERPRET);
+	}
+
+	@SuppressWarnings("unused") // Invoked through NOP
+	private static void nop(JvmFacade facade, InsnVisitor visitor) {
+	}
+
+	@SuppressWarnings("unused") // Invoked through IS_AT
+	private static boolean isAt(AbstractInsnNode insn, JvmFacade facade) {
+		return facade.peekInstruction() == insn;
+	}
+
+	@SuppressWarnings("unused") // Invoked through HAS_OPCODE
+	private static boolean hasOpcode(AbstractInsnNode insn, int opcode) {
+		return insn.getOpcode() == opcode;
+	}
+
+	/**
+	 * Factory of the visitors executing the instructions of compiled code.
+	 */
+	public interface VisitorFactory {
+
+		/**
+		 * Returns a new visitor executing instructions through the given
+		 * {@code facade}.
+		 */
+		InsnVisitor newVisitor(JvmFacade facade);
+
+	}
+
+	// Visitor created for a facade
+	private static final class Visitor {
+
+		private final JvmFacade facade;
+		private final InsnVisitor visitor;
+
+		private Visitor(JvmFacade facade, InsnVisitor visitor) {
+			this.facade = facade;
+			this.visitor = visitor;
+		}
+	}
+
+	/*
+	 * Code for a method, mapping the first instruction of each block to the
+	 * handle executing it.
+	 */
+	private final class Code implements CompiledCode {
+
+		private final MethodInfo method;
+		private final Map<AbstractInsnNode, MethodHandle> blocks;
+
+		private Code(MethodInfo method,
+				Map<AbstractInsnNode, MethodHandle> blocks) {
+			this.method = method;
+			this.blocks = blocks;
+		}
+
+		@Override
+		public void execute(JvmFacade facade) {
+			Frame frame = facade.getCurrentFrame();
+			if (frame == null || frame.getMethod() != this.method) {
+				return;
+			}
+			InsnVisitor visitor = getVisitor(facade);
+			try {
+				while (facade.getCurrentFrame() == frame) {
+					AbstractInsnNode insn = facade.peekInstruction();
+					MethodHandle block = insn == null
+							? null : this.blocks.get(insn);
+					if (block == null) {
+						return;
+					}
+					block.invokeExact(facade, visitor);
+				}
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new AssertionError(t); // Visitors declare no exceptions
+			}
+		}
+	}
+
+}
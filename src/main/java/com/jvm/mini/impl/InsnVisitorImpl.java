@@ -6,7 +6,7 @@ import com.jvm.mini.api.InsnVisitor;
 import com.jvm.mini.api.JvmFacade;
 import com.jvm.mini.util.Validate;
 
-public final class InsnVisitorImpl implements InsnVisitor {
+public final strictfp class InsnVisitorImpl implements InsnVisitor {
 
 	private final JvmFacade facade;
 
@@ -24,6 +24,16 @@ public final class InsnVisitorImpl implements InsnVisitor {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.sipush
 	}
 
+	@Override
+	public void fconst(float value) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fconst_f
+	}
+
+	@Override
+	public void dconst(double value) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dconst_d
+	}
+
 	@Override
 	public void ldc(Object constant) {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.ldc
@@ -49,6 +59,56 @@ public final class InsnVisitorImpl implements InsnVisitor {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.l2i
 	}
 
+	@Override
+	public void i2f() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.i2f
+	}
+
+	@Override
+	public void i2d() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.i2d
+	}
+
+	@Override
+	public void l2f() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.l2f
+	}
+
+	@Override
+	public void l2d() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.l2d
+	}
+
+	@Override
+	public void f2i() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.f2i
+	}
+
+	@Override
+	public void f2l() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.f2l
+	}
+
+	@Override
+	public void f2d() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.f2d
+	}
+
+	@Override
+	public void d2i() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.d2i
+	}
+
+	@Override
+	public void d2l() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.d2l
+	}
+
+	@Override
+	public void d2f() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.d2f
+	}
+
 	@Override
 	public void iadd() {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.iadd
@@ -89,6 +149,66 @@ public final class InsnVisitorImpl implements InsnVisitor {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.lneg
 	}
 
+	@Override
+	public void fadd() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fadd
+	}
+
+	@Override
+	public void dadd() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dadd
+	}
+
+	@Override
+	public void fsub() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fsub
+	}
+
+	@Override
+	public void dsub() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dsub
+	}
+
+	@Override
+	public void fmul() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fmul
+	}
+
+	@Override
+	public void dmul() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dmul
+	}
+
+	@Override
+	public void fdiv() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fdiv
+	}
+
+	@Override
+	public void ddiv() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.ddiv
+	}
+
+	@Override
+	public void frem() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.frem
+	}
+
+	@Override
+	public void drem() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.drem
+	}
+
+	@Override
+	public void fneg() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fneg
+	}
+
+	@Override
+	public void dneg() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dneg
+	}
+
 	@Override
 	public void iload(int var) {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.iload
@@ -109,6 +229,26 @@ public final class InsnVisitorImpl implements InsnVisitor {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.lstore
 	}
 
+	@Override
+	public void fload(int var) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fload
+	}
+
+	@Override
+	public void dload(int var) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dload
+	}
+
+	@Override
+	public void fstore(int var) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fstore
+	}
+
+	@Override
+	public void dstore(int var) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dstore
+	}
+
 	@Override
 	public void iinc(int var, int increment) {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.iinc
@@ -119,6 +259,26 @@ public final class InsnVisitorImpl implements InsnVisitor {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.lcmp
 	}
 
+	@Override
+	public void fcmpl() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fcmpl
+	}
+
+	@Override
+	public void fcmpg() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.fcmpg
+	}
+
+	@Override
+	public void dcmpl() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dcmpl
+	}
+
+	@Override
+	public void dcmpg() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.dcmpg
+	}
+
 	@Override
 	public void ifIcmpeq(AbstractInsnNode jumpTarget) {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.if_icmp_cond
@@ -184,9 +344,59 @@ public final class InsnVisitorImpl implements InsnVisitor {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.goto
 	}
 
+	@Override
+	public void tableswitch(SwitchTable table) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.tableswitch
+	}
+
+	@Override
+	public void lookupswitch(SwitchTable table) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.lookupswitch
+	}
+
+	@Override
+	public void getstatic(StaticField field) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.getstatic
+	}
+
+	@Override
+	public void putstatic(StaticField field) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.putstatic
+	}
+
+	@Override
+	public void getstream(StandardStream stream) {
+		this.facade.pushOperand(this.facade.getOutput(stream));
+	}
+
+	@Override
+	public void invokestatic(MethodInfo method) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.invokestatic
+	}
+
+	@Override
+	public void invokeintrinsic(Intrinsic intrinsic) {
+		intrinsic.invoke(this.facade);
+	}
+
+	@Override
+	public void invokevirtual(MethodInfo method, MethodInfo target) {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.invokevirtual
+	}
+
+	@Override
+	public void athrow() {
+		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.athrow
+	}
+
 	@Override
 	public void voidReturn() {
 		// TODO see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.return
 	}
 
+	@Override
+	public boolean initialize(RuntimeClass clazz) {
+		return this.facade.initialize(clazz);
+	}
+
 }
@@ -0,0 +1,464 @@
+package com.jvm.mini.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.objectweb.asm.Type;
+
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Method of the host platform executed directly on the host on behalf of the
+ * guest, in place of interpreting its bytecode.
+ * <p>
+ * Intrinsics are restricted to the public static methods of {@code
+ * java.lang.Math}, {@code java.lang.StrictMath} and the wrapper classes of
+ * the primitive types whose parameters and results are all primitive, such
+ * as {@code Math.abs(I)I} or {@code Long.numberOfTrailingZeros(J)I}. These
+ * neither read nor modify guest state, and their results depend only on
+ * their arguments. The only exception, {@code Math.random()}, is excluded,
+ * as nondeterministic inputs must be obtained through the {@link
+ * com.jvm.mini.api.HostInput}.
+ * <p>
+ * In addition, the {@code print}, {@code println}, {@code write}, {@code
+ * flush} and {@code checkError} methods of {@code java.io.PrintStream} taking
+ * primitives or Strings are intrinsics for the guest's standard streams,
+ * bound to the methods of the same signature of an {@link OutputBridge}. The
+ * receiver is popped along with the arguments, and is expected to have been
+ * pushed by reading {@code System.out} or {@code System.err}.
+ * <p>
+ * A {@link ConstantPool} resolves method references to classes not defined
+ * by the guest to intrinsics, if any, so that the {@link MethodHandle} of an
+ * intrinsic is looked up once for all call sites referring to it. Arguments
+ * are popped from the operand stack unboxed, and for the most common
+ * signatures, such as {@code (I)I}, {@code (JJ)J} and {@code (D)D}, passed
+ * on by an exact invocation of the handle without boxing. Other signatures
+ * are invoked generically. Host exceptions raised by the method itself are
+ * thrown in the guest as {@link GuestException}s of the same type, except for
+ * {@link VirtualMachineError}s, which are rethrown on the host, as are
+ * exceptions raised by popping the arguments or linking the invocation.
+ *
+ * @author Arno Bastenhof
+ */
+public final class Intrinsic {
+
+	// Classes whose primitive static methods are intrinsics
+	private static final Set<String> OWNERS = new HashSet<>(Arrays.asList(
+			"java/lang/Math", "java/lang/StrictMath", "java/lang/Integer",
+			"java/lang/Long", "java/lang/Float", "java/lang/Double",
+			"java/lang/Character", "java/lang/Short", "java/lang/Byte",
+			"java/lang/Boolean"));
+
+	// Methods of PrintStream that are intrinsics, if of a supported signature
+	private static final Set<String> STREAM_METHODS = new HashSet<>(
+			Arrays.asList("print", "println", "write", "flush", "checkError"));
+
+	// Marks methods found not to be intrinsics
+	private static final Object NONE = new Object();
+
+	// Wraps an exception raised by the method in a TargetException
+	private static final MethodHandle WRAP;
+
+	static {
+		try {
+			WRAP = MethodHandles.lookup().findStatic(Intrinsic.class, "wrap",
+					MethodType.methodType(TargetException.class,
+							Throwable.class));
+		} catch (ReflectiveOperationException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	// Intrinsics looked up so far, keyed by owner, name and descriptor
+	private static final ConcurrentMap<String, Object> INTRINSICS =
+			new ConcurrentHashMap<>();
+
+	private final String owner;
+	private final String name;
+	private final String desc;
+	private final MethodHandle handle;
+	private final boolean virtual;          // Whether to pop a receiver
+	private final Type[] argumentTypes;
+	private final Type returnType;
+	private final Shape shape;
+
+	private Intrinsic(String owner, String name, String desc,
+			MethodHandle handle, boolean virtual) {
+		this.owner = owner;
+		this.name = name;
+		this.desc = desc;
+		this.handle = guard(handle);
+		this.virtual = virtual;
+		this.argumentTypes = Type.getArgumentTypes(desc);
+		this.returnType = Type.getReturnType(desc);
+		this.shape = Shape.forDescriptor(desc, virtual);
+	}
+
+	/**
+	 * Returns the intrinsic for the given method of the host, or null if the
+	 * method is not an intrinsic.
+	 *
+	 * @param owner the internal name of the class declaring the method
+	 * @param name the name of the method
+	 * @param desc the descriptor of the method
+	 * @throws NullPointerException if any argument is null
+	 */
+	public static Intrinsic forMethod(String owner, String name, String desc) {
+		String key = Validate.notNull(owner) + '.' + Validate.notNull(name)
+				+ Validate.notNull(desc);
+		Object result = INTRINSICS.get(key);
+		if (result == null) {
+			result = lookup(owner, name, desc);
+			INTRINSICS.putIfAbsent(key, result == null ? NONE : result);
+		}
+		return result == NONE ? null : (Intrinsic)result;
+	}
+
+	/**
+	 * Returns the internal name of the class declaring this intrinsic.
+	 */
+	public String getOwner() {
+		return this.owner;
+	}
+
+	/**
+	 * Returns the name of this intrinsic.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the descriptor of this intrinsic.
+	 */
+	public String getDescriptor() {
+		return this.desc;
+	}
+
+	/**
+	 * Returns true iff this intrinsic is an instance method, invoked on a
+	 * receiver popped from the operand stack.
+	 */
+	public boolean isVirtual() {
+		return this.virtual;
+	}
+
+	/**
+	 * Pops the arguments of this intrinsic from the operand stack of the
+	 * given {@code facade}'s current frame, invokes it and pushes its result,
+	 * if any. An exception raised by the intrinsic is thrown in the guest
+	 * instead.
+	 *
+	 * @throws NullPointerException if {@code facade == null}
+	 */
+	public void invoke(JvmFacade facade) {
+		Validate.notNull(facade);
+		try {
+			this.shape.invoke(this, facade);
+		} catch (TargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof VirtualMachineError) {
+				throw (VirtualMachineError)cause;
+			}
+			GuestException exception = new GuestException(cause.getClass(),
+					cause.getMessage());
+			facade.throwException(exception);
+			facade.allocated(exception);
+		} catch (RuntimeException | Error e) {
+			throw e; // Not raised by the method, e.g., a failed linkage
+		} catch (Throwable t) {
+			throw new AssertionError(t); // Intrinsics declare no exceptions
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.owner + "." + this.name + this.desc;
+	}
+
+	// Guards a handle so that exceptions raised by the method are wrapped
+	private static MethodHandle guard(MethodHandle handle) {
+		MethodType type = handle.type();
+		MethodHandle handler = MethodHandles.filterArguments(
+				MethodHandles.throwException(type.returnType(),
+						TargetException.class), 0, WRAP);
+		return MethodHandles.catchException(handle, Throwable.class,
+				MethodHandles.dropArguments(handler, 1, type.parameterList()));
+	}
+
+	// Wraps an exception raised by the method, for unwrapping by invoke
+	private static TargetException wrap(Throwable t) {
+		return new TargetException(t);
+	}
+
+	// Invokes the handle with boxed arguments, converting from stack types
+	private void invokeGeneric(JvmFacade facade) throws Throwable {
+		int offset = this.virtual ? 1 : 0;
+		Object[] args = new Object[offset + this.argumentTypes.length];
+		for (int i = args.length - 1; i >= offset; i--) {
+			args[i] = pop(facade, this.argumentTypes[i - offset]);
+		}
+		if (this.virtual) {
+			args[0] = facade.popReferenceOperand();
+		}
+		Object result = this.handle.invokeWithArguments(args);
+		switch (this.returnType.getSort()) {
+		case Type.VOID:
+			break;
+		case Type.BOOLEAN:
+			facade.pushIntegerOperand(((Boolean)result).booleanValue() ? 1 : 0);
+			break;
+		case Type.CHAR:
+			facade.pushIntegerOperand(((Character)result).charValue());
+			break;
+		case Type.BYTE:
+		case Type.SHORT:
+		case Type.INT:
+			facade.pushIntegerOperand(((Number)result).intValue());
+			break;
+		case Type.LONG:
+			facade.pushLongOperand(((Long)result).longValue());
+			break;
+		case Type.FLOAT:
+			facade.pushFloatOperand(((Float)result).floatValue());
+			break;
+		default:
+			facade.pushDoubleOperand(((Double)result).doubleValue());
+		}
+	}
+
+	// Pops an argument of the given type, as represented on the stack
+	private static Object pop(JvmFacade facade, Type type) {
+		switch (type.getSort()) {
+		case Type.BOOLEAN:
+			return Boolean.valueOf(facade.popIntegerOperand() != 0);
+		case Type.CHAR:
+			return Character.valueOf((char)facade.popIntegerOperand());
+		case Type.BYTE:
+			return Byte.valueOf((byte)facade.popIntegerOperand());
+		case Type.SHORT:
+			return Short.valueOf((short)facade.popIntegerOperand());
+		case Type.INT:
+			return Integer.valueOf(facade.popIntegerOperand());
+		case Type.LONG:
+			return Long.valueOf(facade.popLongOperand());
+		case Type.FLOAT:
+			return Float.valueOf(facade.popFloatOperand());
+		case Type.DOUBLE:
+			return Double.valueOf(facade.popDoubleOperand());
+		default:
+			return facade.popReferenceOperand();
+		}
+	}
+
+	// Looks up the handle for a method, if an intrinsic
+	private static Intrinsic lookup(String owner, String name, String desc) {
+		if (owner.equals("java/io/PrintStream")) {
+			return lookupStream(owner, name, desc);
+		}
+		if (!OWNERS.contains(owner) || name.equals("random")
+				|| !isPrimitive(desc)) {
+			return null;
+		}
+		try {
+			Class<?> clazz = Class.forName(owner.replace('/', '.'));
+			MethodType type = MethodType.fromMethodDescriptorString(desc,
+					Intrinsic.class.getClassLoader());
+			return new Intrinsic(owner, name, desc, MethodHandles
+					.publicLookup().findStatic(clazz, name, type), false);
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			return null; // Not a public static method of the host
+		}
+	}
+
+	// Looks up the handle for a method of a standard stream, if supported
+	private static Intrinsic lookupStream(String owner, String name,
+			String desc) {
+		if (!STREAM_METHODS.contains(name)) {
+			return null;
+		}
+		for (Type type : Type.getArgumentTypes(desc)) {
+			if (type.getSort() > Type.DOUBLE
+					&& !type.getDescriptor().equals("Ljava/lang/String;")) {
+				return null;
+			}
+		}
+		try {
+			MethodType type = MethodType.fromMethodDescriptorString(desc,
+					Intrinsic.class.getClassLoader());
+			return new Intrinsic(owner, name, desc, MethodHandles
+					.publicLookup().findVirtual(OutputBridge.class, name,
+							type), true);
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			return null; // Not declared by OutputBridge
+		}
+	}
+
+	// Returns true iff a method descriptor only uses primitive types
+	private static boolean isPrimitive(String desc) {
+		for (Type type : Type.getArgumentTypes(desc)) {
+			if (type.getSort() > Type.DOUBLE) {
+				return false;
+			}
+		}
+		return Type.getReturnType(desc).getSort() <= Type.DOUBLE;
+	}
+
+	/*
+	 * Exception raised by the method of an intrinsic, as opposed to one
+	 * raised by the interpreter in preparing its invocation, such as a
+	 * WrongMethodTypeException or a ClassCastException for an ill-typed
+	 * argument.
+	 */
+	private static final class TargetException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		TargetException(Throwable cause) {
+			super(cause);
+		}
+	}
+
+	// Signatures invoked without boxing
+	private enum Shape {
+
+		INT_INT("(I)I") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				int a = facade.popIntegerOperand();
+				facade.pushIntegerOperand((int)intrinsic.handle.invokeExact(a));
+			}
+		},
+
+		INT_INT_INT("(II)I") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				int b = facade.popIntegerOperand();
+				int a = facade.popIntegerOperand();
+				facade.pushIntegerOperand(
+						(int)intrinsic.handle.invokeExact(a, b));
+			}
+		},
+
+		LONG_LONG("(J)J") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				long a = facade.popLongOperand();
+				facade.pushLongOperand((long)intrinsic.handle.invokeExact(a));
+			}
+		},
+
+		LONG_LONG_LONG("(JJ)J") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				long b = facade.popLongOperand();
+				long a = facade.popLongOperand();
+				facade.pushLongOperand(
+						(long)intrinsic.handle.invokeExact(a, b));
+			}
+		},
+
+		LONG_INT("(J)I") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				long a = facade.popLongOperand();
+				facade.pushIntegerOperand((int)intrinsic.handle.invokeExact(a));
+			}
+		},
+
+		FLOAT_FLOAT("(F)F") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				float a = facade.popFloatOperand();
+				facade.pushFloatOperand(
+						(float)intrinsic.handle.invokeExact(a));
+			}
+		},
+
+		FLOAT_FLOAT_FLOAT("(FF)F") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				float b = facade.popFloatOperand();
+				float a = facade.popFloatOperand();
+				facade.pushFloatOperand(
+						(float)intrinsic.handle.invokeExact(a, b));
+			}
+		},
+
+		DOUBLE_DOUBLE("(D)D") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				double a = facade.popDoubleOperand();
+				facade.pushDoubleOperand(
+						(double)intrinsic.handle.invokeExact(a));
+			}
+		},
+
+		DOUBLE_DOUBLE_DOUBLE("(DD)D") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				double b = facade.popDoubleOperand();
+				double a = facade.popDoubleOperand();
+				facade.pushDoubleOperand(
+						(double)intrinsic.handle.invokeExact(a, b));
+			}
+		},
+
+		PRINT_STRING("(Ljava/lang/String;)V") {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				String s = (String)facade.popReferenceOperand();
+				OutputBridge receiver =
+						(OutputBridge)facade.popReferenceOperand();
+				intrinsic.handle.invokeExact(receiver, s);
+			}
+		},
+
+		GENERIC(null) {
+			@Override
+			void invoke(Intrinsic intrinsic, JvmFacade facade)
+					throws Throwable {
+				intrinsic.invokeGeneric(facade);
+			}
+		};
+
+		private final String desc;
+
+		private Shape(String desc) {
+			this.desc = desc;
+		}
+
+		abstract void invoke(Intrinsic intrinsic, JvmFacade facade)
+				throws Throwable;
+
+		static Shape forDescriptor(String desc, boolean virtual) {
+			if (virtual) {
+				return desc.equals(PRINT_STRING.desc) ? PRINT_STRING : GENERIC;
+			}
+			for (Shape shape : values()) {
+				if (shape != PRINT_STRING && desc.equals(shape.desc)) {
+					return shape;
+				}
+			}
+			return GENERIC;
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+package com.jvm.mini.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.objectweb.asm.tree.ClassNode;
+
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.util.Validate;
+
+/**
+ * {@link ClassSource} reading class files from a JAR (or ZIP) archive.
+ * <p>
+ * The archive is memory-mapped upon construction, and its central directory
+ * read once into an index from class names to the locations of their
+ * entries. Loading a class thereby amounts to a lookup in the index and a
+ * read from mapped memory, without any system calls or per-class streams.
+ * Entries may be stored or deflated. As the mapped buffer is only ever read
+ * through absolute positions or private views, a single instance may be used
+ * by any number of threads concurrently. The mapping is released by the
+ * garbage collector once the source becomes unreachable.
+ * <p>
+ * Archives of 2 GB or more, using the ZIP64 extensions, or spanning several
+ * files are not supported. Entries below {@code META-INF/} are ignored, so
+ * that only the base versions of multi-release archives are seen.
+ *
+ * @author Arno Bastenhof
+ */
+public final class JarClassSource implements ClassSource {
+
+	private static final int EOCD_SIGNATURE = 0x06054b50;
+	private static final int EOCD_SIZE = 22;
+	private static final int CEN_SIGNATURE = 0x02014b50;
+	private static final int CEN_SIZE = 46;
+	private static final int LOC_SIGNATURE = 0x04034b50;
+	private static final int LOC_SIZE = 30;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+	private static final String CLASS_EXTENSION = ".class";
+
+	private final File file;
+	private final ByteBuffer buffer; // Little-endian, read-only
+	private final Map<String, Entry> index;
+
+	/**
+	 * Maps the given archive into memory and indexes its entries.
+	 *
+	 * @param file the archive to read classes from
+	 * @throws NullPointerException if {@code file == null}
+	 * @throws IOException if {@code file} could not be read or is not a valid
+	 * archive
+	 */
+	public JarClassSource(File file) throws IOException {
+		this.file = Validate.notNull(file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Archive too large: " + file);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		this.index = readCentralDirectory();
+	}
+
+	@Override
+	public ClassNode loadClass(String internalName) throws IOException {
+		Entry entry = this.index.get(Validate.notNull(internalName));
+		if (entry == null) {
+			return null;
+		}
+		ByteBuffer buffer = this.buffer;
+		int loc = entry.offset;
+		if (loc < 0 || loc > buffer.limit() - LOC_SIZE
+				|| buffer.getInt(loc) != LOC_SIGNATURE) {
+			throw corrupt();
+		}
+		int start = loc + LOC_SIZE + (buffer.getShort(loc + 26) & 0xffff)
+				+ (buffer.getShort(loc + 28) & 0xffff);
+		if (start > buffer.limit() - entry.compressedSize) {
+			throw corrupt();
+		}
+		ByteBuffer data = buffer.duplicate();
+		data.limit(start + entry.compressedSize).position(start);
+		try {
+			if (entry.method == STORED) {
+				return MemoryClassSource.parse(data.slice());
+			}
+			return MemoryClassSource.parse(inflate(data, entry.size));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Malformed class " + internalName + " in "
+					+ this.file, e);
+		}
+	}
+
+	/**
+	 * Returns the internal names of the classes in this archive.
+	 */
+	public Set<String> getClassNames() {
+		return Collections.unmodifiableSet(this.index.keySet());
+	}
+
+	@Override
+	public String toString() {
+		return this.file.toString();
+	}
+
+	// Indexes the class files listed in the central directory
+	private Map<String, Entry> readCentralDirectory() throws IOException {
+		ByteBuffer buffer = this.buffer;
+
+		// Find the end of central directory record, preceding a comment of
+		// at most 64 KB
+		int eocd = buffer.limit() - EOCD_SIZE;
+		int min = Math.max(0, eocd - 0xffff);
+		while (eocd >= min && buffer.getInt(eocd) != EOCD_SIGNATURE) {
+			eocd--;
+		}
+		if (eocd < min) {
+			throw corrupt();
+		}
+		int count = buffer.getShort(eocd + 10) & 0xffff;
+		int cen = buffer.getInt(eocd + 16);
+
+		// Read the entries of the central directory
+		Map<String, Entry> result = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			if (cen < 0 || cen > buffer.limit() - CEN_SIZE
+					|| buffer.getInt(cen) != CEN_SIGNATURE) {
+				throw corrupt();
+			}
+			int method = buffer.getShort(cen + 10) & 0xffff;
+			int compressedSize = buffer.getInt(cen + 20);
+			int size = buffer.getInt(cen + 24);
+			int nameLength = buffer.getShort(cen + 28) & 0xffff;
+			int extraLength = buffer.getShort(cen + 30) & 0xffff;
+			int commentLength = buffer.getShort(cen + 32) & 0xffff;
+			int offset = buffer.getInt(cen + 42);
+			if (nameLength > buffer.limit() - cen - CEN_SIZE) {
+				throw corrupt();
+			}
+			byte[] bytes = new byte[nameLength];
+			ByteBuffer name = buffer.duplicate();
+			name.position(cen + CEN_SIZE);
+			name.get(bytes);
+			String entryName = new String(bytes, StandardCharsets.UTF_8);
+			if (entryName.endsWith(CLASS_EXTENSION)
+					&& !entryName.startsWith("META-INF/")
+					&& (method == STORED || method == DEFLATED)
+					&& compressedSize >= 0 && size >= 0) {
+				result.put(entryName.substring(0, entryName.length()
+						- CLASS_EXTENSION.length()), new Entry(method,
+						compressedSize, size, offset));
+			}
+			cen += CEN_SIZE + nameLength + extraLength + commentLength;
+		}
+		return result;
+	}
+
+	private byte[] inflate(ByteBuffer data, int size) throws IOException {
+		byte[] input = new byte[data.remaining()];
+		data.get(input);
+		byte[] result = new byte[size];
+		Inflater inflater = new Inflater(true); // Raw deflate data
+		try {
+			inflater.setInput(input);
+			int length = 0;
+			while (length < size && !inflater.finished()) {
+				int n = inflater.inflate(result, length, size - length);
+				if (n == 0 && (inflater.needsInput()
+						|| inflater.needsDictionary())) {
+					break;
+				}
+				length += n;
+			}
+			if (length != size) {
+				throw corrupt();
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt entry in " + this.file, e);
+		} finally {
+			inflater.end();
+		}
+		return result;
+	}
+
+	private IOException corrupt() {
+		return new IOException("Invalid or unsupported archive: " + this.file);
+	}
+
+	// Location of a class file within the archive
+	private static final class Entry {
+
+		private final int method;
+		private final int compressedSize;
+		private final int size;
+		private final int offset; // Of the local file header
+
+		private Entry(int method, int compressedSize, int size, int offset) {
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.offset = offset;
+		}
+	}
+
+}
@@ -1,7 +1,11 @@
 package com.jvm.mini.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.objectweb.asm.tree.AbstractInsnNode;
 
+import com.jvm.mini.api.HostInput;
 import com.jvm.mini.api.JvmFacade;
 import com.jvm.mini.util.Instructions;
 import com.jvm.mini.util.Validate;
@@ -11,14 +15,65 @@ import com.jvm.mini.util.Validate;
  *
  * @author Arno Bastenhof
  */
-public class JvmFacadeImpl implements JvmFacade {
+public class JvmFacadeImpl implements JvmFacade, Decoratable {
 
 	private Frame framePtr;              // JVM Stack pointer
 	private AbstractInsnNode programCtr; // Program counter
+	private AbstractInsnNode currentInsn; // Last instruction read
+	private GuestException uncaught;     // Uncaught exception, if any
+	private final HostInput hostInput;
+	private final OutputBridge out;
+	private final OutputBridge err;
+	private JvmFacade outer = this;      // Reports runtime allocations
+
+	/**
+	 * Creates a facade obtaining live inputs from the host.
+	 */
+	public JvmFacadeImpl() {
+		this(LiveHostInput.INSTANCE);
+	}
+
+	/**
+	 * Creates a facade writing output to the host's standard streams.
+	 *
+	 * @param hostInput the source of nondeterministic inputs
+	 * @throws NullPointerException if {@code hostInput == null}
+	 */
+	public JvmFacadeImpl(HostInput hostInput) {
+		this(hostInput, OutputBridge.getStandardOutput(),
+				OutputBridge.getStandardError());
+	}
+
+	/**
+	 * @param hostInput the source of nondeterministic inputs
+	 * @param out the bridge for the guest's {@code System.out}
+	 * @param err the bridge for the guest's {@code System.err}
+	 * @throws NullPointerException if any argument is null
+	 */
+	public JvmFacadeImpl(HostInput hostInput, OutputBridge out,
+			OutputBridge err) {
+		this.hostInput = Validate.notNull(hostInput);
+		this.out = Validate.notNull(out);
+		this.err = Validate.notNull(err);
+	}
+
+	@Override
+	public void setOuter(JvmFacade outer) {
+		this.outer = Validate.notNull(outer);
+	}
+
+	// Installs the state restored from a snapshot
+	void restore(Frame frame, AbstractInsnNode insn, GuestException e) {
+		this.framePtr = frame;
+		this.programCtr = insn;
+		this.currentInsn = null;
+		this.uncaught = e;
+	}
 
 	@Override
 	public AbstractInsnNode readInstruction() {
 		AbstractInsnNode current = this.programCtr;
+		this.currentInsn = current;
 		this.programCtr = Instructions.getNext(current);
 		return current;
 	}
@@ -28,6 +83,11 @@ public class JvmFacadeImpl implements JvmFacade {
 		this.programCtr = Validate.notNull(instruction);
 	}
 
+	@Override
+	public void safepoint(int instructions) {
+		Validate.argument(instructions >= 0); // No quotas to enforce
+	}
+
 	@Override
 	public void pushFrame(int maxStack, int maxLocals, Object... args) {
 		Validate.argument(maxStack >= 0 && maxLocals >= 0);
@@ -41,28 +101,206 @@ public class JvmFacadeImpl implements JvmFacade {
 		}
 	}
 
+	@Override
+	public void pushFrame(MethodInfo method, Object... args) {
+		this.framePtr = new Frame(method, method.getMaxStack(),
+				method.getMaxLocals(), this.framePtr, this.programCtr,
+				this.currentInsn);
+		if (args == null) {
+			return;
+		}
+		for (Object arg : args) {
+			this.framePtr.push(arg);
+		}
+	}
+
 	@Override
 	public Frame popFrame() {
 		Validate.state(this.framePtr != null);
 		Frame result = this.framePtr;
 		this.programCtr = result.getReturnAddress(); // Note: can be null
 		this.framePtr = result.getPrevious();
+		RuntimeClass[] initialized = result.initializing();
+		if (initialized != null) {
+			for (RuntimeClass clazz : initialized) {
+				clazz.complete();
+			}
+		}
 		return result;
 	}
 
+	@Override
+	public boolean initialize(RuntimeClass clazz) {
+		// Start initializing the class and its superclasses, subclasses first
+		List<RuntimeClass> started = new ArrayList<>();
+		for (RuntimeClass c = Validate.notNull(clazz); c != null;
+				c = c.getSuperclass()) {
+			RuntimeClass.Initialization status = c.begin(this);
+			if (status == RuntimeClass.Initialization.ERRONEOUS) {
+				for (RuntimeClass s : started) {
+					s.fail();
+				}
+				GuestException error = new GuestException(
+						NoClassDefFoundError.class, "Could not initialize "
+						+ "class " + clazz.getName().replace('/', '.'));
+				throwException(error);
+				this.outer.allocated(error);
+				return false;
+			}
+			if (status != RuntimeClass.Initialization.STARTED) {
+				break; // Superclasses are initialized or being so by us
+			}
+			started.add(c);
+		}
+
+		/*
+		 * Push a frame for each class initializer, superclasses last so that
+		 * they run first. Classes without an initializer complete along with
+		 * the nearest superclass that has one, or immediately if there is
+		 * none. Each frame returns to the first instruction of the initializer
+		 * of the subclass pushed before it, and the first to the current
+		 * instruction.
+		 */
+		AbstractInsnNode resume = this.currentInsn != null
+				? this.currentInsn : this.programCtr;
+		AbstractInsnNode callSite = this.currentInsn;
+		List<RuntimeClass> pending = new ArrayList<>();
+		boolean pushed = false;
+		for (RuntimeClass c : started) {
+			pending.add(0, c);
+			MethodInfo clinit = c.getClassInitializer();
+			if (clinit != null) {
+				this.framePtr = new Frame(clinit, clinit.getMaxStack(),
+						clinit.getMaxLocals(), this.framePtr, resume, callSite);
+				this.framePtr.setInitializing(pending.toArray(
+						new RuntimeClass[pending.size()]));
+				pending.clear();
+				resume = clinit.getFirstInstruction();
+				callSite = null; // Not invoked by an instruction
+				pushed = true;
+			}
+		}
+		for (RuntimeClass c : pending) {
+			c.complete();
+		}
+		if (pushed) {
+			this.programCtr = resume;
+		}
+		return !pushed;
+	}
+
+	@Override
+	public void throwException(Object exception) {
+		GuestException e = exception == null
+				? new GuestException(NullPointerException.class)
+				: (GuestException)exception;
+		GuestException wrapper = unwind(e);
+		if (exception == null) {
+			this.outer.allocated(e);
+		}
+		if (wrapper != null) {
+			this.outer.allocated(wrapper);
+		}
+	}
+
+	@Override
+	public void allocated(Object object) {
+		// Nothing to account for
+	}
+
+	/*
+	 * Unwinds the JVM stack until a handler for the given exception is
+	 * found, returning the ExceptionInInitializerError that replaced it, if
+	 * any.
+	 */
+	private GuestException unwind(GuestException exception) {
+		GuestException e = exception;
+		GuestException wrapper = null;
+		AbstractInsnNode insn = this.currentInsn;
+		e.fillInStackTrace(this.framePtr, insn);
+		while (this.framePtr != null) {
+			MethodInfo method = this.framePtr.getMethod();
+			AbstractInsnNode handler = method == null
+					? null : method.findHandler(insn, e);
+			if (handler != null) {
+				this.framePtr.clear();
+				this.framePtr.push(e);
+				this.programCtr = handler;
+				return wrapper;
+			}
+			RuntimeClass[] initializing = this.framePtr.initializing();
+			if (initializing != null) {
+				for (RuntimeClass clazz : initializing) {
+					clazz.fail();
+				}
+				if (!Error.class.isAssignableFrom(e.getType())) {
+					e = new GuestException(ExceptionInInitializerError.class,
+							e.toString());
+					e.fillInStackTrace(this.framePtr, insn);
+					wrapper = e;
+				}
+			}
+			insn = this.framePtr.getCallSite();
+			this.framePtr = this.framePtr.getPrevious();
+		}
+		this.programCtr = null;
+		this.uncaught = e;
+		return wrapper;
+	}
+
+	@Override
+	public GuestException getUncaughtException() {
+		return this.uncaught;
+	}
+
 	@Override
 	public void pushOperand(Object value) {
 		this.framePtr.push(value);
 	}
 
 	@Override
-	public Integer popIntegerOperand() {
-		return this.framePtr.pop(Integer.class);
+	public void pushIntegerOperand(int value) {
+		this.framePtr.pushInteger(value);
 	}
 
 	@Override
-	public Long popLongOperand() {
-		return this.framePtr.pop(Long.class);
+	public void pushLongOperand(long value) {
+		this.framePtr.pushLong(value);
+	}
+
+	@Override
+	public void pushFloatOperand(float value) {
+		this.framePtr.pushFloat(value);
+	}
+
+	@Override
+	public void pushDoubleOperand(double value) {
+		this.framePtr.pushDouble(value);
+	}
+
+	@Override
+	public int popIntegerOperand() {
+		return this.framePtr.popInteger();
+	}
+
+	@Override
+	public long popLongOperand() {
+		return this.framePtr.popLong();
+	}
+
+	@Override
+	public float popFloatOperand() {
+		return this.framePtr.popFloat();
+	}
+
+	@Override
+	public double popDoubleOperand() {
+		return this.framePtr.popDouble();
+	}
+
+	@Override
+	public Object popReferenceOperand() {
+		return this.framePtr.popReference();
 	}
 
 	@Override
@@ -71,13 +309,54 @@ public class JvmFacadeImpl implements JvmFacade {
 	}
 
 	@Override
-	public Integer loadInteger(int var) {
-		return this.framePtr.load(var, Integer.class);
+	public void storeInteger(int var, int value) {
+		this.framePtr.storeInteger(var, value);
+	}
+
+	@Override
+	public void storeLong(int var, long value) {
+		this.framePtr.storeLong(var, value);
 	}
 
 	@Override
-	public Long loadLong(int var) {
-		return this.framePtr.load(var, Long.class);
+	public void storeFloat(int var, float value) {
+		this.framePtr.storeFloat(var, value);
+	}
+
+	@Override
+	public void storeDouble(int var, double value) {
+		this.framePtr.storeDouble(var, value);
+	}
+
+	@Override
+	public int loadInteger(int var) {
+		return this.framePtr.loadInteger(var);
+	}
+
+	@Override
+	public long loadLong(int var) {
+		return this.framePtr.loadLong(var);
+	}
+
+	@Override
+	public float loadFloat(int var) {
+		return this.framePtr.loadFloat(var);
+	}
+
+	@Override
+	public double loadDouble(int var) {
+		return this.framePtr.loadDouble(var);
+	}
+
+	@Override
+	public HostInput getHostInput() {
+		return this.hostInput;
+	}
+
+	@Override
+	public OutputBridge getOutput(StandardStream stream) {
+		return Validate.notNull(stream) == StandardStream.OUT
+				? this.out : this.err;
 	}
 
 	@Override
@@ -95,4 +374,9 @@ public class JvmFacadeImpl implements JvmFacade {
 		return this.programCtr;
 	}
 
+	@Override
+	public Frame getCurrentFrame() {
+		return this.framePtr;
+	}
+
 }
@@ -25,6 +25,14 @@ public class JvmInterpreterImpl implements JvmInterpreter {
 		Instructions.switchOnInsn(this.visitor, insn);
 	}
 
+	@Override
+	public void run() {
+		while (this.facade.peekInstruction() != null) {
+			Instructions.switchOnInsn(this.visitor,
+					this.facade.readInstruction());
+		}
+	}
+
 	@Override
 	public boolean hasNext() {
 		return this.facade.peekInstruction() != null;
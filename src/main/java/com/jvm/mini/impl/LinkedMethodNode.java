@@ -0,0 +1,228 @@
+package com.jvm.mini.impl;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+/**
+ * Copy of a parsed method, made for a single {@link RuntimeClass}, whose
+ * instructions carry the links established upon decoding them, being their
+ * entries in the runtime constant pool and their jump tables.
+ * <p>
+ * Parsed classes may be shared between {@link ClassRegistry}s, as done by a
+ * {@link MemoryClassSource} or a preloaded {@link ClassPath}. Decoding a copy
+ * per registry keeps the links of its instructions, as well as the barriers
+ * and traps patched into them, from being observed by other registries, and
+ * lets them be collected together with the registry. Copying is synchronized
+ * on the original method, as ASM temporarily associates its labels with those
+ * of the copy.
+ *
+ * @author Arno Bastenhof
+ */
+final class LinkedMethodNode extends MethodNode {
+
+	/*
+	 * Instruction carrying a link, being an immutable object. Links are
+	 * volatile so that threads never observe one partially, racing threads
+	 * setting equal links at worst.
+	 */
+	interface Linked {
+
+		Object getLink();
+
+		void setLink(Object link);
+
+	}
+
+	private LinkedMethodNode(MethodNode method) {
+		super(Opcodes.ASM5, method.access, method.name, method.desc,
+				method.signature, getExceptions(method));
+	}
+
+	// Returns a copy of the given method
+	static MethodNode copy(MethodNode method) {
+		LinkedMethodNode result = new LinkedMethodNode(method);
+		synchronized (method) {
+			method.accept(result);
+		}
+		return result;
+	}
+
+	@Override
+	public void visitLdcInsn(Object cst) {
+		this.instructions.add(new Ldc(cst));
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String type) {
+		this.instructions.add(new Type(opcode, type));
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name,
+			String desc) {
+		this.instructions.add(new Field(opcode, owner, name, desc));
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name,
+			String desc, boolean itf) {
+		this.instructions.add(new Method(opcode, owner, name, desc, itf));
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt,
+			Label... labels) {
+		this.instructions.add(new TableSwitch(min, max, getLabelNode(dflt),
+				getLabelNodes(labels)));
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+		this.instructions.add(new LookupSwitch(getLabelNode(dflt), keys,
+				getLabelNodes(labels)));
+	}
+
+	private LabelNode[] getLabelNodes(Label[] labels) {
+		LabelNode[] result = new LabelNode[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			result[i] = getLabelNode(labels[i]);
+		}
+		return result;
+	}
+
+	private static String[] getExceptions(MethodNode method) {
+		String[] result = new String[method.exceptions.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (String)method.exceptions.get(i);
+		}
+		return result;
+	}
+
+	private static final class Ldc extends LdcInsnNode implements Linked {
+
+		private volatile Object link;
+
+		private Ldc(Object cst) {
+			super(cst);
+		}
+
+		@Override
+		public Object getLink() {
+			return this.link;
+		}
+
+		@Override
+		public void setLink(Object link) {
+			this.link = link;
+		}
+	}
+
+	private static final class Type extends TypeInsnNode implements Linked {
+
+		private volatile Object link;
+
+		private Type(int opcode, String desc) {
+			super(opcode, desc);
+		}
+
+		@Override
+		public Object getLink() {
+			return this.link;
+		}
+
+		@Override
+		public void setLink(Object link) {
+			this.link = link;
+		}
+	}
+
+	private static final class Field extends FieldInsnNode implements Linked {
+
+		private volatile Object link;
+
+		private Field(int opcode, String owner, String name, String desc) {
+			super(opcode, owner, name, desc);
+		}
+
+		@Override
+		public Object getLink() {
+			return this.link;
+		}
+
+		@Override
+		public void setLink(Object link) {
+			this.link = link;
+		}
+	}
+
+	private static final class Method extends MethodInsnNode
+			implements Linked {
+
+		private volatile Object link;
+
+		private Method(int opcode, String owner, String name, String desc,
+				boolean itf) {
+			super(opcode, owner, name, desc, itf);
+		}
+
+		@Override
+		public Object getLink() {
+			return this.link;
+		}
+
+		@Override
+		public void setLink(Object link) {
+			this.link = link;
+		}
+	}
+
+	private static final class TableSwitch extends TableSwitchInsnNode
+			implements Linked {
+
+		private volatile Object link;
+
+		private TableSwitch(int min, int max, LabelNode dflt,
+				LabelNode[] labels) {
+			super(min, max, dflt, labels);
+		}
+
+		@Override
+		public Object getLink() {
+			return this.link;
+		}
+
+		@Override
+		public void setLink(Object link) {
+			this.link = link;
+		}
+	}
+
+	private static final class LookupSwitch extends LookupSwitchInsnNode
+			implements Linked {
+
+		private volatile Object link;
+
+		private LookupSwitch(LabelNode dflt, int[] keys, LabelNode[] labels) {
+			super(dflt, keys, labels);
+		}
+
+		@Override
+		public Object getLink() {
+			return this.link;
+		}
+
+		@Override
+		public void setLink(Object link) {
+			this.link = link;
+		}
+	}
+
+}
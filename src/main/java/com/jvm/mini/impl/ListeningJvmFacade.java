@@ -0,0 +1,283 @@
+package com.jvm.mini.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import com.jvm.mini.api.ExecutionListener;
+import com.jvm.mini.api.HostInput;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Decorator for a {@link JvmFacade}, notifying {@link ExecutionListener}s of
+ * frames being pushed or popped, of branches being taken and of objects
+ * being allocated.
+ * <p>
+ * Branches are only reported for jumps made by the instruction last read,
+ * if a jump or switch instruction, rather than for any change of the
+ * program counter, such as upon entering a method.
+ *
+ * @author Arno Bastenhof
+ */
+final class ListeningJvmFacade implements JvmFacade, Decoratable {
+
+	private final JvmFacade facade;
+	private final ExecutionListener[] listeners;
+	private AbstractInsnNode current;
+
+	ListeningJvmFacade(JvmFacade facade, ExecutionListener[] listeners) {
+		this.facade = Validate.notNull(facade);
+		this.listeners = Validate.notNull(listeners);
+		setOuter(this);
+	}
+
+	@Override
+	public void setOuter(JvmFacade outer) {
+		if (this.facade instanceof Decoratable) {
+			((Decoratable)this.facade).setOuter(outer);
+		}
+	}
+
+	@Override
+	public void pushFrame(int maxStack, int maxLocals, Object... args) {
+		this.facade.pushFrame(maxStack, maxLocals, args);
+		firePushed();
+	}
+
+	@Override
+	public void pushFrame(MethodInfo method, Object... args) {
+		this.facade.pushFrame(method, args);
+		firePushed();
+	}
+
+	@Override
+	public Frame popFrame() {
+		Frame result = this.facade.popFrame();
+		for (ExecutionListener listener : this.listeners) {
+			listener.framePopped(this, result);
+		}
+		return result;
+	}
+
+	@Override
+	public AbstractInsnNode readInstruction() {
+		AbstractInsnNode result = this.facade.readInstruction();
+		this.current = result;
+		return result;
+	}
+
+	@Override
+	public void jump(AbstractInsnNode instruction) {
+		this.facade.jump(instruction);
+		AbstractInsnNode insn = this.current;
+		if (!(insn instanceof JumpInsnNode
+				|| insn instanceof TableSwitchInsnNode
+				|| insn instanceof LookupSwitchInsnNode)) {
+			return;
+		}
+		for (ExecutionListener listener : this.listeners) {
+			listener.branchTaken(this, insn, instruction);
+		}
+	}
+
+	@Override
+	public void safepoint(int instructions) {
+		this.facade.safepoint(instructions);
+	}
+
+	@Override
+	public void throwException(Object exception) {
+		Frame top = this.facade.getCurrentFrame();
+		this.facade.throwException(exception);
+
+		// Report the frames popped while unwinding, if any
+		Frame handler = this.facade.getCurrentFrame();
+		for (Frame frame = top; frame != handler; frame = frame.getPrevious()) {
+			for (ExecutionListener listener : this.listeners) {
+				listener.framePopped(this, frame);
+			}
+		}
+	}
+
+	@Override
+	public void allocated(Object object) {
+		for (ExecutionListener listener : this.listeners) {
+			listener.objectAllocated(this, object);
+		}
+		this.facade.allocated(object);
+	}
+
+	@Override
+	public boolean initialize(RuntimeClass clazz) {
+		Frame top = this.facade.getCurrentFrame();
+		boolean result = this.facade.initialize(clazz);
+
+		// Report the frames pushed for class initializers, or those popped
+		// while unwinding if the class was found erroneous
+		Frame current = this.facade.getCurrentFrame();
+		int depth = top == null ? 0 : top.getDepth();
+		if (current != null && current.getDepth() > depth) {
+			List<Frame> pushed = new ArrayList<>();
+			for (Frame frame = current; frame != top;
+					frame = frame.getPrevious()) {
+				pushed.add(0, frame);
+			}
+			for (Frame frame : pushed) {
+				for (ExecutionListener listener : this.listeners) {
+					listener.framePushed(this, frame);
+				}
+			}
+		} else {
+			for (Frame frame = top; frame != current;
+					frame = frame.getPrevious()) {
+				for (ExecutionListener listener : this.listeners) {
+					listener.framePopped(this, frame);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public GuestException getUncaughtException() {
+		return this.facade.getUncaughtException();
+	}
+
+	@Override
+	public void pushOperand(Object value) {
+		this.facade.pushOperand(value);
+	}
+
+	@Override
+	public void pushIntegerOperand(int value) {
+		this.facade.pushIntegerOperand(value);
+	}
+
+	@Override
+	public void pushLongOperand(long value) {
+		this.facade.pushLongOperand(value);
+	}
+
+	@Override
+	public void pushFloatOperand(float value) {
+		this.facade.pushFloatOperand(value);
+	}
+
+	@Override
+	public void pushDoubleOperand(double value) {
+		this.facade.pushDoubleOperand(value);
+	}
+
+	@Override
+	public int popIntegerOperand() {
+		return this.facade.popIntegerOperand();
+	}
+
+	@Override
+	public long popLongOperand() {
+		return this.facade.popLongOperand();
+	}
+
+	@Override
+	public float popFloatOperand() {
+		return this.facade.popFloatOperand();
+	}
+
+	@Override
+	public double popDoubleOperand() {
+		return this.facade.popDoubleOperand();
+	}
+
+	@Override
+	public Object popReferenceOperand() {
+		return this.facade.popReferenceOperand();
+	}
+
+	@Override
+	public void store(int var, Object value) {
+		this.facade.store(var, value);
+	}
+
+	@Override
+	public void storeInteger(int var, int value) {
+		this.facade.storeInteger(var, value);
+	}
+
+	@Override
+	public void storeLong(int var, long value) {
+		this.facade.storeLong(var, value);
+	}
+
+	@Override
+	public void storeFloat(int var, float value) {
+		this.facade.storeFloat(var, value);
+	}
+
+	@Override
+	public void storeDouble(int var, double value) {
+		this.facade.storeDouble(var, value);
+	}
+
+	@Override
+	public int loadInteger(int var) {
+		return this.facade.loadInteger(var);
+	}
+
+	@Override
+	public long loadLong(int var) {
+		return this.facade.loadLong(var);
+	}
+
+	@Override
+	public float loadFloat(int var) {
+		return this.facade.loadFloat(var);
+	}
+
+	@Override
+	public double loadDouble(int var) {
+		return this.facade.loadDouble(var);
+	}
+
+	@Override
+	public HostInput getHostInput() {
+		return this.facade.getHostInput();
+	}
+
+	@Override
+	public OutputBridge getOutput(StandardStream stream) {
+		return this.facade.getOutput(stream);
+	}
+
+	@Override
+	public String getOperandTypes() {
+		return this.facade.getOperandTypes();
+	}
+
+	@Override
+	public String peekOperand() {
+		return this.facade.peekOperand();
+	}
+
+	@Override
+	public AbstractInsnNode peekInstruction() {
+		return this.facade.peekInstruction();
+	}
+
+	@Override
+	public Frame getCurrentFrame() {
+		return this.facade.getCurrentFrame();
+	}
+
+	private void firePushed() {
+		Frame frame = this.facade.getCurrentFrame();
+		for (ExecutionListener listener : this.listeners) {
+			listener.framePushed(this, frame);
+		}
+	}
+
+}
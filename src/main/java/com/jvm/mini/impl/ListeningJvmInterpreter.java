@@ -0,0 +1,76 @@
+package com.jvm.mini.impl;
+
+import java.util.List;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.api.ExecutionListener;
+import com.jvm.mini.api.InsnVisitor;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.JvmInterpreter;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Validate;
+
+/**
+ * {@link JvmInterpreter} notifying {@link ExecutionListener}s of its progress.
+ * <p>
+ * All notifications are confined to this class and to the {@link JvmFacade}
+ * decorator it installs, leaving {@link JvmInterpreterImpl} free of any checks
+ * for the presence of listeners. Clients should accordingly only resort to
+ * the current class when there are in fact listeners to notify, as in:
+ * <pre>
+ * JvmInterpreter interpreter = listeners.isEmpty()
+ *     ? new JvmInterpreterImpl(facade, new InsnVisitorImpl(facade))
+ *     : new ListeningJvmInterpreter(facade, listeners);
+ * </pre>
+ *
+ * @author Arno Bastenhof
+ */
+public final class ListeningJvmInterpreter implements JvmInterpreter {
+
+	private final JvmFacade facade;
+	private final InsnVisitor visitor;
+	private final ExecutionListener[] listeners;
+
+	/**
+	 * @param facade the machine's runtime data structures
+	 * @param listeners the listeners to be notified
+	 * @throws NullPointerException if {@code facade} or {@code listeners} is
+	 * null
+	 */
+	public ListeningJvmInterpreter(JvmFacade facade,
+			List<? extends ExecutionListener> listeners) {
+		this.listeners = Validate.notNull(listeners).toArray(
+				new ExecutionListener[listeners.size()]);
+		this.facade = new ListeningJvmFacade(facade, this.listeners);
+		this.visitor = new InsnVisitorImpl(this.facade);
+	}
+
+	@Override
+	public void next() {
+		AbstractInsnNode insn = this.facade.peekInstruction();
+		Validate.state(insn != null);
+		for (ExecutionListener listener : this.listeners) {
+			listener.beforeInstruction(this.facade, insn);
+		}
+		Instructions.switchOnInsn(this.visitor, this.facade.readInstruction());
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.facade.peekInstruction() != null;
+	}
+
+	@Override
+	public void run() {
+		while (hasNext()) {
+			next();
+		}
+	}
+
+	@Override
+	public JvmFacade getFacade() {
+		return this.facade;
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.jvm.mini.impl;
+
+import com.jvm.mini.api.HostInput;
+
+/**
+ * {@link HostInput} passing on live values without recording them.
+ *
+ * @author Arno Bastenhof
+ */
+public enum LiveHostInput implements HostInput {
+
+	/**
+	 * The unique instance of this class
+	 */
+	INSTANCE;
+
+	@Override
+	public long readLong(Kind kind, Source source) {
+		return source.read();
+	}
+
+	@Override
+	public String readString(Kind kind, String value) {
+		return value;
+	}
+
+	@Override
+	public void close() { }
+
+}
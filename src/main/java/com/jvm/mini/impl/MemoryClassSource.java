@@ -0,0 +1,105 @@
+package com.jvm.mini.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.util.Validate;
+
+/**
+ * {@link ClassSource} for classes defined in memory, as by test generators
+ * or clients of a server, sparing them a round-trip through the file system.
+ * Classes are parsed once upon being defined, and may be defined from any
+ * thread.
+ *
+ * @author Arno Bastenhof
+ */
+public final class MemoryClassSource implements ClassSource {
+
+	private final ConcurrentMap<String, ClassNode> classes =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Defines a class from the given class file contents, replacing any
+	 * previous definition by the same name.
+	 *
+	 * @return the parsed class
+	 * @throws NullPointerException if {@code classFile == null}
+	 * @throws IllegalArgumentException if {@code classFile} could not be
+	 * parsed
+	 */
+	public ClassNode define(byte[] classFile) {
+		return define(parse(classFile));
+	}
+
+	/**
+	 * Defines a class from the remaining bytes of the given buffer, leaving
+	 * its position unchanged.
+	 *
+	 * @return the parsed class
+	 * @throws NullPointerException if {@code classFile == null}
+	 * @throws IllegalArgumentException if {@code classFile} could not be
+	 * parsed
+	 */
+	public ClassNode define(ByteBuffer classFile) {
+		return define(parse(classFile));
+	}
+
+	/**
+	 * Defines the given class, replacing any previous definition by the same
+	 * name.
+	 *
+	 * @return {@code clazz}
+	 * @throws NullPointerException if {@code clazz == null}
+	 */
+	public ClassNode define(ClassNode clazz) {
+		this.classes.put(Validate.notNull(clazz).name, clazz);
+		return clazz;
+	}
+
+	@Override
+	public ClassNode loadClass(String internalName) {
+		return this.classes.get(Validate.notNull(internalName));
+	}
+
+	/**
+	 * Parses the given class file contents.
+	 *
+	 * @throws NullPointerException if {@code classFile == null}
+	 * @throws IllegalArgumentException if {@code classFile} could not be
+	 * parsed
+	 */
+	public static ClassNode parse(byte[] classFile) {
+		ClassNode result = new ClassNode();
+		try {
+			new ClassReader(classFile).accept(result, 0);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Malformed class file", e);
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the remaining bytes of the given buffer, leaving its position
+	 * unchanged. Heap buffers wrapping an entire array are parsed in place.
+	 *
+	 * @throws NullPointerException if {@code classFile == null}
+	 * @throws IllegalArgumentException if {@code classFile} could not be
+	 * parsed
+	 */
+	public static ClassNode parse(ByteBuffer classFile) {
+		if (classFile.hasArray() && classFile.arrayOffset() == 0
+				&& classFile.position() == 0
+				&& classFile.remaining() == classFile.array().length) {
+			return parse(classFile.array());
+		}
+		byte[] bytes = new byte[classFile.remaining()];
+		classFile.duplicate().get(bytes);
+		return parse(bytes);
+	}
+
+}
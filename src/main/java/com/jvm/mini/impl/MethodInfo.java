@@ -0,0 +1,378 @@
+package com.jvm.mini.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Traps;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Runtime representation of a method, decoding those parts of its {@link
+ * MethodNode} that would otherwise have to be recomputed on every execution.
+ * <p>
+ * In particular, the method's exception table is translated upon construction
+ * into a handler table of parallel arrays, indexed alike and listing handlers
+ * in the order of the original table, as the JVM spec dictates the first
+ * matching entry to be selected (see Section 2.10 of the SE8 edition). Ranges
+ * are expressed as instruction indices, so that finding the handler for an
+ * exception requires neither allocations nor the traversal of labels. The
+ * bytecode offsets of instructions and the method's basic blocks are likewise
+ * computed in advance, for use by tools reporting on code locations.
+ * <p>
+ * Instructions that may trigger the initialization of a class are equipped
+ * with barriers upon decoding, which remove themselves once the class they
+ * refer to was found to be initialized (see {@link RuntimeClass}).
+ *
+ * @author Arno Bastenhof
+ */
+public final class MethodInfo {
+
+	private final ConstantPool pool;
+	private final MethodNode node;
+	private final int[] offsets;     // Indexed alike the instructions
+	private final AbstractInsnNode[] leaders; // First insns of basic blocks
+
+	// Handler table
+	private final int[] handlerStart;               // Inclusive
+	private final int[] handlerEnd;                 // Exclusive
+	private final AbstractInsnNode[] handlerPc;
+	private final Class<?>[] catchTypes;            // Null if unresolvable
+
+	/**
+	 * @param owner the internal name of the class declaring the method
+	 * @param sourceFile the name of the source file of the declaring class,
+	 * or null if unknown
+	 * @param node the method to decode
+	 * @throws NullPointerException if {@code owner} or {@code node} is null
+	 */
+	public MethodInfo(String owner, String sourceFile, MethodNode node) {
+		this(new ConstantPool(owner, sourceFile), node);
+	}
+
+	/**
+	 * @param pool the runtime constant pool of the class declaring the
+	 * method, with which its instructions are registered
+	 * @param node the method to decode
+	 * @throws NullPointerException if {@code pool} or {@code node} is null
+	 */
+	public MethodInfo(ConstantPool pool, MethodNode node) {
+		this.pool = Validate.notNull(pool);
+		this.node = Validate.notNull(node);
+
+		// Compute bytecode offsets
+		InsnList insns = node.instructions;
+		this.offsets = computeOffsets(insns);
+
+		// Register constants and symbolic references, setting barriers on
+		// instructions that may trigger class initialization
+		for (AbstractInsnNode insn = insns.getFirst(); insn != null;
+				insn = insn.getNext()) {
+			pool.register(insn);
+			if (isInitializing(Traps.getOpcode(insn))) {
+				Traps.setBarrier(insn);
+			}
+		}
+
+		// Decode exception table
+		List<?> blocks = node.tryCatchBlocks;
+		int size = blocks == null ? 0 : blocks.size();
+		this.handlerStart = new int[size];
+		this.handlerEnd = new int[size];
+		this.handlerPc = new AbstractInsnNode[size];
+		this.catchTypes = new Class<?>[size];
+		for (int i = 0; i < size; i++) {
+			TryCatchBlockNode block = (TryCatchBlockNode)blocks.get(i);
+			this.handlerStart[i] = insns.indexOf(block.start);
+			this.handlerEnd[i] = insns.indexOf(block.end);
+			this.handlerPc[i] = Instructions.getNext(block.handler);
+			this.catchTypes[i] = resolveCatchType(block.type);
+		}
+
+		// Compute basic blocks
+		this.leaders = computeLeaders(insns, this.handlerPc);
+	}
+
+	/**
+	 * Returns the internal name of the class declaring this method.
+	 */
+	public String getOwner() {
+		return this.pool.getOwner();
+	}
+
+	/**
+	 * Returns the name of the source file of the declaring class, or null if
+	 * unknown.
+	 */
+	public String getSourceFile() {
+		return this.pool.getSourceFile();
+	}
+
+	/**
+	 * Returns the runtime constant pool of the class declaring this method.
+	 */
+	public ConstantPool getConstantPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Returns the name of this method.
+	 */
+	public String getName() {
+		return this.node.name;
+	}
+
+	/**
+	 * Returns the access flags of this method.
+	 */
+	public int getAccess() {
+		return this.node.access;
+	}
+
+	/**
+	 * Returns the descriptor of this method.
+	 */
+	public String getDescriptor() {
+		return this.node.desc;
+	}
+
+	/**
+	 * Returns the maximum size of the operand stack for this method.
+	 */
+	public int getMaxStack() {
+		return this.node.maxStack;
+	}
+
+	/**
+	 * Returns the maximum number of local variables for this method.
+	 */
+	public int getMaxLocals() {
+		return this.node.maxLocals;
+	}
+
+	/**
+	 * Returns the instructions of this method.
+	 */
+	public InsnList getInstructions() {
+		return this.node.instructions;
+	}
+
+	/**
+	 * Returns the first instruction of this method that is not a
+	 * pseudo-instruction, or null if there is none.
+	 */
+	public AbstractInsnNode getFirstInstruction() {
+		return this.leaders.length == 0 ? null : this.leaders[0];
+	}
+
+	/**
+	 * Returns the bytecode offset of the given {@code insn}. For
+	 * pseudo-instructions, that of the next instruction is returned.
+	 *
+	 * @param insn an instruction of this method
+	 * @throws NullPointerException if {@code insn == null}
+	 */
+	public int getOffset(AbstractInsnNode insn) {
+		return this.offsets[this.node.instructions.indexOf(insn)];
+	}
+
+	/**
+	 * Returns the instruction at the given bytecode {@code offset}, or null if
+	 * no instruction starts there.
+	 */
+	public AbstractInsnNode getInstruction(int offset) {
+		int index = 0;
+		for (AbstractInsnNode insn = this.node.instructions.getFirst();
+				insn != null; insn = insn.getNext(), index++) {
+			if (this.offsets[index] == offset && insn.getOpcode() >= 0) {
+				return insn;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the first instructions of the basic blocks of this method, in
+	 * the order in which they appear in the code. A basic block is a maximal
+	 * sequence of instructions that can only be entered through its first
+	 * instruction and only be left through its last one.
+	 */
+	public AbstractInsnNode[] getBlockLeaders() {
+		return this.leaders.clone();
+	}
+
+	/**
+	 * Returns the source line of the given {@code insn}, or -1 if unknown.
+	 *
+	 * @param insn an instruction of this method; allowed to be null
+	 */
+	public int getLineNumber(AbstractInsnNode insn) {
+		for (AbstractInsnNode node = insn; node != null;
+				node = node.getPrevious()) {
+			if (node instanceof LineNumberNode) {
+				return ((LineNumberNode)node).line;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the start of the exception handler for the given {@code
+	 * exception} thrown at {@code insn}, or null if this method declares none.
+	 *
+	 * @param insn the instruction at which {@code exception} was thrown
+	 * @param exception the thrown exception
+	 * @throws NullPointerException if {@code exception == null}
+	 */
+	public AbstractInsnNode findHandler(AbstractInsnNode insn,
+			GuestException exception) {
+		if (insn == null || this.handlerPc.length == 0) {
+			return null;
+		}
+		int pc = this.node.instructions.indexOf(insn);
+		Class<?> type = exception.getType();
+		for (int i = 0; i < this.handlerPc.length; i++) {
+			if (pc >= this.handlerStart[i] && pc < this.handlerEnd[i]
+					&& this.catchTypes[i] != null
+					&& this.catchTypes[i].isAssignableFrom(type)) {
+				return this.handlerPc[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a {@link StackTraceElement} for the execution point in this
+	 * method represented by the given {@code insn}.
+	 *
+	 * @param insn an instruction of this method; allowed to be null
+	 */
+	public StackTraceElement toStackTraceElement(AbstractInsnNode insn) {
+		return new StackTraceElement(getOwner().replace('/', '.'),
+				this.node.name, getSourceFile(), getLineNumber(insn));
+	}
+
+	@Override
+	public String toString() {
+		return getOwner() + "." + this.node.name + this.node.desc;
+	}
+
+	/*
+	 * Computes the bytecode offsets for the given instructions. The offsets of
+	 * labels read from a class file are known to ASM, and are used to correct
+	 * for instructions whose encoding cannot be derived with certainty, such
+	 * as ldc versus ldc_w.
+	 */
+	private static int[] computeOffsets(InsnList insns) {
+		int[] result = new int[insns.size()];
+		int offset = 0;
+		int index = 0;
+		for (AbstractInsnNode insn = insns.getFirst(); insn != null;
+				insn = insn.getNext(), index++) {
+			if (insn instanceof LabelNode) {
+				Label label = ((LabelNode)insn).getLabel();
+				try {
+					offset = label.getOffset();
+				} catch (IllegalStateException e) {
+					// Not read from a class file; retain the computed offset
+				}
+			}
+			result[index] = offset;
+			if (Instructions.isSupported(insn)) {
+				offset += Instructions.getSize(insn, offset);
+			} else if (insn.getOpcode() >= 0) {
+				offset++; // Corrected at the next label, if any
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Computes the first instructions of the basic blocks for the given
+	 * instructions. These comprise the method's first instruction, the targets
+	 * of jumps, switches and exception handlers, and instructions following a
+	 * jump, switch, return or athrow. The jump tables of switches are thereby
+	 * decoded in advance.
+	 */
+	private static AbstractInsnNode[] computeLeaders(InsnList insns,
+			AbstractInsnNode[] handlers) {
+		Set<AbstractInsnNode> leaders = new HashSet<>();
+		AbstractInsnNode first = insns.getFirst();
+		if (first == null) {
+			return new AbstractInsnNode[0];
+		}
+		leaders.add(first.getOpcode() >= 0
+				? first : Instructions.getNext(first));
+		leaders.addAll(Arrays.asList(handlers));
+		for (AbstractInsnNode insn = first; insn != null;
+				insn = insn.getNext()) {
+			if (insn instanceof JumpInsnNode) {
+				leaders.add(Instructions.getNext(((JumpInsnNode)insn).label));
+				leaders.add(Instructions.getNext(insn));
+			} else if (insn instanceof TableSwitchInsnNode
+					|| insn instanceof LookupSwitchInsnNode) {
+				leaders.addAll(Arrays.asList(SwitchTable.forInsn(insn)
+						.getTargets()));
+				leaders.add(Instructions.getNext(insn));
+			} else if (isExit(Traps.getOpcode(insn))) {
+				leaders.add(Instructions.getNext(insn));
+			}
+		}
+
+		// Order by position
+		List<AbstractInsnNode> result = new ArrayList<>();
+		for (AbstractInsnNode insn = first; insn != null;
+				insn = insn.getNext()) {
+			if (leaders.contains(insn)) {
+				result.add(insn);
+			}
+		}
+		return result.toArray(new AbstractInsnNode[result.size()]);
+	}
+
+	// Returns true iff opcode transfers control out of the current method
+	private static boolean isExit(int opcode) {
+		return opcode == Opcodes.ATHROW
+				|| (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN);
+	}
+
+	// Returns true iff opcode is an active use of the class it refers to
+	private static boolean isInitializing(int opcode) {
+		return opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC
+				|| opcode == Opcodes.INVOKESTATIC;
+	}
+
+	/*
+	 * Resolves the catch type of an exception table entry. Guest exceptions
+	 * being typed by host classes, a catch type that cannot be resolved on the
+	 * host will never match, and is accordingly represented by null. A missing
+	 * catch type (as used for finally-clauses) matches any exception.
+	 */
+	private static Class<?> resolveCatchType(String type) {
+		if (type == null) {
+			return Throwable.class;
+		}
+		try {
+			return Class.forName(type.replace('/', '.'), false,
+					MethodInfo.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+}
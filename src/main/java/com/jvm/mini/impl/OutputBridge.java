@@ -0,0 +1,265 @@
+package com.jvm.mini.impl;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import com.jvm.mini.util.Validate;
+
+/**
+ * Host side of a guest's standard output or error stream, buffering the
+ * bytes written by the guest in a direct {@link ByteBuffer} and writing them
+ * to a channel in batches.
+ * <p>
+ * Guests obtain a bridge by reading {@code System.out} or {@code System.err}
+ * (see {@link StandardStream}), and write to it by invoking the methods of
+ * {@code java.io.PrintStream}. These are resolved as {@link Intrinsic}s to
+ * the methods of the same signature declared by the current class, including
+ * {@code print} and {@code println} for primitives and Strings, {@code
+ * write(int)}, {@code flush()} and {@code checkError()}. Strings are encoded
+ * as UTF-8 directly into the buffer. Rather than making a system call per
+ * line, the buffer is written out when full, as dictated by its {@link
+ * FlushPolicy}, and when the host calls {@link #drain}, as it should upon the
+ * guest's exit. I/O errors are recorded for {@code checkError()} rather than
+ * reported to the guest, as with {@code PrintStream}.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ *
+ * @author Arno Bastenhof
+ */
+public final class OutputBridge {
+
+	/**
+	 * Policies for when to write out the buffer before it is full.
+	 */
+	public enum FlushPolicy {
+
+		/**
+		 * Writes out the buffer upon every line and every flush by the guest,
+		 * as the host's {@code System.out} does.
+		 */
+		LINE,
+
+		/**
+		 * Writes out the buffer upon every flush by the guest.
+		 */
+		EXPLICIT,
+
+		/**
+		 * Writes out the buffer only when drained by the host, ignoring
+		 * flushes by the guest.
+		 */
+		EXIT;
+
+	}
+
+	/**
+	 * The default size of the buffer in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The minimum size of the buffer in bytes, sufficing for the encoding of
+	 * any character.
+	 */
+	public static final int MIN_BUFFER_SIZE = 16;
+
+	private static final CharBuffer LINE_SEPARATOR = CharBuffer.wrap(
+			System.lineSeparator()).asReadOnlyBuffer();
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final FlushPolicy policy;
+	private final CharsetEncoder encoder;
+	private boolean error;                  // Guarded by this
+
+	/**
+	 * @param channel the channel to write the guest's output to
+	 * @param bufferSize the size of the buffer in bytes
+	 * @param policy the policy for when to write out the buffer before it is
+	 * full
+	 * @throws NullPointerException if {@code channel} or {@code policy} is
+	 * null
+	 * @throws IllegalArgumentException if {@code bufferSize <
+	 * MIN_BUFFER_SIZE}
+	 */
+	public OutputBridge(WritableByteChannel channel, int bufferSize,
+			FlushPolicy policy) {
+		Validate.argument(bufferSize >= MIN_BUFFER_SIZE);
+		this.channel = Validate.notNull(channel);
+		this.policy = Validate.notNull(policy);
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Returns a bridge to the host's standard output, shared by all guests
+	 * not given a bridge of their own and drained upon the host's exit.
+	 */
+	public static OutputBridge getStandardOutput() {
+		return Standard.OUT;
+	}
+
+	/**
+	 * Returns a bridge to the host's standard error, shared by all guests not
+	 * given a bridge of their own and drained upon the host's exit.
+	 */
+	public static OutputBridge getStandardError() {
+		return Standard.ERR;
+	}
+
+	/**
+	 * Writes all buffered output to the channel, regardless of the flush
+	 * policy.
+	 */
+	public synchronized void drain() {
+		this.buffer.flip();
+		try {
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+		} catch (IOException e) {
+			this.error = true;
+		} finally {
+			this.buffer.clear();
+		}
+	}
+
+	// === PrintStream, as invoked by the guest ===
+
+	public synchronized void print(boolean b) {
+		append(String.valueOf(b));
+	}
+
+	public synchronized void print(char c) {
+		append(String.valueOf(c));
+	}
+
+	public synchronized void print(int i) {
+		append(String.valueOf(i));
+	}
+
+	public synchronized void print(long l) {
+		append(String.valueOf(l));
+	}
+
+	public synchronized void print(float f) {
+		append(String.valueOf(f));
+	}
+
+	public synchronized void print(double d) {
+		append(String.valueOf(d));
+	}
+
+	public synchronized void print(String s) {
+		append(String.valueOf(s));
+	}
+
+	public synchronized void println() {
+		newLine();
+	}
+
+	public synchronized void println(boolean b) {
+		append(String.valueOf(b));
+		newLine();
+	}
+
+	public synchronized void println(char c) {
+		append(String.valueOf(c));
+		newLine();
+	}
+
+	public synchronized void println(int i) {
+		append(String.valueOf(i));
+		newLine();
+	}
+
+	public synchronized void println(long l) {
+		append(String.valueOf(l));
+		newLine();
+	}
+
+	public synchronized void println(float f) {
+		append(String.valueOf(f));
+		newLine();
+	}
+
+	public synchronized void println(double d) {
+		append(String.valueOf(d));
+		newLine();
+	}
+
+	public synchronized void println(String s) {
+		append(String.valueOf(s));
+		newLine();
+	}
+
+	public synchronized void write(int b) {
+		if (!this.buffer.hasRemaining()) {
+			drain();
+		}
+		this.buffer.put((byte)b);
+		if (b == '\n' && this.policy == FlushPolicy.LINE) {
+			drain();
+		}
+	}
+
+	public synchronized void flush() {
+		if (this.policy != FlushPolicy.EXIT) {
+			drain();
+		}
+	}
+
+	public synchronized boolean checkError() {
+		flush();
+		return this.error;
+	}
+
+	// Encodes the given characters into the buffer, draining it when full
+	private void append(CharSequence chars) {
+		encode(CharBuffer.wrap(chars));
+	}
+
+	private void newLine() {
+		encode(LINE_SEPARATOR.duplicate());
+		if (this.policy == FlushPolicy.LINE) {
+			drain();
+		}
+	}
+
+	private void encode(CharBuffer chars) {
+		while (this.encoder.encode(chars, this.buffer, false).isOverflow()) {
+			drain();
+		}
+	}
+
+	// Bridges to the host's standard streams, created upon first use
+	private static final class Standard {
+
+		static final OutputBridge OUT = new OutputBridge(new FileOutputStream(
+				FileDescriptor.out).getChannel(), DEFAULT_BUFFER_SIZE,
+				FlushPolicy.LINE);
+		static final OutputBridge ERR = new OutputBridge(new FileOutputStream(
+				FileDescriptor.err).getChannel(), DEFAULT_BUFFER_SIZE,
+				FlushPolicy.LINE);
+
+		static {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					OUT.drain();
+					ERR.drain();
+				}
+			});
+		}
+	}
+
+}
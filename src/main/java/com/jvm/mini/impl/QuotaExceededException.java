@@ -0,0 +1,50 @@
+package com.jvm.mini.impl;
+
+import java.util.Locale;
+
+import com.jvm.mini.impl.ResourceQuota.Resource;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Thrown on the host by a {@link QuotaJvmFacade} to terminate an execution
+ * that exceeded its {@link ResourceQuota}.
+ * <p>
+ * Being a host exception, it cannot be caught by the guest program, and
+ * propagates out of the interpreter. The execution cannot be resumed.
+ *
+ * @author Arno Bastenhof
+ */
+public final class QuotaExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Resource resource;
+	private final long limit;
+
+	/**
+	 * @param resource the resource whose limit was exceeded
+	 * @param limit the limit
+	 * @throws NullPointerException if {@code resource == null}
+	 */
+	public QuotaExceededException(Resource resource, long limit) {
+		super("Quota exceeded: " + Validate.notNull(resource).name()
+				.toLowerCase(Locale.ROOT) + " > " + limit);
+		this.resource = resource;
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns the resource whose limit was exceeded.
+	 */
+	public Resource getResource() {
+		return this.resource;
+	}
+
+	/**
+	 * Returns the limit that was exceeded.
+	 */
+	public long getLimit() {
+		return this.limit;
+	}
+
+}
@@ -0,0 +1,280 @@
+package com.jvm.mini.impl;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.api.CompiledCode;
+import com.jvm.mini.api.HostInput;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.impl.ResourceQuota.Resource;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Decorator for a {@link JvmFacade}, terminating an execution by a {@link
+ * QuotaExceededException} once it exceeds its {@link ResourceQuota}.
+ * <p>
+ * Rather than checking every limit for every instruction, usage is folded
+ * into counters that are only tested at safepoints. Reading an instruction
+ * merely increments the instruction count, which is tested upon taking a
+ * branch, upon pushing a frame and upon {@link #safepoint}. The stack depth
+ * is tested upon pushing frames, be it for invoking a method or for
+ * initializing a class, and the allocation count upon the runtime allocating
+ * a guest object, as reported through {@link #allocated}. As every loop
+ * passes through a branch and every recursion through a frame, an execution
+ * can only overrun its instruction limit by the straight-line code between
+ * two safepoints. {@link CompiledCode} executes through the same facade,
+ * reporting the instructions it executes through {@link #safepoint}, so
+ * that the limits hold in every execution tier.
+ * <p>
+ * Like the facade it decorates, an instance is confined to the thread
+ * executing the guest, and its counts cover a single execution.
+ *
+ * @author Arno Bastenhof
+ */
+public final class QuotaJvmFacade implements JvmFacade, Decoratable {
+
+	private final JvmFacade facade;
+	private final long maxInstructions;
+	private final int maxStackDepth;
+	private final long maxAllocations;
+	private long instructions;
+	private long allocations;
+
+	/**
+	 * @param facade the facade to decorate
+	 * @param quota the limits to enforce
+	 * @throws NullPointerException if {@code facade} or {@code quota} is null
+	 */
+	public QuotaJvmFacade(JvmFacade facade, ResourceQuota quota) {
+		this.facade = Validate.notNull(facade);
+		this.maxInstructions = quota.getMaxInstructions();
+		this.maxStackDepth = quota.getMaxStackDepth();
+		this.maxAllocations = quota.getMaxAllocations();
+		setOuter(this);
+	}
+
+	@Override
+	public void setOuter(JvmFacade outer) {
+		if (this.facade instanceof Decoratable) {
+			((Decoratable)this.facade).setOuter(outer);
+		}
+	}
+
+	/**
+	 * Returns the number of instructions executed so far.
+	 */
+	public long getInstructions() {
+		return this.instructions;
+	}
+
+	/**
+	 * Returns the number of guest objects allocated so far by the runtime.
+	 */
+	public long getAllocations() {
+		return this.allocations;
+	}
+
+	@Override
+	public void pushFrame(int maxStack, int maxLocals, Object... args) {
+		this.facade.pushFrame(maxStack, maxLocals, args);
+		checkStackDepth();
+		checkInstructions();
+	}
+
+	@Override
+	public void pushFrame(MethodInfo method, Object... args) {
+		this.facade.pushFrame(method, args);
+		checkStackDepth();
+		checkInstructions();
+	}
+
+	@Override
+	public Frame popFrame() {
+		return this.facade.popFrame();
+	}
+
+	@Override
+	public AbstractInsnNode readInstruction() {
+		this.instructions++;
+		return this.facade.readInstruction();
+	}
+
+	@Override
+	public void jump(AbstractInsnNode instruction) {
+		this.facade.jump(instruction);
+		checkInstructions();
+	}
+
+	@Override
+	public void safepoint(int instructions) {
+		Validate.argument(instructions >= 0);
+		this.instructions += instructions;
+		checkInstructions();
+	}
+
+	@Override
+	public void throwException(Object exception) {
+		this.facade.throwException(exception);
+	}
+
+	@Override
+	public void allocated(Object object) {
+		this.facade.allocated(object);
+		if (++this.allocations > this.maxAllocations) {
+			throw new QuotaExceededException(Resource.ALLOCATIONS,
+					this.maxAllocations);
+		}
+	}
+
+	@Override
+	public boolean initialize(RuntimeClass clazz) {
+		boolean result = this.facade.initialize(clazz);
+		checkStackDepth();
+		return result;
+	}
+
+	@Override
+	public GuestException getUncaughtException() {
+		return this.facade.getUncaughtException();
+	}
+
+	@Override
+	public void pushOperand(Object value) {
+		this.facade.pushOperand(value);
+	}
+
+	@Override
+	public void pushIntegerOperand(int value) {
+		this.facade.pushIntegerOperand(value);
+	}
+
+	@Override
+	public void pushLongOperand(long value) {
+		this.facade.pushLongOperand(value);
+	}
+
+	@Override
+	public void pushFloatOperand(float value) {
+		this.facade.pushFloatOperand(value);
+	}
+
+	@Override
+	public void pushDoubleOperand(double value) {
+		this.facade.pushDoubleOperand(value);
+	}
+
+	@Override
+	public int popIntegerOperand() {
+		return this.facade.popIntegerOperand();
+	}
+
+	@Override
+	public long popLongOperand() {
+		return this.facade.popLongOperand();
+	}
+
+	@Override
+	public float popFloatOperand() {
+		return this.facade.popFloatOperand();
+	}
+
+	@Override
+	public double popDoubleOperand() {
+		return this.facade.popDoubleOperand();
+	}
+
+	@Override
+	public Object popReferenceOperand() {
+		return this.facade.popReferenceOperand();
+	}
+
+	@Override
+	public void store(int var, Object value) {
+		this.facade.store(var, value);
+	}
+
+	@Override
+	public void storeInteger(int var, int value) {
+		this.facade.storeInteger(var, value);
+	}
+
+	@Override
+	public void storeLong(int var, long value) {
+		this.facade.storeLong(var, value);
+	}
+
+	@Override
+	public void storeFloat(int var, float value) {
+		this.facade.storeFloat(var, value);
+	}
+
+	@Override
+	public void storeDouble(int var, double value) {
+		this.facade.storeDouble(var, value);
+	}
+
+	@Override
+	public int loadInteger(int var) {
+		return this.facade.loadInteger(var);
+	}
+
+	@Override
+	public long loadLong(int var) {
+		return this.facade.loadLong(var);
+	}
+
+	@Override
+	public float loadFloat(int var) {
+		return this.facade.loadFloat(var);
+	}
+
+	@Override
+	public double loadDouble(int var) {
+		return this.facade.loadDouble(var);
+	}
+
+	@Override
+	public HostInput getHostInput() {
+		return this.facade.getHostInput();
+	}
+
+	@Override
+	public OutputBridge getOutput(StandardStream stream) {
+		return this.facade.getOutput(stream);
+	}
+
+	@Override
+	public String getOperandTypes() {
+		return this.facade.getOperandTypes();
+	}
+
+	@Override
+	public String peekOperand() {
+		return this.facade.peekOperand();
+	}
+
+	@Override
+	public AbstractInsnNode peekInstruction() {
+		return this.facade.peekInstruction();
+	}
+
+	@Override
+	public Frame getCurrentFrame() {
+		return this.facade.getCurrentFrame();
+	}
+
+	private void checkInstructions() {
+		if (this.instructions > this.maxInstructions) {
+			throw new QuotaExceededException(Resource.INSTRUCTIONS,
+					this.maxInstructions);
+		}
+	}
+
+	private void checkStackDepth() {
+		Frame frame = this.facade.getCurrentFrame();
+		if (frame != null && frame.getDepth() > this.maxStackDepth) {
+			throw new QuotaExceededException(Resource.STACK_DEPTH,
+					this.maxStackDepth);
+		}
+	}
+
+}
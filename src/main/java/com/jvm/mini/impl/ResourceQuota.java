@@ -0,0 +1,92 @@
+package com.jvm.mini.impl;
+
+import com.jvm.mini.util.Validate;
+
+/**
+ * Limits on the resources a single execution of a guest program may use,
+ * enforced by a {@link QuotaJvmFacade}.
+ * <p>
+ * Memory is limited by the number of guest objects allocated rather than by
+ * their size, as guest objects are represented by host objects whose sizes
+ * are not known to the interpreter.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ResourceQuota {
+
+	/**
+	 * The quota imposing no limits.
+	 */
+	public static final ResourceQuota UNLIMITED = new ResourceQuota(
+			Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+	/**
+	 * The resources limited by a quota.
+	 */
+	public enum Resource {
+		INSTRUCTIONS, STACK_DEPTH, ALLOCATIONS
+	}
+
+	private final long maxInstructions;
+	private final int maxStackDepth;
+	private final long maxAllocations;
+
+	/**
+	 * @param maxInstructions the maximum number of instructions executed
+	 * @param maxStackDepth the maximum number of frames on the JVM stack
+	 * @param maxAllocations the maximum number of guest objects allocated
+	 * @throws IllegalArgumentException if any limit is negative
+	 */
+	public ResourceQuota(long maxInstructions, int maxStackDepth,
+			long maxAllocations) {
+		Validate.argument(maxInstructions >= 0 && maxStackDepth >= 0
+				&& maxAllocations >= 0);
+		this.maxInstructions = maxInstructions;
+		this.maxStackDepth = maxStackDepth;
+		this.maxAllocations = maxAllocations;
+	}
+
+	/**
+	 * Returns the maximum number of instructions executed.
+	 */
+	public long getMaxInstructions() {
+		return this.maxInstructions;
+	}
+
+	/**
+	 * Returns the maximum number of frames on the JVM stack.
+	 */
+	public int getMaxStackDepth() {
+		return this.maxStackDepth;
+	}
+
+	/**
+	 * Returns the maximum number of guest objects allocated.
+	 */
+	public long getMaxAllocations() {
+		return this.maxAllocations;
+	}
+
+	/**
+	 * Returns the limit on the given {@code resource}.
+	 *
+	 * @throws NullPointerException if {@code resource == null}
+	 */
+	public long getLimit(Resource resource) {
+		switch (Validate.notNull(resource)) {
+		case INSTRUCTIONS:
+			return this.maxInstructions;
+		case STACK_DEPTH:
+			return this.maxStackDepth;
+		default:
+			return this.maxAllocations;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "instructions=" + this.maxInstructions + " stack_depth="
+				+ this.maxStackDepth + " allocations=" + this.maxAllocations;
+	}
+
+}
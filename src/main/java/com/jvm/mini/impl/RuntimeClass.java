@@ -0,0 +1,283 @@
+package com.jvm.mini.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.util.Traps;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Runtime representation of a class loaded through a {@link ClassRegistry},
+ * holding its runtime constant pool, its decoded methods and the storage for
+ * its static fields.
+ * <p>
+ * Classes are initialized lazily upon their first active use, following the
+ * procedure of Section 5.5 of the JVM spec (SE8 edition). Each class records
+ * its initialization state, as well as the guest thread initializing it,
+ * represented by the {@link com.jvm.mini.api.JvmFacade} executing the class
+ * initializer. Other guest threads attempting to initialize the same class
+ * block until initialization completed or failed, while the initializing
+ * thread itself proceeds as if the class were initialized, allowing class
+ * initializers to refer to their own classes.
+ * <p>
+ * Instructions that may trigger initialization, being {@code getstatic},
+ * {@code putstatic} and {@code invokestatic}, carry a barrier (see {@link
+ * Traps#setBarrier}) that checks the initialization state of the class they
+ * refer to. Upon completing initialization, the barriers of all instructions
+ * that were found to refer to the class are removed, so that only the first
+ * executions of an instruction pay for the check.
+ * <p>
+ * Static fields are laid out upon loading into unboxed slots, addressed by
+ * {@link StaticField}s. Their initial values as given by {@code
+ * ConstantValue} attributes are assigned when initialization starts.
+ *
+ * @author Arno Bastenhof
+ */
+public final class RuntimeClass {
+
+	// Outcomes of an attempt to start initialization
+	enum Initialization {
+		STARTED,   // The caller is to run the class initializer
+		RECURSIVE, // Already being initialized by the caller
+		DONE,      // Already initialized
+		ERRONEOUS  // Initialization failed before
+	}
+
+	private enum State {
+		NOT_INITIALIZED, BEING_INITIALIZED, INITIALIZED, ERRONEOUS
+	}
+
+	private final ClassRegistry registry;
+	private final ClassNode node;
+	private final RuntimeClass superclass;  // Null if not loaded by registry
+	private final ConstantPool pool;
+	private final ConcurrentMap<String, MethodInfo> methods =
+			new ConcurrentHashMap<>(); // Keyed by name and descriptor
+	private final Map<String, StaticField> fields = new HashMap<>();
+
+	// Static storage, accessed through StaticFields
+	final long[] values; // Primitive values, as raw bits
+	final Object[] refs; // References
+
+	// Initialization state, guarded by this
+	private State state = State.NOT_INITIALIZED;
+	private Object initializer; // Guest thread initializing this class
+	private final List<AbstractInsnNode> sites = new ArrayList<>();
+	private volatile boolean initialized;
+
+	RuntimeClass(ClassRegistry registry, ClassNode node,
+			RuntimeClass superclass) {
+		this.registry = registry;
+		this.node = node;
+		this.superclass = superclass;
+		int slot = 0;
+		for (Object f : node.fields) {
+			FieldNode field = (FieldNode)f;
+			if ((field.access & Opcodes.ACC_STATIC) != 0) {
+				this.fields.put(field.name, new StaticField(this, field.name,
+						field.desc, slot++));
+			}
+		}
+		this.values = new long[slot];
+		this.refs = new Object[slot];
+		this.pool = new ConstantPool(this);
+	}
+
+	/**
+	 * Returns the internal name of this class.
+	 */
+	public String getName() {
+		return this.node.name;
+	}
+
+	/**
+	 * Returns the parsed class file of this class. Callers should not modify
+	 * the result.
+	 */
+	public ClassNode getNode() {
+		return this.node;
+	}
+
+	/**
+	 * Returns the direct superclass of this class, or null if it was not
+	 * loaded through the same registry, as is the case for host classes such
+	 * as {@link Object}.
+	 */
+	public RuntimeClass getSuperclass() {
+		return this.superclass;
+	}
+
+	/**
+	 * Returns the registry this class was loaded through.
+	 */
+	public ClassRegistry getRegistry() {
+		return this.registry;
+	}
+
+	/**
+	 * Returns the runtime constant pool of this class.
+	 */
+	public ConstantPool getConstantPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Returns the method declared by this class with the given {@code name}
+	 * and descriptor, decoding it upon the first request, or null if there is
+	 * none. Decoding operates on a copy of the parsed method, so that the
+	 * instructions of the result are not shared with other registries loading
+	 * the same {@link ClassNode}.
+	 *
+	 * @throws NullPointerException if {@code name} or {@code desc} is null
+	 */
+	public MethodInfo getMethod(String name, String desc) {
+		String key = name.concat(desc);
+		MethodInfo result = this.methods.get(key);
+		if (result == null) {
+			for (Object m : this.node.methods) {
+				MethodNode method = (MethodNode)m;
+				if (method.name.equals(name) && method.desc.equals(desc)) {
+					result = new MethodInfo(this.pool,
+							LinkedMethodNode.copy(method));
+					MethodInfo previous = this.methods.putIfAbsent(key, result);
+					return previous == null ? result : previous;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the class initializer of this class, or null if it declares
+	 * none or one without instructions.
+	 */
+	public MethodInfo getClassInitializer() {
+		MethodInfo result = getMethod("<clinit>", "()V");
+		return result == null || result.getFirstInstruction() == null
+				? null : result;
+	}
+
+	/**
+	 * Returns the static field declared by this class with the given {@code
+	 * name}, or null if there is none.
+	 */
+	public StaticField getStaticField(String name) {
+		return this.fields.get(name);
+	}
+
+	/**
+	 * Returns true iff this class was initialized successfully.
+	 */
+	public boolean isInitialized() {
+		return this.initialized;
+	}
+
+	// Returns true iff initialization of this class failed before
+	synchronized boolean isErroneous() {
+		return this.state == State.ERRONEOUS;
+	}
+
+	/*
+	 * Attempts to start the initialization of this class on behalf of the
+	 * given guest thread, blocking while another thread is initializing it
+	 * (steps 1-6 of Section 5.5). The caller is responsible for initializing
+	 * the superclass and running the class initializer when STARTED is
+	 * returned, and for calling either complete() or fail() afterwards.
+	 */
+	synchronized Initialization begin(Object thread) {
+		boolean interrupted = false;
+		while (this.state == State.BEING_INITIALIZED
+				&& this.initializer != thread) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true; // Guest threads cannot be interrupted
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		switch (this.state) {
+		case BEING_INITIALIZED:
+			return Initialization.RECURSIVE;
+		case INITIALIZED:
+			return Initialization.DONE;
+		case ERRONEOUS:
+			return Initialization.ERRONEOUS;
+		default:
+			this.state = State.BEING_INITIALIZED;
+			this.initializer = thread;
+			assignConstantValues();
+			return Initialization.STARTED;
+		}
+	}
+
+	/*
+	 * Marks this class as initialized, waking up blocked threads and removing
+	 * the barriers of the instructions referring to this class (step 10).
+	 */
+	synchronized void complete() {
+		this.state = State.INITIALIZED;
+		this.initializer = null;
+		this.initialized = true;
+		notifyAll();
+		for (AbstractInsnNode site : this.sites) {
+			Traps.removeBarrier(site);
+		}
+		this.sites.clear();
+	}
+
+	/*
+	 * Marks this class as erroneous, waking up blocked threads (step 11).
+	 */
+	synchronized void fail() {
+		this.state = State.ERRONEOUS;
+		this.initializer = null;
+		notifyAll();
+	}
+
+	/**
+	 * Registers an instruction referring to this class, the barrier of which
+	 * is to be removed upon completing initialization, or immediately if this
+	 * already happened.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 */
+	public synchronized void addSite(AbstractInsnNode insn) {
+		Validate.notNull(insn);
+		if (this.initialized) {
+			Traps.removeBarrier(insn);
+		} else if (!this.sites.contains(insn)) {
+			this.sites.add(insn);
+		}
+	}
+
+	// Assigns the initial values given by ConstantValue attributes
+	private void assignConstantValues() {
+		for (Object f : this.node.fields) {
+			FieldNode field = (FieldNode)f;
+			StaticField target = (field.access & Opcodes.ACC_STATIC) != 0
+					? this.fields.get(field.name) : null;
+			if (target != null && field.value != null) {
+				target.set(field.value instanceof String
+						? ((String)field.value).intern() : field.value);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.node.name;
+	}
+
+}
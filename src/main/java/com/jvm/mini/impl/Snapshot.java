@@ -0,0 +1,690 @@
+package com.jvm.mini.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.api.HostInput;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.util.Validate;
+import com.jvm.mini.util.VarInts;
+
+/**
+ * Utility class for checkpointing the state of a guest to a snapshot, from
+ * which it may later be restored in a fresh process, e.g. so as to skip an
+ * expensive initialization phase or to survive a restart of the host.
+ * <p>
+ * A snapshot captures the static state of the classes loaded through a
+ * {@link ClassRegistry}, the JVM stack of a single guest thread, its program
+ * counter and its uncaught exception, if any, along with all guest objects
+ * reachable therefrom. Classes are recorded by name rather than by contents,
+ * and are loaded anew upon restoring, for which the same class files should
+ * be available. Instructions are recorded by their method and index therein.
+ * A snapshot starts with the magic number {@code MJVS} and a version byte,
+ * all integers being encoded by {@link com.jvm.mini.util.VarInts} and
+ * Strings by their UTF-8 byte length followed by their bytes. Next follow:
+ * <ol>
+ * <li>The number of classes, followed by the name of each class, its
+ * initialization state and, unless it was not initialized, the name,
+ * descriptor and value of each of its static fields.
+ * <li>The number of frames, followed by each frame from the bottom of the
+ * stack up. A frame lists its method, given by its owner, name and
+ * descriptor, or the empty String followed by the maximum stack size if
+ * unknown; its number of local variable and occupied operand stack slots;
+ * the indices of its return address and call site in the method of the
+ * preceding frame, plus one or 0 if absent; the names of the classes whose
+ * initialization it runs; and the tag and value of each occupied slot.
+ * <li>The index of the program counter in the method of the top frame, plus
+ * one or 0 if execution has ended, followed by the uncaught exception.
+ * </ol>
+ * References are written as a tag byte, followed by the object's contents
+ * upon its first occurrence and by its index among the objects written before
+ * otherwise, preserving identity. Supported objects are Strings, arrays of
+ * primitives and supported objects, the guest's standard streams and {@link
+ * GuestException}s, the latter losing their stack traces. Strings are
+ * restored interned iff they are the interned instance of a String constant
+ * of a recorded class, the only Strings a guest can obtain interned.
+ * <p>
+ * Restoring loads the host classes of arrays and exceptions named by the
+ * snapshot, without initializing them, and allocates memory for arrays,
+ * Strings and frames in proportion to the bytes actually read, so that a
+ * malformed snapshot is rejected by an {@link IOException} rather than by
+ * exhausting the heap. Arrays longer than 4096 elements cannot be restored
+ * if they contain themselves.
+ * <p>
+ * Snapshots should be taken in between the execution of instructions, while
+ * the guest is not running, and only for guests whose classes are not
+ * initialized by other threads at the same time.
+ *
+ * @author Arno Bastenhof
+ */
+public final class Snapshot {
+
+	static final byte[] MAGIC = {'M', 'J', 'V', 'S'};
+	static final int VERSION = 1;
+
+	// Class initialization states
+	private static final int NOT_INITIALIZED = 0;
+	private static final int INITIALIZING = 1;
+	private static final int INITIALIZED = 2;
+	private static final int ERRONEOUS = 3;
+
+	// Maximum number of local variables and operand stack slots of a frame
+	private static final int MAX_SLOTS = 0xFFFF;
+
+	// Length up to which arrays and Strings are allocated before being read
+	private static final int MAX_PREALLOCATED_LENGTH = 1 << 12;
+
+	// Marks an array being read, which elements cannot refer to if grown
+	private static final Object PENDING = new Object();
+
+	// Reference tags
+	private static final int NULL = 0;
+	private static final int BACK_REFERENCE = 1;
+	private static final int STRING = 'S';
+	private static final int INTERNED_STRING = 'I';
+	private static final int ARRAY = '[';
+	private static final int STANDARD_OUTPUT = 'O';
+	private static final int STANDARD_ERROR = 'E';
+	private static final int EXCEPTION = 'X';
+
+	// Private constructor to prevent instantiation
+	private Snapshot() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Writes a snapshot of the given guest to the given stream.
+	 *
+	 * @param facade the guest to checkpoint
+	 * @param registry the registry the guest's classes were loaded through
+	 * @param out the stream to write the snapshot to, which is flushed but
+	 * not closed
+	 * @throws NullPointerException if any argument is null
+	 * @throws IOException if the snapshot could not be written, or if the
+	 * guest holds an object or an instruction that cannot be recorded
+	 */
+	public static void checkpoint(JvmFacade facade, ClassRegistry registry,
+			OutputStream out) throws IOException {
+		new Writer(Validate.notNull(facade), Validate.notNull(out))
+				.write(Validate.notNull(registry));
+	}
+
+	/**
+	 * Restores a guest from the snapshot read from the given stream, its
+	 * classes being loaded through the given registry.
+	 *
+	 * @param in the stream to read the snapshot from, which is not closed
+	 * @param registry the registry to load the guest's classes through, which
+	 * should not have been used by any guest before
+	 * @param hostInput the source of nondeterministic inputs for the restored
+	 * guest
+	 * @param out the bridge for the restored guest's {@code System.out}
+	 * @param err the bridge for the restored guest's {@code System.err}
+	 * @return a facade for resuming the guest
+	 * @throws NullPointerException if any argument is null
+	 * @throws IOException if the stream does not hold a snapshot, or if any of
+	 * the classes, methods or fields it refers to could not be loaded
+	 */
+	public static JvmFacadeImpl restore(InputStream in,
+			ClassRegistry registry, HostInput hostInput, OutputBridge out,
+			OutputBridge err) throws IOException {
+		JvmFacadeImpl facade = new JvmFacadeImpl(hostInput, out, err);
+		new Reader(facade, Validate.notNull(registry),
+				Validate.notNull(in)).read();
+		return facade;
+	}
+
+	private static final class Writer {
+
+		private final JvmFacade facade;
+		private final OutputStream out;
+		private final Map<Object, Integer> objects = new IdentityHashMap<>();
+		private final Map<String, Boolean> constants = new IdentityHashMap<>();
+
+		Writer(JvmFacade facade, OutputStream out) {
+			this.facade = facade;
+			this.out = new BufferedOutputStream(out);
+		}
+
+		void write(ClassRegistry registry) throws IOException {
+			this.out.write(MAGIC);
+			this.out.write(VERSION);
+
+			// Frames, bottom first
+			List<Frame> frames = new ArrayList<>();
+			Set<RuntimeClass> initializing = new HashSet<>();
+			for (Frame frame = this.facade.getCurrentFrame(); frame != null;
+					frame = frame.getPrevious()) {
+				frames.add(0, frame);
+				if (frame.initializing() != null) {
+					initializing.addAll(Arrays.asList(frame.initializing()));
+				}
+			}
+
+			// Classes
+			List<RuntimeClass> classes = registry.getClasses();
+			VarInts.writeLong(this.out, classes.size());
+			for (RuntimeClass clazz : classes) {
+				addConstants(clazz.getNode());
+				writeString(clazz.getName());
+				int state = initializing.contains(clazz) ? INITIALIZING
+						: clazz.isInitialized() ? INITIALIZED
+						: clazz.isErroneous() ? ERRONEOUS : NOT_INITIALIZED;
+				this.out.write(state);
+				if (state == INITIALIZING || state == INITIALIZED) {
+					writeStatics(clazz);
+				}
+			}
+
+			VarInts.writeLong(this.out, frames.size());
+			MethodInfo caller = null;
+			for (Frame frame : frames) {
+				writeFrame(frame, caller);
+				caller = frame.getMethod();
+			}
+			writeInsn(caller, this.facade.peekInstruction());
+			writeReference(this.facade.getUncaughtException());
+			this.out.flush();
+		}
+
+		/*
+		 * Records the String constants of the given class, as given by its
+		 * ConstantValue attributes and ldc instructions, which are interned
+		 * upon being loaded by the guest regardless.
+		 */
+		private void addConstants(ClassNode node) {
+			for (Object f : node.fields) {
+				Object value = ((FieldNode)f).value;
+				if (value instanceof String) {
+					this.constants.put(((String)value).intern(), Boolean.TRUE);
+				}
+			}
+			for (Object m : node.methods) {
+				for (AbstractInsnNode insn = ((MethodNode)m).instructions
+						.getFirst(); insn != null; insn = insn.getNext()) {
+					if (insn instanceof LdcInsnNode
+							&& ((LdcInsnNode)insn).cst instanceof String) {
+						this.constants.put(((String)((LdcInsnNode)insn).cst)
+								.intern(), Boolean.TRUE);
+					}
+				}
+			}
+		}
+
+		private void writeStatics(RuntimeClass clazz) throws IOException {
+			List<StaticField> fields = new ArrayList<>();
+			for (Object f : clazz.getNode().fields) {
+				FieldNode field = (FieldNode)f;
+				if ((field.access & Opcodes.ACC_STATIC) != 0) {
+					fields.add(clazz.getStaticField(field.name));
+				}
+			}
+			VarInts.writeLong(this.out, fields.size());
+			for (StaticField field : fields) {
+				writeString(field.getName());
+				writeString(field.getDescriptor());
+				if (isReference(field.getDescriptor())) {
+					writeReference(field.getReference());
+				} else {
+					VarInts.writeLong(this.out, field.getLong());
+				}
+			}
+		}
+
+		private void writeFrame(Frame frame, MethodInfo caller)
+				throws IOException {
+			MethodInfo method = frame.getMethod();
+			if (method != null) {
+				writeString(method.getOwner());
+				writeString(method.getName());
+				writeString(method.getDescriptor());
+			} else {
+				writeString("");
+				VarInts.writeLong(this.out, frame.getMaxStack());
+			}
+			VarInts.writeLong(this.out, frame.getMaxLocals());
+			VarInts.writeLong(this.out, frame.getStackSize());
+			writeInsn(caller, frame.getReturnAddress());
+			writeInsn(caller, frame.getCallSite());
+			RuntimeClass[] initializing = frame.initializing();
+			VarInts.writeLong(this.out,
+					initializing == null ? 0 : initializing.length);
+			if (initializing != null) {
+				for (RuntimeClass clazz : initializing) {
+					writeString(clazz.getName());
+				}
+			}
+			int slots = frame.getMaxLocals() + frame.getStackSize();
+			for (int slot = 0; slot < slots; slot++) {
+				byte tag = frame.tag(slot);
+				this.out.write(tag);
+				if (tag == Frame.REFERENCE) {
+					writeReference(frame.reference(slot));
+				} else if (tag != Frame.UNSET && tag != Frame.TOP) {
+					VarInts.writeLong(this.out, frame.bits(slot));
+				}
+			}
+		}
+
+		private void writeInsn(MethodInfo method, AbstractInsnNode insn)
+				throws IOException {
+			if (insn == null) {
+				this.out.write(0);
+				return;
+			}
+			int index = method == null ? -1
+					: method.getInstructions().indexOf(insn);
+			if (index < 0) {
+				throw new IOException("Cannot checkpoint instruction outside of"
+						+ " a known method");
+			}
+			VarInts.writeLong(this.out, index + 1);
+		}
+
+		private void writeReference(Object value) throws IOException {
+			if (value == null) {
+				this.out.write(NULL);
+				return;
+			}
+			if (value == this.facade.getOutput(StandardStream.OUT)) {
+				this.out.write(STANDARD_OUTPUT);
+				return;
+			}
+			if (value == this.facade.getOutput(StandardStream.ERR)) {
+				this.out.write(STANDARD_ERROR);
+				return;
+			}
+			Integer id = this.objects.get(value);
+			if (id != null) {
+				this.out.write(BACK_REFERENCE);
+				VarInts.writeLong(this.out, id.intValue());
+				return;
+			}
+			this.objects.put(value, Integer.valueOf(this.objects.size()));
+			if (value instanceof String) {
+				String s = (String)value;
+				this.out.write(this.constants.containsKey(s) ? INTERNED_STRING
+						: STRING);
+				writeString(s);
+			} else if (value instanceof GuestException) {
+				GuestException e = (GuestException)value;
+				this.out.write(EXCEPTION);
+				writeString(e.getType().getName());
+				writeReference(e.getMessage());
+			} else if (value.getClass().isArray()) {
+				this.out.write(ARRAY);
+				writeArray(value);
+			} else {
+				throw new IOException("Cannot checkpoint instance of "
+						+ value.getClass().getName());
+			}
+		}
+
+		private void writeArray(Object array) throws IOException {
+			Class<?> component = array.getClass().getComponentType();
+			int length = Array.getLength(array);
+			writeString(array.getClass().getName());
+			VarInts.writeLong(this.out, length);
+			for (int i = 0; i < length; i++) {
+				if (!component.isPrimitive()) {
+					writeReference(Array.get(array, i));
+				} else if (component == boolean.class) {
+					this.out.write(Array.getBoolean(array, i) ? 1 : 0);
+				} else if (component == long.class) {
+					VarInts.writeLong(this.out, Array.getLong(array, i));
+				} else if (component == float.class) {
+					VarInts.writeLong(this.out, Float.floatToRawIntBits(
+							Array.getFloat(array, i)));
+				} else if (component == double.class) {
+					VarInts.writeLong(this.out, Double.doubleToRawLongBits(
+							Array.getDouble(array, i)));
+				} else { // byte, char, short or int
+					VarInts.writeLong(this.out, Array.getInt(array, i));
+				}
+			}
+		}
+
+		private void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			VarInts.writeLong(this.out, bytes.length);
+			this.out.write(bytes);
+		}
+	}
+
+	private static final class Reader {
+
+		private final JvmFacadeImpl facade;
+		private final ClassRegistry registry;
+		private final InputStream in;
+		private final List<Object> objects = new ArrayList<>();
+
+		Reader(JvmFacadeImpl facade, ClassRegistry registry, InputStream in) {
+			this.facade = facade;
+			this.registry = registry;
+			this.in = new BufferedInputStream(in);
+		}
+
+		void read() throws IOException {
+			byte[] magic = new byte[MAGIC.length];
+			readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || readByte() != VERSION) {
+				throw new IOException("Not a snapshot of a supported version");
+			}
+
+			// Classes
+			for (int i = readLength(); i > 0; i--) {
+				RuntimeClass clazz = readClass();
+				int state = readByte();
+				switch (state) {
+				case NOT_INITIALIZED:
+					break;
+				case INITIALIZING:
+				case INITIALIZED:
+					clazz.begin(this.facade);
+					readStatics(clazz);
+					if (state == INITIALIZED) {
+						clazz.complete();
+					}
+					break;
+				case ERRONEOUS:
+					clazz.begin(this.facade);
+					clazz.fail();
+					break;
+				default:
+					throw new IOException("Unexpected class state " + state);
+				}
+			}
+
+			// Frames, bottom first
+			Frame frame = null;
+			for (int i = readLength(); i > 0; i--) {
+				frame = readFrame(frame);
+			}
+			AbstractInsnNode programCtr = readInsn(frame == null ? null
+					: frame.getMethod());
+			Object uncaught = readReference();
+			if (uncaught != null && !(uncaught instanceof GuestException)) {
+				throw new IOException("Malformed uncaught exception");
+			}
+			this.facade.restore(frame, programCtr, (GuestException)uncaught);
+		}
+
+		private void readStatics(RuntimeClass clazz) throws IOException {
+			for (int i = readLength(); i > 0; i--) {
+				String name = readString();
+				String desc = readString();
+				StaticField field = clazz.getStaticField(name);
+				if (field == null || !field.getDescriptor().equals(desc)) {
+					throw new IOException("No static field " + clazz.getName()
+							+ "." + name + " of type " + desc);
+				}
+				if (isReference(desc)) {
+					field.setReference(readReference());
+				} else {
+					field.setLong(VarInts.readLong(this.in));
+				}
+			}
+		}
+
+		private Frame readFrame(Frame previous) throws IOException {
+			String owner = readString();
+			MethodInfo method = null;
+			int maxStack;
+			if (owner.isEmpty()) {
+				maxStack = readLength();
+			} else {
+				String name = readString();
+				String desc = readString();
+				RuntimeClass clazz = this.registry.getClass(owner);
+				method = clazz == null ? null : clazz.getMethod(name, desc);
+				if (method == null) {
+					throw new IOException("No method " + owner + "." + name
+							+ desc);
+				}
+				maxStack = method.getMaxStack();
+			}
+			int maxLocals = readLength();
+			int stackSize = readLength();
+			if (maxStack > MAX_SLOTS || maxLocals > MAX_SLOTS) {
+				throw new IOException("Frame too large");
+			}
+			if (stackSize > maxStack) {
+				throw new IOException("Operand stack overflow");
+			}
+			MethodInfo caller = previous == null ? null : previous.getMethod();
+			AbstractInsnNode returnAddress = readInsn(caller);
+			AbstractInsnNode callSite = readInsn(caller);
+			Frame result = new Frame(method, maxStack, maxLocals, previous,
+					returnAddress, callSite);
+			int count = readLength();
+			if (count > 0) {
+				RuntimeClass[] initializing = new RuntimeClass[count];
+				for (int i = 0; i < count; i++) {
+					initializing[i] = readClass();
+				}
+				result.setInitializing(initializing);
+			}
+			result.setStackSize(stackSize);
+			for (int slot = 0; slot < maxLocals + stackSize; slot++) {
+				byte tag = (byte)readByte();
+				switch (tag) {
+				case Frame.REFERENCE:
+					result.restore(slot, tag, 0, readReference());
+					break;
+				case Frame.INTEGER:
+				case Frame.LONG:
+				case Frame.FLOAT:
+				case Frame.DOUBLE:
+					result.restore(slot, tag, VarInts.readLong(this.in), null);
+					break;
+				case Frame.UNSET:
+				case Frame.TOP:
+					result.restore(slot, tag, 0, null);
+					break;
+				default:
+					throw new IOException("Unexpected slot tag " + tag);
+				}
+			}
+			return result;
+		}
+
+		private AbstractInsnNode readInsn(MethodInfo method)
+				throws IOException {
+			int index = readLength() - 1;
+			if (index < 0) {
+				return null;
+			}
+			if (method == null || index >= method.getInstructions().size()) {
+				throw new IOException("No instruction " + index + " in "
+						+ method);
+			}
+			return method.getInstructions().get(index);
+		}
+
+		private RuntimeClass readClass() throws IOException {
+			String name = readString();
+			RuntimeClass result = this.registry.getClass(name);
+			if (result == null) {
+				throw new IOException("Class " + name + " not found");
+			}
+			return result;
+		}
+
+		private Object readReference() throws IOException {
+			int tag = readByte();
+			switch (tag) {
+			case NULL:
+				return null;
+			case BACK_REFERENCE:
+				int id = readLength();
+				if (id >= this.objects.size()) {
+					throw new IOException("Undefined object " + id);
+				}
+				if (this.objects.get(id) == PENDING) {
+					throw new IOException("Array " + id + " too long to refer"
+							+ " to itself");
+				}
+				return this.objects.get(id);
+			case STANDARD_OUTPUT:
+				return this.facade.getOutput(StandardStream.OUT);
+			case STANDARD_ERROR:
+				return this.facade.getOutput(StandardStream.ERR);
+			case STRING:
+			case INTERNED_STRING:
+				String s = readString();
+				s = tag == INTERNED_STRING ? s.intern() : s;
+				this.objects.add(s);
+				return s;
+			case EXCEPTION:
+				int index = this.objects.size();
+				this.objects.add(null); // Placeholder, as messages come next
+				GuestException e = new GuestException(readType(),
+						(String)readReference());
+				this.objects.set(index, e);
+				return e;
+			case ARRAY:
+				return readArray();
+			default:
+				throw new IOException("Unexpected reference tag " + tag);
+			}
+		}
+
+		/*
+		 * Reads an array, allocating it upfront if short. Longer arrays are
+		 * grown as their elements are read, so that a malformed length cannot
+		 * exhaust the heap, and cannot be referred to by their own elements.
+		 */
+		private Object readArray() throws IOException {
+			String name = readString();
+			if (!name.startsWith("[")) {
+				throw new IOException("Not an array type: " + name);
+			}
+			Class<?> component = loadClass(name).getComponentType();
+			int length = readLength();
+			int id = this.objects.size();
+			Object result = Array.newInstance(component,
+					Math.min(length, MAX_PREALLOCATED_LENGTH));
+			this.objects.add(length <= MAX_PREALLOCATED_LENGTH
+					? result : PENDING);
+			for (int i = 0; i < length; i++) {
+				if (i == Array.getLength(result)) {
+					Object grown = Array.newInstance(component,
+							(int)Math.min(length, 2L * i));
+					System.arraycopy(result, 0, grown, 0, i);
+					result = grown;
+				}
+				if (!component.isPrimitive()) {
+					Array.set(result, i, readReference());
+				} else if (component == boolean.class) {
+					Array.setBoolean(result, i, readByte() != 0);
+				} else if (component == long.class) {
+					Array.setLong(result, i, VarInts.readLong(this.in));
+				} else if (component == float.class) {
+					Array.setFloat(result, i, Float.intBitsToFloat(
+							(int)VarInts.readLong(this.in)));
+				} else if (component == double.class) {
+					Array.setDouble(result, i, Double.longBitsToDouble(
+							VarInts.readLong(this.in)));
+				} else if (component == byte.class) {
+					Array.setByte(result, i, (byte)VarInts.readLong(this.in));
+				} else if (component == char.class) {
+					Array.setChar(result, i, (char)VarInts.readLong(this.in));
+				} else if (component == short.class) {
+					Array.setShort(result, i, (short)VarInts.readLong(this.in));
+				} else {
+					Array.setInt(result, i, (int)VarInts.readLong(this.in));
+				}
+			}
+			this.objects.set(id, result);
+			return result;
+		}
+
+		private Class<? extends Throwable> readType() throws IOException {
+			Class<?> type = loadClass(readString());
+			if (!Throwable.class.isAssignableFrom(type)) {
+				throw new IOException("Not an exception type: "
+						+ type.getName());
+			}
+			return type.asSubclass(Throwable.class);
+		}
+
+		// Loads a host class without initializing it
+		private static Class<?> loadClass(String name) throws IOException {
+			try {
+				return Class.forName(name, false,
+						Snapshot.class.getClassLoader());
+			} catch (ClassNotFoundException | LinkageError e) {
+				throw new IOException("Host class " + name + " not found", e);
+			}
+		}
+
+		// Reads a String, growing its buffer as done for long arrays
+		private String readString() throws IOException {
+			int length = readLength();
+			byte[] bytes = new byte[Math.min(length, MAX_PREALLOCATED_LENGTH)];
+			for (int n = 0; n < length; ) {
+				if (n == bytes.length) {
+					bytes = Arrays.copyOf(bytes, (int)Math.min(length, 2L * n));
+				}
+				int read = this.in.read(bytes, n, bytes.length - n);
+				if (read < 0) {
+					throw new EOFException();
+				}
+				n += read;
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private int readLength() throws IOException {
+			long result = VarInts.readLong(this.in);
+			if (result < 0 || result > Integer.MAX_VALUE) {
+				throw new IOException("Malformed length " + result);
+			}
+			return (int)result;
+		}
+
+		private int readByte() throws IOException {
+			int result = this.in.read();
+			if (result < 0) {
+				throw new EOFException();
+			}
+			return result;
+		}
+
+		private void readFully(byte[] bytes) throws IOException {
+			for (int n = 0; n < bytes.length; ) {
+				int read = this.in.read(bytes, n, bytes.length - n);
+				if (read < 0) {
+					throw new EOFException();
+				}
+				n += read;
+			}
+		}
+	}
+
+	// Returns true iff the given field descriptor denotes a reference type
+	private static boolean isReference(String desc) {
+		return desc.charAt(0) == 'L' || desc.charAt(0) == '[';
+	}
+
+}
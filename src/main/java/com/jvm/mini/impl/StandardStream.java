@@ -0,0 +1,39 @@
+package com.jvm.mini.impl;
+
+/**
+ * Resolved reference to {@code System.out} or {@code System.err}, read by a
+ * guest as the {@link OutputBridge} of its {@link com.jvm.mini.api.JvmFacade}
+ * for the stream.
+ *
+ * @author Arno Bastenhof
+ */
+public enum StandardStream {
+
+	/**
+	 * {@code System.out}.
+	 */
+	OUT,
+
+	/**
+	 * {@code System.err}.
+	 */
+	ERR;
+
+	/**
+	 * Returns the stream referred to by the given static field, or null if
+	 * the field is not one of {@code System.out} and {@code System.err}.
+	 *
+	 * @param owner the internal name of the class declaring the field
+	 * @param name the name of the field
+	 * @param desc the descriptor of the field
+	 */
+	public static StandardStream forField(String owner, String name,
+			String desc) {
+		if (!"java/lang/System".equals(owner)
+				|| !"Ljava/io/PrintStream;".equals(desc)) {
+			return null;
+		}
+		return "out".equals(name) ? OUT : "err".equals(name) ? ERR : null;
+	}
+
+}
@@ -0,0 +1,174 @@
+package com.jvm.mini.impl;
+
+import org.objectweb.asm.Type;
+
+import com.jvm.mini.util.Validate;
+
+/**
+ * Resolved reference to a static field, addressing its slot within the static
+ * storage of the declaring {@link RuntimeClass}.
+ * <p>
+ * As with the slots of a {@link Frame}, primitive values are stored unboxed
+ * as raw bit patterns, while references are kept separately. Booleans, bytes,
+ * chars and shorts are stored as integers, as they are on the operand stack.
+ * The typed accessors perform no checks on the field's descriptor, which the
+ * instructions accessing a field are expected to agree with.
+ *
+ * @author Arno Bastenhof
+ */
+public final class StaticField {
+
+	private final RuntimeClass owner;
+	private final String name;
+	private final String desc;
+	private final int slot;
+
+	StaticField(RuntimeClass owner, String name, String desc, int slot) {
+		this.owner = owner;
+		this.name = name;
+		this.desc = desc;
+		this.slot = slot;
+	}
+
+	/**
+	 * Returns the class declaring this field.
+	 */
+	public RuntimeClass getOwner() {
+		return this.owner;
+	}
+
+	/**
+	 * Returns the name of this field.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the descriptor of this field.
+	 */
+	public String getDescriptor() {
+		return this.desc;
+	}
+
+	/**
+	 * Returns the value of this field as an integer.
+	 */
+	public int getInteger() {
+		return (int)this.owner.values[this.slot];
+	}
+
+	/**
+	 * Returns the value of this field as a long.
+	 */
+	public long getLong() {
+		return this.owner.values[this.slot];
+	}
+
+	/**
+	 * Returns the value of this field as a float.
+	 */
+	public float getFloat() {
+		return Float.intBitsToFloat((int)this.owner.values[this.slot]);
+	}
+
+	/**
+	 * Returns the value of this field as a double.
+	 */
+	public double getDouble() {
+		return Double.longBitsToDouble(this.owner.values[this.slot]);
+	}
+
+	/**
+	 * Returns the value of this field as a reference.
+	 */
+	public Object getReference() {
+		return this.owner.refs[this.slot];
+	}
+
+	/**
+	 * Sets this field to the given integer {@code value}.
+	 */
+	public void setInteger(int value) {
+		this.owner.values[this.slot] = value;
+	}
+
+	/**
+	 * Sets this field to the given long {@code value}.
+	 */
+	public void setLong(long value) {
+		this.owner.values[this.slot] = value;
+	}
+
+	/**
+	 * Sets this field to the given float {@code value}.
+	 */
+	public void setFloat(float value) {
+		this.owner.values[this.slot] = Float.floatToRawIntBits(value);
+	}
+
+	/**
+	 * Sets this field to the given double {@code value}.
+	 */
+	public void setDouble(double value) {
+		this.owner.values[this.slot] = Double.doubleToRawLongBits(value);
+	}
+
+	/**
+	 * Sets this field to the given reference {@code value}.
+	 */
+	public void setReference(Object value) {
+		this.owner.refs[this.slot] = value;
+	}
+
+	/**
+	 * Returns the value of this field, boxing primitive values according to
+	 * its descriptor. Intended for tools rather than for implementing the
+	 * instruction set.
+	 */
+	public Object get() {
+		switch (Type.getType(this.desc).getSort()) {
+		case Type.LONG:
+			return Long.valueOf(getLong());
+		case Type.FLOAT:
+			return Float.valueOf(getFloat());
+		case Type.DOUBLE:
+			return Double.valueOf(getDouble());
+		case Type.OBJECT:
+		case Type.ARRAY:
+			return getReference();
+		default:
+			return Integer.valueOf(getInteger());
+		}
+	}
+
+	/**
+	 * Sets this field to the given {@code value}, unboxing instances of
+	 * {@link Integer}, {@link Long}, {@link Float} and {@link Double}.
+	 *
+	 * @throws IllegalArgumentException if {@code value} is a boxed primitive
+	 * not matching the descriptor of this field
+	 */
+	public void set(Object value) {
+		int sort = Type.getType(this.desc).getSort();
+		if (sort == Type.OBJECT || sort == Type.ARRAY) {
+			setReference(value);
+		} else if (value instanceof Long && sort == Type.LONG) {
+			setLong(((Long)value).longValue());
+		} else if (value instanceof Float && sort == Type.FLOAT) {
+			setFloat(((Float)value).floatValue());
+		} else if (value instanceof Double && sort == Type.DOUBLE) {
+			setDouble(((Double)value).doubleValue());
+		} else {
+			Validate.argument(value instanceof Integer && sort != Type.LONG
+					&& sort != Type.FLOAT && sort != Type.DOUBLE);
+			setInteger(((Integer)value).intValue());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.owner.getName() + "." + this.name + ":" + this.desc;
+	}
+
+}
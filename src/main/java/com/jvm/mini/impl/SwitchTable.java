@@ -0,0 +1,293 @@
+package com.jvm.mini.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Decoded jump table of a {@code tableswitch} or {@code lookupswitch}
+ * instruction, mapping integer keys to the instructions to jump to.
+ * <p>
+ * Jump targets are resolved upon decoding, so that selecting a target
+ * requires neither allocations nor the traversal of labels. Keys are
+ * organized according to their density:
+ * <ul>
+ * <li>Keys covering at least half of their range, as is always the case for
+ * {@code tableswitch}, index a dense array of targets directly.</li>
+ * <li>Small sets of sparse keys are searched for by binary search.</li>
+ * <li>Larger sets of sparse keys are looked up through a perfect hash
+ * function, found by trying multipliers for multiplicative hashing until one
+ * maps all keys to distinct slots. If none is found within a fixed number of
+ * attempts, binary search is used instead.</li>
+ * </ul>
+ * Tables are decoded once per instruction and cached, being immutable and
+ * thus safely shared between threads. Instructions of methods decoded for a
+ * {@link RuntimeClass} are linked to their tables directly, the cache only
+ * serving instructions decoded otherwise. As tables refer to the neighbours
+ * of their instructions, the cache holds both weakly, a table being decoded
+ * anew if collected while its instruction is still in use.
+ *
+ * @author Arno Bastenhof
+ */
+public abstract class SwitchTable {
+
+	// Maximum number of keys searched for by binary search, unless dense
+	private static final int MAX_BINARY_SEARCH = 8;
+
+	// Number of multipliers tried per table size when searching a perfect hash
+	private static final int MAX_ATTEMPTS = 32;
+
+	private static final Map<AbstractInsnNode, WeakReference<SwitchTable>>
+			TABLES = Collections.synchronizedMap(new WeakHashMap<
+					AbstractInsnNode, WeakReference<SwitchTable>>());
+
+	private final AbstractInsnNode dflt;
+
+	private SwitchTable(AbstractInsnNode dflt) {
+		this.dflt = dflt;
+	}
+
+	/**
+	 * Returns the jump table of the given {@code insn}, decoding it upon the
+	 * first request.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 * @throws IllegalArgumentException if {@code insn} is neither a {@code
+	 * tableswitch} nor a {@code lookupswitch} instruction
+	 */
+	public static SwitchTable forInsn(AbstractInsnNode insn) {
+		if (insn instanceof LinkedMethodNode.Linked) {
+			LinkedMethodNode.Linked linked = (LinkedMethodNode.Linked)insn;
+			SwitchTable table = (SwitchTable)linked.getLink();
+			if (table == null) {
+				table = decode(insn);
+				linked.setLink(table); // Racing threads decode equal tables
+			}
+			return table;
+		}
+		WeakReference<SwitchTable> cached = TABLES.get(Validate.notNull(insn));
+		SwitchTable table = cached == null ? null : cached.get();
+		if (table == null) {
+			table = decode(insn);
+			TABLES.put(insn, new WeakReference<>(table));
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the instruction to jump to for the given {@code key}.
+	 */
+	public abstract AbstractInsnNode getTarget(int key);
+
+	/**
+	 * Returns the instruction to jump to for keys not listed in this table.
+	 */
+	public final AbstractInsnNode getDefault() {
+		return this.dflt;
+	}
+
+	/**
+	 * Returns the distinct instructions this table may jump to, including its
+	 * default.
+	 */
+	public final AbstractInsnNode[] getTargets() {
+		Set<AbstractInsnNode> result = new LinkedHashSet<>();
+		addTargets(result);
+		result.add(this.dflt);
+		return result.toArray(new AbstractInsnNode[result.size()]);
+	}
+
+	// Adds the targets of the listed keys to the given set
+	abstract void addTargets(Set<AbstractInsnNode> result);
+
+	private static SwitchTable decode(AbstractInsnNode insn) {
+		if (insn instanceof TableSwitchInsnNode) {
+			TableSwitchInsnNode node = (TableSwitchInsnNode)insn;
+			return new Direct(node.min, resolve(node.labels),
+					Instructions.getNext(node.dflt));
+		}
+		Validate.argument(insn instanceof LookupSwitchInsnNode);
+		LookupSwitchInsnNode node = (LookupSwitchInsnNode)insn;
+		AbstractInsnNode dflt = Instructions.getNext(node.dflt);
+		AbstractInsnNode[] unsorted = resolve(node.labels);
+
+		// Sort keys, as ASM does not require them to be
+		int n = unsorted.length;
+		long[] pairs = new long[n]; // Key in high bits, index in low bits
+		for (int i = 0; i < n; i++) {
+			int key = ((Integer)node.keys.get(i)).intValue();
+			pairs[i] = ((long)key << 32) | i;
+		}
+		Arrays.sort(pairs);
+		int[] keys = new int[n];
+		AbstractInsnNode[] targets = new AbstractInsnNode[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = (int)(pairs[i] >> 32);
+			targets[i] = unsorted[(int)pairs[i]];
+		}
+
+		// Select a representation by density
+		if (n == 0) {
+			return new BinarySearch(keys, targets, dflt);
+		}
+		long range = (long)keys[n - 1] - keys[0] + 1;
+		if (range <= 2L * n) {
+			AbstractInsnNode[] dense = new AbstractInsnNode[(int)range];
+			Arrays.fill(dense, dflt);
+			for (int i = 0; i < n; i++) {
+				dense[keys[i] - keys[0]] = targets[i];
+			}
+			return new Direct(keys[0], dense, dflt);
+		}
+		if (n > MAX_BINARY_SEARCH) {
+			SwitchTable hashed = PerfectHash.create(keys, targets, dflt);
+			if (hashed != null) {
+				return hashed;
+			}
+		}
+		return new BinarySearch(keys, targets, dflt);
+	}
+
+	private static AbstractInsnNode[] resolve(List<?> labels) {
+		AbstractInsnNode[] result = new AbstractInsnNode[labels.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = Instructions.getNext((LabelNode)labels.get(i));
+		}
+		return result;
+	}
+
+	// Targets indexed by the distance of keys to the lowest key
+	private static final class Direct extends SwitchTable {
+
+		private final int low;
+		private final AbstractInsnNode[] targets;
+
+		private Direct(int low, AbstractInsnNode[] targets,
+				AbstractInsnNode dflt) {
+			super(dflt);
+			this.low = low;
+			this.targets = targets;
+		}
+
+		@Override
+		public AbstractInsnNode getTarget(int key) {
+			// Keys below low either yield a negative index or, on overflow,
+			// one no less than the table size
+			int index = key - this.low;
+			return index >= 0 && index < this.targets.length
+					? this.targets[index] : getDefault();
+		}
+
+		@Override
+		void addTargets(Set<AbstractInsnNode> result) {
+			result.addAll(Arrays.asList(this.targets));
+		}
+	}
+
+	// Sorted keys and their targets, as parallel arrays
+	private static final class BinarySearch extends SwitchTable {
+
+		private final int[] keys;
+		private final AbstractInsnNode[] targets;
+
+		private BinarySearch(int[] keys, AbstractInsnNode[] targets,
+				AbstractInsnNode dflt) {
+			super(dflt);
+			this.keys = keys;
+			this.targets = targets;
+		}
+
+		@Override
+		public AbstractInsnNode getTarget(int key) {
+			int index = Arrays.binarySearch(this.keys, key);
+			return index >= 0 ? this.targets[index] : getDefault();
+		}
+
+		@Override
+		void addTargets(Set<AbstractInsnNode> result) {
+			result.addAll(Arrays.asList(this.targets));
+		}
+	}
+
+	// Open table without collisions, with null marking unoccupied slots
+	private static final class PerfectHash extends SwitchTable {
+
+		private final int multiplier;
+		private final int shift;
+		private final int[] keys;
+		private final AbstractInsnNode[] targets;
+
+		private PerfectHash(int multiplier, int shift, int[] keys,
+				AbstractInsnNode[] targets, AbstractInsnNode dflt) {
+			super(dflt);
+			this.multiplier = multiplier;
+			this.shift = shift;
+			this.keys = keys;
+			this.targets = targets;
+		}
+
+		/*
+		 * Searches for a multiplier mapping the given keys to distinct slots
+		 * of a table with at least twice, or else four times as many slots,
+		 * returning null if there is none within MAX_ATTEMPTS per size.
+		 */
+		private static PerfectHash create(int[] keys,
+				AbstractInsnNode[] targets, AbstractInsnNode dflt) {
+			int bits = 32 - Integer.numberOfLeadingZeros(2 * keys.length - 1);
+			for (int size = bits; size <= bits + 1; size++) {
+				int shift = 32 - size;
+				int multiplier = 0x9E3779B9; // Golden ratio
+				for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+					int[] slots = new int[1 << size];
+					AbstractInsnNode[] slotTargets =
+							new AbstractInsnNode[1 << size];
+					boolean perfect = true;
+					for (int i = 0; i < keys.length && perfect; i++) {
+						int slot = (keys[i] * multiplier) >>> shift;
+						perfect = slotTargets[slot] == null;
+						slots[slot] = keys[i];
+						slotTargets[slot] = targets[i];
+					}
+					if (perfect) {
+						return new PerfectHash(multiplier, shift, slots,
+								slotTargets, dflt);
+					}
+					// Next odd multiplier by a linear congruential step
+					multiplier = multiplier * 1664525 + 1013904223 | 1;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public AbstractInsnNode getTarget(int key) {
+			int slot = (key * this.multiplier) >>> this.shift;
+			AbstractInsnNode target = this.targets[slot];
+			return target != null && this.keys[slot] == key
+					? target : getDefault();
+		}
+
+		@Override
+		void addTargets(Set<AbstractInsnNode> result) {
+			for (AbstractInsnNode target : this.targets) {
+				if (target != null) {
+					result.add(target);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,508 @@
+package com.jvm.mini.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import com.jvm.mini.api.CompiledCode;
+import com.jvm.mini.api.ExecutionAdapter;
+import com.jvm.mini.api.ExecutionTier;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.MethodCompiler;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Tiering policy promoting hot methods from the interpreter to the tiers of
+ * a sequence of {@link MethodCompiler}s, one tier at a time.
+ * <p>
+ * The controller is registered as a listener with the interpreters of the
+ * guests it manages, counting for each method how often it was invoked.
+ * Once the count reaches its threshold, the method is queued for compilation
+ * by the compiler of the next tier, and its count starts anew so that the
+ * tier after it is only reached if the method stays hot. Compilation
+ * proceeds on the given {@link Executor}, while the method continues to be
+ * executed in its current tier; execution thus never waits for a compiler.
+ * Code for the new tier is published through {@link #getCode} once complete.
+ * A method the compiler rejects or fails on stays in its current tier for
+ * good, as does any method for which the executor rejects the task.
+ * <p>
+ * A method that is invoked only once, such as a program's main method, may
+ * nonetheless spend most of its time in a single loop. The controller
+ * therefore counts for each loop how often the backward branches to its
+ * header were taken, queueing the loop for on-stack replacement (OSR) once
+ * its count reaches the back-edge threshold, a branch being backward if its
+ * target does not follow it. The loop is compiled by the compiler of the
+ * method's next tier, or of its current tier if the last. Once its code is
+ * complete, the next backward branch to the loop's header transfers the
+ * running frame into the code, with its locals and operands as left by the
+ * interpreter, and interpretation resumes wherever the code leaves the frame.
+ * The controller merely records the transfer upon being notified of the
+ * branch, which then takes place upon the next call to {@link #enter} by
+ * the same thread, before the header is executed. OSR thus only takes place
+ * in {@link TieredJvmInterpreter}s decorating an interpreter the controller
+ * is registered with, and never while the facade is notifying listeners.
+ * <p>
+ * Compiled code is entered for invocations and wherever the interpreter
+ * resumes a promoted method through {@link #enter}, as done by a {@link
+ * TieredJvmInterpreter} before each instruction. A guest thread executing
+ * compiled code is never transferred into other code, as by a branch the
+ * code takes through the facade, so that the host stack does not grow with
+ * the number of transfers.
+ * <p>
+ * Counts are maintained without locking, and may miss increments made
+ * concurrently by several guest threads. Thresholds are thereby approximate,
+ * but no method is ever queued for the same tier twice.
+ *
+ * @author Arno Bastenhof
+ */
+public final class TierController extends ExecutionAdapter {
+
+	/**
+	 * The default number of invocations after which a method is promoted.
+	 */
+	public static final int DEFAULT_INVOCATION_THRESHOLD = 1000;
+
+	/**
+	 * The default number of backward branches to a loop's header taken after
+	 * which the loop is compiled for on-stack replacement.
+	 */
+	public static final int DEFAULT_BACK_EDGE_THRESHOLD = 10000;
+
+	private final Executor compilerPool;
+	private final int invocationThreshold;
+	private final int backEdgeThreshold;
+	private final MethodCompiler[] compilers; // Ordered by tier
+	private final ConcurrentMap<MethodInfo, Profile> profiles =
+			new ConcurrentHashMap<>();
+	private final ThreadLocal<Boolean> executing = new ThreadLocal<>();
+	private final ThreadLocal<Transfer> pending = new ThreadLocal<>();
+
+	/**
+	 * @param compilerPool the executor to run compilations on
+	 * @param invocationThreshold the number of invocations after which a
+	 * method is promoted to the next tier
+	 * @param backEdgeThreshold the number of backward branches to a loop's
+	 * header taken after which the loop is compiled for on-stack replacement
+	 * @param compilers the compilers for the tiers above the interpreter, in
+	 * ascending order
+	 * @throws NullPointerException if {@code compilerPool}, {@code compilers}
+	 * or any of its elements is null
+	 * @throws IllegalArgumentException if either threshold is not positive
+	 */
+	public TierController(Executor compilerPool, int invocationThreshold,
+			int backEdgeThreshold, MethodCompiler... compilers) {
+		Validate.argument(invocationThreshold > 0 && backEdgeThreshold > 0);
+		this.compilerPool = Validate.notNull(compilerPool);
+		this.invocationThreshold = invocationThreshold;
+		this.backEdgeThreshold = backEdgeThreshold;
+		this.compilers = Validate.notNull(compilers).clone();
+		for (MethodCompiler compiler : this.compilers) {
+			Validate.notNull(compiler);
+		}
+	}
+
+	@Override
+	public void framePushed(JvmFacade facade, Frame frame) {
+		MethodInfo method = frame.getMethod();
+		if (method != null) {
+			Profile profile = getProfile(method);
+			if (profile.invocations.incrementAndGet()
+					>= this.invocationThreshold) {
+				promote(profile);
+			}
+		}
+	}
+
+	@Override
+	public void branchTaken(JvmFacade facade, AbstractInsnNode branch,
+			AbstractInsnNode target) {
+		Frame frame = facade.getCurrentFrame();
+		MethodInfo method = frame == null ? null : frame.getMethod();
+		if (method == null) {
+			return;
+		}
+		Profile profile = getProfile(method);
+		Loop loop = profile.loops.get(target);
+		if (loop == null
+				|| method.getOffset(target) > method.getOffset(branch)) {
+			return; // Not a back edge
+		}
+		profile.backEdges.incrementAndGet();
+		CompiledCode code = loop.code;
+		if (code != null) {
+			this.pending.set(new Transfer(frame, target, code));
+		} else if (loop.backEdges.incrementAndGet() >= this.backEdgeThreshold) {
+			promote(profile, loop);
+		}
+	}
+
+	/**
+	 * Transfers the current frame of the given {@code facade} into compiled
+	 * code, unless the calling thread is executing compiled code already. If
+	 * the thread's last backward branch was to the header of a loop compiled
+	 * for on-stack replacement, and the frame is still about to execute the
+	 * header, the code for the loop is entered. Otherwise, the code for the
+	 * method's current tier is entered, if any. The code executes from the
+	 * current program counter until it returns, as when the frame is left.
+	 *
+	 * @return true iff the code changed the current frame or program counter,
+	 * false if it did not or if there was no code to enter
+	 * @throws NullPointerException if {@code facade == null}
+	 */
+	public boolean enter(JvmFacade facade) {
+		Frame frame = facade.getCurrentFrame();
+		AbstractInsnNode insn = facade.peekInstruction();
+		Transfer transfer = this.pending.get();
+		CompiledCode code = null;
+		if (transfer != null) {
+			this.pending.remove();
+			if (transfer.frame == frame && transfer.header == insn) {
+				code = transfer.code; // On-stack replacement
+			}
+		}
+		if (code == null) {
+			MethodInfo method = frame == null ? null : frame.getMethod();
+			Profile profile = method == null
+					? null : this.profiles.get(method);
+			code = profile == null ? null : profile.code;
+		}
+		if (code == null) {
+			return false;
+		}
+		return execute(code, facade) && (facade.getCurrentFrame() != frame
+				|| facade.peekInstruction() != insn);
+	}
+
+	/**
+	 * Returns the tier the given method was last promoted to, being {@link
+	 * ExecutionTier#INTERPRETER} if it was not promoted so far.
+	 *
+	 * @throws NullPointerException if {@code method == null}
+	 */
+	public ExecutionTier getTier(MethodInfo method) {
+		Profile profile = this.profiles.get(Validate.notNull(method));
+		return profile == null ? ExecutionTier.INTERPRETER : profile.getTier();
+	}
+
+	/**
+	 * Returns the code produced for the given method by the compiler of its
+	 * current tier, or null if it was not promoted so far.
+	 *
+	 * @throws NullPointerException if {@code method == null}
+	 */
+	public CompiledCode getCode(MethodInfo method) {
+		Profile profile = this.profiles.get(Validate.notNull(method));
+		return profile == null ? null : profile.code;
+	}
+
+	/**
+	 * Returns the profiles of all methods executed so far, in no particular
+	 * order.
+	 */
+	public List<Profile> getProfiles() {
+		return new ArrayList<>(this.profiles.values());
+	}
+
+	// Executes compiled code, unless already executing code
+	private boolean execute(CompiledCode code, JvmFacade facade) {
+		if (this.executing.get() != null) {
+			return false;
+		}
+		this.executing.set(Boolean.TRUE);
+		try {
+			code.execute(facade);
+		} finally {
+			this.executing.remove();
+		}
+		return true;
+	}
+
+	private Profile getProfile(MethodInfo method) {
+		Profile result = this.profiles.get(method);
+		if (result == null) {
+			result = new Profile(method);
+			Profile previous = this.profiles.putIfAbsent(method, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
+	// Queues the method for compilation by the next tier, unless already
+	// queued or at the last tier
+	private void promote(final Profile profile) {
+		final int level = profile.level;
+		if (level >= this.compilers.length || profile.stuck
+				|| !profile.compiling.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.compilerPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					compile(profile, level);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			profile.stuck = true;
+			profile.compiling.set(false);
+		}
+	}
+
+	// Queues the loop for compilation for on-stack replacement, unless
+	// already queued or compiled
+	private void promote(final Profile profile, final Loop loop) {
+		if (this.compilers.length == 0 || loop.stuck
+				|| !loop.compiling.compareAndSet(false, true)) {
+			return;
+		}
+		final MethodCompiler compiler = this.compilers[Math.min(profile.level,
+				this.compilers.length - 1)];
+		try {
+			this.compilerPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					compile(profile, loop, compiler);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loop.stuck = true;
+			loop.compiling.set(false);
+		}
+	}
+
+	// Runs on a compiler thread
+	private void compile(Profile profile, Loop loop, MethodCompiler compiler) {
+		long start = System.nanoTime();
+		CompiledCode code = null;
+		try {
+			code = compiler.compileLoop(profile.method, loop.header);
+		} catch (RuntimeException e) {
+			// Treated alike a rejected loop
+		} finally {
+			synchronized (profile) {
+				profile.compileNanos += System.nanoTime() - start;
+				if (code != null) {
+					profile.loopCompilations++;
+				}
+			}
+			if (code == null) {
+				loop.stuck = true;
+			} else {
+				loop.code = code;
+			}
+			loop.compiling.set(false);
+		}
+	}
+
+	// Runs on a compiler thread
+	private void compile(Profile profile, int level) {
+		MethodCompiler compiler = this.compilers[level];
+		long start = System.nanoTime();
+		CompiledCode code = null;
+		try {
+			code = compiler.compile(profile.method);
+		} catch (RuntimeException e) {
+			// Treated alike a rejected method
+		} finally {
+			synchronized (profile) {
+				profile.compileNanos += System.nanoTime() - start;
+				if (code == null) {
+					profile.stuck = true;
+				} else {
+					profile.compilations++;
+					profile.code = code;
+					profile.level = level + 1;
+					profile.invocations.set(0);
+				}
+			}
+			profile.compiling.set(false);
+		}
+	}
+
+	/**
+	 * Tiering state and statistics of a method.
+	 */
+	public final class Profile {
+
+		private final MethodInfo method;
+		private final Map<AbstractInsnNode, Loop> loops; // Keyed by header
+		private final AtomicInteger invocations = new AtomicInteger();
+		private final AtomicInteger backEdges = new AtomicInteger();
+		private final AtomicBoolean compiling = new AtomicBoolean();
+		private volatile int level;          // 0 for the interpreter
+		private volatile CompiledCode code;
+		private volatile boolean stuck;      // Not to be promoted further
+		private int compilations;            // Guarded by this
+		private int loopCompilations;        // Guarded by this
+		private long compileNanos;           // Guarded by this
+
+		private Profile(MethodInfo method) {
+			this.method = method;
+			this.loops = new HashMap<>();
+			for (AbstractInsnNode header : findLoopHeaders(
+					method.getInstructions())) {
+				this.loops.put(header, new Loop(header));
+			}
+		}
+
+		/**
+		 * Returns the profiled method.
+		 */
+		public MethodInfo getMethod() {
+			return this.method;
+		}
+
+		/**
+		 * Returns the tier the method was last promoted to.
+		 */
+		public ExecutionTier getTier() {
+			int level = this.level;
+			return level == 0 ? ExecutionTier.INTERPRETER
+					: TierController.this.compilers[level - 1].getTier();
+		}
+
+		/**
+		 * Returns the number of invocations since the method's last
+		 * promotion.
+		 */
+		public int getInvocations() {
+			return this.invocations.get();
+		}
+
+		/**
+		 * Returns the number of backward branches to loop headers taken,
+		 * including those transferring execution to compiled loops.
+		 */
+		public int getBackEdges() {
+			return this.backEdges.get();
+		}
+
+		/**
+		 * Returns true iff the method is queued for or undergoing compilation.
+		 */
+		public boolean isCompiling() {
+			return this.compiling.get();
+		}
+
+		/**
+		 * Returns true iff the method will not be promoted beyond its current
+		 * tier, as a compiler or the executor rejected it.
+		 */
+		public boolean isStuck() {
+			return this.stuck;
+		}
+
+		/**
+		 * Returns the number of successful compilations of the method.
+		 */
+		public synchronized int getCompilations() {
+			return this.compilations;
+		}
+
+		/**
+		 * Returns the number of loops of the method compiled for on-stack
+		 * replacement.
+		 */
+		public synchronized int getLoopCompilations() {
+			return this.loopCompilations;
+		}
+
+		/**
+		 * Returns the total time spent compiling the method and its loops in
+		 * nanoseconds, including failed attempts.
+		 */
+		public synchronized long getCompileNanos() {
+			return this.compileNanos;
+		}
+
+		@Override
+		public String toString() {
+			return this.method + " tier="
+					+ getTier().name().toLowerCase(Locale.ROOT)
+					+ " invocations=" + getInvocations() + " back_edges="
+					+ getBackEdges() + " compilations=" + getCompilations()
+					+ " loop_compilations=" + getLoopCompilations()
+					+ " compile_nanos=" + getCompileNanos()
+					+ (isCompiling() ? " compiling" : "")
+					+ (isStuck() ? " stuck" : "");
+		}
+	}
+
+	// State of a loop with respect to on-stack replacement
+	private static final class Loop {
+
+		private final AbstractInsnNode header;
+		private final AtomicInteger backEdges = new AtomicInteger();
+		private final AtomicBoolean compiling = new AtomicBoolean();
+		private volatile CompiledCode code;
+		private volatile boolean stuck;
+
+		private Loop(AbstractInsnNode header) {
+			this.header = header;
+		}
+	}
+
+	// Transfer into a compiled loop, pending until the thread next enters
+	private static final class Transfer {
+
+		private final Frame frame;
+		private final AbstractInsnNode header;
+		private final CompiledCode code;
+
+		private Transfer(Frame frame, AbstractInsnNode header,
+				CompiledCode code) {
+			this.frame = frame;
+			this.header = header;
+			this.code = code;
+		}
+	}
+
+	/*
+	 * Finds the targets of the backward branches among the given
+	 * instructions, a branch being backward if its target does not follow it.
+	 */
+	private static Set<AbstractInsnNode> findLoopHeaders(InsnList insns) {
+		Set<AbstractInsnNode> result = new HashSet<>();
+		for (AbstractInsnNode insn = insns.getFirst(); insn != null;
+				insn = insn.getNext()) {
+			List<AbstractInsnNode> targets;
+			if (insn instanceof JumpInsnNode) {
+				targets = Arrays.asList(Instructions.getNext(
+						((JumpInsnNode)insn).label));
+			} else if (insn instanceof TableSwitchInsnNode
+					|| insn instanceof LookupSwitchInsnNode) {
+				targets = Arrays.asList(SwitchTable.forInsn(insn).getTargets());
+			} else {
+				continue;
+			}
+			int index = insns.indexOf(insn);
+			for (AbstractInsnNode target : targets) {
+				if (target != null && insns.indexOf(target) <= index) {
+					result.add(target);
+				}
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.jvm.mini.impl;
+
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.JvmInterpreter;
+import com.jvm.mini.util.Validate;
+
+/**
+ * {@link JvmInterpreter} executing methods promoted by a {@link
+ * TierController} in their compiled tiers, and interpreting all others.
+ * <p>
+ * Before each instruction, the controller is given the opportunity to
+ * transfer the current frame into compiled code (see {@link
+ * TierController#enter}), be it for an invocation of a promoted method or for
+ * on-stack replacement after a backward branch, the decorated interpreter
+ * executing the instruction otherwise. A single step may thereby execute
+ * many instructions. The controller must be registered as a listener with
+ * the decorated interpreter, so as to count invocations and back edges.
+ * Typical usage is as follows:
+ * <pre>
+ * listeners.add(controller);
+ * JvmInterpreter interpreter = new TieredJvmInterpreter(
+ *     new ListeningJvmInterpreter(facade, listeners), controller);
+ * </pre>
+ *
+ * @author Arno Bastenhof
+ */
+public final class TieredJvmInterpreter implements JvmInterpreter {
+
+	private final JvmInterpreter interpreter;
+	private final TierController controller;
+
+	/**
+	 * @param interpreter the interpreter for the instructions not executed
+	 * by compiled code
+	 * @param controller the controller listening to {@code interpreter}
+	 * @throws NullPointerException if any argument is null
+	 */
+	public TieredJvmInterpreter(JvmInterpreter interpreter,
+			TierController controller) {
+		this.interpreter = Validate.notNull(interpreter);
+		this.controller = Validate.notNull(controller);
+	}
+
+	/**
+	 * Executes the next instruction, along with any following it in the
+	 * same compiled code.
+	 *
+	 * @throws IllegalStateException if {@link #hasNext()} returns false
+	 */
+	@Override
+	public void next() {
+		if (!this.controller.enter(this.interpreter.getFacade())) {
+			this.interpreter.next();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.interpreter.hasNext();
+	}
+
+	@Override
+	public void run() {
+		while (hasNext()) {
+			next();
+		}
+	}
+
+	@Override
+	public JvmFacade getFacade() {
+		return this.interpreter.getFacade();
+	}
+
+}
@@ -0,0 +1,267 @@
+package com.jvm.mini.main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.JvmInterpreter;
+import com.jvm.mini.impl.GuestException;
+import com.jvm.mini.impl.InsnVisitorImpl;
+import com.jvm.mini.impl.JvmInterpreterImpl;
+import com.jvm.mini.impl.ListeningJvmInterpreter;
+import com.jvm.mini.impl.LiveHostInput;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.QuotaJvmFacade;
+import com.jvm.mini.impl.ResourceQuota;
+import com.jvm.mini.impl.TierController;
+import com.jvm.mini.impl.TieredJvmInterpreter;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Repeatedly executes a main method for measuring its performance, running a
+ * number of unmeasured warmup iterations first.
+ * <p>
+ * The method is decoded once, while every iteration runs on a fresh {@link
+ * JvmFacade}. Without a {@link TierController}, iterations run without any
+ * listeners, counting instructions in the interpreter loop itself. Static
+ * state persists across iterations, so that class initialization is only
+ * paid for by the first. Allocations are measured as the bytes allocated on
+ * the host heap by the benchmarking thread, where supported by the host JVM.
+ * <p>
+ * Given a {@link TierController}, iterations run in a {@link
+ * TieredJvmInterpreter} instead, the controller's profiles and compiled code
+ * persisting across iterations. The time taken by the warmup iterations then
+ * reflects the warmup of the compiled tiers, and that of the measured
+ * iterations their peak throughput. As the controller profiles by listening
+ * to a {@link ListeningJvmInterpreter}, the times of interpreted code then
+ * include the dispatch of every instruction to the controller, which the
+ * plain interpreter does not pay for; compiled code does not dispatch
+ * instructions. As compiled code executes several instructions per step,
+ * instructions are counted by a {@link QuotaJvmFacade} without limits.
+ *
+ * @author Arno Bastenhof
+ */
+public final class Benchmark {
+
+	private final MethodInfo main;
+	private final String[] args;
+	private final int warmup;
+	private final int iterations;
+	private final TierController controller;   // Allowed to be null
+
+	/**
+	 * @param main the main method to execute
+	 * @param args the program arguments
+	 * @param warmup the number of unmeasured iterations
+	 * @param iterations the number of measured iterations
+	 * @throws NullPointerException if {@code main} or {@code args} is null
+	 * @throws IllegalArgumentException if {@code warmup < 0 || iterations <=
+	 * 0}
+	 */
+	public Benchmark(MethodInfo main, String[] args, int warmup,
+			int iterations) {
+		this(main, args, warmup, iterations, null);
+	}
+
+	/**
+	 * @param main the main method to execute
+	 * @param args the program arguments
+	 * @param warmup the number of unmeasured iterations
+	 * @param iterations the number of measured iterations
+	 * @param controller the controller promoting hot methods to compiled
+	 * tiers, or null for interpreting only
+	 * @throws NullPointerException if {@code main} or {@code args} is null
+	 * @throws IllegalArgumentException if {@code warmup < 0 || iterations <=
+	 * 0}
+	 */
+	public Benchmark(MethodInfo main, String[] args, int warmup,
+			int iterations, TierController controller) {
+		Validate.argument(warmup >= 0 && iterations > 0);
+		this.main = Validate.notNull(main);
+		this.args = Validate.notNull(args).clone();
+		this.warmup = warmup;
+		this.iterations = iterations;
+		this.controller = controller;
+	}
+
+	/**
+	 * Runs the warmup and measured iterations, stopping early at the first
+	 * iteration ending with an uncaught exception.
+	 */
+	public Report run() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean allocations =
+				threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean)threads)
+						.isThreadAllocatedMemorySupported()
+				? (com.sun.management.ThreadMXBean)threads : null;
+		long thread = Thread.currentThread().getId();
+
+		long warmupStart = System.nanoTime();
+		for (int i = 0; i < this.warmup; i++) {
+			JvmFacade facade = iterate(new long[1]);
+			if (facade.getUncaughtException() != null) {
+				return new Report(System.nanoTime() - warmupStart,
+						new long[0], 0, -1, facade.getUncaughtException());
+			}
+		}
+		long warmupNanos = System.nanoTime() - warmupStart;
+		long[] nanos = new long[this.iterations];
+		long[] instructions = new long[1];
+		long allocated = allocations == null
+				? -1 : allocations.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < this.iterations; i++) {
+			long start = System.nanoTime();
+			JvmFacade facade = iterate(instructions);
+			nanos[i] = System.nanoTime() - start;
+			if (facade.getUncaughtException() != null) {
+				return new Report(warmupNanos, Arrays.copyOf(nanos, i + 1),
+						instructions[0], -1, facade.getUncaughtException());
+			}
+		}
+		if (allocated >= 0) {
+			allocated = allocations.getThreadAllocatedBytes(thread)
+					- allocated;
+		}
+		return new Report(warmupNanos, nanos, instructions[0], allocated,
+				null);
+	}
+
+	// Executes a single iteration, adding to the instruction count
+	private JvmFacade iterate(long[] instructions) {
+		JvmFacade facade = JvmInitializer.INSTANCE.init(this.main, this.args,
+				LiveHostInput.INSTANCE);
+		if (this.controller != null) {
+			QuotaJvmFacade counter = new QuotaJvmFacade(facade,
+					ResourceQuota.UNLIMITED);
+			new TieredJvmInterpreter(new ListeningJvmInterpreter(counter,
+					Collections.singletonList(this.controller)),
+					this.controller).run();
+			instructions[0] += counter.getInstructions();
+			return facade;
+		}
+		JvmInterpreter interpreter = new JvmInterpreterImpl(facade,
+				new InsnVisitorImpl(facade));
+		long count = 0;
+		while (interpreter.hasNext()) {
+			interpreter.next();
+			count++;
+		}
+		instructions[0] += count;
+		return facade;
+	}
+
+	/**
+	 * Statistics over the measured iterations of a {@link Benchmark}.
+	 */
+	public static final class Report {
+
+		private final long warmupNanos;
+		private final long[] nanos; // Sorted
+		private final long instructions;
+		private final long allocated;
+		private final GuestException exception;
+
+		private Report(long warmupNanos, long[] nanos, long instructions,
+				long allocated, GuestException exception) {
+			this.warmupNanos = warmupNanos;
+			this.nanos = nanos;
+			Arrays.sort(this.nanos);
+			this.instructions = instructions;
+			this.allocated = allocated;
+			this.exception = exception;
+		}
+
+		/**
+		 * Returns the number of measured iterations completed.
+		 */
+		public int getIterations() {
+			return this.nanos.length;
+		}
+
+		/**
+		 * Returns the total wall time of the warmup iterations in
+		 * nanoseconds.
+		 */
+		public long getWarmupNanos() {
+			return this.warmupNanos;
+		}
+
+		/**
+		 * Returns the wall time of the iteration at the given percentile in
+		 * nanoseconds, using the nearest-rank method, or 0 if no iteration was
+		 * measured.
+		 *
+		 * @param percentile a number in the range (0, 100]
+		 * @throws IllegalArgumentException if {@code percentile} is out of
+		 * range
+		 */
+		public long getNanos(double percentile) {
+			Validate.argument(percentile > 0 && percentile <= 100);
+			if (this.nanos.length == 0) {
+				return 0;
+			}
+			int rank = (int)Math.ceil(percentile / 100 * this.nanos.length);
+			return this.nanos[Math.max(rank, 1) - 1];
+		}
+
+		/**
+		 * Returns the mean number of instructions executed per iteration.
+		 */
+		public long getInstructionsPerIteration() {
+			return this.nanos.length == 0
+					? 0 : this.instructions / this.nanos.length;
+		}
+
+		/**
+		 * Returns the number of instructions executed per second of wall
+		 * time, over all measured iterations.
+		 */
+		public double getInstructionsPerSecond() {
+			long total = 0;
+			for (long n : this.nanos) {
+				total += n;
+			}
+			return total == 0 ? 0 : this.instructions * 1e9 / total;
+		}
+
+		/**
+		 * Returns the mean number of bytes allocated on the host heap per
+		 * iteration, or -1 if unknown.
+		 */
+		public long getAllocatedPerIteration() {
+			return this.allocated < 0 || this.nanos.length == 0
+					? -1 : this.allocated / this.nanos.length;
+		}
+
+		/**
+		 * Returns the exception that ended the last iteration, if any, in
+		 * which case the benchmark was stopped early.
+		 */
+		public GuestException getUncaughtException() {
+			return this.exception;
+		}
+
+		@Override
+		public String toString() {
+			long allocated = getAllocatedPerIteration();
+			return String.format(Locale.ROOT, "warmup=%.3fms iterations=%d"
+					+ " min=%.3fms median=%.3fms p99=%.3fms max=%.3fms"
+					+ " instructions=%d instructions/s=%.0f allocated=%s",
+					millis(this.warmupNanos), this.nanos.length,
+					millis(getNanos(Double.MIN_VALUE)),
+					millis(getNanos(50)), millis(getNanos(99)),
+					millis(getNanos(100)), getInstructionsPerIteration(),
+					getInstructionsPerSecond(), allocated < 0
+							? "n/a" : allocated + "B");
+		}
+
+		private static double millis(long nanos) {
+			return nanos / 1e6;
+		}
+	}
+
+}
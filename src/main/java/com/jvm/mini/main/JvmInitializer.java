@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 import org.objectweb.asm.ClassReader;
@@ -11,8 +12,18 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.api.HostInput;
+import com.jvm.mini.api.HostInput.Kind;
+import com.jvm.mini.api.HostInput.Source;
 import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.impl.ClassRegistry;
 import com.jvm.mini.impl.JvmFacadeImpl;
+import com.jvm.mini.impl.LiveHostInput;
+import com.jvm.mini.impl.MemoryClassSource;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.OutputBridge;
+import com.jvm.mini.impl.RuntimeClass;
 import com.jvm.mini.util.Validate;
 
 /**
@@ -39,6 +50,71 @@ public enum JvmInitializer {
 	 * @throws IOException
 	 */
 	public JvmFacade init(File classFile) throws IOException {
+		return init(classFile, new String[0], LiveHostInput.INSTANCE);
+	}
+
+	/**
+	 * Returns an initialized {@link JvmFacade} for the given class file
+	 * contents, without going through the file system.
+	 *
+	 * @param classFile the contents of the class file to be loaded
+	 * @throws NullPointerException if {@code classFile == null}
+	 * @throws IllegalArgumentException if {@code classFile} could not be
+	 * parsed
+	 */
+	public JvmFacade init(byte[] classFile) {
+		return init(MemoryClassSource.parse(classFile));
+	}
+
+	/**
+	 * Returns an initialized {@link JvmFacade} for the class file contents
+	 * remaining in the given buffer, leaving its position unchanged.
+	 *
+	 * @param classFile the contents of the class file to be loaded
+	 * @throws NullPointerException if {@code classFile == null}
+	 * @throws IllegalArgumentException if {@code classFile} could not be
+	 * parsed
+	 */
+	public JvmFacade init(ByteBuffer classFile) {
+		return init(MemoryClassSource.parse(classFile));
+	}
+
+	/**
+	 * Returns an initialized {@link JvmFacade} for the given, already parsed
+	 * class.
+	 *
+	 * @param clazz the class to be loaded
+	 * @throws NullPointerException if {@code clazz == null}
+	 */
+	public JvmFacade init(ClassNode clazz) {
+		return init(loadMainMethod(clazz), new String[0],
+				LiveHostInput.INSTANCE);
+	}
+
+	/**
+	 * Returns an initialized {@link JvmFacade} for the specified class file,
+	 * passing the given {@code args} to its main method.
+	 *
+	 * @param classFile the class file to be loaded
+	 * @param args the program arguments
+	 * @param hostInput the source of nondeterministic inputs, through which
+	 * {@code args} are read as well
+	 * @throws IOException
+	 */
+	public JvmFacade init(File classFile, String[] args, HostInput hostInput)
+			throws IOException {
+		return init(loadMainMethod(classFile), args, hostInput);
+	}
+
+	/**
+	 * Loads the specified class file and decodes its main method, allowing the
+	 * result to be executed any number of times through {@link
+	 * #init(MethodInfo, String[], HostInput)}.
+	 *
+	 * @param classFile the class file to be loaded
+	 * @throws IOException
+	 */
+	public MethodInfo loadMainMethod(File classFile) throws IOException {
 		// Validate preconditions
 		Validate.notNull(classFile);
 
@@ -51,15 +127,113 @@ public enum JvmInitializer {
 			throw new IOException(
 					String.format(ERROR_MAIN_CLASS, classFile.toString()), e);
 		}
+		return loadMainMethod(clazz);
+	}
+
+	/**
+	 * Loads the class with the specified fully qualified name from the given
+	 * {@code source} and decodes its main method.
+	 *
+	 * @param source the source to load the class from
+	 * @param className the fully qualified name of the class
+	 * @throws NullPointerException if {@code source} or {@code className} is
+	 * null
+	 * @throws IOException if {@code source} does not define the class or
+	 * failed to read it
+	 */
+	public MethodInfo loadMainMethod(ClassSource source, String className)
+			throws IOException {
+		return loadMainMethod(new ClassRegistry(Validate.notNull(source)),
+				className);
+	}
+
+	/**
+	 * Loads the class with the specified fully qualified name through the
+	 * given {@code registry} and decodes its main method. Executions of the
+	 * result share the static state of all classes in {@code registry}.
+	 *
+	 * @param registry the registry to load the class through
+	 * @param className the fully qualified name of the class
+	 * @throws NullPointerException if {@code registry} or {@code className}
+	 * is null
+	 * @throws IOException if the class is not defined or could not be read
+	 */
+	public MethodInfo loadMainMethod(ClassRegistry registry, String className)
+			throws IOException {
+		RuntimeClass clazz = Validate.notNull(registry).getClass(
+				className.replace('.', '/'));
+		if (clazz == null) {
+			throw new IOException(String.format(ERROR_MAIN_CLASS, className));
+		}
+		return loadMainMethod(clazz);
+	}
 
-		// TODO Process static initializers (<clinit>)
+	/**
+	 * Decodes the main method of the given, already parsed class. Field and
+	 * method references to other classes will not resolve.
+	 *
+	 * @param clazz the class to be loaded
+	 * @throws NullPointerException if {@code clazz == null}
+	 */
+	public MethodInfo loadMainMethod(ClassNode clazz) {
+		try {
+			return loadMainMethod(new ClassRegistry(null).define(
+					Validate.notNull(clazz)));
+		} catch (IOException e) {
+			throw new AssertionError(e); // No classes are read
+		}
+	}
 
-		// Find main method
-		MethodNode method = findMainMethod(clazz);
-		Validate.argument(method != null, ERROR_MAIN_METHOD);
+	/**
+	 * Returns an initialized {@link JvmFacade} for executing the specified
+	 * main method, initializing its class first unless this already happened.
+	 * As all execution state other than that of static fields is held by the
+	 * facade, the same method may be executed by any number of facades
+	 * concurrently.
+	 *
+	 * @param main the main method, as returned by {@link
+	 * #loadMainMethod(File)}
+	 * @param args the program arguments
+	 * @param hostInput the source of nondeterministic inputs, through which
+	 * {@code args} are read as well
+	 */
+	public JvmFacade init(MethodInfo main, String[] args, HostInput hostInput) {
+		return init(main, args, hostInput, OutputBridge.getStandardOutput(),
+				OutputBridge.getStandardError());
+	}
+
+	/**
+	 * As {@link #init(MethodInfo, String[], HostInput)}, writing the guest's
+	 * {@code System.out} and {@code System.err} to the given bridges rather
+	 * than to those shared with other guests.
+	 *
+	 * @param main the main method, as returned by {@link
+	 * #loadMainMethod(File)}
+	 * @param args the program arguments
+	 * @param hostInput the source of nondeterministic inputs, through which
+	 * {@code args} are read as well
+	 * @param out the bridge for the guest's standard output
+	 * @param err the bridge for the guest's standard error
+	 */
+	public JvmFacade init(MethodInfo main, String[] args, HostInput hostInput,
+			OutputBridge out, OutputBridge err) {
+		// Validate preconditions
+		Validate.notNull(main);
+		Validate.notNull(args);
+		Validate.notNull(hostInput);
+		Validate.notNull(out);
+		Validate.notNull(err);
 
 		// Create and initialize a facade for the VM's internals
-		return initialize(method);
+		return initialize(main, readArguments(args, hostInput),
+				new JvmFacadeImpl(hostInput, out, err));
+	}
+
+	// Decodes the main method, its class being initialized upon execution
+	private MethodInfo loadMainMethod(RuntimeClass clazz) {
+		MethodNode method = findMainMethod(clazz.getNode());
+		Validate.argument(method != null, ERROR_MAIN_METHOD);
+		return clazz.getMethod(method.name, method.desc);
 	}
 
 	private ClassNode loadInitialClass(InputStream is)
@@ -87,10 +261,35 @@ public enum JvmInitializer {
 		return (method.access & modifier) != 0;
 	}
 
-	private JvmFacadeImpl initialize(MethodNode method) {
-		JvmFacadeImpl facade = new JvmFacadeImpl();
-		facade.pushFrame(method.maxStack, method.maxLocals, new Object[]{});
-		facade.jump(method.instructions.getFirst());
+	// Reads the program arguments as nondeterministic inputs
+	private String[] readArguments(final String[] args, HostInput hostInput) {
+		int size = (int)hostInput.readLong(Kind.ARGUMENT, new Source() {
+			@Override
+			public long read() {
+				return args.length;
+			}
+		});
+		String[] result = new String[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = hostInput.readString(Kind.ARGUMENT,
+					i < args.length ? args[i] : null);
+		}
+		return result;
+	}
+
+	private JvmFacadeImpl initialize(MethodInfo main, String[] args,
+			JvmFacadeImpl facade) {
+		facade.pushFrame(main, new Object[]{});
+		if (main.getMaxLocals() > 0) {
+			facade.store(0, args); // Local 0 holds the String[] parameter
+		}
+		facade.jump(main.getFirstInstruction());
+
+		// Initialize the main class before invoking its main method
+		RuntimeClass mainClass = main.getConstantPool().getRuntimeClass();
+		if (mainClass != null) {
+			facade.initialize(mainClass);
+		}
 		return facade;
 	}
 
@@ -1,13 +1,66 @@
 package com.jvm.mini.main;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.api.ExecutionListener;
+import com.jvm.mini.api.ExecutionTier;
+import com.jvm.mini.api.HostInput;
 import com.jvm.mini.api.JvmFacade;
 import com.jvm.mini.api.JvmInterpreter;
+import com.jvm.mini.impl.ClassPath;
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.Frame;
+import com.jvm.mini.impl.GuestException;
+import com.jvm.mini.impl.HandleCompiler;
 import com.jvm.mini.impl.InsnVisitorImpl;
 import com.jvm.mini.impl.JvmInterpreterImpl;
-import com.jvm.mini.util.Instructions;
+import com.jvm.mini.impl.ListeningJvmInterpreter;
+import com.jvm.mini.impl.LiveHostInput;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.OutputBridge;
+import com.jvm.mini.impl.OutputBridge.FlushPolicy;
+import com.jvm.mini.impl.QuotaExceededException;
+import com.jvm.mini.impl.QuotaJvmFacade;
+import com.jvm.mini.impl.ResourceQuota;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.impl.Snapshot;
+import com.jvm.mini.impl.StandardStream;
+import com.jvm.mini.impl.TierController;
+import com.jvm.mini.impl.TieredJvmInterpreter;
+import com.jvm.mini.server.ClassCache;
+import com.jvm.mini.server.ExecutionServer;
+import com.jvm.mini.tools.CoverageCollector;
+import com.jvm.mini.tools.Debugger;
+import com.jvm.mini.tools.InputRecorder;
+import com.jvm.mini.tools.InputReplayer;
+import com.jvm.mini.tools.MetricsListener;
+import com.jvm.mini.tools.MetricsRegistry;
+import com.jvm.mini.tools.MetricsReporter;
+import com.jvm.mini.tools.TraceListener;
+import com.jvm.mini.tools.TraceWriter;
 
 /**
  * Main Class.
@@ -17,8 +70,52 @@ import com.jvm.mini.util.Instructions;
 public final class Main {
 
 	private static final String USAGE = "Usage: "
-			+ "java -jar mini-jvm-<version>.jar class (to execute a class)";
-	private static final String CLASS_EXTENSION = ".class";
+			+ "java -jar mini-jvm-<version>.jar [options] class [args...] "
+			+ "(to execute a class)\n"
+			+ "where options include:\n"
+			+ "    -cp <path>  directories and JARs to load classes from\n"
+			+ "    -preload    parse all classes on the class path up front\n"
+			+ "    -notrace    do not print a debugging trace\n"
+			+ "    -tracefile <file>  write a compressed binary trace to file\n"
+			+ "                  rather than printing it (see TraceQuery)\n"
+			+ "    -debug      debug the class, reading commands from stdin\n"
+			+ "    -record <file>  record the nondeterministic inputs to file\n"
+			+ "    -replay <file>  replay the inputs recorded in file\n"
+			+ "    -coverage <file>  write basic block coverage to file (LCOV)\n"
+			+ "    -metrics <file>  report runtime metrics to file and over JMX\n"
+			+ "    -bench <n>  time n runs without tracing and print statistics\n"
+			+ "    -warmup <n>  precede -bench by n unmeasured runs (default 5)\n"
+			+ "    -tier <tier>  promote hot methods up to tier interpreter\n"
+			+ "                  (default) or method_handles, the latter\n"
+			+ "                  requiring -notrace and no -metrics unless\n"
+			+ "                  combined with -bench\n"
+			+ "    -outbuf <n>  buffer n bytes of guest output (default 65536)\n"
+			+ "    -outflush <policy>  write out guest output per line (default\n"
+			+ "                  when printing a trace or debugging), upon\n"
+			+ "                  explicit flushes (default otherwise), or only\n"
+			+ "                  at exit\n"
+			+ "    -checkpoint <file>  write a snapshot of the guest to file once\n"
+			+ "                  its main class is initialized, and exit\n"
+			+ "    -checkpointat <n>  take the checkpoint after n steps instead\n"
+			+ "    -maxinsns <n>  terminate after executing n instructions\n"
+			+ "    -maxdepth <n>  terminate upon exceeding n frames\n"
+			+ "    -maxallocs <n>  terminate upon allocating n objects\n"
+			+ "or  java -jar mini-jvm-<version>.jar [options] -restore <file>\n"
+			+ "(to resume a guest from a snapshot, loading its classes anew)\n"
+			+ "or  java -jar mini-jvm-<version>.jar -server <port> [-cp <path>]\n"
+			+ "        [-preload] [-metrics <file>] [-maxinsns <n>]\n"
+			+ "        [-maxdepth <n>] [-maxallocs <n>]\n"
+			+ "(to serve requests for executing classes on a local port)";
+
+	// Creates daemon threads for compiling hot methods in the background
+	private static final ThreadFactory COMPILER_THREADS = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread result = new Thread(task, "compiler");
+			result.setDaemon(true);
+			return result;
+		}
+	};
 
 	// Private constructor to prevent instantiation
 	private Main() {
@@ -27,39 +124,446 @@ public final class Main {
 
 	// TODO Error handling
 	public static void main(String[] args) throws IOException {
+		// Parse options
+		List<ExecutionListener> listeners = new ArrayList<>();
+		boolean trace = true;
+		boolean debug = false;
+		String traceFile = null;
+		String checkpoint = null;
+		long checkpointAt = -1;
+		String restore = null;
+		String record = null;
+		String replay = null;
+		String coverage = null;
+		String metrics = null;
+		String classPath = ".";
+		boolean preload = false;
+		int bench = 0;
+		int warmup = 5;
+		ExecutionTier tier = ExecutionTier.INTERPRETER;
+		int outputBuffer = OutputBridge.DEFAULT_BUFFER_SIZE;
+		FlushPolicy flushPolicy = null;
+		long maxInstructions = Long.MAX_VALUE;
+		int maxStackDepth = Integer.MAX_VALUE;
+		long maxAllocations = Long.MAX_VALUE;
+		int port = -1;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			switch (args[i]) {
+			case "-notrace":
+				trace = false;
+				break;
+			case "-debug":
+				debug = true;
+				break;
+			case "-checkpoint":
+				checkpoint = ++i < args.length ? args[i] : null;
+				if (checkpoint == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-checkpointat":
+				checkpointAt = ++i < args.length ? parseLimit(args[i]) : -1;
+				if (checkpointAt < 0) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-restore":
+				restore = ++i < args.length ? args[i] : null;
+				if (restore == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-tracefile":
+				traceFile = ++i < args.length ? args[i] : null;
+				if (traceFile == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-cp":
+			case "-classpath":
+				classPath = ++i < args.length ? args[i] : null;
+				if (classPath == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-preload":
+				preload = true;
+				break;
+			case "-record":
+				record = ++i < args.length ? args[i] : null;
+				if (record == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-replay":
+				replay = ++i < args.length ? args[i] : null;
+				if (replay == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-coverage":
+				coverage = ++i < args.length ? args[i] : null;
+				if (coverage == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-metrics":
+				metrics = ++i < args.length ? args[i] : null;
+				if (metrics == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-bench":
+				bench = ++i < args.length ? parseCount(args[i]) : -1;
+				if (bench < 1) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-warmup":
+				warmup = ++i < args.length ? parseCount(args[i]) : -1;
+				if (warmup < 0) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-tier":
+				tier = ++i < args.length ? parseTier(args[i]) : null;
+				if (tier == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-outbuf":
+				outputBuffer = ++i < args.length ? parseCount(args[i]) : -1;
+				if (outputBuffer < OutputBridge.MIN_BUFFER_SIZE) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-outflush":
+				flushPolicy = ++i < args.length
+						? parseFlushPolicy(args[i]) : null;
+				if (flushPolicy == null) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-maxinsns":
+				maxInstructions = ++i < args.length ? parseLimit(args[i]) : -1;
+				if (maxInstructions < 0) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-maxdepth":
+				maxStackDepth = ++i < args.length ? parseCount(args[i]) : -1;
+				if (maxStackDepth < 0) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-maxallocs":
+				maxAllocations = ++i < args.length ? parseLimit(args[i]) : -1;
+				if (maxAllocations < 0) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			case "-server":
+				try {
+					port = Integer.parseInt(args[++i]);
+				} catch (ArrayIndexOutOfBoundsException
+						| NumberFormatException e) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			default:
+				System.out.println(USAGE);
+				return;
+			}
+		}
+		ResourceQuota quota = new ResourceQuota(maxInstructions,
+				maxStackDepth, maxAllocations);
+		ClassPath source = loadClassPath(classPath, preload);
+		if (port >= 0) {
+			serve(source, port, metrics, quota);
+			return;
+		}
+		if (trace && traceFile == null) {
+			listeners.add(new TraceListener(System.out));
+		}
+		if (flushPolicy == null) {
+			// Keep guest output in line with what the host prints to stdout
+			flushPolicy = debug || trace && traceFile == null
+					? FlushPolicy.LINE : FlushPolicy.EXPLICIT;
+		}
+		MetricsRegistry registry = null;
+		if (metrics != null) {
+			registry = new MetricsRegistry();
+			listeners.add(new MetricsListener(registry));
+		}
+
+		// Compiled code does not notify listeners of individual instructions
+		if (tier != ExecutionTier.INTERPRETER && bench == 0
+				&& (trace || metrics != null)) {
+			System.out.println("-tier " + tier.name().toLowerCase(Locale.ROOT)
+					+ " requires -notrace and no -metrics, as compiled code is"
+					+ " not traced or counted per instruction");
+			return;
+		}
+
 		// Verify no. of command-line arguments
-		if (args.length == 0) {
+		if (restore == null ? i == args.length : i < args.length || bench > 0) {
 			System.out.println(USAGE);
 			return;
 		}
 
-		// Create a new JVM instance
-		File classFile = new File(getFileName(args[0]));
-		JvmFacade facade = JvmInitializer.INSTANCE.init(classFile);
+		// Create a new JVM instance and execute
+		ClassRegistry classes = new ClassRegistry(source);
+		MethodInfo main = restore != null ? null
+				: JvmInitializer.INSTANCE.loadMainMethod(classes, args[i]);
+		String[] programArgs = restore != null ? new String[0]
+				: Arrays.copyOfRange(args, i + 1, args.length);
+		TierController controller = tier == ExecutionTier.INTERPRETER ? null
+				: new TierController(
+						Executors.newSingleThreadExecutor(COMPILER_THREADS),
+						TierController.DEFAULT_INVOCATION_THRESHOLD,
+						TierController.DEFAULT_BACK_EDGE_THRESHOLD,
+						new HandleCompiler());
+		if (bench > 0) {
+			Benchmark.Report report = new Benchmark(main, programArgs, warmup,
+					bench, controller).run();
+			System.out.println(args[i] + " " + report);
+			printUncaughtException(report.getUncaughtException());
+			return;
+		}
+		try (HostInput hostInput = record != null
+				? new InputRecorder(new FileOutputStream(record))
+				: replay != null
+				? new InputReplayer(new FileInputStream(replay))
+				: LiveHostInput.INSTANCE;
+				TraceWriter tracer = trace && traceFile != null
+				? new TraceWriter(FileChannel.open(Paths.get(traceFile),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING))
+				: null) {
+			if (tracer != null) {
+				listeners.add(tracer);
+			}
+			OutputBridge out = new OutputBridge(new FileOutputStream(
+					FileDescriptor.out).getChannel(), outputBuffer, flushPolicy);
+			OutputBridge err = new OutputBridge(new FileOutputStream(
+					FileDescriptor.err).getChannel(), outputBuffer, flushPolicy);
+			JvmFacade facade;
+			if (restore != null) {
+				try (InputStream in = new FileInputStream(restore)) {
+					facade = new QuotaJvmFacade(Snapshot.restore(in, classes,
+							hostInput, out, err), quota);
+				}
+			} else {
+				facade = new QuotaJvmFacade(JvmInitializer.INSTANCE.init(main,
+						programArgs, hostInput, out, err), quota);
+			}
+			if (checkpoint != null) {
+				checkpoint(facade, classes, checkpoint, checkpointAt);
+				return;
+			}
+			CoverageCollector collector = null;
+			if (coverage != null) {
+				collector = new CoverageCollector();
+				collector.instrument(classes);
+			}
+			if (registry == null) {
+				execute(facade, classes, listeners, controller, debug);
+			} else {
+				registry.register();
+				try (MetricsReporter reporter = new MetricsReporter(registry,
+						new File(metrics), 1, TimeUnit.SECONDS)) {
+					// Only interpreted, as -metrics rules out compiled tiers
+					long start = System.nanoTime();
+					execute(facade, classes, listeners, controller, debug);
+					registry.addTime(ExecutionTier.INTERPRETER,
+							System.nanoTime() - start);
+				} finally {
+					registry.unregister();
+				}
+			}
+			if (collector != null) {
+				try (Writer writer = new OutputStreamWriter(
+						new FileOutputStream(coverage), StandardCharsets.UTF_8)) {
+					collector.writeLcov(writer);
+				}
+			}
+		}
+	}
+
+	// Parses a nonnegative count, returning -1 if invalid
+	private static int parseCount(String count) {
+		try {
+			return Integer.parseInt(count);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// Parses the name of an execution tier, returning null if invalid
+	private static ExecutionTier parseTier(String tier) {
+		try {
+			return ExecutionTier.valueOf(tier.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
 
-		// Execute
-		execute(facade);
+	// Parses the name of a flush policy, returning null if invalid
+	private static FlushPolicy parseFlushPolicy(String policy) {
+		try {
+			return FlushPolicy.valueOf(policy.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
 	}
 
-	// Converts a fully qualified class name to a relative path
-	private static String getFileName(String fqc) {
-		return fqc.replaceAll("\\.", File.separator).concat(CLASS_EXTENSION);
+	// Parses a nonnegative limit, returning -1 if invalid
+	private static long parseLimit(String limit) {
+		try {
+			return Long.parseLong(limit);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 
-	private static void execute(JvmFacade facade) throws IOException {
-		JvmInterpreter interpreter = new JvmInterpreterImpl(
-				facade,	new InsnVisitorImpl(facade));
-		while (interpreter.hasNext()) {
-			// Print debugging information
-			String line = new StringBuilder()
-				.append(String.format("%15s ", facade.getOperandTypes()))
-				.append(String.format("%20s    ", facade.peekOperand()))
-				.append(Instructions.toString(facade.peekInstruction()))
-				.toString();
-			System.out.println(line);
-
-			// Execute
-			interpreter.next();
+	// Parses the class path, parsing all classes in parallel if requested
+	private static ClassPath loadClassPath(String path, boolean preload)
+			throws IOException {
+		ClassPath result = ClassPath.parse(path);
+		if (preload) {
+			ForkJoinPool pool = new ForkJoinPool();
+			try {
+				result.preload(pool);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return result;
+	}
+
+	// Serves requests for executing classes from the class path
+	private static void serve(ClassSource source, int port, String metrics,
+			ResourceQuota quota) throws IOException {
+		final MetricsRegistry registry = new MetricsRegistry();
+		registry.register();
+		try (ExecutionServer server = new ExecutionServer(
+					new ClassCache(source),
+					registry, port, Runtime.getRuntime().availableProcessors(),
+					quota);
+				Closeable reporter = metrics == null ? null
+					: new MetricsReporter(registry, new File(metrics), 1,
+							TimeUnit.SECONDS)) {
+			System.out.println("Listening on port " + server.getPort());
+			server.run();
+		} finally {
+			registry.unregister();
+		}
+	}
+
+	private static void execute(JvmFacade facade, ClassRegistry classes,
+			List<ExecutionListener> listeners, TierController controller,
+			boolean debug) throws IOException {
+		// Only pay for listeners if there are any
+		JvmInterpreter interpreter;
+		if (controller != null) {
+			listeners.add(controller);
+			interpreter = new TieredJvmInterpreter(
+					new ListeningJvmInterpreter(facade, listeners), controller);
+		} else {
+			interpreter = listeners.isEmpty()
+					? new JvmInterpreterImpl(facade, new InsnVisitorImpl(facade))
+					: new ListeningJvmInterpreter(facade, listeners);
+		}
+		String exceeded = null;
+		try {
+			if (debug) {
+				new Debugger(interpreter.getFacade(), classes,
+						new InputStreamReader(System.in), System.out)
+					.run(interpreter);
+			} else {
+				interpreter.run();
+			}
+		} catch (QuotaExceededException e) {
+			exceeded = e.getMessage();
+		} finally {
+			// Also upon host errors, so as not to lose what the guest printed
+			drainOutput(facade);
+		}
+		if (exceeded != null) {
+			System.err.println(exceeded);
+			return;
+		}
+		printUncaughtException(facade.getUncaughtException());
+	}
+
+	/*
+	 * Runs the guest until its main class is initialized, or for the given
+	 * number of steps if nonnegative, and writes a snapshot of it to file.
+	 */
+	private static void checkpoint(JvmFacade facade, ClassRegistry classes,
+			String file, long steps) throws IOException {
+		JvmInterpreter interpreter = new JvmInterpreterImpl(facade,
+				new InsnVisitorImpl(facade));
+		Frame bottom = facade.getCurrentFrame();
+		while (bottom != null && bottom.getPrevious() != null) {
+			bottom = bottom.getPrevious();
+		}
+		RuntimeClass mainClass = bottom == null || bottom.getMethod() == null
+				? null : bottom.getMethod().getConstantPool().getRuntimeClass();
+		String exceeded = null;
+		try {
+			for (long n = 0; interpreter.hasNext() && (steps < 0
+					? mainClass != null && !mainClass.isInitialized()
+					: n < steps); n++) {
+				interpreter.next();
+			}
+		} catch (QuotaExceededException e) {
+			exceeded = e.getMessage();
+		} finally {
+			drainOutput(facade);
+		}
+		if (exceeded != null) {
+			System.err.println(exceeded);
+			return;
+		}
+		try (OutputStream out = new FileOutputStream(file)) {
+			Snapshot.checkpoint(facade, classes, out);
+		}
+	}
+
+	// Writes out the guest's buffered output ahead of that of the host
+	private static void drainOutput(JvmFacade facade) {
+		facade.getOutput(StandardStream.OUT).drain();
+		facade.getOutput(StandardStream.ERR).drain();
+	}
+
+	// Prints the guest stack trace for an uncaught exception, if any
+	private static void printUncaughtException(GuestException exception) {
+		if (exception == null) {
+			return;
+		}
+		System.err.println("Exception in thread \"main\" " + exception);
+		for (StackTraceElement element : exception.getStackTrace()) {
+			System.err.println("\tat " + element);
 		}
 	}
 }
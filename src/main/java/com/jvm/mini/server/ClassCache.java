@@ -0,0 +1,88 @@
+package com.jvm.mini.server;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.jvm.mini.api.ClassSource;
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.main.JvmInitializer;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Cache of decoded main methods, keyed by the fully qualified names of their
+ * classes and shared by all requests to an {@link ExecutionServer}.
+ * <p>
+ * Classes are loaded from a {@link ClassSource} and decoded upon their first
+ * request only. As a {@link MethodInfo} holds no execution state, a single
+ * instance may be executed by any number of workers concurrently. Concurrent
+ * first requests for the same class may each decode it, in which case all but
+ * one result are discarded. Classes changed after having been loaded are only
+ * picked up after calling {@link #clear()}.
+ * <p>
+ * All classes are loaded through a single {@link ClassRegistry}, so that
+ * static fields keep their values across requests, and each class is
+ * initialized only once, as in a long-running JVM. Clearing the cache starts
+ * over with a fresh registry, and hence with uninitialized classes. The
+ * fresh registry decodes its own copies of the classes' methods, so that
+ * nothing resolved through the old registry carries over, even if the
+ * source hands out the same parsed classes again, as a {@link
+ * com.jvm.mini.impl.MemoryClassSource} does. Executions still in progress
+ * keep running against the old registry.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ClassCache {
+
+	private final ClassSource source;
+	private final ConcurrentMap<String, MethodInfo> methods =
+			new ConcurrentHashMap<>();
+	private volatile ClassRegistry registry;
+
+	/**
+	 * @param source the source to load classes from
+	 * @throws NullPointerException if {@code source == null}
+	 */
+	public ClassCache(ClassSource source) {
+		this.source = Validate.notNull(source);
+		this.registry = new ClassRegistry(source);
+	}
+
+	/**
+	 * Returns the main method of the class with the given fully qualified
+	 * {@code className}, loading it if not yet cached.
+	 *
+	 * @throws NullPointerException if {@code className == null}
+	 * @throws IOException if the class could not be loaded
+	 */
+	public MethodInfo getMainMethod(String className) throws IOException {
+		MethodInfo result = this.methods.get(Validate.notNull(className));
+		if (result == null) {
+			result = JvmInitializer.INSTANCE.loadMainMethod(this.registry,
+					className);
+			MethodInfo previous = this.methods.putIfAbsent(className, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of cached classes.
+	 */
+	public int size() {
+		return this.methods.size();
+	}
+
+	/**
+	 * Removes all cached classes, discarding their static state, so that
+	 * subsequent requests load and initialize their classes anew.
+	 */
+	public void clear() {
+		this.registry = new ClassRegistry(this.source);
+		this.methods.clear();
+	}
+
+}
@@ -0,0 +1,357 @@
+package com.jvm.mini.server;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jvm.mini.api.ExecutionTier;
+import com.jvm.mini.api.JvmInterpreter;
+import com.jvm.mini.impl.GuestException;
+import com.jvm.mini.impl.InsnVisitorImpl;
+import com.jvm.mini.impl.JvmInterpreterImpl;
+import com.jvm.mini.impl.LiveHostInput;
+import com.jvm.mini.impl.OutputBridge;
+import com.jvm.mini.impl.OutputBridge.FlushPolicy;
+import com.jvm.mini.impl.QuotaExceededException;
+import com.jvm.mini.impl.QuotaJvmFacade;
+import com.jvm.mini.impl.ResourceQuota;
+import com.jvm.mini.main.JvmInitializer;
+import com.jvm.mini.tools.MetricsRegistry;
+import com.jvm.mini.tools.MetricsRegistry.Counter;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Long-running server executing guest programs on behalf of local clients,
+ * thereby sparing them the startup costs of the host JVM and the loading of
+ * their classes on every run.
+ * <p>
+ * The server listens on a TCP port bound to the loopback address, and reads
+ * the requests of each connection on a thread of its own, while executions
+ * run on a worker from a fixed-size pool. The number of executions running
+ * concurrently is thereby bounded by the pool size, while clients waiting
+ * between requests hold no worker. Clients send requests as lines of
+ * whitespace-separated tokens, each answered by a single line:
+ * <pre>
+ * run &lt;class&gt; [args...]  execute the main method of a class, answered by
+ *                         OK, EXCEPTION &lt;exception&gt; or QUOTA &lt;message&gt;,
+ *                         followed by the instructions executed and the
+ *                         time taken, and preceded by the lines the guest
+ *                         printed to its standard output and error, prefixed
+ *                         by OUT and ERR respectively
+ * clear                   empty the class cache, answered by OK
+ * quit                    close the connection
+ * </pre>
+ * Malformed or failed requests are answered by {@code ERROR <message>}.
+ * Classes are obtained from a {@link ClassCache} shared by all workers, while
+ * all executions are recorded by a {@link MetricsRegistry}. Executions run
+ * in the interpreter only, to which their time is attributed. They are not
+ * listened to, their instructions and allocations being counted by the
+ * {@link QuotaJvmFacade} instead, and their output is buffered per request,
+ * so that it is returned to the client only, in full upon completion. Each
+ * execution is subject to the same {@link ResourceQuota}, so that a single
+ * request cannot exhaust the resources of the server.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ExecutionServer implements Closeable {
+
+	// Size of the buffers holding the output of a single request
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 12;
+
+	private final ClassCache cache;
+	private final MetricsRegistry registry;
+	private final ResourceQuota quota;
+	private final ServerSocket serverSocket;
+	private final ExecutorService workers;
+	private final ExecutorService readers; // One thread per connection
+	private final Set<Socket> connections = Collections.newSetFromMap(
+			new ConcurrentHashMap<Socket, Boolean>());
+
+	/**
+	 * Creates a server, which only starts accepting connections upon calling
+	 * {@link #run()} or {@link #start()}.
+	 *
+	 * @param cache the cache to obtain classes from
+	 * @param registry the registry recording the metrics of all executions
+	 * @param port the port to listen on, or 0 for an arbitrary free port
+	 * @param threads the number of workers
+	 * @throws NullPointerException if {@code cache} or {@code registry} is
+	 * null
+	 * @throws IllegalArgumentException if {@code threads <= 0}
+	 * @throws IOException if the port could not be bound
+	 */
+	public ExecutionServer(ClassCache cache, MetricsRegistry registry,
+			int port, int threads) throws IOException {
+		this(cache, registry, port, threads, ResourceQuota.UNLIMITED);
+	}
+
+	/**
+	 * Creates a server limiting every execution to the given {@code quota},
+	 * which only starts accepting connections upon calling {@link #run()} or
+	 * {@link #start()}.
+	 *
+	 * @param cache the cache to obtain classes from
+	 * @param registry the registry recording the metrics of all executions
+	 * @param port the port to listen on, or 0 for an arbitrary free port
+	 * @param threads the number of workers
+	 * @param quota the limits on the resources used by each execution
+	 * @throws NullPointerException if {@code cache}, {@code registry} or
+	 * {@code quota} is null
+	 * @throws IllegalArgumentException if {@code threads <= 0}
+	 * @throws IOException if the port could not be bound
+	 */
+	public ExecutionServer(ClassCache cache, MetricsRegistry registry,
+			int port, int threads, ResourceQuota quota) throws IOException {
+		this.cache = Validate.notNull(cache);
+		this.registry = Validate.notNull(registry);
+		this.quota = Validate.notNull(quota);
+		this.workers = Executors.newFixedThreadPool(threads,
+				new NamedThreadFactory("mini-jvm-worker-"));
+		this.readers = Executors.newCachedThreadPool(
+				new NamedThreadFactory("mini-jvm-connection-"));
+		this.serverSocket = new ServerSocket(port, 0,
+				InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Returns the port the server is listening on.
+	 */
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Accepts connections on the current thread until the server is closed.
+	 */
+	public void run() {
+		accept();
+	}
+
+	/**
+	 * Starts accepting connections on a separate thread.
+	 */
+	public void start() {
+		new NamedThreadFactory("mini-jvm-acceptor-").newThread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}).start();
+	}
+
+	/**
+	 * Stops accepting connections and closes those currently open.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.serverSocket.close();
+		for (Socket socket : this.connections) {
+			socket.close();
+		}
+		this.readers.shutdownNow();
+		this.workers.shutdownNow();
+		try {
+			this.workers.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void accept() {
+		while (!this.serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = this.serverSocket.accept();
+			} catch (IOException e) {
+				return; // Closed
+			}
+			this.connections.add(socket);
+			this.readers.execute(new Runnable() {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			});
+		}
+	}
+
+	// Answers the requests sent over socket until the client quits
+	private void serve(Socket socket) {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(
+					socket.getOutputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] tokens = line.trim().split("\\s+");
+				if (tokens[0].equals("quit")) {
+					break;
+				}
+				out.println(handle(tokens));
+				out.flush();
+			}
+		} catch (IOException e) {
+			// Connection closed by either side
+		} finally {
+			this.connections.remove(socket);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing left to do
+			}
+		}
+	}
+
+	/*
+	 * Returns the response for the given request, running executions on a
+	 * worker. Host exceptions raised by the interpreter, as for instructions
+	 * it does not support, are reported to the client rather than terminating
+	 * the connection.
+	 */
+	String handle(String[] tokens) {
+		try {
+			switch (tokens[0]) {
+			case "run":
+				if (tokens.length < 2) {
+					return "ERROR Usage: run <class> [args...]";
+				}
+				return submit(tokens[1],
+						Arrays.copyOfRange(tokens, 2, tokens.length));
+			case "clear":
+				this.cache.clear();
+				return "OK";
+			default:
+				return "ERROR Unknown request: " + tokens[0];
+			}
+		} catch (IOException | RuntimeException e) {
+			return "ERROR " + e;
+		}
+	}
+
+	// Runs the main method of the given class on a worker, awaiting the result
+	private String submit(final String className, final String[] args)
+			throws IOException {
+		Future<String> result = this.workers.submit(new Callable<String>() {
+			@Override
+			public String call() throws IOException {
+				return run(className, args);
+			}
+		});
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			return "ERROR Interrupted";
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new AssertionError(cause); // run declares no others
+		}
+	}
+
+	/*
+	 * Runs the main method of the given class, returning the lines written
+	 * by the guest to its standard output and error, each prefixed by the
+	 * name of its stream, followed by the outcome.
+	 */
+	private String run(String className, String[] args) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		OutputBridge outBridge = new OutputBridge(Channels.newChannel(out),
+				OUTPUT_BUFFER_SIZE, FlushPolicy.EXIT);
+		OutputBridge errBridge = new OutputBridge(Channels.newChannel(err),
+				OUTPUT_BUFFER_SIZE, FlushPolicy.EXIT);
+		QuotaJvmFacade facade = new QuotaJvmFacade(JvmInitializer.INSTANCE
+				.init(this.cache.getMainMethod(className), args,
+						LiveHostInput.INSTANCE, outBridge, errBridge),
+				this.quota);
+		JvmInterpreter interpreter = new JvmInterpreterImpl(facade,
+				new InsnVisitorImpl(facade));
+		long start = System.nanoTime();
+		String outcome = null;
+		try {
+			interpreter.run();
+		} catch (QuotaExceededException e) {
+			outcome = "QUOTA " + e.getMessage();
+		} finally {
+			outBridge.drain();
+			errBridge.drain();
+		}
+		long nanos = System.nanoTime() - start; // All of it interpreted
+		this.registry.addTime(ExecutionTier.INTERPRETER, nanos);
+		this.registry.add(Counter.INSTRUCTIONS, facade.getInstructions());
+		this.registry.add(Counter.ALLOCATIONS, facade.getAllocations());
+
+		GuestException exception = facade.getUncaughtException();
+		if (outcome == null) {
+			outcome = exception == null ? "OK" : "EXCEPTION " + exception;
+		}
+		StringBuilder result = new StringBuilder();
+		appendLines(result, "OUT ", out);
+		appendLines(result, "ERR ", err);
+		return result.append(outcome).append(" instructions=")
+				.append(facade.getInstructions()).append(" nanos=")
+				.append(nanos).toString();
+	}
+
+	// Appends each line of the given output, prefixed and newline-terminated
+	private static void appendLines(StringBuilder result, String prefix,
+			ByteArrayOutputStream output) {
+		if (output.size() == 0) {
+			return;
+		}
+		String text = new String(output.toByteArray(), StandardCharsets.UTF_8)
+				.replaceFirst("\\r?\\n$", "");
+		for (String line : text.split("\\r?\\n", -1)) {
+			result.append(prefix).append(line).append(System.lineSeparator());
+		}
+	}
+
+	// Creates numbered daemon threads
+	private static final class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread result = new Thread(runnable,
+					this.prefix + this.count.incrementAndGet());
+			result.setDaemon(true);
+			return result;
+		}
+	}
+
+}
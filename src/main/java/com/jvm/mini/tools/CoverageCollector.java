@@ -0,0 +1,315 @@
+package com.jvm.mini.tools;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Traps;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Collects basic block coverage for guest methods, recording for each
+ * method a bitmap with one bit per basic block.
+ * <p>
+ * Instrumenting a method sets a probe on the first instruction of each of its
+ * basic blocks, realized as a trap (cf. {@link Traps}). Upon first being hit,
+ * a probe sets the bit for its block and removes itself, so that any code
+ * already covered runs at full speed. Coverage thus costs at most one trap
+ * per block rather than a check per instruction, while methods without
+ * probes are not affected at all. As a consequence, only whether a block was
+ * executed is recorded, not how often. Calling {@link #reset()} clears all
+ * bitmaps and re-arms the probes, allowing instrumentation to be reused
+ * across many executions.
+ * <p>
+ * Instrumenting a {@link ClassRegistry} instruments all methods of the
+ * classes it loaded so far, and of each class it loads thereafter as soon as
+ * it is loaded, so that coverage is collected for all guest code run, and
+ * methods never invoked are reported as not covered.
+ * <p>
+ * Being patched into the code of the methods themselves, probes fire for any
+ * guest executing them. Since guests only share code if loaded by the same
+ * {@link ClassRegistry}, as with a server's class cache, a collector is meant
+ * for a single guest per registry, the coverage of concurrent guests being
+ * merged otherwise.
+ *
+ * @author Arno Bastenhof
+ */
+public final class CoverageCollector
+		implements Traps.Handler, ClassRegistry.Listener {
+
+	private final Map<MethodInfo, MethodCoverage> methods =
+			new LinkedHashMap<>();
+	private final ConcurrentMap<AbstractInsnNode, Probe> probes =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Instruments the given {@code method} for coverage. Instrumenting a
+	 * method twice has no effect.
+	 *
+	 * @throws NullPointerException if {@code method == null}
+	 */
+	public synchronized void instrument(MethodInfo method) {
+		if (this.methods.containsKey(Validate.notNull(method))) {
+			return;
+		}
+		MethodCoverage coverage = new MethodCoverage(method);
+		this.methods.put(method, coverage);
+		for (int block = 0; block < coverage.leaders.length; block++) {
+			AbstractInsnNode leader = coverage.leaders[block];
+			this.probes.put(leader, new Probe(coverage, block));
+			Traps.set(leader, this);
+		}
+	}
+
+	/**
+	 * Instruments all methods of the classes loaded by the given {@code
+	 * registry}, both so far and from now on.
+	 *
+	 * @throws NullPointerException if {@code registry == null}
+	 */
+	public void instrument(ClassRegistry registry) {
+		registry.addListener(this);
+		for (RuntimeClass clazz : registry.getClasses()) {
+			classLoaded(clazz);
+		}
+	}
+
+	/**
+	 * Instruments all methods of the given class that have code.
+	 */
+	@Override
+	public void classLoaded(RuntimeClass clazz) {
+		for (Object m : clazz.getNode().methods) {
+			MethodNode node = (MethodNode)m;
+			MethodInfo method = clazz.getMethod(node.name, node.desc);
+			if (method.getFirstInstruction() != null) {
+				instrument(method);
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the coverage bitmap for the given {@code method},
+	 * holding a set bit for every executed block. Blocks are numbered in the
+	 * order of {@link MethodInfo#getBlockLeaders()}, bit {@code b} being
+	 * stored at {@code bitmap[b >>> 6] & (1L << b)}.
+	 *
+	 * @throws IllegalArgumentException if {@code method} was not instrumented
+	 */
+	public synchronized long[] getBitmap(MethodInfo method) {
+		MethodCoverage coverage = this.methods.get(method);
+		Validate.argument(coverage != null);
+		synchronized (coverage) {
+			return coverage.bitmap.clone();
+		}
+	}
+
+	/**
+	 * Clears all coverage collected so far and re-arms the probes.
+	 */
+	public synchronized void reset() {
+		for (Map.Entry<AbstractInsnNode, Probe> entry : this.probes.entrySet()) {
+			MethodCoverage coverage = entry.getValue().coverage;
+			synchronized (coverage) {
+				if (coverage.isCovered(entry.getValue().block)) {
+					Traps.set(entry.getKey(), this);
+				}
+			}
+		}
+		for (MethodCoverage coverage : this.methods.values()) {
+			synchronized (coverage) {
+				coverage.bitmap = new long[coverage.bitmap.length];
+			}
+		}
+	}
+
+	@Override
+	public void trap(AbstractInsnNode insn) {
+		Probe probe = this.probes.get(insn);
+		if (probe != null) {
+			synchronized (probe.coverage) {
+				probe.coverage.bitmap[probe.block >>> 6] |= 1L << probe.block;
+			}
+			Traps.remove(insn, this);
+		}
+	}
+
+	/**
+	 * Writes the collected coverage in the LCOV tracefile format, with one
+	 * record per source file. A line counts as hit if any of the blocks it
+	 * contains code for was executed. As execution counts are not collected,
+	 * hit counts are either 0 or 1. Methods without line number information
+	 * only contribute function records.
+	 */
+	public synchronized void writeLcov(Writer writer) {
+		PrintWriter out = new PrintWriter(writer);
+
+		// Group methods by source file
+		Map<String, List<MethodCoverage>> files = new LinkedHashMap<>();
+		for (MethodCoverage coverage : this.methods.values()) {
+			String file = coverage.getSourcePath();
+			if (!files.containsKey(file)) {
+				files.put(file, new ArrayList<MethodCoverage>());
+			}
+			files.get(file).add(coverage);
+		}
+
+		// Write records
+		for (Map.Entry<String, List<MethodCoverage>> entry : files.entrySet()) {
+			out.println("TN:");
+			out.println("SF:" + entry.getKey());
+			SortedMap<Integer, Boolean> lines = new TreeMap<>();
+			int hitMethods = 0;
+			for (MethodCoverage coverage : entry.getValue()) {
+				synchronized (coverage) {
+					String name = coverage.method.getName()
+							+ coverage.method.getDescriptor();
+					boolean hit = coverage.isCovered(0);
+					hitMethods += hit ? 1 : 0;
+					out.println("FN:" + coverage.getFirstLine() + "," + name);
+					out.println("FNDA:" + (hit ? 1 : 0) + "," + name);
+					coverage.collectLines(lines);
+				}
+			}
+			out.println("FNF:" + entry.getValue().size());
+			out.println("FNH:" + hitMethods);
+			int hitLines = 0;
+			for (Map.Entry<Integer, Boolean> line : lines.entrySet()) {
+				boolean hit = line.getValue().booleanValue();
+				hitLines += hit ? 1 : 0;
+				out.println("DA:" + line.getKey() + "," + (hit ? 1 : 0));
+			}
+			out.println("LF:" + lines.size());
+			out.println("LH:" + hitLines);
+			out.println("end_of_record");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes a report listing, for each method, the bytecode offset ranges of
+	 * its basic blocks and whether they were executed.
+	 */
+	public synchronized void writeReport(Writer writer) {
+		PrintWriter out = new PrintWriter(writer);
+		for (MethodCoverage coverage : this.methods.values()) {
+			synchronized (coverage) {
+				out.println(coverage.method);
+				for (int block = 0; block < coverage.leaders.length; block++) {
+					out.println(String.format("  %5d-%-5d %s",
+							Integer.valueOf(coverage.getStart(block)),
+							Integer.valueOf(coverage.getEnd(block)),
+							coverage.isCovered(block) ? "hit" : "missed"));
+				}
+			}
+		}
+		out.flush();
+	}
+
+	private static class MethodCoverage {
+
+		private final MethodInfo method;
+		private final AbstractInsnNode[] leaders;
+		private long[] bitmap;
+
+		private MethodCoverage(MethodInfo method) {
+			this.method = method;
+			this.leaders = method.getBlockLeaders();
+			this.bitmap = new long[(this.leaders.length + 63) >>> 6];
+		}
+
+		private boolean isCovered(int block) {
+			return (this.bitmap[block >>> 6] & (1L << block)) != 0;
+		}
+
+		// Returns the offset of the first instruction of block
+		private int getStart(int block) {
+			return this.method.getOffset(this.leaders[block]);
+		}
+
+		// Returns the offset following the last instruction of block
+		private int getEnd(int block) {
+			if (block + 1 < this.leaders.length) {
+				return getStart(block + 1);
+			}
+			AbstractInsnNode last = this.method.getInstructions().getLast();
+			int offset = this.method.getOffset(last);
+			return offset + (Instructions.isSupported(last)
+					? Instructions.getSize(last, offset) : 0);
+		}
+
+		private String getSourcePath() {
+			String owner = this.method.getOwner();
+			String sourceFile = this.method.getSourceFile();
+			if (sourceFile == null) {
+				return owner + ".java";
+			}
+			return owner.substring(0, owner.lastIndexOf('/') + 1) + sourceFile;
+		}
+
+		private int getFirstLine() {
+			for (AbstractInsnNode insn = this.method.getInstructions()
+					.getFirst(); insn != null; insn = insn.getNext()) {
+				if (insn instanceof LineNumberNode) {
+					return ((LineNumberNode)insn).line;
+				}
+			}
+			return 0;
+		}
+
+		// Adds the lines of this method to lines, marking those covered
+		private void collectLines(SortedMap<Integer, Boolean> lines) {
+			Map<AbstractInsnNode, Integer> blocks = new HashMap<>();
+			for (int block = 0; block < this.leaders.length; block++) {
+				blocks.put(this.leaders[block], Integer.valueOf(block));
+			}
+			int line = -1;
+			boolean covered = false;
+			for (AbstractInsnNode insn = this.method.getInstructions()
+					.getFirst(); insn != null; insn = insn.getNext()) {
+				if (insn instanceof LineNumberNode) {
+					line = ((LineNumberNode)insn).line;
+				}
+				Integer block = blocks.get(insn);
+				if (block != null) {
+					covered = isCovered(block.intValue());
+				}
+				if (line >= 0 && insn.getOpcode() >= 0) {
+					Integer key = Integer.valueOf(line);
+					Boolean hit = lines.get(key);
+					lines.put(key, Boolean.valueOf(covered
+							|| (hit != null && hit.booleanValue())));
+				}
+			}
+		}
+	}
+
+	// Probe for a single basic block
+	private static class Probe {
+
+		private final MethodCoverage coverage;
+		private final int block;
+
+		private Probe(MethodCoverage coverage, int block) {
+			this.coverage = coverage;
+			this.block = block;
+		}
+	}
+
+}
@@ -0,0 +1,481 @@
+package com.jvm.mini.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.JvmInterpreter;
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.Frame;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.impl.SwitchTable;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Operands;
+import com.jvm.mini.util.Traps;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Line-oriented debugger for guest programs, reading commands from a {@link
+ * Reader} (typically stdin). Execution is suspended upon entry, and
+ * subsequently whenever a breakpoint is hit or a single step was taken.
+ * <p>
+ * Breakpoints are realized as traps patched into the code (cf. {@link
+ * Traps}), so that code without breakpoints runs at full speed. Single steps
+ * are likewise realized by setting one-shot traps on the possible successors
+ * of the current instruction, rather than by checking for a pending step
+ * before each instruction. As exception handlers are not considered
+ * successors, stepping over an {@code athrow} resumes execution until the
+ * next breakpoint.
+ * <p>
+ * Methods are named by their names, preceded by the internal names of their
+ * classes and followed by their descriptors to tell apart methods of the
+ * same name. A debugger given a {@link ClassRegistry} looks up methods among
+ * the classes of the latter upon being named, loading the class if given, so
+ * that breakpoints can be set in any method the guest may run. As each
+ * registry decodes its own copy of a method, the traps set by a debugger
+ * only affect the guest whose classes it was given.
+ *
+ * @author Arno Bastenhof
+ */
+public final class Debugger implements Traps.Handler {
+
+	private static final String HELP = "Commands:\n"
+			+ "  break <method> <offset> [if <var> <op> <value>]\n"
+			+ "                      set a (conditional) breakpoint, where <op>\n"
+			+ "                      is one of == != < <= > >=\n"
+			+ "  clear <method> <offset>  remove a breakpoint\n"
+			+ "  step                execute the current instruction\n"
+			+ "  continue            resume execution\n"
+			+ "  list [<method>]     list the instructions of a method\n"
+			+ "  locals              print the current frame's local variables\n"
+			+ "  stack               print the current frame's operand stack\n"
+			+ "  where               print the JVM stack\n"
+			+ "  quit                remove all breakpoints and resume\n"
+			+ "  help                print this message\n"
+			+ "where <method> is a method name, preceded by its class and\n"
+			+ "followed by its descriptor if ambiguous, as in\n"
+			+ "pkg/Main.main([Ljava/lang/String;)V";
+	private static final String PROMPT = "> ";
+
+	private final JvmFacade facade;
+	private final Map<String, MethodInfo> methods = new LinkedHashMap<>();
+	private final ClassRegistry classes; // Null if only given methods
+	private final BufferedReader in;
+	private final PrintStream out;
+	private final Map<AbstractInsnNode, Condition> breakpoints = new HashMap<>();
+	private final List<AbstractInsnNode> steps = new ArrayList<>();
+
+	/**
+	 * @param facade the machine's runtime data structures
+	 * @param methods the methods to allow setting breakpoints in
+	 * @param in the reader to read commands from
+	 * @param out the stream to print output to
+	 * @throws NullPointerException if any of the arguments is null
+	 */
+	public Debugger(JvmFacade facade, Collection<MethodInfo> methods,
+			Reader in, PrintStream out) {
+		this(facade, methods, null, in, out);
+	}
+
+	/**
+	 * @param facade the machine's runtime data structures
+	 * @param classes the registry whose classes' methods to allow setting
+	 * breakpoints in
+	 * @param in the reader to read commands from
+	 * @param out the stream to print output to
+	 * @throws NullPointerException if any of the arguments is null
+	 */
+	public Debugger(JvmFacade facade, ClassRegistry classes, Reader in,
+			PrintStream out) {
+		this(facade, Collections.<MethodInfo>emptyList(),
+				Validate.notNull(classes), in, out);
+	}
+
+	private Debugger(JvmFacade facade, Collection<MethodInfo> methods,
+			ClassRegistry classes, Reader in, PrintStream out) {
+		this.facade = Validate.notNull(facade);
+		for (MethodInfo method : methods) {
+			this.methods.put(method.getName() + method.getDescriptor(), method);
+		}
+		this.classes = classes;
+		this.in = new BufferedReader(Validate.notNull(in));
+		this.out = Validate.notNull(out);
+	}
+
+	/**
+	 * Executes the program with the specified {@code interpreter}, which
+	 * must have been created for the same facade as this debugger.
+	 */
+	public void run(JvmInterpreter interpreter) {
+		if (interpreter.hasNext()) {
+			suspend(this.facade.peekInstruction());
+		}
+		interpreter.run();
+		this.out.println("Program terminated.");
+	}
+
+	@Override
+	public void trap(AbstractInsnNode insn) {
+		boolean suspend = this.steps.contains(insn);
+		if (suspend) {
+			clearSteps();
+		}
+		Condition condition = this.breakpoints.get(insn);
+		if (condition != null
+				&& condition.test(this.facade.getCurrentFrame())) {
+			suspend = true;
+		}
+		if (suspend) {
+			suspend(insn);
+		}
+	}
+
+	// Reads and executes commands until execution is to be resumed
+	private void suspend(AbstractInsnNode insn) {
+		MethodInfo method = this.facade.getCurrentFrame().getMethod();
+		this.out.println("Suspended at " + location(method, insn) + ": "
+				+ Instructions.toString(insn));
+		try {
+			for (;;) {
+				this.out.print(PROMPT);
+				this.out.flush();
+				String line = this.in.readLine();
+				if (line == null) {
+					quit();
+					return;
+				}
+				String[] tokens = line.trim().split("\\s+");
+				switch (tokens[0]) {
+				case "":
+					break;
+				case "break":
+					setBreakpoint(tokens);
+					break;
+				case "clear":
+					clearBreakpoint(tokens);
+					break;
+				case "step":
+					step(insn);
+					return;
+				case "continue":
+					return;
+				case "list":
+					list(tokens.length > 1 ? tokens[1]
+							: method.getName() + method.getDescriptor(), insn);
+					break;
+				case "locals":
+					printLocals();
+					break;
+				case "stack":
+					printStack();
+					break;
+				case "where":
+					printFrames(insn);
+					break;
+				case "quit":
+					quit();
+					return;
+				default:
+					this.out.println(HELP);
+				}
+			}
+		} catch (IOException e) {
+			this.out.println("Detaching: " + e.getMessage());
+			quit();
+		}
+	}
+
+	private void setBreakpoint(String[] tokens) {
+		if (tokens.length != 3 && tokens.length != 7) {
+			this.out.println(HELP);
+			return;
+		}
+		AbstractInsnNode insn = resolve(tokens[1], tokens[2]);
+		if (insn == null) {
+			return;
+		}
+		Condition condition = Condition.TRUE;
+		if (tokens.length == 7) {
+			condition = Condition.parse(tokens[3], tokens[4], tokens[5],
+					tokens[6]);
+			if (condition == null) {
+				this.out.println(HELP);
+				return;
+			}
+		}
+		this.breakpoints.put(insn, condition);
+		Traps.set(insn, this);
+		this.out.println("Breakpoint set at " + tokens[1] + "+" + tokens[2]);
+	}
+
+	private void clearBreakpoint(String[] tokens) {
+		if (tokens.length != 3) {
+			this.out.println(HELP);
+			return;
+		}
+		AbstractInsnNode insn = resolve(tokens[1], tokens[2]);
+		if (insn != null && this.breakpoints.remove(insn) != null) {
+			if (!this.steps.contains(insn)) {
+				Traps.remove(insn, this);
+			}
+			this.out.println("Breakpoint cleared");
+		}
+	}
+
+	// Returns the instruction for a method name and offset, or null if none
+	private AbstractInsnNode resolve(String name, String offset) {
+		MethodInfo method = lookup(name);
+		if (method == null) {
+			return null;
+		}
+		AbstractInsnNode insn = null;
+		try {
+			insn = method.getInstruction(Integer.parseInt(offset));
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		if (insn == null) {
+			this.out.println("No instruction at offset " + offset);
+		}
+		return insn;
+	}
+
+	// Sets one-shot traps on the possible successors of insn
+	private void step(AbstractInsnNode insn) {
+		int opcode = Traps.getOpcode(insn);
+		if (insn instanceof JumpInsnNode) {
+			addStep(Instructions.getNext(((JumpInsnNode)insn).label));
+		} else if (insn instanceof TableSwitchInsnNode
+				|| insn instanceof LookupSwitchInsnNode) {
+			for (AbstractInsnNode target : SwitchTable.forInsn(insn)
+					.getTargets()) {
+				addStep(target);
+			}
+			return;
+		}
+		if (opcode == Opcodes.RETURN) {
+			addStep(this.facade.getCurrentFrame().getReturnAddress());
+		} else if (opcode != Opcodes.GOTO && opcode != Opcodes.ATHROW) {
+			addStep(Instructions.getNext(insn));
+		}
+	}
+
+	private void addStep(AbstractInsnNode insn) {
+		if (insn != null) {
+			this.steps.add(insn);
+			Traps.set(insn, this);
+		}
+	}
+
+	private void clearSteps() {
+		for (AbstractInsnNode insn : this.steps) {
+			if (!this.breakpoints.containsKey(insn)) {
+				Traps.remove(insn, this);
+			}
+		}
+		this.steps.clear();
+	}
+
+	private void quit() {
+		clearSteps();
+		for (AbstractInsnNode insn : this.breakpoints.keySet()) {
+			Traps.remove(insn, this);
+		}
+		this.breakpoints.clear();
+	}
+
+	// Returns the method by its name, optionally qualified by its class and
+	// descriptor, or null if none
+	private MethodInfo lookup(String name) {
+		MethodInfo result = this.methods.get(name);
+		if (result != null) {
+			return result;
+		}
+		int paren = name.indexOf('(');
+		String desc = paren < 0 ? null : name.substring(paren);
+		String qualified = paren < 0 ? name : name.substring(0, paren);
+		int dot = qualified.lastIndexOf('.');
+		String owner = dot < 0 ? null : qualified.substring(0, dot);
+		String simple = qualified.substring(dot + 1);
+		Collection<MethodInfo> matches = new LinkedHashSet<>();
+		for (MethodInfo method : this.methods.values()) {
+			if ((owner == null || method.getOwner().equals(owner))
+					&& method.getName().equals(simple)
+					&& (desc == null || method.getDescriptor().equals(desc))) {
+				matches.add(method);
+			}
+		}
+		if (this.classes != null) {
+			for (RuntimeClass clazz : classes(owner)) {
+				for (Object m : clazz.getNode().methods) {
+					MethodNode method = (MethodNode)m;
+					if (method.name.equals(simple)
+							&& (desc == null || method.desc.equals(desc))) {
+						matches.add(clazz.getMethod(method.name, method.desc));
+					}
+				}
+			}
+		}
+		if (matches.size() > 1) {
+			this.out.println("Ambiguous method: " + name
+					+ ", add its class or descriptor");
+			return null;
+		}
+		if (matches.isEmpty()) {
+			this.out.println("Unknown method: " + name);
+			return null;
+		}
+		return matches.iterator().next();
+	}
+
+	// Returns the class by the given name, loading it if needed, or all
+	// classes loaded so far if the name is null
+	private Collection<RuntimeClass> classes(String owner) {
+		if (owner == null) {
+			return this.classes.getClasses();
+		}
+		try {
+			RuntimeClass clazz = this.classes.getClass(owner);
+			if (clazz != null) {
+				return Collections.singletonList(clazz);
+			}
+		} catch (IOException e) {
+			this.out.println("Could not load class " + owner + ": "
+					+ e.getMessage());
+		}
+		return Collections.emptyList();
+	}
+
+	private void list(String name, AbstractInsnNode current) {
+		MethodInfo method = lookup(name);
+		if (method == null) {
+			return;
+		}
+		for (AbstractInsnNode insn = method.getInstructions().getFirst();
+				insn != null; insn = insn.getNext()) {
+			if (insn.getOpcode() >= 0) {
+				this.out.println(String.format("%s%c%5d: %s",
+						insn == current ? "=>" : "  ",
+						this.breakpoints.containsKey(insn) ? '*' : ' ',
+						Integer.valueOf(method.getOffset(insn)),
+						Instructions.toString(insn)));
+			}
+		}
+	}
+
+	private void printLocals() {
+		Frame frame = this.facade.getCurrentFrame();
+		for (int var = 0; var < frame.getMaxLocals(); var++) {
+			this.out.println("  " + var + ": " + describe(frame.getLocal(var)));
+		}
+	}
+
+	private void printStack() {
+		Frame frame = this.facade.getCurrentFrame();
+		for (int i = frame.getStackSize() - 1; i >= 0; i--) {
+			this.out.println("  " + describe(frame.getOperand(i)));
+		}
+	}
+
+	private void printFrames(AbstractInsnNode insn) {
+		AbstractInsnNode current = insn;
+		for (Frame frame = this.facade.getCurrentFrame(); frame != null;
+				frame = frame.getPrevious()) {
+			this.out.println("  " + location(frame.getMethod(), current));
+			current = frame.getCallSite();
+		}
+	}
+
+	private static String location(MethodInfo method, AbstractInsnNode insn) {
+		if (method == null) {
+			return "<unknown>";
+		}
+		String result = method.getName() + "+" + method.getOffset(insn);
+		int line = method.getLineNumber(insn);
+		return line < 0 ? result : result + " (line " + line + ")";
+	}
+
+	private static String describe(Object value) {
+		if (value == null) {
+			return "<unset>";
+		}
+		String string = value instanceof Object[]
+				? Arrays.toString((Object[])value) : value.toString();
+		return string + " (" + Operands.getFieldDescriptor(value.getClass())
+				+ ")";
+	}
+
+	// Condition of a breakpoint, comparing a local variable to a constant
+	private static class Condition {
+
+		private static final Condition TRUE = new Condition(-1, null, 0);
+
+		private final int var;
+		private final String op;
+		private final long value;
+
+		private Condition(int var, String op, long value) {
+			this.var = var;
+			this.op = op;
+			this.value = value;
+		}
+
+		// Returns null if the condition could not be parsed
+		private static Condition parse(String keyword, String var, String op,
+				String value) {
+			if (!keyword.equals("if")) {
+				return null;
+			}
+			switch (op) {
+			case "==": case "!=": case "<": case "<=": case ">": case ">=":
+				try {
+					return new Condition(Integer.parseInt(var), op,
+							Long.parseLong(value));
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			default:
+				return null;
+			}
+		}
+
+		private boolean test(Frame frame) {
+			if (this.op == null) {
+				return true;
+			}
+			if (this.var >= frame.getMaxLocals()
+					|| !(frame.getLocal(this.var) instanceof Number)) {
+				return false;
+			}
+			long local = ((Number)frame.getLocal(this.var)).longValue();
+			switch (this.op) {
+			case "==": return local == this.value;
+			case "!=": return local != this.value;
+			case "<":  return local < this.value;
+			case "<=": return local <= this.value;
+			case ">":  return local > this.value;
+			default:   return local >= this.value;
+			}
+		}
+	}
+
+}
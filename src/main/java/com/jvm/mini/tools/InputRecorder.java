@@ -0,0 +1,80 @@
+package com.jvm.mini.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.jvm.mini.api.HostInput;
+import com.jvm.mini.util.Validate;
+import com.jvm.mini.util.VarInts;
+
+/**
+ * {@link HostInput} recording the live values it passes on, for later use by
+ * an {@link InputReplayer}.
+ * <p>
+ * A recording starts with the magic number {@code MJVR} and a version byte,
+ * followed by one entry per input. Each entry consists of a tag byte, holding
+ * the ordinal of the input's {@link HostInput.Kind} shifted left by one and
+ * or'ed with 1 for Strings, followed by the value. Integral values are encoded
+ * by {@link VarInts}, whereas Strings are encoded by their UTF-8 byte length
+ * in the same manner, followed by the bytes themselves. As inputs are only
+ * recorded where they enter the guest, rather than per instruction, recording
+ * adds no more than a buffered write to each input.
+ *
+ * @author Arno Bastenhof
+ */
+public final class InputRecorder implements HostInput {
+
+	static final byte[] MAGIC = {'M', 'J', 'V', 'R'};
+	static final int VERSION = 1;
+
+	private final OutputStream out;
+
+	/**
+	 * @param out the stream to write the recording to, which is closed
+	 * together with this recorder
+	 * @throws NullPointerException if {@code out == null}
+	 * @throws IOException if the header could not be written
+	 */
+	public InputRecorder(OutputStream out) throws IOException {
+		this.out = new BufferedOutputStream(Validate.notNull(out));
+		this.out.write(MAGIC);
+		this.out.write(VERSION);
+	}
+
+	@Override
+	public long readLong(Kind kind, Source source) {
+		long value = source.read();
+		try {
+			this.out.write(tag(kind, false));
+			VarInts.writeLong(this.out, value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return value;
+	}
+
+	@Override
+	public String readString(Kind kind, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		try {
+			this.out.write(tag(kind, true));
+			VarInts.writeLong(this.out, bytes.length);
+			this.out.write(bytes);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+	static int tag(Kind kind, boolean string) {
+		return kind.ordinal() << 1 | (string ? 1 : 0);
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.jvm.mini.tools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.jvm.mini.api.HostInput;
+import com.jvm.mini.util.Validate;
+import com.jvm.mini.util.VarInts;
+
+/**
+ * {@link HostInput} replaying a recording made by an {@link InputRecorder}
+ * (which also documents the file format), thereby re-running the recorded
+ * execution deterministically. Live sources are never consulted.
+ *
+ * @author Arno Bastenhof
+ */
+public final class InputReplayer implements HostInput {
+
+	private static final String ERROR_DIVERGED =
+			"Replay diverged from recording: expected %s input";
+
+	private final DataInputStream in;
+
+	/**
+	 * @param in the stream to read the recording from, which is closed
+	 * together with this replayer
+	 * @throws NullPointerException if {@code in == null}
+	 * @throws IOException if the stream does not hold a recording
+	 */
+	public InputReplayer(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(
+				Validate.notNull(in)));
+		byte[] magic = new byte[InputRecorder.MAGIC.length];
+		this.in.readFully(magic);
+		if (!Arrays.equals(magic, InputRecorder.MAGIC)
+				|| this.in.read() != InputRecorder.VERSION) {
+			throw new IOException("Not a recording of a supported version");
+		}
+	}
+
+	@Override
+	public long readLong(Kind kind, Source source) {
+		try {
+			expect(kind, false);
+			return VarInts.readLong(this.in);
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					String.format(ERROR_DIVERGED, kind), e);
+		}
+	}
+
+	@Override
+	public String readString(Kind kind, String value) {
+		try {
+			expect(kind, true);
+			byte[] bytes = new byte[(int)VarInts.readLong(this.in)];
+			this.in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					String.format(ERROR_DIVERGED, kind), e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	private void expect(Kind kind, boolean string) throws IOException {
+		int tag = this.in.read();
+		if (tag != InputRecorder.tag(kind, string)) {
+			throw new IOException("Unexpected tag " + tag);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.jvm.mini.tools;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.api.ExecutionAdapter;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.impl.Frame;
+import com.jvm.mini.tools.MetricsRegistry.Counter;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Feeds the events of an execution into a {@link MetricsRegistry}. A single
+ * registry may be shared by the listeners for any number of guests.
+ *
+ * @author Arno Bastenhof
+ */
+public final class MetricsListener extends ExecutionAdapter {
+
+	private final MetricsRegistry registry;
+
+	/**
+	 * @param registry the registry to update
+	 * @throws NullPointerException if {@code registry == null}
+	 */
+	public MetricsListener(MetricsRegistry registry) {
+		this.registry = Validate.notNull(registry);
+	}
+
+	@Override
+	public void beforeInstruction(JvmFacade facade, AbstractInsnNode insn) {
+		this.registry.increment(Counter.INSTRUCTIONS);
+	}
+
+	@Override
+	public void framePushed(JvmFacade facade, Frame frame) {
+		this.registry.increment(Counter.FRAMES_PUSHED);
+		this.registry.recordDepth(frame.getDepth());
+	}
+
+	@Override
+	public void framePopped(JvmFacade facade, Frame frame) {
+		this.registry.increment(Counter.FRAMES_POPPED);
+		this.registry.recordDepth(frame.getDepth()); // For the entry frame
+	}
+
+	@Override
+	public void objectAllocated(JvmFacade facade, Object object) {
+		this.registry.increment(Counter.ALLOCATIONS);
+	}
+
+}
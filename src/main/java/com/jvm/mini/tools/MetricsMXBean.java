@@ -0,0 +1,50 @@
+package com.jvm.mini.tools;
+
+import java.util.Map;
+
+/**
+ * Management interface through which a {@link MetricsRegistry} is exposed
+ * over JMX.
+ *
+ * @author Arno Bastenhof
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * Returns the number of executed instructions.
+	 */
+	long getInstructions();
+
+	/**
+	 * Returns the number of frames pushed on the JVM stack.
+	 */
+	long getFramesPushed();
+
+	/**
+	 * Returns the number of frames popped from the JVM stack.
+	 */
+	long getFramesPopped();
+
+	/**
+	 * Returns the maximum depth reached by the JVM stack.
+	 */
+	long getMaxStackDepth();
+
+	/**
+	 * Returns the number of allocated guest objects.
+	 */
+	long getAllocations();
+
+	/**
+	 * Returns the time spent per execution tier in milliseconds, keyed by the
+	 * names of the tiers.
+	 */
+	Map<String, Long> getTierTimes();
+
+	/**
+	 * Returns the number of instructions executed per second, or 0 if no
+	 * execution time was recorded yet.
+	 */
+	double getInstructionsPerSecond();
+
+}
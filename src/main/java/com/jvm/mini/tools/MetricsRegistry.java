@@ -0,0 +1,237 @@
+package com.jvm.mini.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.jvm.mini.api.ExecutionTier;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Registry of runtime metrics, collecting counters for executed instructions,
+ * pushed and popped frames and allocations, a gauge for the maximum depth of
+ * the JVM stack, and the time spent per {@link ExecutionTier}.
+ * <p>
+ * Metrics are striped per thread: each thread updating the registry is
+ * assigned its own stripe of cells, which only that thread ever writes to.
+ * Updates thereby require neither locks nor compare-and-swap loops, so that
+ * guests running in parallel do not contend on shared cache lines. Only
+ * reads pay, by aggregating over all stripes, which is why they are meant for
+ * occasional use, as by JMX clients or a {@link MetricsReporter}. Reads are
+ * not atomic across metrics, and may lag behind recent updates.
+ *
+ * @author Arno Bastenhof
+ */
+public final class MetricsRegistry implements MetricsMXBean {
+
+	/**
+	 * The name under which registries are registered with the platform MBean
+	 * server.
+	 */
+	public static final String OBJECT_NAME = "com.jvm.mini:type=Metrics";
+
+	/**
+	 * The counters maintained by a registry.
+	 */
+	public enum Counter {
+		INSTRUCTIONS, FRAMES_PUSHED, FRAMES_POPPED, ALLOCATIONS
+	}
+
+	// Layout of a stripe
+	private static final int MAX_DEPTH = Counter.values().length;
+	private static final int TIER_TIMES = MAX_DEPTH + 1;
+	private static final int STRIPE_SIZE = TIER_TIMES
+			+ ExecutionTier.values().length;
+
+	private final List<AtomicLongArray> stripes = new CopyOnWriteArrayList<>();
+	private final ThreadLocal<AtomicLongArray> stripe =
+			new ThreadLocal<AtomicLongArray>() {
+		@Override
+		protected AtomicLongArray initialValue() {
+			AtomicLongArray result = new AtomicLongArray(STRIPE_SIZE);
+			MetricsRegistry.this.stripes.add(result);
+			return result;
+		}
+	};
+
+	/**
+	 * Increments the specified {@code counter} by one.
+	 *
+	 * @throws NullPointerException if {@code counter == null}
+	 */
+	public void increment(Counter counter) {
+		add(this.stripe.get(), counter.ordinal(), 1);
+	}
+
+	/**
+	 * Increments the specified {@code counter} by the given {@code delta}, as
+	 * done for counts gathered without listening to every event.
+	 *
+	 * @throws NullPointerException if {@code counter == null}
+	 * @throws IllegalArgumentException if {@code delta < 0}
+	 */
+	public void add(Counter counter, long delta) {
+		Validate.argument(delta >= 0);
+		add(this.stripe.get(), counter.ordinal(), delta);
+	}
+
+	/**
+	 * Records the given stack {@code depth}, updating the maximum if exceeded.
+	 */
+	public void recordDepth(int depth) {
+		AtomicLongArray cells = this.stripe.get();
+		if (depth > cells.get(MAX_DEPTH)) {
+			cells.lazySet(MAX_DEPTH, depth);
+		}
+	}
+
+	/**
+	 * Adds the given amount of {@code nanos} to the time spent in the
+	 * specified {@code tier}.
+	 *
+	 * @throws NullPointerException if {@code tier == null}
+	 */
+	public void addTime(ExecutionTier tier, long nanos) {
+		add(this.stripe.get(), TIER_TIMES + tier.ordinal(), nanos);
+	}
+
+	/**
+	 * Returns the current value of the specified {@code counter}.
+	 *
+	 * @throws NullPointerException if {@code counter == null}
+	 */
+	public long get(Counter counter) {
+		return sum(counter.ordinal());
+	}
+
+	/**
+	 * Returns the time spent in the specified {@code tier} in nanoseconds.
+	 *
+	 * @throws NullPointerException if {@code tier == null}
+	 */
+	public long getTime(ExecutionTier tier) {
+		return sum(TIER_TIMES + tier.ordinal());
+	}
+
+	@Override
+	public long getInstructions() {
+		return get(Counter.INSTRUCTIONS);
+	}
+
+	@Override
+	public long getFramesPushed() {
+		return get(Counter.FRAMES_PUSHED);
+	}
+
+	@Override
+	public long getFramesPopped() {
+		return get(Counter.FRAMES_POPPED);
+	}
+
+	@Override
+	public long getMaxStackDepth() {
+		long result = 0;
+		for (AtomicLongArray cells : this.stripes) {
+			result = Math.max(result, cells.get(MAX_DEPTH));
+		}
+		return result;
+	}
+
+	@Override
+	public long getAllocations() {
+		return get(Counter.ALLOCATIONS);
+	}
+
+	@Override
+	public Map<String, Long> getTierTimes() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (ExecutionTier tier : ExecutionTier.values()) {
+			result.put(tier.name(), Long.valueOf(
+					TimeUnit.NANOSECONDS.toMillis(getTime(tier))));
+		}
+		return result;
+	}
+
+	@Override
+	public double getInstructionsPerSecond() {
+		long nanos = 0;
+		for (ExecutionTier tier : ExecutionTier.values()) {
+			nanos += getTime(tier);
+		}
+		return nanos == 0 ? 0 : getInstructions() * 1e9 / nanos;
+	}
+
+	/**
+	 * Registers this registry with the platform MBean server under {@link
+	 * #OBJECT_NAME}.
+	 *
+	 * @throws IllegalStateException if registration failed, as when another
+	 * registry was registered already
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Unregisters this registry from the platform MBean server, if it was
+	 * registered.
+	 */
+	public void unregister() {
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the current values of all metrics as a space-separated list of
+	 * key-value pairs, with times expressed in nanoseconds.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+		for (Counter counter : Counter.values()) {
+			buffer.append(counter.name().toLowerCase(Locale.ROOT)).append('=')
+				.append(get(counter)).append(' ');
+		}
+		buffer.append("max_stack_depth=").append(getMaxStackDepth());
+		for (ExecutionTier tier : ExecutionTier.values()) {
+			buffer.append(' ').append(tier.name().toLowerCase(Locale.ROOT))
+				.append("_nanos=").append(getTime(tier));
+		}
+		return buffer.toString();
+	}
+
+	// Only ever invoked by the thread owning cells
+	private static void add(AtomicLongArray cells, int index, long delta) {
+		cells.lazySet(index, cells.get(index) + delta);
+	}
+
+	private long sum(int index) {
+		long result = 0;
+		for (AtomicLongArray cells : this.stripes) {
+			result += cells.get(index);
+		}
+		return result;
+	}
+
+}
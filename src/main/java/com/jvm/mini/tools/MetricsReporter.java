@@ -0,0 +1,85 @@
+package com.jvm.mini.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.jvm.mini.util.Validate;
+
+/**
+ * Periodically appends the metrics of a {@link MetricsRegistry} to a file,
+ * one line per report, each prefixed by the time in milliseconds since the
+ * epoch. A final report is written upon closing.
+ *
+ * @author Arno Bastenhof
+ */
+public final class MetricsReporter implements Closeable {
+
+	private final MetricsRegistry registry;
+	private final PrintWriter out;
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * @param registry the registry to report on
+	 * @param file the file to append reports to
+	 * @param period the time between reports
+	 * @param unit the unit of {@code period}
+	 * @throws NullPointerException if any of the arguments is null
+	 * @throws IllegalArgumentException if {@code period <= 0}
+	 * @throws IOException if {@code file} could not be opened
+	 */
+	public MetricsReporter(MetricsRegistry registry, File file, long period,
+			TimeUnit unit) throws IOException {
+		this.registry = Validate.notNull(registry);
+		this.out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(Validate.notNull(file), true),
+				StandardCharsets.UTF_8));
+		this.executor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread result = new Thread(runnable, "mini-jvm-metrics");
+				result.setDaemon(true);
+				return result;
+			}
+		});
+		this.executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				report();
+			}
+		}, period, period, Validate.notNull(unit));
+	}
+
+	/**
+	 * Stops reporting after writing a final report.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.executor.shutdown();
+		try {
+			this.executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		report();
+		this.out.close();
+		if (this.out.checkError()) {
+			throw new IOException("Failed to write metrics");
+		}
+	}
+
+	private synchronized void report() {
+		this.out.println(System.currentTimeMillis() + " " + this.registry);
+		this.out.flush();
+	}
+
+}
@@ -0,0 +1,219 @@
+package com.jvm.mini.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.ClassPath;
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.MemoryClassSource;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Prepares guest classes at build time for being loaded by Mini-JVM at
+ * startup, packaging them into a single archive.
+ * <p>
+ * Every class is first stripped of the attributes the interpreter never
+ * reads, being stack map frames, local variable tables, generic signatures
+ * and annotations, while line numbers are retained for stack traces and
+ * debugging. The result is then verified by decoding all of its methods
+ * exactly as would happen at runtime, rejecting methods using instructions
+ * this implementation does not support. Classes are written to the archive
+ * without compression, so that a {@link com.jvm.mini.impl.JarClassSource}
+ * parses them straight from mapped memory. Problems found upon verification
+ * are collected for all classes rather than failing at the first, and no
+ * archive is written unless there are none.
+ *
+ * @author Arno Bastenhof
+ */
+public final class Pretranslator {
+
+	private static final String USAGE = "Usage: "
+			+ "java -cp mini-jvm-<version>.jar com.jvm.mini.tools.Pretranslator "
+			+ "<classpath> <jar>";
+
+	private final ClassPath classPath;
+	private final List<String> errors = new ArrayList<>();
+
+	/**
+	 * @param classPath the class path whose classes are to be translated
+	 * @throws NullPointerException if {@code classPath == null}
+	 */
+	public Pretranslator(ClassPath classPath) {
+		this.classPath = Validate.notNull(classPath);
+	}
+
+	/**
+	 * Translates the classes found on the class path given as the first
+	 * argument into the archive given as the second.
+	 *
+	 * @throws IllegalArgumentException if any class could not be verified,
+	 * after printing the problems found, so as to fail the build without
+	 * exiting the JVM it may share with Maven
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println(USAGE);
+			return;
+		}
+		Pretranslator translator = new Pretranslator(ClassPath.parse(args[0]));
+		int count = translator.translate(new File(args[1]));
+		for (String error : translator.getErrors()) {
+			System.err.println(error);
+		}
+		if (count < 0) {
+			throw new IllegalArgumentException("Could not verify the classes in "
+					+ args[0]);
+		}
+		System.out.println("Pretranslated " + count + " classes into "
+				+ args[1]);
+	}
+
+	/**
+	 * Translates all classes on the class path into the given archive,
+	 * replacing any previous contents.
+	 *
+	 * @return the number of classes written, or -1 if verification failed, in
+	 * which case the archive is left untouched
+	 * @throws NullPointerException if {@code jar == null}
+	 * @throws IOException if a class could not be read or the archive could
+	 * not be written
+	 */
+	public int translate(File jar) throws IOException {
+		Validate.notNull(jar);
+		this.errors.clear();
+
+		// Translate and verify, ordering classes by name for reproducibility
+		List<String> names = new ArrayList<>(new TreeSet<>(
+				this.classPath.getClassNames()));
+		List<byte[]> classFiles = new ArrayList<>();
+		for (String name : names) {
+			ClassNode node = this.classPath.loadClass(name);
+			byte[] classFile = strip(node);
+			verify(name, classFile);
+			classFiles.add(classFile);
+		}
+		if (!this.errors.isEmpty()) {
+			return -1;
+		}
+
+		// Write the archive
+		try (OutputStream os = new FileOutputStream(jar);
+				JarOutputStream out = new JarOutputStream(os)) {
+			for (int i = 0; i < names.size(); i++) {
+				write(out, names.get(i) + ".class", classFiles.get(i));
+			}
+		}
+		return names.size();
+	}
+
+	/**
+	 * Returns the problems found by the last call to {@link #translate},
+	 * each described by a single line naming the class and method.
+	 */
+	public List<String> getErrors() {
+		return new ArrayList<>(this.errors);
+	}
+
+	// Removes the attributes not read by the interpreter and reencodes
+	private static byte[] strip(ClassNode node) {
+		node.signature = null;
+		node.visibleAnnotations = null;
+		node.invisibleAnnotations = null;
+		node.attrs = null;
+		for (Object m : node.methods) {
+			MethodNode method = (MethodNode)m;
+			method.signature = null;
+			method.localVariables = null;
+			method.visibleAnnotations = null;
+			method.invisibleAnnotations = null;
+			method.visibleParameterAnnotations = null;
+			method.invisibleParameterAnnotations = null;
+			method.attrs = null;
+			AbstractInsnNode next;
+			for (AbstractInsnNode insn = method.instructions.getFirst();
+					insn != null; insn = next) {
+				next = insn.getNext(); // Cleared upon removal
+				if (insn instanceof FrameNode) {
+					method.instructions.remove(insn);
+				}
+			}
+		}
+		ClassWriter writer = new ClassWriter(0);
+		node.accept(writer);
+		return writer.toByteArray();
+	}
+
+	/*
+	 * Decodes the methods of a freshly parsed copy of the given class file,
+	 * leaving the class from which it was written free of any barriers set
+	 * upon decoding.
+	 */
+	private void verify(String name, byte[] classFile) {
+		ClassNode node;
+		try {
+			node = MemoryClassSource.parse(classFile);
+		} catch (IllegalArgumentException e) {
+			this.errors.add(name + ": malformed class file");
+			return;
+		}
+		RuntimeClass clazz;
+		try {
+			clazz = new ClassRegistry(null).define(node);
+		} catch (IOException e) {
+			throw new AssertionError(e); // No classes are read
+		}
+		for (Object m : node.methods) {
+			MethodNode method = (MethodNode)m;
+			if (method.instructions.size() == 0) {
+				continue; // Abstract or native
+			}
+			String location = name + "." + method.name + method.desc;
+			MethodInfo info;
+			try {
+				info = clazz.getMethod(method.name, method.desc);
+			} catch (RuntimeException e) {
+				this.errors.add(location + ": " + e);
+				continue;
+			}
+			for (AbstractInsnNode insn = info.getInstructions().getFirst();
+					insn != null; insn = insn.getNext()) {
+				if (insn.getOpcode() >= 0 && !Instructions.isSupported(insn)) {
+					this.errors.add(location + ": unsupported opcode "
+							+ insn.getOpcode() + " at offset "
+							+ info.getOffset(insn));
+				}
+			}
+		}
+	}
+
+	private static void write(JarOutputStream out, String name,
+			byte[] classFile) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(classFile);
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(classFile.length);
+		entry.setCrc(crc.getValue());
+		out.putNextEntry(entry);
+		out.write(classFile);
+		out.closeEntry();
+	}
+
+}
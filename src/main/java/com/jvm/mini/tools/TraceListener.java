@@ -0,0 +1,41 @@
+package com.jvm.mini.tools;
+
+import java.io.PrintStream;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.api.ExecutionAdapter;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Prints a debugging trace of the executed instructions. Each line lists the
+ * field descriptors of the values on the operand stack, followed by the value
+ * on top thereof and the instruction about to be executed.
+ *
+ * @author Arno Bastenhof
+ */
+public final class TraceListener extends ExecutionAdapter {
+
+	private final PrintStream out;
+
+	/**
+	 * @param out the stream to print the trace to
+	 * @throws NullPointerException if {@code out == null}
+	 */
+	public TraceListener(PrintStream out) {
+		this.out = Validate.notNull(out);
+	}
+
+	@Override
+	public void beforeInstruction(JvmFacade facade, AbstractInsnNode insn) {
+		String line = new StringBuilder()
+			.append(String.format("%15s ", facade.getOperandTypes()))
+			.append(String.format("%20s    ", facade.peekOperand()))
+			.append(Instructions.toString(insn))
+			.toString();
+		this.out.println(line);
+	}
+
+}
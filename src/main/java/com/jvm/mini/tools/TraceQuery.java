@@ -0,0 +1,290 @@
+package com.jvm.mini.tools;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.impl.ClassPath;
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.tools.TraceReader.Record;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Validate;
+
+/**
+ * Offline query tool for the traces written by a {@link TraceWriter},
+ * filtering their records by method and opcode, and either aggregating them
+ * or printing them in the format of a {@link TraceListener}.
+ * <p>
+ * Supported commands are {@code print}, printing the matching records,
+ * {@code mix}, printing the number of times each opcode was executed, and
+ * {@code hot}, printing the most frequently executed instructions, each
+ * identified by its method and bytecode offset. As traces do not record the
+ * operands of instructions, these are only printed if the classes of the
+ * traced methods can be found on a class path, the instructions being listed
+ * by their mnemonics otherwise. Likewise, references on top of the operand
+ * stack are printed as {@code <ref>}.
+ *
+ * @author Arno Bastenhof
+ */
+public final class TraceQuery {
+
+	private static final String USAGE = "Usage: "
+			+ "java -cp mini-jvm-<version>.jar com.jvm.mini.tools.TraceQuery "
+			+ "[options] <trace> print|mix|hot\n"
+			+ "where options include:\n"
+			+ "    -cp <path>  directories and JARs to load the traced classes "
+			+ "from\n"
+			+ "    -method <s>  only consider methods whose names contain s\n"
+			+ "    -opcode <mnemonic>  only consider the given instruction\n"
+			+ "    -limit <n>  list at most n instructions for hot "
+			+ "(default 10)";
+
+	// Orders aggregated counts descendingly
+	private static final Comparator<Map.Entry<String, long[]>> BY_COUNT =
+			new Comparator<Map.Entry<String, long[]>>() {
+		@Override
+		public int compare(Map.Entry<String, long[]> e1,
+				Map.Entry<String, long[]> e2) {
+			return Long.compare(e2.getValue()[0], e1.getValue()[0]);
+		}
+	};
+
+	private final String method;
+	private final String mnemonic;
+
+	/**
+	 * @param method a substring the names of the methods of the records to
+	 * consider must contain, or null to consider all methods
+	 * @param mnemonic the mnemonic of the opcode of the records to consider,
+	 * or null to consider all opcodes
+	 */
+	public TraceQuery(String method, String mnemonic) {
+		this.method = method;
+		this.mnemonic = mnemonic;
+	}
+
+	/**
+	 * Runs the command given by the arguments, printing its results to
+	 * standard output.
+	 */
+	public static void main(String[] args) throws IOException {
+		String classPath = null;
+		String method = null;
+		String mnemonic = null;
+		int limit = 10;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			if (i + 1 == args.length) {
+				System.out.println(USAGE);
+				return;
+			}
+			switch (args[i]) {
+			case "-cp":
+				classPath = args[++i];
+				break;
+			case "-method":
+				method = args[++i];
+				break;
+			case "-opcode":
+				mnemonic = args[++i].toUpperCase(Locale.ROOT);
+				break;
+			case "-limit":
+				try {
+					limit = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					limit = -1;
+				}
+				if (limit < 0) {
+					System.out.println(USAGE);
+					return;
+				}
+				break;
+			default:
+				System.out.println(USAGE);
+				return;
+			}
+		}
+		if (args.length - i != 2) {
+			System.out.println(USAGE);
+			return;
+		}
+
+		TraceQuery query = new TraceQuery(method, mnemonic);
+		try (TraceReader reader = new TraceReader(FileChannel.open(
+				Paths.get(args[i])))) {
+			switch (args[i + 1]) {
+			case "print":
+				query.print(reader, classPath == null ? null
+						: new ClassRegistry(ClassPath.parse(classPath)),
+						System.out);
+				break;
+			case "mix":
+				printCounts(query.mix(reader), System.out);
+				break;
+			case "hot":
+				printCounts(query.hot(reader, limit), System.out);
+				break;
+			default:
+				System.out.println(USAGE);
+			}
+		}
+	}
+
+	/**
+	 * Returns true iff the given record satisfies the filters of this query.
+	 *
+	 * @throws NullPointerException if {@code record == null}
+	 */
+	public boolean matches(Record record) {
+		return (this.method == null || record.getMethod().contains(this.method))
+				&& (this.mnemonic == null || this.mnemonic.equals(
+						Instructions.getMnemonic(record.getOpcode())));
+	}
+
+	/**
+	 * Prints the matching records of the given trace in the format of a
+	 * {@link TraceListener}.
+	 *
+	 * @param reader the trace to read
+	 * @param registry the registry to look up the traced methods in so as to
+	 * print the operands of their instructions, or null to only print the
+	 * mnemonics
+	 * @param out the stream to print to
+	 * @throws NullPointerException if {@code reader} or {@code out} is null
+	 * @throws IOException if the trace could not be read
+	 */
+	public void print(TraceReader reader, ClassRegistry registry,
+			PrintStream out) throws IOException {
+		Validate.notNull(out);
+		Map<String, String> insns = new HashMap<>();
+		for (Record record = reader.read(); record != null;
+				record = reader.read()) {
+			if (!matches(record)) {
+				continue;
+			}
+			String key = record.getMethod() + "@" + record.getPc();
+			String insn = insns.get(key);
+			if (insn == null) {
+				insn = toString(record, registry);
+				insns.put(key, insn);
+			}
+			Object top = record.getTop();
+			out.println(new StringBuilder()
+				.append(String.format("%15s ", record.getOperandTypes()))
+				.append(String.format("%20s    ", top == null ? "<ref>" : top))
+				.append(insn)
+				.toString());
+		}
+	}
+
+	/**
+	 * Returns the number of matching records per opcode mnemonic in the given
+	 * trace, in descending order.
+	 *
+	 * @throws NullPointerException if {@code reader == null}
+	 * @throws IOException if the trace could not be read
+	 */
+	public Map<String, Long> mix(TraceReader reader) throws IOException {
+		Map<String, long[]> counts = new HashMap<>();
+		for (Record record = reader.read(); record != null;
+				record = reader.read()) {
+			if (matches(record)) {
+				String mnemonic = Instructions.getMnemonic(record.getOpcode());
+				count(counts, mnemonic != null ? mnemonic
+						: "opcode " + record.getOpcode());
+			}
+		}
+		return sort(counts, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the number of matching records per instruction in the given
+	 * trace for the {@code limit} most frequently executed instructions, in
+	 * descending order. Instructions are identified by their method and
+	 * bytecode offset, separated by {@code '@'}.
+	 *
+	 * @throws NullPointerException if {@code reader == null}
+	 * @throws IOException if the trace could not be read
+	 */
+	public Map<String, Long> hot(TraceReader reader, int limit)
+			throws IOException {
+		Map<String, long[]> counts = new HashMap<>();
+		for (Record record = reader.read(); record != null;
+				record = reader.read()) {
+			if (matches(record)) {
+				count(counts, record.getMethod() + "@" + record.getPc());
+			}
+		}
+		return sort(counts, limit);
+	}
+
+	private static void printCounts(Map<String, Long> counts, PrintStream out) {
+		long total = 0;
+		for (Long count : counts.values()) {
+			total += count.longValue();
+		}
+		for (Map.Entry<String, Long> entry : counts.entrySet()) {
+			out.println(String.format("%12d %6.2f%%  %s", entry.getValue(),
+					100.0 * entry.getValue().longValue() / total,
+					entry.getKey()));
+		}
+	}
+
+	private static void count(Map<String, long[]> counts, String key) {
+		long[] count = counts.get(key);
+		if (count == null) {
+			count = new long[1];
+			counts.put(key, count);
+		}
+		count[0]++;
+	}
+
+	private static Map<String, Long> sort(Map<String, long[]> counts,
+			int limit) {
+		List<Map.Entry<String, long[]>> entries =
+				new ArrayList<>(counts.entrySet());
+		Collections.sort(entries, BY_COUNT);
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (Map.Entry<String, long[]> entry : entries) {
+			if (result.size() == limit) {
+				break;
+			}
+			result.put(entry.getKey(), Long.valueOf(entry.getValue()[0]));
+		}
+		return result;
+	}
+
+	// Renders the recorded instruction, with its operands if it can be found
+	private static String toString(Record record, ClassRegistry registry)
+			throws IOException {
+		String name = record.getMethod();
+		int desc = name.indexOf('(');
+		int dot = desc < 0 ? -1 : name.lastIndexOf('.', desc);
+		if (registry != null && dot >= 0) {
+			RuntimeClass clazz = registry.getClass(name.substring(0, dot));
+			MethodInfo method = clazz == null ? null : clazz.getMethod(
+					name.substring(dot + 1, desc), name.substring(desc));
+			AbstractInsnNode insn = method == null ? null
+					: method.getInstruction(record.getPc());
+			if (insn != null && insn.getOpcode() == record.getOpcode()) {
+				return Instructions.toString(insn);
+			}
+		}
+		String mnemonic = Instructions.getMnemonic(record.getOpcode());
+		return mnemonic != null ? mnemonic : "opcode " + record.getOpcode();
+	}
+
+}
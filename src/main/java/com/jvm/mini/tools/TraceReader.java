@@ -0,0 +1,258 @@
+package com.jvm.mini.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.jvm.mini.util.Validate;
+import com.jvm.mini.util.VarInts;
+
+/**
+ * Reads the records of a trace written by a {@link TraceWriter} (which also
+ * documents the file format), decompressing one block at a time.
+ *
+ * @author Arno Bastenhof
+ */
+public final class TraceReader implements Closeable {
+
+	/**
+	 * An executed instruction, as recorded by a trace.
+	 */
+	public static final class Record {
+
+		private final String method;
+		private final int pc;
+		private final int opcode;
+		private final int depth;
+		private final String operandTypes;
+		private final Object top;
+
+		Record(String method, int pc, int opcode, int depth,
+				String operandTypes, Object top) {
+			this.method = method;
+			this.pc = pc;
+			this.opcode = opcode;
+			this.depth = depth;
+			this.operandTypes = operandTypes;
+			this.top = top;
+		}
+
+		/**
+		 * Returns the name of the executing method, formatted as by {@link
+		 * com.jvm.mini.impl.MethodInfo#toString}, or the empty String if
+		 * unknown.
+		 */
+		public String getMethod() {
+			return this.method;
+		}
+
+		/**
+		 * Returns the bytecode offset of the instruction.
+		 */
+		public int getPc() {
+			return this.pc;
+		}
+
+		/**
+		 * Returns the opcode of the instruction.
+		 */
+		public int getOpcode() {
+			return this.opcode;
+		}
+
+		/**
+		 * Returns the number of frames on the JVM stack.
+		 */
+		public int getDepth() {
+			return this.depth;
+		}
+
+		/**
+		 * Returns the types of the values on the operand stack, formatted as
+		 * by {@link com.jvm.mini.impl.Frame#getOperandTypes}.
+		 */
+		public String getOperandTypes() {
+			return this.operandTypes;
+		}
+
+		/**
+		 * Returns the value on top of the operand stack, boxed if primitive,
+		 * or the empty String if the operand stack was empty, or null if the
+		 * value is a reference, which is not recorded.
+		 */
+		public Object getTop() {
+			return this.top;
+		}
+	}
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer header = ByteBuffer.allocate(
+			TraceWriter.HEADER_SIZE);
+	private final Inflater inflater = new Inflater();
+	private final List<String> methods = new ArrayList<>();
+	private ByteArrayInputStream block;
+	private int records;
+	private int pc;
+	private int depth;
+	private String types;
+
+	/**
+	 * @param channel the channel to read the trace from, which is closed
+	 * together with this reader
+	 * @throws NullPointerException if {@code channel == null}
+	 * @throws IOException if the channel does not hold a trace
+	 */
+	public TraceReader(ReadableByteChannel channel) throws IOException {
+		this.channel = Validate.notNull(channel);
+		ByteBuffer start = ByteBuffer.allocate(TraceWriter.MAGIC.length + 1);
+		byte[] magic = new byte[TraceWriter.MAGIC.length];
+		if (!read(start)) {
+			throw new EOFException();
+		}
+		start.get(magic);
+		if (!Arrays.equals(magic, TraceWriter.MAGIC)
+				|| start.get() != TraceWriter.VERSION) {
+			throw new IOException("Not a trace of a supported version");
+		}
+	}
+
+	/**
+	 * Returns the next record, or null if the end of the trace was reached.
+	 *
+	 * @throws IOException if the trace is malformed
+	 */
+	public Record read() throws IOException {
+		if (this.records == 0 && !nextBlock()) {
+			return null;
+		}
+		this.records--;
+
+		// Method
+		int id = (int)VarInts.readLong(this.block);
+		if (id == this.methods.size()) {
+			this.methods.add(readString());
+		} else if (id < 0 || id > this.methods.size()) {
+			throw new IOException("Undefined method " + id);
+		}
+		String method = this.methods.get(id);
+
+		// Instruction and stack
+		this.pc += (int)VarInts.readLong(this.block);
+		int opcode = this.block.read();
+		if (opcode < 0) {
+			throw new EOFException();
+		}
+		this.depth += (int)VarInts.readLong(this.block);
+		int prefix = (int)VarInts.readLong(this.block);
+		if (prefix < 0 || prefix > this.types.length()) {
+			throw new IOException("Malformed operand types");
+		}
+		this.types = this.types.substring(0, prefix) + readString();
+		return new Record(method, this.pc, opcode, this.depth, this.types,
+				readTop());
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			this.inflater.end();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	private Object readTop() throws IOException {
+		int tag = this.block.read();
+		switch (tag) {
+		case 0:
+			return "";
+		case 'I':
+			return Integer.valueOf((int)VarInts.readLong(this.block));
+		case 'J':
+			return Long.valueOf(VarInts.readLong(this.block));
+		case 'F':
+			return Float.valueOf(Float.intBitsToFloat(
+					(int)VarInts.readLong(this.block)));
+		case 'D':
+			return Double.valueOf(Double.longBitsToDouble(
+					VarInts.readLong(this.block)));
+		case 'L':
+			return null;
+		default:
+			throw new IOException("Unexpected tag " + tag);
+		}
+	}
+
+	private String readString() throws IOException {
+		int length = (int)VarInts.readLong(this.block);
+		if (length < 0 || length > this.block.available()) {
+			throw new IOException("Malformed string");
+		}
+		byte[] bytes = new byte[length];
+		this.block.read(bytes, 0, length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Decompresses the next block, resetting the delta encoding
+	private boolean nextBlock() throws IOException {
+		do {
+			this.header.clear();
+			if (!read(this.header)) {
+				return false;
+			}
+			int compressedLength = this.header.getInt();
+			int length = this.header.getInt();
+			this.records = this.header.getInt();
+			if (compressedLength < 0 || length < 0 || this.records < 0) {
+				throw new IOException("Malformed block header");
+			}
+			ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+			if (!read(compressed)) {
+				throw new EOFException();
+			}
+			byte[] bytes = new byte[length];
+			this.inflater.reset();
+			this.inflater.setInput(compressed.array());
+			try {
+				if (this.inflater.inflate(bytes) != length) {
+					throw new IOException("Truncated block");
+				}
+			} catch (DataFormatException e) {
+				throw new IOException(e);
+			}
+			this.block = new ByteArrayInputStream(bytes);
+		} while (this.records == 0);
+		this.methods.clear();
+		this.pc = 0;
+		this.depth = 0;
+		this.types = "";
+		return true;
+	}
+
+	/*
+	 * Fills the given buffer and flips it, returning false if the end of the
+	 * channel was reached before reading anything.
+	 */
+	private boolean read(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (this.channel.read(buffer) < 0) {
+				if (buffer.position() == 0) {
+					return false;
+				}
+				throw new EOFException();
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+
+}
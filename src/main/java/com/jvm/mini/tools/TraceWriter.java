@@ -0,0 +1,241 @@
+package com.jvm.mini.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+import com.jvm.mini.api.ExecutionAdapter;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.impl.Frame;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.util.Traps;
+import com.jvm.mini.util.Validate;
+import com.jvm.mini.util.VarInts;
+
+/**
+ * Writes a compact binary trace of the executed instructions, to be inspected
+ * afterwards by a {@link TraceQuery} rather than printed as text while the
+ * guest is running.
+ * <p>
+ * A trace starts with the magic number {@code MJVT} and a version byte,
+ * followed by a sequence of blocks. Each block consists of three big-endian
+ * ints, holding the length of its compressed data, the length thereof once
+ * decompressed and the number of records it contains, followed by the data
+ * as compressed by a {@link Deflater}. Decompressed, the data holds one
+ * record per instruction, listing the following, with all integers encoded
+ * by {@link VarInts}:
+ * <ol>
+ * <li>The index of the executing method within the block. A method's first
+ * occurrence is given the next free index and is followed by the UTF-8 byte
+ * length and bytes of its name, formatted as by {@link MethodInfo#toString},
+ * or of the empty String if the method is unknown.
+ * <li>The bytecode offset (pc) of the instruction, minus that of the
+ * previous record.
+ * <li>The opcode of the instruction, as a single byte.
+ * <li>The depth of the JVM stack, minus that of the previous record.
+ * <li>The types of the values on the operand stack (cf. {@link
+ * Frame#getOperandTypes}), given by the length of the prefix they share with
+ * those of the previous record, followed by the length and bytes of the
+ * remainder.
+ * <li>The value on top of the operand stack, given by a tag byte being 0 for
+ * an empty stack, {@code 'L'} for a reference or the field descriptor of a
+ * primitive, followed in the latter case by the value, or by its raw bits
+ * for floats and doubles.
+ * </ol>
+ * All deltas are taken relative to zero at the start of a block, so that
+ * blocks can be decoded independently. Records are encoded into a buffer of
+ * {@link #BLOCK_SIZE} bytes, which is compressed and written to the channel
+ * as a block when full, so that tracing takes one system call per block
+ * rather than per instruction.
+ *
+ * @author Arno Bastenhof
+ */
+public final class TraceWriter extends ExecutionAdapter implements Closeable {
+
+	/**
+	 * The number of bytes of records after which a block is written.
+	 */
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	static final byte[] MAGIC = {'M', 'J', 'V', 'T'};
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 12;
+
+	private final WritableByteChannel channel;
+	private final Block block = new Block();
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	private final Map<MethodInfo, Integer> methods = new IdentityHashMap<>();
+	private byte[] compressed = new byte[BLOCK_SIZE];
+	private int records;
+	private int pc;
+	private int depth;
+	private String types = "";
+
+	/**
+	 * @param channel the channel to write the trace to, which is closed
+	 * together with this writer
+	 * @throws NullPointerException if {@code channel == null}
+	 * @throws IOException if the header could not be written
+	 */
+	public TraceWriter(WritableByteChannel channel) throws IOException {
+		this.channel = Validate.notNull(channel);
+		ByteBuffer start = ByteBuffer.allocate(MAGIC.length + 1);
+		start.put(MAGIC).put((byte)VERSION).flip();
+		write(start);
+	}
+
+	@Override
+	public void beforeInstruction(JvmFacade facade, AbstractInsnNode insn) {
+		Frame frame = facade.getCurrentFrame();
+		try {
+			writeMethod(frame.getMethod());
+			int offset = frame.getMethod() == null ? 0
+					: frame.getMethod().getOffset(insn);
+			VarInts.writeLong(this.block, offset - this.pc);
+			this.pc = offset;
+			this.block.write(Traps.getOpcode(insn));
+			VarInts.writeLong(this.block, frame.getDepth() - this.depth);
+			this.depth = frame.getDepth();
+			writeTypes(frame.getOperandTypes());
+			writeTop(frame);
+			this.records++;
+			if (this.block.size() >= BLOCK_SIZE) {
+				flush();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes the records of the last block, if any, and closes the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			this.deflater.end();
+			this.channel.close();
+		}
+	}
+
+	private void writeMethod(MethodInfo method) throws IOException {
+		Integer id = this.methods.get(method);
+		if (id != null) {
+			VarInts.writeLong(this.block, id.intValue());
+			return;
+		}
+		int next = this.methods.size();
+		this.methods.put(method, Integer.valueOf(next));
+		VarInts.writeLong(this.block, next);
+		writeString(method == null ? "" : method.toString());
+	}
+
+	private void writeTypes(String current) throws IOException {
+		int prefix = 0;
+		int max = Math.min(current.length(), this.types.length());
+		while (prefix < max
+				&& current.charAt(prefix) == this.types.charAt(prefix)) {
+			prefix++;
+		}
+		VarInts.writeLong(this.block, prefix);
+		writeString(current.substring(prefix));
+		this.types = current;
+	}
+
+	private void writeTop(Frame frame) throws IOException {
+		int size = frame.getStackSize();
+		if (size == 0) {
+			this.block.write(0);
+			return;
+		}
+		Object top = frame.getOperand(size - 1);
+		if (top == null) {
+			top = frame.getOperand(size - 2); // Second slot of long or double
+		}
+		if (top instanceof Integer) {
+			this.block.write('I');
+			VarInts.writeLong(this.block, ((Integer)top).intValue());
+		} else if (top instanceof Long) {
+			this.block.write('J');
+			VarInts.writeLong(this.block, ((Long)top).longValue());
+		} else if (top instanceof Float) {
+			this.block.write('F');
+			VarInts.writeLong(this.block,
+					Float.floatToRawIntBits(((Float)top).floatValue()));
+		} else if (top instanceof Double) {
+			this.block.write('D');
+			VarInts.writeLong(this.block,
+					Double.doubleToRawLongBits(((Double)top).doubleValue()));
+		} else {
+			this.block.write('L');
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		VarInts.writeLong(this.block, bytes.length);
+		this.block.write(bytes);
+	}
+
+	// Compresses and writes the current block, resetting the delta encoding
+	private void flush() throws IOException {
+		if (this.records == 0) {
+			return;
+		}
+		this.deflater.reset();
+		this.deflater.setInput(this.block.buffer(), 0, this.block.size());
+		this.deflater.finish();
+		int length = 0;
+		while (!this.deflater.finished()) {
+			if (length == this.compressed.length) {
+				byte[] grown = new byte[2 * length];
+				System.arraycopy(this.compressed, 0, grown, 0, length);
+				this.compressed = grown;
+			}
+			length += this.deflater.deflate(this.compressed, length,
+					this.compressed.length - length);
+		}
+		this.header.clear();
+		this.header.putInt(length).putInt(this.block.size())
+				.putInt(this.records).flip();
+		write(this.header);
+		write(ByteBuffer.wrap(this.compressed, 0, length));
+
+		this.block.reset();
+		this.methods.clear();
+		this.records = 0;
+		this.pc = 0;
+		this.depth = 0;
+		this.types = "";
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			this.channel.write(buffer);
+		}
+	}
+
+	// Buffer of encoded records, exposing its array to the deflater
+	private static final class Block extends ByteArrayOutputStream {
+
+		Block() {
+			super(BLOCK_SIZE + 256);
+		}
+
+		byte[] buffer() {
+			return this.buf;
+		}
+	}
+
+}
@@ -1,19 +1,34 @@
 package com.jvm.mini.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FrameNode;
 import org.objectweb.asm.tree.IincInsnNode;
 import org.objectweb.asm.tree.IntInsnNode;
 import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
 
 import com.jvm.mini.api.InsnVisitor;
+import com.jvm.mini.impl.ConstantPool;
+import com.jvm.mini.impl.Intrinsic;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.impl.StandardStream;
+import com.jvm.mini.impl.StaticField;
+import com.jvm.mini.impl.SwitchTable;
 
 /**
  * Utility class for Java bytecode instructions.
@@ -30,21 +45,32 @@ public final class Instructions {
 	// Flyweight factory, populated by the static initializer
 	private static final Map<Integer,OpcodeInfo> OPCODES;
 
+	// Handle on OpcodeInfo#execute, bound by #bindInsn
+	private static final MethodHandle EXECUTE;
+
 	static {
 		OPCODES = new HashMap<>();
 		for (OpcodeInfo info : OpcodeInfo.values()) {
 			OPCODES.put(Integer.valueOf(info.opcode), info);
 		}
+		try {
+			EXECUTE = MethodHandles.lookup().findVirtual(OpcodeInfo.class,
+					"execute", MethodType.methodType(void.class,
+							InsnVisitor.class, AbstractInsnNode.class));
+		} catch (ReflectiveOperationException e) {
+			throw new AssertionError(e);
+		}
 	}
 
 	/**
 	 * Returns the next {@link AbstractInsnNode} from {@code insn} that does
-	 * not coincide with a {@link LabelNode} or {@link FrameNode}, or null
-	 * if there is none.
+	 * not coincide with a {@link LabelNode}, {@link FrameNode} or {@link
+	 * LineNumberNode}, or null if there is none.
 	 */
 	public static AbstractInsnNode getNext(AbstractInsnNode insn) {
 		AbstractInsnNode next = insn.getNext();
-		while (next instanceof LabelNode || next instanceof FrameNode) {
+		while (next instanceof LabelNode || next instanceof FrameNode
+				|| next instanceof LineNumberNode) {
 				next = next.getNext();
 		} // Note: if next == null the loop condition becomes false
 		return next;
@@ -65,7 +91,8 @@ public final class Instructions {
 
 		// Opcode mnemonic
 		{
-			OpcodeInfo info = OPCODES.get(Integer.valueOf(insn.getOpcode()));
+			int opcode = Traps.getOpcode(insn);
+			OpcodeInfo info = OPCODES.get(Integer.valueOf(opcode));
 			Validate.argument(info != null);
 			buffer.append(info.mnemonic).append(" ");
 		}
@@ -84,10 +111,81 @@ public final class Instructions {
 			buffer.append(var + ", " + incr);
 		} else if (insn instanceof JumpInsnNode) {
 			buffer.append(((JumpInsnNode)insn).label.getLabel().toString());
+		} else if (insn instanceof TableSwitchInsnNode) {
+			TableSwitchInsnNode node = (TableSwitchInsnNode)insn;
+			buffer.append(node.min + ".." + node.max);
+		} else if (insn instanceof LookupSwitchInsnNode) {
+			buffer.append(((LookupSwitchInsnNode)insn).keys.toString());
+		} else if (insn instanceof FieldInsnNode) {
+			FieldInsnNode node = (FieldInsnNode)insn;
+			buffer.append(node.owner + "." + node.name + ":" + node.desc);
+		} else if (insn instanceof MethodInsnNode) {
+			MethodInsnNode node = (MethodInsnNode)insn;
+			buffer.append(node.owner + "." + node.name + node.desc);
 		}
 		return buffer.toString();
 	}
 
+	/**
+	 * Returns the mnemonic of the specified opcode, or null if the opcode is
+	 * not supported by this implementation.
+	 */
+	public static String getMnemonic(int opcode) {
+		OpcodeInfo info = OPCODES.get(Integer.valueOf(opcode));
+		return info == null ? null : info.mnemonic;
+	}
+
+	/**
+	 * Returns true iff the specified JVM instruction is supported by this
+	 * implementation. Pseudo-instructions, such as labels, are not.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 */
+	public static boolean isSupported(AbstractInsnNode insn) {
+		return OPCODES.containsKey(Integer.valueOf(Traps.getOpcode(insn)));
+	}
+
+	/**
+	 * Returns the size in bytes of the specified JVM instruction within the
+	 * code attribute of its class file. For {@code ldc} instructions the
+	 * result assumes the index of the constant to fit within a single byte,
+	 * as this information is not retained by ASM.
+	 *
+	 * @param insn an instruction that is not a pseudo-instruction
+	 * @param offset the bytecode offset of {@code insn}, determining the
+	 * padding of {@code tableswitch} and {@code lookupswitch} instructions
+	 * @throws IllegalArgumentException if {@code insn.opcode} is not supported
+	 * by this implementation
+	 */
+	public static int getSize(AbstractInsnNode insn, int offset) {
+		if (insn instanceof VarInsnNode) {
+			int var = ((VarInsnNode)insn).var;
+			return var <= 3 ? 1 : var <= 255 ? 2 : 4; // xload_n, xload, wide
+		}
+		if (insn instanceof IincInsnNode) {
+			IincInsnNode node = (IincInsnNode)insn;
+			boolean wide = node.var > 255 || node.incr != (byte)node.incr;
+			return wide ? 6 : 3;
+		}
+		if (insn instanceof LdcInsnNode) {
+			Object cst = ((LdcInsnNode)insn).cst;
+			return cst instanceof Long || cst instanceof Double ? 3 : 2;
+		}
+		int padding = 3 - (offset & 3); // Aligns the operands to 4 bytes
+		if (insn instanceof TableSwitchInsnNode) {
+			TableSwitchInsnNode node = (TableSwitchInsnNode)insn;
+			return 1 + padding + 12 + 4 * node.labels.size();
+		}
+		if (insn instanceof LookupSwitchInsnNode) {
+			LookupSwitchInsnNode node = (LookupSwitchInsnNode)insn;
+			return 1 + padding + 8 + 8 * node.labels.size();
+		}
+		int opcode = Traps.getOpcode(insn);
+		OpcodeInfo info = OPCODES.get(Integer.valueOf(opcode));
+		Validate.argument(info != null);
+		return info.instructionSize;
+	}
+
 	/**
 	 * Selects and executes the method on the supplied {@code visitor} for the
 	 * given instruction.
@@ -104,6 +202,22 @@ public final class Instructions {
 		info.execute(visitor, insn);
 	}
 
+	/**
+	 * Returns a handle of type {@code (InsnVisitor)void} executing the given
+	 * instruction on the supplied visitor as {@link #switchOnInsn} would for
+	 * its original opcode, ignoring any trap set on it since. The opcode is
+	 * thus looked up once, rather than upon every execution.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 * @throws IllegalArgumentException if the original opcode of {@code insn}
+	 * is not supported by this implementation
+	 */
+	public static MethodHandle bindInsn(AbstractInsnNode insn) {
+		OpcodeInfo info = OPCODES.get(Integer.valueOf(Traps.getOpcode(insn)));
+		Validate.argument(info != null);
+		return MethodHandles.insertArguments(EXECUTE.bindTo(info), 1, insn);
+	}
+
 	/*
 	 * Strategy interface (cf. #execute), used to mimick function pointers.
 	 * (See Item 21 of Bloch's Effective Java, 2nd ed.) Instance-controlled
@@ -125,10 +239,45 @@ public final class Instructions {
 			}
 		},
 
+		FCONST_0(Opcodes.FCONST_0, "FCONST_0", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fconst(0f);
+			}
+		},
+
+		FCONST_1(Opcodes.FCONST_1, "FCONST_1", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fconst(1f);
+			}
+		},
+
+		FCONST_2(Opcodes.FCONST_2, "FCONST_2", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fconst(2f);
+			}
+		},
+
+		DCONST_0(Opcodes.DCONST_0, "DCONST_0", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dconst(0d);
+			}
+		},
+
+		DCONST_1(Opcodes.DCONST_1, "DCONST_1", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dconst(1d);
+			}
+		},
+
 		LDC(Opcodes.LDC, "LDC", 2) {
 			@Override
 			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
-				visitor.ldc(((LdcInsnNode)insn).cst);
+				visitor.ldc(ConstantPool.resolve(insn));
 			}
 		},
 
@@ -160,6 +309,76 @@ public final class Instructions {
 			}
 		},
 
+		I2F(Opcodes.I2F, "I2F", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.i2f();
+			}
+		},
+
+		I2D(Opcodes.I2D, "I2D", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.i2d();
+			}
+		},
+
+		L2F(Opcodes.L2F, "L2F", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.l2f();
+			}
+		},
+
+		L2D(Opcodes.L2D, "L2D", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.l2d();
+			}
+		},
+
+		F2I(Opcodes.F2I, "F2I", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.f2i();
+			}
+		},
+
+		F2L(Opcodes.F2L, "F2L", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.f2l();
+			}
+		},
+
+		F2D(Opcodes.F2D, "F2D", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.f2d();
+			}
+		},
+
+		D2I(Opcodes.D2I, "D2I", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.d2i();
+			}
+		},
+
+		D2L(Opcodes.D2L, "D2L", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.d2l();
+			}
+		},
+
+		D2F(Opcodes.D2F, "D2F", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.d2f();
+			}
+		},
+
 		IADD(Opcodes.IADD, "IADD", 1) {
 			@Override
 			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
@@ -216,6 +435,90 @@ public final class Instructions {
 			}
 		},
 
+		FADD(Opcodes.FADD, "FADD", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fadd();
+			}
+		},
+
+		DADD(Opcodes.DADD, "DADD", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dadd();
+			}
+		},
+
+		FSUB(Opcodes.FSUB, "FSUB", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fsub();
+			}
+		},
+
+		DSUB(Opcodes.DSUB, "DSUB", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dsub();
+			}
+		},
+
+		FMUL(Opcodes.FMUL, "FMUL", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fmul();
+			}
+		},
+
+		DMUL(Opcodes.DMUL, "DMUL", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dmul();
+			}
+		},
+
+		FDIV(Opcodes.FDIV, "FDIV", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fdiv();
+			}
+		},
+
+		DDIV(Opcodes.DDIV, "DDIV", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.ddiv();
+			}
+		},
+
+		FREM(Opcodes.FREM, "FREM", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.frem();
+			}
+		},
+
+		DREM(Opcodes.DREM, "DREM", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.drem();
+			}
+		},
+
+		FNEG(Opcodes.FNEG, "FNEG", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fneg();
+			}
+		},
+
+		DNEG(Opcodes.DNEG, "DNEG", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dneg();
+			}
+		},
+
 		ILOAD(Opcodes.ILOAD, "ILOAD", 2) {
 			@Override
 			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
@@ -244,6 +547,34 @@ public final class Instructions {
 			}
 		},
 
+		FLOAD(Opcodes.FLOAD, "FLOAD", 2) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fload(((VarInsnNode)insn).var);
+			}
+		},
+
+		DLOAD(Opcodes.DLOAD, "DLOAD", 2) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dload(((VarInsnNode)insn).var);
+			}
+		},
+
+		FSTORE(Opcodes.FSTORE, "FSTORE", 2) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fstore(((VarInsnNode)insn).var);
+			}
+		},
+
+		DSTORE(Opcodes.DSTORE, "DSTORE", 2) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dstore(((VarInsnNode)insn).var);
+			}
+		},
+
 		IINC(Opcodes.IINC, "IINC", 3) {
 			@Override
 			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
@@ -301,6 +632,34 @@ public final class Instructions {
 			}
 		},
 
+		FCMPL(Opcodes.FCMPL, "FCMPL", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fcmpl();
+			}
+		},
+
+		FCMPG(Opcodes.FCMPG, "FCMPG", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.fcmpg();
+			}
+		},
+
+		DCMPL(Opcodes.DCMPL, "DCMPL", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dcmpl();
+			}
+		},
+
+		DCMPG(Opcodes.DCMPG, "DCMPG", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.dcmpg();
+			}
+		},
+
 		IFEQ(Opcodes.IFEQ, "IFEQ", 3) {
 			@Override
 			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
@@ -350,16 +709,122 @@ public final class Instructions {
 			}
 		},
 
+		TABLESWITCH(Opcodes.TABLESWITCH, "TABLESWITCH", 13) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.tableswitch(SwitchTable.forInsn(insn));
+			}
+		},
+
+		LOOKUPSWITCH(Opcodes.LOOKUPSWITCH, "LOOKUPSWITCH", 9) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.lookupswitch(SwitchTable.forInsn(insn));
+			}
+		},
+
+		GETSTATIC(Opcodes.GETSTATIC, "GETSTATIC", 3) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				Object field = ConstantPool.resolve(insn);
+				if (field instanceof StandardStream) {
+					visitor.getstream((StandardStream)field);
+				} else {
+					visitor.getstatic(field instanceof StaticField
+							? (StaticField)field : null);
+				}
+			}
+		},
+
+		PUTSTATIC(Opcodes.PUTSTATIC, "PUTSTATIC", 3) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				Object field = ConstantPool.resolve(insn);
+				visitor.putstatic(field instanceof StaticField
+						? (StaticField)field : null);
+			}
+		},
+
+		INVOKESTATIC(Opcodes.INVOKESTATIC, "INVOKESTATIC", 3) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				Object method = ConstantPool.resolve(insn);
+				if (method instanceof Intrinsic) {
+					visitor.invokeintrinsic((Intrinsic)method);
+				} else {
+					visitor.invokestatic(method instanceof MethodInfo
+							? (MethodInfo)method : null);
+				}
+			}
+		},
+
+		INVOKEVIRTUAL(Opcodes.INVOKEVIRTUAL, "INVOKEVIRTUAL", 3) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				Object resolved = ConstantPool.resolve(insn);
+				if (resolved instanceof Intrinsic) {
+					visitor.invokeintrinsic((Intrinsic)resolved);
+					return;
+				}
+				MethodInfo method = resolved instanceof MethodInfo
+						? (MethodInfo)resolved : null;
+				RuntimeClass owner = method == null
+						? null : method.getConstantPool().getRuntimeClass();
+				visitor.invokevirtual(method, owner == null ? null : owner
+						.getRegistry().getHierarchy().bind(insn, method));
+			}
+		},
+
+		ATHROW(Opcodes.ATHROW, "ATHROW", 1) {
+			@Override
+			public void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				visitor.athrow();
+			}
+		},
+
 		RETURN(Opcodes.RETURN, "RETURN", 1) {
 			@Override
 			protected void execute(InsnVisitor visitor, AbstractInsnNode insn) {
 				visitor.voidReturn();
 			}
+		},
+
+		BREAKPOINT(Traps.BREAKPOINT, "BREAKPOINT", 1) {
+			@Override
+			protected void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				int opcode = Traps.handle(insn);
+				OPCODES.get(Integer.valueOf(opcode)).execute(visitor, insn);
+			}
+		},
+
+		INIT_BARRIER(Traps.INIT_BARRIER, "INIT_BARRIER", 3) {
+			@Override
+			protected void execute(InsnVisitor visitor, AbstractInsnNode insn) {
+				// Find the class declaring the field or method referred to
+				Object target = ConstantPool.resolve(insn);
+				RuntimeClass clazz = target instanceof StaticField
+						? ((StaticField)target).getOwner()
+						: target instanceof MethodInfo ? ((MethodInfo)target)
+								.getConstantPool().getRuntimeClass() : null;
+
+				// Remove the barrier once the class is known to be initialized
+				int opcode;
+				if (clazz == null || clazz.isInitialized()) {
+					opcode = Traps.removeBarrier(insn);
+				} else {
+					clazz.addSite(insn);
+					if (!visitor.initialize(clazz)) {
+						return; // Executed anew after running initializers
+					}
+					opcode = Traps.getOpcode(insn);
+				}
+				OPCODES.get(Integer.valueOf(opcode)).execute(visitor, insn);
+			}
 		};
 
 		private final int opcode;
 		private final String mnemonic;
-		private final int instructionSize; // TODO Unused
+		private final int instructionSize;
 
 		private OpcodeInfo(int opcode, String mnemonic, int instructionSize) {
 			this.opcode = opcode;
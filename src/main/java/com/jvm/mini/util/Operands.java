@@ -3,6 +3,8 @@ package com.jvm.mini.util;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.objectweb.asm.Type;
+
 /**
  * Utility class.
  *
@@ -25,20 +27,24 @@ public final class Operands {
 	}
 
 	/**
-	 * Returns the field descriptor for the specified {@code clazz}.
+	 * Returns the field descriptor for the specified {@code clazz}, being
+	 * that of the primitive type for the classes of boxed integers, longs,
+	 * floats and doubles, as these are how frames expose their primitive
+	 * values.
 	 *
 	 * @param clazz a Java type
-	 * @throws IllegalArgumentException if {@code clazz} is unsupported
+	 * @throws NullPointerException if {@code clazz == null}
 	 */
 	public static String getFieldDescriptor(Class<?> clazz) {
-		FieldDescr descr = FIELD_DESCRIPTORS.get(clazz);
-		Validate.argument(descr != null);
-		return descr.value;
+		FieldDescr descr = FIELD_DESCRIPTORS.get(Validate.notNull(clazz));
+		return descr != null ? descr.value : Type.getDescriptor(clazz);
 	}
 
 	private enum FieldDescr {
 		INTEGER(Integer.class, "I"),
-		LONG(Long.class, "J");
+		LONG(Long.class, "J"),
+		FLOAT(Float.class, "F"),
+		DOUBLE(Double.class, "D");
 
 		private final Class<?> clazz;
 		private final String value;
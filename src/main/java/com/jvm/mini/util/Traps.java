@@ -0,0 +1,238 @@
+package com.jvm.mini.util;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+
+/**
+ * Utility class for patching traps into code.
+ * <p>
+ * A trap is set on an instruction by overwriting its opcode with the {@code
+ * breakpoint} opcode the JVM spec reserves for debuggers (see Section 6.2 of
+ * the SE8 edition). Upon reaching a patched instruction, execution is handed
+ * to the registered {@link Handler}s before the original instruction is
+ * executed. The patch is applied in place, thereby preserving both the
+ * identity of the instruction and its position within its {@link InsnList},
+ * which the program counter, return addresses and handler tables all rely on.
+ * Instructions without traps are thus executed exactly as before, without any
+ * checks for their presence. ASM offering no means of altering an opcode, the
+ * latter is overwritten through reflection.
+ * <p>
+ * Class initialization barriers are patched in likewise, using the {@code
+ * impdep1} opcode the JVM spec reserves for implementation-dependent use.
+ * Unlike a trap, a barrier is executed in place of its instruction, deciding
+ * for itself whether and when to continue with the original opcode. Both may
+ * be set on the same instruction, in which case the trap is handled first.
+ * <p>
+ * Original opcodes are kept in maps holding their instructions weakly, as
+ * barriers are set on every method decoded and only removed upon class
+ * initialization. Code that is no longer used, such as that of a discarded
+ * {@code ClassRegistry}, is thereby collected along with its barriers. Traps
+ * are held for as long as any of their handlers refers to their instruction,
+ * which handlers should thus remove once done.
+ *
+ * @author Arno Bastenhof
+ */
+public final class Traps {
+
+	// Private constructor to prevent instantiation
+	private Traps() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * The opcode reserved by the JVM spec for implementing breakpoints.
+	 */
+	public static final int BREAKPOINT = 202;
+
+	/**
+	 * Callback for instructions reached by execution on which a trap was set.
+	 */
+	public interface Handler {
+
+		/**
+		 * Invoked when execution reaches the given {@code insn}, right before
+		 * the latter is executed.
+		 */
+		void trap(AbstractInsnNode insn);
+
+	}
+
+	/**
+	 * The opcode reserved by the JVM spec for implementation-dependent use,
+	 * patched in for class initialization barriers.
+	 */
+	public static final int INIT_BARRIER = 254;
+
+	private static final Field OPCODE;
+	private static final Map<AbstractInsnNode, Trap> TRAPS =
+			Collections.synchronizedMap(
+					new WeakHashMap<AbstractInsnNode, Trap>());
+	private static final Map<AbstractInsnNode, Integer> BARRIERS =
+			Collections.synchronizedMap(
+					new WeakHashMap<AbstractInsnNode, Integer>()); // Opcodes
+
+	static {
+		try {
+			OPCODE = AbstractInsnNode.class.getDeclaredField("opcode");
+			OPCODE.setAccessible(true);
+		} catch (NoSuchFieldException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Sets a trap on the given {@code insn}, to be handled by the specified
+	 * {@code handler}. Setting a trap twice for the same handler has no effect.
+	 *
+	 * @throws NullPointerException if {@code insn} or {@code handler} is null
+	 * @throws IllegalArgumentException if {@code insn} is a pseudo-instruction,
+	 * such as a label
+	 */
+	public static synchronized void set(AbstractInsnNode insn, Handler handler) {
+		Validate.notNull(handler);
+		Trap trap = TRAPS.get(Validate.notNull(insn));
+		if (trap == null) {
+			Validate.argument(insn.getOpcode() >= 0);
+			TRAPS.put(insn, new Trap(insn.getOpcode(), new Handler[]{handler}));
+			setOpcode(insn, BREAKPOINT);
+		} else if (!Arrays.asList(trap.handlers).contains(handler)) {
+			Handler[] handlers = Arrays.copyOf(trap.handlers,
+					trap.handlers.length + 1);
+			handlers[trap.handlers.length] = handler;
+			TRAPS.put(insn, new Trap(trap.opcode, handlers));
+		}
+	}
+
+	/**
+	 * Removes the trap on the given {@code insn} for the specified {@code
+	 * handler}, if any, restoring the original opcode once no other handlers
+	 * remain.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 */
+	public static synchronized void remove(AbstractInsnNode insn,
+			Handler handler) {
+		Trap trap = TRAPS.get(Validate.notNull(insn));
+		if (trap == null) {
+			return;
+		}
+		int size = 0;
+		Handler[] handlers = new Handler[trap.handlers.length];
+		for (Handler h : trap.handlers) {
+			if (h != handler) {
+				handlers[size++] = h;
+			}
+		}
+		if (size == 0) {
+			TRAPS.remove(insn);
+			setOpcode(insn, trap.opcode);
+		} else {
+			TRAPS.put(insn, new Trap(trap.opcode,
+					Arrays.copyOf(handlers, size)));
+		}
+	}
+
+	/**
+	 * Sets a class initialization barrier on the given {@code insn}. Setting a
+	 * barrier twice has no effect.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 * @throws IllegalArgumentException if {@code insn} is a pseudo-instruction,
+	 * such as a label
+	 */
+	public static synchronized void setBarrier(AbstractInsnNode insn) {
+		if (BARRIERS.containsKey(Validate.notNull(insn))) {
+			return;
+		}
+		Validate.argument(insn.getOpcode() >= 0);
+		Trap trap = TRAPS.get(insn);
+		if (trap == null) {
+			BARRIERS.put(insn, Integer.valueOf(insn.getOpcode()));
+			setOpcode(insn, INIT_BARRIER);
+		} else {
+			BARRIERS.put(insn, Integer.valueOf(trap.opcode));
+			TRAPS.put(insn, new Trap(INIT_BARRIER, trap.handlers));
+		}
+	}
+
+	/**
+	 * Removes the class initialization barrier on the given {@code insn}, if
+	 * any, returning the opcode disregarding any barrier.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 */
+	public static synchronized int removeBarrier(AbstractInsnNode insn) {
+		Integer opcode = BARRIERS.remove(Validate.notNull(insn));
+		if (opcode != null) {
+			Trap trap = TRAPS.get(insn);
+			if (trap == null) {
+				setOpcode(insn, opcode.intValue());
+			} else {
+				TRAPS.put(insn, new Trap(opcode.intValue(), trap.handlers));
+			}
+		}
+		return getOpcode(insn);
+	}
+
+	/**
+	 * Returns the opcode of the given {@code insn}, disregarding any trap or
+	 * barrier.
+	 *
+	 * @throws NullPointerException if {@code insn == null}
+	 */
+	public static int getOpcode(AbstractInsnNode insn) {
+		int opcode = insn.getOpcode();
+		if (opcode == BREAKPOINT) {
+			Trap trap = TRAPS.get(insn);
+			opcode = trap == null ? insn.getOpcode() : trap.opcode;
+		}
+		if (opcode == INIT_BARRIER) {
+			Integer original = BARRIERS.get(insn);
+			opcode = original == null ? insn.getOpcode() : original.intValue();
+		}
+		return opcode;
+	}
+
+	/*
+	 * Notifies the handlers of the trap set on insn, returning the original
+	 * opcode to continue execution with. The trap is looked up beforehand so
+	 * as to allow handlers to remove it.
+	 */
+	static int handle(AbstractInsnNode insn) {
+		Trap trap = TRAPS.get(insn);
+		if (trap == null) {
+			return insn.getOpcode(); // Removed in the meantime
+		}
+		for (Handler handler : trap.handlers) {
+			handler.trap(insn);
+		}
+		return trap.opcode;
+	}
+
+	private static void setOpcode(AbstractInsnNode insn, int opcode) {
+		try {
+			OPCODE.setInt(insn, opcode);
+		} catch (IllegalAccessException e) {
+			throw new AssertionError(e); // Made accessible upon loading
+		}
+	}
+
+	// Immutable, so as to allow handling traps without locking
+	private static final class Trap {
+
+		private final int opcode;
+		private final Handler[] handlers;
+
+		private Trap(int opcode, Handler[] handlers) {
+			this.opcode = opcode;
+			this.handlers = handlers;
+		}
+	}
+
+}
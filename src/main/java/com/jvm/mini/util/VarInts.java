@@ -0,0 +1,59 @@
+package com.jvm.mini.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Utility class for the variable-length encoding of integers used by the
+ * binary file formats of this implementation. Values are first mapped to
+ * unsigned ones by ZigZag encoding, so that numbers of small magnitude, be
+ * they positive or negative, take up few bytes. The result is written in
+ * groups of 7 bits, least significant first, with the high bit of each byte
+ * signalling whether more bytes follow.
+ *
+ * @author Arno Bastenhof
+ */
+public final class VarInts {
+
+	// Private constructor to prevent instantiation
+	private VarInts() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Writes the specified {@code value} to the given stream.
+	 */
+	public static void writeLong(OutputStream out, long value)
+			throws IOException {
+		long bits = (value << 1) ^ (value >> 63); // ZigZag
+		while ((bits & ~0x7FL) != 0) {
+			out.write((int)((bits & 0x7F) | 0x80));
+			bits >>>= 7;
+		}
+		out.write((int)bits);
+	}
+
+	/**
+	 * Reads a value from the given stream.
+	 *
+	 * @throws EOFException if the end of the stream was reached
+	 * @throws IOException if the encoding is malformed
+	 */
+	public static long readLong(InputStream in) throws IOException {
+		long bits = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			bits |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (bits >>> 1) ^ -(bits & 1);
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+}
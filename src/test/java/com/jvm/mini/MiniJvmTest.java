@@ -10,8 +10,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 
-import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.objectweb.asm.ClassReader;
@@ -30,41 +31,47 @@ import com.jvm.mini.util.Instructions;
 // TODO Tests rely too much on String comparisons; very fragile!
 public class MiniJvmTest {
 
-	// Generated test classes
+	// Generated test classes, also written to disk for use from the command line
 	private static final String CLASS_EXTENSION = ".class";
 	private static final File TARGET_DIR =
 			new File("target/generated-classes/" + ClassBuilder.PCKG);
-	private static final File ARITHMETIC_CLASS =
-			new File(TARGET_DIR, ClassMother.ARITHMETIC + CLASS_EXTENSION);
-	private static final File LOAD_STORE_CLASS =
-			new File(TARGET_DIR, ClassMother.LOAD_STORE + CLASS_EXTENSION);
-	private static final File IINC_CLASS =
-			new File(TARGET_DIR, ClassMother.IINC + CLASS_EXTENSION);
-	private static final File IF_THEN_ELSE_CLASS =
-			new File(TARGET_DIR, ClassMother.IF_THEN_ELSE + CLASS_EXTENSION);
-	private static final File LOOP_CLASS =
-			new File(TARGET_DIR, ClassMother.LOOP + CLASS_EXTENSION);
-
-	@Before
-	public void init() throws FileNotFoundException, IOException {
+	private static byte[] arithmeticClass;
+	private static byte[] loadStoreClass;
+	private static byte[] iincClass;
+	private static byte[] ifThenElseClass;
+	private static byte[] loopClass;
+
+	@BeforeClass
+	public static void init() throws FileNotFoundException, IOException {
 		// Generate target dir
 		TARGET_DIR.mkdirs();
 
 		// Generate test classes
-		writeClass(ARITHMETIC_CLASS, ClassMother.arithmetic());
-		writeClass(LOAD_STORE_CLASS, ClassMother.loadStore());
-		writeClass(IINC_CLASS, ClassMother.iinc());
-		writeClass(IF_THEN_ELSE_CLASS, ClassMother.ifThenElse());
-		writeClass(LOOP_CLASS, ClassMother.loop());
+		arithmeticClass = generate(ClassMother.ARITHMETIC,
+				ClassMother.arithmetic());
+		loadStoreClass = generate(ClassMother.LOAD_STORE,
+				ClassMother.loadStore());
+		iincClass = generate(ClassMother.IINC, ClassMother.iinc());
+		ifThenElseClass = generate(ClassMother.IF_THEN_ELSE,
+				ClassMother.ifThenElse());
+		loopClass = generate(ClassMother.LOOP, ClassMother.loop());
 	}
 
 	// Ensures test classes are generated even if other tests are set to ignore
 	@Test
 	public void pseudoTest() { }
 
+	@Test
+	public void initFromMemory() {
+		JvmFacade facade = JvmInitializer.INSTANCE.init(
+				ByteBuffer.wrap(loopClass));
+		assertEquals("BIPUSH 0",
+				Instructions.toString(facade.peekInstruction()).trim());
+	}
+
 	@Ignore @Test
-	public void arithmeticTest() throws IOException {
-		JvmAssert.forClass(ARITHMETIC_CLASS)
+	public void arithmeticTest() {
+		JvmAssert.forClass(arithmeticClass)
 			.state("", "", "BIPUSH").nextInsn()
 			.state("I", "2", "BIPUSH").nextInsn()
 			.state("II", "3", "IMUL").nextInsn()
@@ -77,8 +84,8 @@ public class MiniJvmTest {
 	}
 
 	@Ignore @Test
-	public void loadStoreTest() throws IOException {
-		JvmAssert.forClass(LOAD_STORE_CLASS)
+	public void loadStoreTest() {
+		JvmAssert.forClass(loadStoreClass)
 			.state("", "", "BIPUSH").nextInsn()
 			.state("I", "21", "ISTORE").nextInsn()
 			.state("", "", "ILOAD").nextInsn()
@@ -90,8 +97,8 @@ public class MiniJvmTest {
 	}
 
 	@Ignore @Test
-	public void iincTest() throws IOException {
-		JvmAssert.forClass(IINC_CLASS)
+	public void iincTest() {
+		JvmAssert.forClass(iincClass)
 			.state("", "", "LDC").nextInsn()
 			.state("I", "-889275715", "ISTORE").nextInsn()
 			.state("", "", "IINC").nextInsn()
@@ -99,8 +106,8 @@ public class MiniJvmTest {
 	}
 
 	@Ignore @Test
-	public void ifThenElseTest() throws IOException {
-		JvmAssert.forClass(IF_THEN_ELSE_CLASS)
+	public void ifThenElseTest() {
+		JvmAssert.forClass(ifThenElseClass)
 			.state("", "", "LDC").nextInsn()
 			.state("J", "0", "LDC").nextInsn()
 			.state("JJ", "1", "LCMP").nextInsn()
@@ -110,8 +117,8 @@ public class MiniJvmTest {
 	}
 
 	@Ignore @Test
-	public void loopTest() throws IOException {
-		JvmAssert.forClass(LOOP_CLASS)
+	public void loopTest() {
+		JvmAssert.forClass(loopClass)
 			.state("", "", "BIPUSH").nextInsn()
 			.state("I","0","ISTORE").nextInsn()
 			.state("","","GOTO").nextInsn()
@@ -133,7 +140,7 @@ public class MiniJvmTest {
 			.state("","","RETURN").nextInsn().isDone();
 	}
 
-	private void writeClass(File target, byte[] clazz)
+	private static byte[] generate(String name, byte[] clazz)
 			throws FileNotFoundException, IOException {
 		// Verify byte array
 		try (StringWriter sw = new StringWriter();
@@ -142,9 +149,11 @@ public class MiniJvmTest {
 			assertTrue(sw.toString(), sw.toString().length() == 0);
 		}
 		// Write the file
+		File target = new File(TARGET_DIR, name + CLASS_EXTENSION);
 		try (FileOutputStream fos = new FileOutputStream(target)) {
 			fos.write(clazz);
 		}
+		return clazz;
 	}
 
 	private static class JvmAssert {
@@ -158,7 +167,7 @@ public class MiniJvmTest {
 			this.facade = interpreter.getFacade();
 		}
 
-		private static JvmAssert forClass(File classFile) throws IOException {
+		private static JvmAssert forClass(byte[] classFile) {
 			JvmFacade facade = JvmInitializer.INSTANCE.init(classFile);
 			InsnVisitor visitor = new InsnVisitorImpl(facade);
 			JvmInterpreter interpreter = new JvmInterpreterImpl(facade, visitor);
@@ -0,0 +1,368 @@
+package com.jvm.mini.differential;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.JvmInterpreter;
+import com.jvm.mini.data.ClassBuilder;
+import com.jvm.mini.impl.Frame;
+import com.jvm.mini.impl.InsnVisitorImpl;
+import com.jvm.mini.impl.JvmInterpreterImpl;
+import com.jvm.mini.main.JvmInitializer;
+import com.jvm.mini.util.Traps;
+
+/**
+ * Differential testing harness, executing random {@link Program}s both on
+ * Mini-JVM and on the host JVM and comparing their final states.
+ * <p>
+ * On Mini-JVM, a program is executed until reaching its final {@code return},
+ * upon which its local variables and operand stack are read from the current
+ * {@link Frame}. For the host JVM, the class is instrumented to instead copy
+ * its final state into a static field right before returning, after which it
+ * is loaded through a fresh {@link ClassLoader} and executed by reflection.
+ * <p>
+ * Seed ranges are split up recursively by a {@link ForkJoinPool}, so that
+ * generation, execution and comparison run in parallel on all cores. Each
+ * failing program is minimized by repeatedly applying the first of its
+ * {@link Program#shrinks()} that still fails, until none do.
+ *
+ * @author Arno Bastenhof
+ */
+public final class DifferentialHarness {
+
+	private static final int BATCH_SIZE = 256;     // Programs per leaf task
+	private static final int MAX_STEPS = 100000;   // Guards against hangs
+	private static final String RESULT_FIELD = "RESULT";
+	private static final String RESULT_DESC = "[Ljava/lang/Object;";
+
+	private final ProgramGenerator generator;
+	private final AtomicLong classCount = new AtomicLong();
+
+	/**
+	 * @param generator the generator for the programs to execute
+	 */
+	public DifferentialHarness(ProgramGenerator generator) {
+		this.generator = generator;
+	}
+
+	/**
+	 * Decides whether a program fails, for use in minimization.
+	 */
+	public interface Oracle {
+
+		boolean fails(Program program);
+
+	}
+
+	/**
+	 * A program whose execution on Mini-JVM diverged from that on the host.
+	 */
+	public static final class Failure {
+
+		private final long seed;
+		private final Program minimized;
+		private final String divergence;
+
+		private Failure(long seed, Program minimized, String divergence) {
+			this.seed = seed;
+			this.minimized = minimized;
+			this.divergence = divergence;
+		}
+
+		/**
+		 * Returns the seed the failing program was generated from.
+		 */
+		public long getSeed() {
+			return this.seed;
+		}
+
+		/**
+		 * Returns the failing program after minimization.
+		 */
+		public Program getMinimized() {
+			return this.minimized;
+		}
+
+		@Override
+		public String toString() {
+			return "Seed " + this.seed + ": " + this.divergence + "\n"
+					+ this.minimized;
+		}
+	}
+
+	/**
+	 * Checks the programs for the seeds in {@code [from, to)} in parallel,
+	 * returning the failures ordered by seed.
+	 */
+	public List<Failure> run(long from, long to, ForkJoinPool pool) {
+		return pool.invoke(new Batch(from, to));
+	}
+
+	/**
+	 * Executes the given {@code program} on both Mini-JVM and the host JVM,
+	 * returning a description of the first difference in their final states,
+	 * or null if there is none.
+	 */
+	public String check(Program program) {
+		String className = "Diff" + this.classCount.incrementAndGet();
+		byte[] clazz = program.build(className);
+		Object[] expected;
+		try {
+			expected = runOnHost(program, clazz, className);
+		} catch (InvocationTargetException e) {
+			return "Host failed: " + e.getCause();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return "Host failed: " + e;
+		}
+		Object[] actual;
+		try {
+			actual = runOnMiniJvm(program, clazz);
+		} catch (RuntimeException e) {
+			return "Mini-JVM failed: " + e;
+		}
+		if (actual == null) {
+			return "Mini-JVM did not reach the final return";
+		}
+		int locals = program.getLocalCount();
+		if (actual.length != expected.length) {
+			return "Expected " + (expected.length - locals)
+					+ " operands, but found " + (actual.length - locals);
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (!expected[i].equals(actual[i])) {
+				return (i < locals ? "Local v" + i
+						: "Operand " + (i - locals)) + ": expected "
+						+ expected[i] + ", but was " + actual[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Minimizes the given failing {@code program}, returning the smallest
+	 * variant found for which the {@code oracle} still reports failure.
+	 */
+	public static Program minimize(Program program, Oracle oracle) {
+		Program result = program;
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (Program candidate : result.shrinks()) {
+				if (candidate.size() < result.size()
+						&& oracle.fails(candidate)) {
+					result = candidate;
+					progress = true;
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Returns the values of the program's locals followed by its operand
+	 * stack from bottom to top, as found at the final return, or null if
+	 * execution ended without reaching it.
+	 */
+	private static Object[] runOnMiniJvm(Program program, byte[] clazz) {
+		JvmFacade facade = JvmInitializer.INSTANCE.init(clazz);
+		JvmInterpreter interpreter = new JvmInterpreterImpl(facade,
+				new InsnVisitorImpl(facade));
+		for (int steps = 0; interpreter.hasNext()
+				&& Traps.getOpcode(facade.peekInstruction()) != Opcodes.RETURN;
+				steps++) {
+			if (steps == MAX_STEPS) {
+				return null;
+			}
+			interpreter.next();
+		}
+		if (!interpreter.hasNext()) {
+			return null;
+		}
+		Frame frame = facade.getCurrentFrame();
+		List<Object> result = new ArrayList<>();
+		for (int local = 0; local < program.getLocalCount(); local++) {
+			result.add(frame.getLocal(program.getSlot(local)));
+		}
+		for (int i = 0; i < frame.getStackSize(); i++) {
+			Object operand = frame.getOperand(i);
+			if (operand != null) { // Skips second slots of longs
+				result.add(operand);
+			}
+		}
+		return result.toArray();
+	}
+
+	// Returns the final state of the program as computed by the host JVM
+	private static Object[] runOnHost(Program program, byte[] clazz,
+			String className) throws ReflectiveOperationException {
+		String name = (ClassBuilder.PCKG + className).replace('/', '.');
+		Class<?> host = new ProgramLoader().define(name,
+				instrument(program, clazz));
+		host.getMethod("main", String[].class).invoke(null,
+				(Object)new String[0]);
+		return (Object[])host.getField(RESULT_FIELD).get(null);
+	}
+
+	/*
+	 * Instruments the given class to store the program's final state in a
+	 * static field before returning. Operands are first moved into locals
+	 * following those of the program, as longs cannot be swapped.
+	 */
+	private static byte[] instrument(Program program, byte[] clazz) {
+		ClassNode node = new ClassNode();
+		new ClassReader(clazz).accept(node, ClassReader.SKIP_FRAMES);
+		node.visitField(Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC, RESULT_FIELD,
+				RESULT_DESC, null, null).visitEnd();
+		MethodNode main = null;
+		for (Object method : node.methods) {
+			if (((MethodNode)method).name.equals("main")) {
+				main = (MethodNode)method;
+			}
+		}
+
+		// Assign slots to the locals and operands to capture
+		List<Class<? extends Number>> types = new ArrayList<>();
+		List<Integer> slots = new ArrayList<>();
+		for (int local = 0; local < program.getLocalCount(); local++) {
+			types.add(program.getLocalType(local));
+			slots.add(Integer.valueOf(program.getSlot(local)));
+		}
+		int slot = program.getSlot(program.getLocalCount());
+		for (Class<? extends Number> type : program.getResultTypes()) {
+			types.add(type);
+			slots.add(Integer.valueOf(slot));
+			slot += type == Long.class ? 2 : 1;
+		}
+
+		// Generate the capturing code
+		InsnList capture = new InsnList();
+		for (int i = types.size() - 1; i >= program.getLocalCount(); i--) {
+			capture.add(new VarInsnNode(types.get(i) == Long.class
+					? Opcodes.LSTORE : Opcodes.ISTORE, slots.get(i).intValue()));
+		}
+		capture.add(new LdcInsnNode(Integer.valueOf(types.size())));
+		capture.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"));
+		for (int i = 0; i < types.size(); i++) {
+			boolean isLong = types.get(i) == Long.class;
+			capture.add(new InsnNode(Opcodes.DUP));
+			capture.add(new LdcInsnNode(Integer.valueOf(i)));
+			capture.add(new VarInsnNode(isLong ? Opcodes.LLOAD : Opcodes.ILOAD,
+					slots.get(i).intValue()));
+			capture.add(new MethodInsnNode(Opcodes.INVOKESTATIC,
+					isLong ? "java/lang/Long" : "java/lang/Integer", "valueOf",
+					isLong ? "(J)Ljava/lang/Long;" : "(I)Ljava/lang/Integer;",
+					false));
+			capture.add(new InsnNode(Opcodes.AASTORE));
+		}
+		capture.add(new FieldInsnNode(Opcodes.PUTSTATIC, node.name,
+				RESULT_FIELD, RESULT_DESC));
+
+		AbstractInsnNode ret = main.instructions.getLast();
+		while (ret.getOpcode() != Opcodes.RETURN) {
+			ret = ret.getPrevious();
+		}
+		main.instructions.insertBefore(ret, capture);
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES
+				+ ClassWriter.COMPUTE_MAXS);
+		node.accept(cw);
+		return cw.toByteArray();
+	}
+
+	// Checks the programs for a range of seeds, forking for large ranges
+	private final class Batch extends RecursiveTask<List<Failure>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long from;
+		private final long to;
+
+		private Batch(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<Failure> compute() {
+			if (this.to - this.from > BATCH_SIZE) {
+				long mid = this.from + (this.to - this.from) / 2;
+				Batch left = new Batch(this.from, mid);
+				left.fork();
+				List<Failure> result = new Batch(mid, this.to).compute();
+				result.addAll(0, left.join());
+				return result;
+			}
+			List<Failure> result = new ArrayList<>();
+			for (long seed = this.from; seed < this.to; seed++) {
+				Program program = DifferentialHarness.this.generator
+						.generate(seed);
+				if (check(program) != null) {
+					Program minimized = minimize(program, new Oracle() {
+						@Override
+						public boolean fails(Program candidate) {
+							return check(candidate) != null;
+						}
+					});
+					result.add(new Failure(seed, minimized, check(minimized)));
+				}
+			}
+			return result;
+		}
+	}
+
+	// Loads a single generated class
+	private static final class ProgramLoader extends ClassLoader {
+
+		private ProgramLoader() {
+			super(DifferentialHarness.class.getClassLoader());
+		}
+
+		private Class<?> define(String name, byte[] clazz) {
+			return defineClass(name, clazz, 0, clazz.length);
+		}
+	}
+
+	/**
+	 * Checks a number of programs and reports on any failures found, taking as
+	 * optional arguments the number of programs (defaulting to one million)
+	 * and the first seed (defaulting to 0).
+	 */
+	public static void main(String[] args) {
+		long count = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		long from = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		DifferentialHarness harness = new DifferentialHarness(
+				new ProgramGenerator());
+		long start = System.nanoTime();
+		List<Failure> failures = harness.run(from, from + count,
+				new ForkJoinPool());
+		double seconds = (System.nanoTime() - start) / 1e9;
+		for (Failure failure : failures.subList(0,
+				Math.min(10, failures.size()))) {
+			System.out.println(failure);
+		}
+		System.out.println(String.format(
+				"%d programs, %d failures, %.0f programs/s on %d cores", count,
+				failures.size(), count / seconds,
+				Runtime.getRuntime().availableProcessors()));
+	}
+
+}
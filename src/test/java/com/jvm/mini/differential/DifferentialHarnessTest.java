@@ -0,0 +1,55 @@
+package com.jvm.mini.differential;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import com.jvm.mini.differential.DifferentialHarness.Failure;
+import com.jvm.mini.differential.DifferentialHarness.Oracle;
+
+public class DifferentialHarnessTest {
+
+	private final ProgramGenerator generator = new ProgramGenerator();
+
+	@Test
+	public void generateValidPrograms() {
+		for (long seed = 0; seed < 200; seed++) {
+			byte[] clazz = this.generator.generate(seed).build("Valid" + seed);
+			StringWriter sw = new StringWriter();
+			CheckClassAdapter.verify(new ClassReader(clazz), false,
+					new PrintWriter(sw));
+			assertEquals("Seed " + seed, "", sw.toString());
+		}
+	}
+
+	@Test
+	public void minimizeToFailingCore() {
+		Program program = this.generator.generate(42);
+		Program minimized = DifferentialHarness.minimize(program, new Oracle() {
+			@Override
+			public boolean fails(Program candidate) {
+				return candidate.size() > 0;
+			}
+		});
+		assertEquals(1, minimized.size());
+	}
+
+	// Requires the instruction set to have been implemented
+	@Ignore @Test
+	public void conformToHost() {
+		List<Failure> failures = new DifferentialHarness(this.generator)
+				.run(0, 10000, new ForkJoinPool());
+		assertTrue(failures.isEmpty() ? "" : failures.get(0).toString(),
+				failures.isEmpty());
+	}
+
+}
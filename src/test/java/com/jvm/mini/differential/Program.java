@@ -0,0 +1,585 @@
+package com.jvm.mini.differential;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.asm.Label;
+
+import com.jvm.mini.data.ClassBuilder;
+import com.jvm.mini.data.ClassBuilder.Comparison;
+
+/**
+ * Immutable abstract syntax tree for the random programs generated by a
+ * {@link ProgramGenerator}, compiled through {@link ClassBuilder}.
+ * <p>
+ * A program declares typed local variables, each assigned an initial value by
+ * a prologue so that every load is preceded by a store. The prologue is
+ * followed by a body of statements, each leaving the operand stack empty, and
+ * finally by the result expressions, whose values are left on the operand
+ * stack upon reaching the final {@code return}. Branches only jump forward,
+ * so that every program terminates. The local variables and operand stack
+ * at the {@code return} together constitute the observable final state.
+ * <p>
+ * Programs can enumerate simpler variants of themselves through {@link
+ * #shrinks()}, for use in minimizing failing programs. All variants remain
+ * valid, removing statements while retaining the prologue.
+ *
+ * @author Arno Bastenhof
+ */
+public final class Program {
+
+	private final List<Class<? extends Number>> locals; // Integer or Long
+	private final List<Number> initialValues;
+	private final List<Stmt> body;
+	private final List<Expr> results;
+
+	Program(List<Class<? extends Number>> locals, List<Number> initialValues,
+			List<Stmt> body, List<Expr> results) {
+		this.locals = Collections.unmodifiableList(locals);
+		this.initialValues = Collections.unmodifiableList(initialValues);
+		this.body = Collections.unmodifiableList(body);
+		this.results = Collections.unmodifiableList(results);
+	}
+
+	/**
+	 * Returns the number of declared local variables.
+	 */
+	public int getLocalCount() {
+		return this.locals.size();
+	}
+
+	/**
+	 * Returns the type of the specified local variable.
+	 */
+	public Class<? extends Number> getLocalType(int local) {
+		return this.locals.get(local);
+	}
+
+	/**
+	 * Returns the slot of the specified local variable. Slot 0 is left to the
+	 * arguments of the main method, while longs take up two slots.
+	 */
+	public int getSlot(int local) {
+		int slot = 1;
+		for (int i = 0; i < local; i++) {
+			slot += this.locals.get(i) == Long.class ? 2 : 1;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the types of the values left on the operand stack, from bottom
+	 * to top.
+	 */
+	public List<Class<? extends Number>> getResultTypes() {
+		List<Class<? extends Number>> result = new ArrayList<>();
+		for (Expr expr : this.results) {
+			result.add(expr.type);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of nodes in this program, serving as a measure of
+	 * its complexity.
+	 */
+	public int size() {
+		return sizeOf(this.body) + sizeOf(this.results);
+	}
+
+	/**
+	 * Compiles this program into a class with the given unqualified name in
+	 * package {@link ClassBuilder#PCKG}, its code residing in the main method.
+	 */
+	public byte[] build(String className) {
+		ClassBuilder cb = ClassBuilder.forClass(className);
+		for (int local = 0; local < this.locals.size(); local++) {
+			Class<? extends Number> type = this.locals.get(local);
+			cb.push(type, this.initialValues.get(local))
+				.store(type, getSlot(local));
+		}
+		for (Stmt stmt : this.body) {
+			stmt.emit(cb, this);
+		}
+		for (Expr expr : this.results) {
+			expr.emit(cb, this);
+		}
+		return cb.build();
+	}
+
+	/**
+	 * Returns the variants of this program obtained through a single
+	 * simplification step, such as removing a statement or replacing an
+	 * expression by one of its subexpressions.
+	 */
+	public List<Program> shrinks() {
+		List<Program> result = new ArrayList<>();
+		for (List<Stmt> body : shrinkAll(this.body)) {
+			result.add(new Program(this.locals, this.initialValues, body,
+					this.results));
+		}
+		for (int i = 0; i < this.results.size(); i++) {
+			List<Expr> results = new ArrayList<>(this.results);
+			results.remove(i);
+			result.add(new Program(this.locals, this.initialValues, this.body,
+					results));
+			for (Expr shrink : this.results.get(i).shrinks()) {
+				results = new ArrayList<>(this.results);
+				results.set(i, shrink);
+				result.add(new Program(this.locals, this.initialValues,
+						this.body, results));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns Java-like source code for this program.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+		for (int local = 0; local < this.locals.size(); local++) {
+			buffer.append(this.locals.get(local) == Long.class
+					? "long " : "int ")
+				.append(new Load(this.locals.get(local), local))
+				.append(" = ")
+				.append(new Const(this.initialValues.get(local)))
+				.append(";\n");
+		}
+		for (Stmt stmt : this.body) {
+			stmt.print(buffer, "");
+		}
+		for (Expr expr : this.results) {
+			buffer.append("push ").append(expr).append(";\n");
+		}
+		return buffer.toString();
+	}
+
+	private static int sizeOf(List<? extends Node> nodes) {
+		int result = 0;
+		for (Node node : nodes) {
+			result += node.size();
+		}
+		return result;
+	}
+
+	// Returns the variants of a statement list obtained by a single shrink
+	private static List<List<Stmt>> shrinkAll(List<Stmt> stmts) {
+		List<List<Stmt>> result = new ArrayList<>();
+		for (int i = 0; i < stmts.size(); i++) {
+			List<Stmt> removed = new ArrayList<>(stmts);
+			removed.remove(i);
+			result.add(removed);
+			if (stmts.get(i) instanceof If) {
+				List<Stmt> inlined = new ArrayList<>(stmts.subList(0, i));
+				inlined.addAll(((If)stmts.get(i)).body);
+				inlined.addAll(stmts.subList(i + 1, stmts.size()));
+				result.add(inlined);
+			}
+			for (Stmt shrink : stmts.get(i).shrinks()) {
+				List<Stmt> replaced = new ArrayList<>(stmts);
+				replaced.set(i, shrink);
+				result.add(replaced);
+			}
+		}
+		return result;
+	}
+
+	// === Nodes ===
+
+	private interface Node {
+
+		int size();
+
+	}
+
+	/**
+	 * Expression of type int or long.
+	 */
+	abstract static class Expr implements Node {
+
+		final Class<? extends Number> type;
+
+		Expr(Class<? extends Number> type) {
+			this.type = type;
+		}
+
+		abstract void emit(ClassBuilder cb, Program program);
+
+		/*
+		 * Returns simpler expressions of the same type. Any non-constant
+		 * expression may be replaced by zero, which counts as progress
+		 * since constants are the only nodes of size 1.
+		 */
+		List<Expr> shrinks() {
+			List<Expr> result = new ArrayList<>();
+			result.add(Const.zero(this.type));
+			return result;
+		}
+	}
+
+	static final class Const extends Expr {
+
+		private final Number value;
+
+		Const(Number value) {
+			super(value instanceof Long ? Long.class : Integer.class);
+			this.value = value;
+		}
+
+		static Const zero(Class<? extends Number> type) {
+			return new Const(type == Long.class
+					? (Number)Long.valueOf(0) : Integer.valueOf(0));
+		}
+
+		Number getValue() {
+			return this.value;
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			cb.push(this.type, this.value);
+		}
+
+		@Override
+		List<Expr> shrinks() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public int size() {
+			return 1;
+		}
+
+		@Override
+		public String toString() {
+			return this.value + (this.type == Long.class ? "L" : "");
+		}
+	}
+
+	static final class Load extends Expr {
+
+		private final int local;
+
+		Load(Class<? extends Number> type, int local) {
+			super(type);
+			this.local = local;
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			cb.load(this.type, program.getSlot(this.local));
+		}
+
+		@Override
+		public int size() {
+			return 2;
+		}
+
+		@Override
+		public String toString() {
+			return "v" + this.local;
+		}
+	}
+
+	enum Op {
+		ADD("+"), SUB("-"), MUL("*");
+
+		private final String symbol;
+
+		private Op(String symbol) {
+			this.symbol = symbol;
+		}
+	}
+
+	static final class Binary extends Expr {
+
+		private final Op op;
+		private final Expr left;
+		private final Expr right;
+
+		Binary(Op op, Expr left, Expr right) {
+			super(left.type);
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			this.left.emit(cb, program);
+			this.right.emit(cb, program);
+			switch (this.op) {
+			case ADD:
+				cb.add(this.type);
+				break;
+			case SUB:
+				cb.subtract(this.type);
+				break;
+			default:
+				cb.multiply(this.type);
+			}
+		}
+
+		@Override
+		List<Expr> shrinks() {
+			List<Expr> result = super.shrinks();
+			result.add(this.left);
+			result.add(this.right);
+			for (Expr shrink : this.left.shrinks()) {
+				result.add(new Binary(this.op, shrink, this.right));
+			}
+			for (Expr shrink : this.right.shrinks()) {
+				result.add(new Binary(this.op, this.left, shrink));
+			}
+			return result;
+		}
+
+		@Override
+		public int size() {
+			return 1 + this.left.size() + this.right.size();
+		}
+
+		@Override
+		public String toString() {
+			return "(" + this.left + " " + this.op.symbol + " " + this.right
+					+ ")";
+		}
+	}
+
+	static final class Neg extends Expr {
+
+		private final Expr operand;
+
+		Neg(Expr operand) {
+			super(operand.type);
+			this.operand = operand;
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			this.operand.emit(cb, program);
+			cb.negate(this.type);
+		}
+
+		@Override
+		List<Expr> shrinks() {
+			List<Expr> result = super.shrinks();
+			result.add(this.operand);
+			for (Expr shrink : this.operand.shrinks()) {
+				result.add(new Neg(shrink));
+			}
+			return result;
+		}
+
+		@Override
+		public int size() {
+			return 1 + this.operand.size();
+		}
+
+		@Override
+		public String toString() {
+			return "-" + this.operand;
+		}
+	}
+
+	/**
+	 * Conversion from int to long, byte or short, or from long to int.
+	 */
+	static final class Cast extends Expr {
+
+		private final Expr operand;
+		private final Class<? extends Number> target;
+
+		Cast(Expr operand, Class<? extends Number> target) {
+			super(target == Long.class ? Long.class : Integer.class);
+			this.operand = operand;
+			this.target = target;
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			this.operand.emit(cb, program);
+			cb.cast(this.operand.type, this.target);
+		}
+
+		@Override
+		List<Expr> shrinks() {
+			List<Expr> result = super.shrinks();
+			if (this.operand.type == this.type) {
+				result.add(this.operand);
+			}
+			for (Expr shrink : this.operand.shrinks()) {
+				result.add(new Cast(shrink, this.target));
+			}
+			return result;
+		}
+
+		@Override
+		public int size() {
+			return 1 + this.operand.size();
+		}
+
+		@Override
+		public String toString() {
+			return "((" + this.target.getSimpleName().toLowerCase()
+					.replace("integer", "int") + ")" + this.operand + ")";
+		}
+	}
+
+	/**
+	 * Statement leaving the operand stack empty.
+	 */
+	abstract static class Stmt implements Node {
+
+		abstract void emit(ClassBuilder cb, Program program);
+
+		abstract List<Stmt> shrinks();
+
+		abstract void print(StringBuilder buffer, String indent);
+	}
+
+	static final class Assign extends Stmt {
+
+		private final int local;
+		private final Expr value;
+
+		Assign(int local, Expr value) {
+			this.local = local;
+			this.value = value;
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			this.value.emit(cb, program);
+			cb.store(this.value.type, program.getSlot(this.local));
+		}
+
+		@Override
+		List<Stmt> shrinks() {
+			List<Stmt> result = new ArrayList<>();
+			for (Expr shrink : this.value.shrinks()) {
+				result.add(new Assign(this.local, shrink));
+			}
+			return result;
+		}
+
+		@Override
+		public int size() {
+			return 1 + this.value.size();
+		}
+
+		@Override
+		void print(StringBuilder buffer, String indent) {
+			buffer.append(indent).append('v').append(this.local).append(" = ")
+				.append(this.value).append(";\n");
+		}
+	}
+
+	static final class Iinc extends Stmt {
+
+		private final int local;
+		private final int amount;
+
+		Iinc(int local, int amount) {
+			this.local = local;
+			this.amount = amount;
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			cb.increment(program.getSlot(this.local), this.amount);
+		}
+
+		@Override
+		List<Stmt> shrinks() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public int size() {
+			return 1;
+		}
+
+		@Override
+		void print(StringBuilder buffer, String indent) {
+			buffer.append(indent).append('v').append(this.local).append(" += ")
+				.append(this.amount).append(";\n");
+		}
+	}
+
+	/**
+	 * Conditional statement, executing its body unless the comparison of its
+	 * operands holds. Int operands may be compared to zero by omitting the
+	 * right operand, thus exercising the unary conditional jumps.
+	 */
+	static final class If extends Stmt {
+
+		private final Expr left;
+		private final Expr right;  // Null to compare left to zero
+		private final Comparison cmp;
+		private final List<Stmt> body;
+
+		If(Expr left, Expr right, Comparison cmp, List<Stmt> body) {
+			this.left = left;
+			this.right = right;
+			this.cmp = cmp;
+			this.body = Collections.unmodifiableList(body);
+		}
+
+		@Override
+		void emit(ClassBuilder cb, Program program) {
+			Label end = new Label();
+			this.left.emit(cb, program);
+			if (this.right == null) {
+				cb.ifCmpZeroThen(this.cmp, end);
+			} else {
+				this.right.emit(cb, program);
+				cb.ifCmpThen(this.left.type, this.cmp, end);
+			}
+			for (Stmt stmt : this.body) {
+				stmt.emit(cb, program);
+			}
+			cb.label(end);
+		}
+
+		@Override
+		List<Stmt> shrinks() {
+			List<Stmt> result = new ArrayList<>();
+			for (List<Stmt> body : shrinkAll(this.body)) {
+				result.add(new If(this.left, this.right, this.cmp, body));
+			}
+			for (Expr shrink : this.left.shrinks()) {
+				result.add(new If(shrink, this.right, this.cmp, this.body));
+			}
+			if (this.right != null) {
+				for (Expr shrink : this.right.shrinks()) {
+					result.add(new If(this.left, shrink, this.cmp, this.body));
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public int size() {
+			return 1 + this.left.size()
+					+ (this.right == null ? 0 : this.right.size())
+					+ sizeOf(this.body);
+		}
+
+		@Override
+		void print(StringBuilder buffer, String indent) {
+			buffer.append(indent).append("if (!(").append(this.left)
+				.append(' ').append(this.cmp).append(' ')
+				.append(this.right == null ? "0" : this.right)
+				.append(")) {\n");
+			for (Stmt stmt : this.body) {
+				stmt.print(buffer, indent + "    ");
+			}
+			buffer.append(indent).append("}\n");
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+package com.jvm.mini.differential;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.jvm.mini.data.ClassBuilder.Comparison;
+import com.jvm.mini.differential.Program.Assign;
+import com.jvm.mini.differential.Program.Binary;
+import com.jvm.mini.differential.Program.Cast;
+import com.jvm.mini.differential.Program.Const;
+import com.jvm.mini.differential.Program.Expr;
+import com.jvm.mini.differential.Program.If;
+import com.jvm.mini.differential.Program.Iinc;
+import com.jvm.mini.differential.Program.Load;
+import com.jvm.mini.differential.Program.Neg;
+import com.jvm.mini.differential.Program.Op;
+import com.jvm.mini.differential.Program.Stmt;
+
+/**
+ * Generates random, valid {@link Program}s covering the int and long
+ * arithmetic, load/store, iinc and branch instructions supported by Mini-JVM.
+ * Programs are determined by their seeds, so that failures can be reproduced
+ * by seed alone. Constants are biased towards boundary values, as these are
+ * the likeliest to expose errors in overflow or sign extension.
+ *
+ * @author Arno Bastenhof
+ */
+public final class ProgramGenerator {
+
+	private static final int[] INT_BOUNDARIES = { 0, 1, -1, 2, 127, 128, -128,
+			-129, 32767, 32768, -32768, Integer.MAX_VALUE, Integer.MIN_VALUE };
+	private static final long[] LONG_BOUNDARIES = { 0, 1, -1,
+			Integer.MAX_VALUE + 1L, Integer.MIN_VALUE - 1L, 0xFFFFFFFFL,
+			Long.MAX_VALUE, Long.MIN_VALUE };
+
+	private final int maxLocals;
+	private final int maxStatements;
+	private final int maxDepth;
+
+	/**
+	 * Creates a generator for programs of moderate size.
+	 */
+	public ProgramGenerator() {
+		this(6, 12, 3);
+	}
+
+	/**
+	 * @param maxLocals the maximum number of local variables
+	 * @param maxStatements the maximum number of statements per block
+	 * @param maxDepth the maximum nesting depth of expressions and statements
+	 */
+	public ProgramGenerator(int maxLocals, int maxStatements, int maxDepth) {
+		this.maxLocals = maxLocals;
+		this.maxStatements = maxStatements;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Returns the program determined by the given {@code seed}.
+	 */
+	public Program generate(long seed) {
+		return new Instance(new Random(seed)).program();
+	}
+
+	// State for generating a single program
+	private final class Instance {
+
+		private final Random random;
+		private final List<Class<? extends Number>> locals = new ArrayList<>();
+
+		private Instance(Random random) {
+			this.random = random;
+		}
+
+		private Program program() {
+			int localCount = 1 + this.random.nextInt(ProgramGenerator.this
+					.maxLocals);
+			List<Number> initialValues = new ArrayList<>();
+			for (int local = 0; local < localCount; local++) {
+				Class<? extends Number> type = randomType();
+				this.locals.add(type);
+				initialValues.add(constant(type).getValue());
+			}
+			List<Stmt> body = block(ProgramGenerator.this.maxDepth);
+			List<Expr> results = new ArrayList<>();
+			for (int i = this.random.nextInt(3); i > 0; i--) {
+				results.add(expr(randomType(),
+						ProgramGenerator.this.maxDepth));
+			}
+			return new Program(this.locals, initialValues, body, results);
+		}
+
+		private List<Stmt> block(int depth) {
+			List<Stmt> result = new ArrayList<>();
+			for (int i = 1 + this.random.nextInt(
+					ProgramGenerator.this.maxStatements); i > 0; i--) {
+				result.add(stmt(depth));
+			}
+			return result;
+		}
+
+		private Stmt stmt(int depth) {
+			int local = this.random.nextInt(this.locals.size());
+			Class<? extends Number> type = this.locals.get(local);
+			switch (this.random.nextInt(depth > 0 ? 4 : 3)) {
+			case 0:
+				if (type == Integer.class) {
+					return new Iinc(local, this.random.nextInt(256) - 128);
+				}
+				// Fall through
+			case 1:
+			case 2:
+				return new Assign(local, expr(type,
+						ProgramGenerator.this.maxDepth));
+			default:
+				Comparison cmp = Comparison.values()[this.random.nextInt(
+						Comparison.values().length)];
+				Class<? extends Number> operandType = randomType();
+				Expr left = expr(operandType, depth - 1);
+				Expr right = operandType == Integer.class
+						&& this.random.nextBoolean()
+						? null : expr(operandType, depth - 1);
+				return new If(left, right, cmp, block(depth - 1));
+			}
+		}
+
+		private Expr expr(Class<? extends Number> type, int depth) {
+			if (depth == 0 || this.random.nextInt(3) == 0) {
+				return leaf(type);
+			}
+			switch (this.random.nextInt(4)) {
+			case 0:
+			case 1:
+				Op op = Op.values()[this.random.nextInt(Op.values().length)];
+				return new Binary(op, expr(type, depth - 1),
+						expr(type, depth - 1));
+			case 2:
+				return new Neg(expr(type, depth - 1));
+			default:
+				if (type == Long.class) {
+					return new Cast(expr(Integer.class, depth - 1), Long.class);
+				}
+				switch (this.random.nextInt(3)) {
+				case 0:
+					return new Cast(expr(Long.class, depth - 1), Integer.class);
+				case 1:
+					return new Cast(expr(Integer.class, depth - 1), Byte.class);
+				default:
+					return new Cast(expr(Integer.class, depth - 1),
+							Short.class);
+				}
+			}
+		}
+
+		private Expr leaf(Class<? extends Number> type) {
+			List<Integer> candidates = new ArrayList<>();
+			for (int local = 0; local < this.locals.size(); local++) {
+				if (this.locals.get(local) == type) {
+					candidates.add(Integer.valueOf(local));
+				}
+			}
+			if (candidates.isEmpty() || this.random.nextBoolean()) {
+				return constant(type);
+			}
+			return new Load(type, candidates.get(this.random.nextInt(
+					candidates.size())).intValue());
+		}
+
+		private Const constant(Class<? extends Number> type) {
+			boolean boundary = this.random.nextBoolean();
+			if (type == Long.class) {
+				return new Const(Long.valueOf(boundary
+						? LONG_BOUNDARIES[this.random.nextInt(
+								LONG_BOUNDARIES.length)]
+						: this.random.nextLong()));
+			}
+			return new Const(Integer.valueOf(boundary
+					? INT_BOUNDARIES[this.random.nextInt(INT_BOUNDARIES.length)]
+					: this.random.nextInt()));
+		}
+
+		private Class<? extends Number> randomType() {
+			return this.random.nextBoolean() ? Integer.class : Long.class;
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+public class ClassHierarchyTest {
+
+	@Test
+	public void bindMonomorphicCall() throws IOException {
+		ClassRegistry registry = new ClassRegistry(null);
+		RuntimeClass base = registry.define(clazz("Base", "java/lang/Object",
+				Opcodes.ACC_PUBLIC));
+		registry.define(clazz("Derived", "Base"));
+		MethodInsnNode site = call("Derived");
+		MethodInfo run = base.getMethod("run", "()V");
+
+		assertEquals("Base.run()V",
+				registry.getHierarchy().bind(site, run).toString());
+		assertTrue(registry.getHierarchy().isBound(site));
+	}
+
+	@Test
+	public void invalidateUponOverride() throws IOException {
+		ClassRegistry registry = new ClassRegistry(null);
+		RuntimeClass base = registry.define(clazz("Base", "java/lang/Object",
+				Opcodes.ACC_PUBLIC));
+		MethodInsnNode site = call("Base");
+		MethodInfo run = base.getMethod("run", "()V");
+		registry.getHierarchy().bind(site, run);
+		registry.define(clazz("Override", "Base", Opcodes.ACC_PUBLIC));
+
+		assertFalse(registry.getHierarchy().isBound(site));
+		assertNull(registry.getHierarchy().bind(site, run));
+	}
+
+	@Test
+	public void bindFinalMethods() throws IOException {
+		ClassRegistry registry = new ClassRegistry(null);
+		RuntimeClass base = registry.define(clazz("Base", "java/lang/Object",
+				Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL));
+		MethodInsnNode site = call("Base");
+		MethodInfo run = base.getMethod("run", "()V");
+		registry.define(clazz("Derived", "Base"));
+
+		assertEquals(run, registry.getHierarchy().bind(site, run));
+	}
+
+	private static MethodInsnNode call(String owner) {
+		return new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner, "run", "()V",
+				false);
+	}
+
+	// Creates a class optionally declaring a method run()V with given access
+	@SuppressWarnings("unchecked") // Raw lists of ASM 5
+	private static ClassNode clazz(String name, String superName,
+			int... access) {
+		ClassNode result = new ClassNode();
+		result.version = Opcodes.V1_7;
+		result.access = Opcodes.ACC_PUBLIC;
+		result.name = name;
+		result.superName = superName;
+		for (int flags : access) {
+			MethodNode method = new MethodNode(flags, "run", "()V", null,
+					null);
+			method.instructions.add(new InsnNode(Opcodes.RETURN));
+			result.methods.add(method);
+		}
+		return result;
+	}
+
+}
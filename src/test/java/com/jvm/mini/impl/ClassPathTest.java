@@ -0,0 +1,101 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class ClassPathTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void loadStoredAndDeflatedEntries() throws IOException {
+		File jar = folder.newFile("app.jar");
+		try (JarOutputStream out = new JarOutputStream(
+				new FileOutputStream(jar))) {
+			addEntry(out, "com/jvm/mini/Deflated", ZipEntry.DEFLATED);
+			addEntry(out, "com/jvm/mini/Stored", ZipEntry.STORED);
+		}
+		JarClassSource source = new JarClassSource(jar);
+
+		assertEquals(2, source.getClassNames().size());
+		assertEquals("com/jvm/mini/Deflated",
+				source.loadClass("com/jvm/mini/Deflated").name);
+		assertEquals("com/jvm/mini/Stored",
+				source.loadClass("com/jvm/mini/Stored").name);
+		assertNull(source.loadClass("com/jvm/mini/Missing"));
+	}
+
+	@Test
+	public void preferEarlierEntries() throws IOException {
+		File dir = folder.newFolder("classes");
+		new File(dir, "com/jvm/mini").mkdirs();
+		try (OutputStream out = new FileOutputStream(
+				new File(dir, "com/jvm/mini/Shadowed.class"))) {
+			out.write(classFile("com/jvm/mini/Shadowed", "java/lang/Object"));
+		}
+		File jar = folder.newFile("lib.jar");
+		try (JarOutputStream out = new JarOutputStream(
+				new FileOutputStream(jar))) {
+			addEntry(out, "com/jvm/mini/Shadowed", ZipEntry.DEFLATED);
+			addEntry(out, "com/jvm/mini/Library", ZipEntry.DEFLATED);
+		}
+		ClassPath path = ClassPath.parse(dir + File.pathSeparator + jar
+				+ File.pathSeparator + new File(dir, "missing"));
+
+		assertEquals(2, path.getEntries().size());
+		assertEquals("java/lang/Object",
+				path.loadClass("com/jvm/mini/Shadowed").superName);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertEquals(2, path.preload(pool));
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals("java/lang/Object",
+				path.loadClass("com/jvm/mini/Shadowed").superName);
+		assertSame(path.loadClass("com/jvm/mini/Library"),
+				path.loadClass("com/jvm/mini/Library"));
+	}
+
+	private static void addEntry(JarOutputStream out, String name,
+			int method) throws IOException {
+		byte[] bytes = classFile(name, "java/lang/Thread");
+		ZipEntry entry = new ZipEntry(name + ".class");
+		entry.setMethod(method);
+		if (method == ZipEntry.STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+		out.putNextEntry(entry);
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	private static byte[] classFile(String name, String superName) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, name, null, superName,
+				null);
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.util.Traps;
+
+public class ConstantPoolTest {
+
+	@Test
+	public void shareEntriesOfEqualConstants() {
+		MethodNode method = method("main", new LdcInsnNode(new String("a")),
+				new LdcInsnNode(new String("a")));
+		ConstantPool pool = new ConstantPool("Shared", null);
+		new MethodInfo(pool, method);
+
+		assertEquals(1, pool.size());
+		Object first = ConstantPool.resolve(method.instructions.get(0));
+		assertSame("a", first);
+		assertSame(first, ConstantPool.resolve(method.instructions.get(1)));
+	}
+
+	@Test
+	public void resolveClassConstants() {
+		AbstractInsnNode ldc = new LdcInsnNode(Type.getType(String[].class));
+		AbstractInsnNode missing = new LdcInsnNode(
+				Type.getObjectType("com/jvm/mini/Missing"));
+
+		assertSame(String[].class, ConstantPool.resolve(ldc));
+		assertEquals(Type.getObjectType("com/jvm/mini/Missing"),
+				ConstantPool.resolve(missing));
+	}
+
+	@Test
+	public void resolveInheritedMethods() throws IOException {
+		MemoryClassSource source = new MemoryClassSource();
+		source.define(clazz("Base", "java/lang/Object",
+				method("run", new InsnNode(Opcodes.RETURN))));
+		MethodNode caller = method("main", new MethodInsnNode(
+				Opcodes.INVOKESTATIC, "Derived", "run", "()V", false),
+				new MethodInsnNode(Opcodes.INVOKESTATIC, "Derived", "walk",
+						"()V", false));
+		source.define(clazz("Derived", "Base", caller));
+		RuntimeClass derived = new ClassRegistry(source).getClass("Derived");
+		new MethodInfo(derived.getConstantPool(), caller);
+
+		MethodInfo target = (MethodInfo)ConstantPool.resolve(
+				caller.instructions.get(0));
+		assertEquals("Base.run()V", target.toString());
+		assertSame(target, ConstantPool.resolve(caller.instructions.get(0)));
+		assertNull(ConstantPool.resolve(caller.instructions.get(1)));
+	}
+
+	@Test
+	public void resolveHostMethodsToIntrinsics() {
+		MethodNode method = method("main", new MethodInsnNode(
+				Opcodes.INVOKESTATIC, "java/lang/Math", "max", "(JJ)J", false),
+				new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Integer",
+						"toHexString", "(I)Ljava/lang/String;", false),
+				new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Math",
+						"random", "()D", false));
+		method.maxStack = 4;
+		MethodInfo info = new MethodInfo("Caller", null, method);
+
+		Intrinsic max = (Intrinsic)ConstantPool.resolve(
+				method.instructions.get(0));
+		assertEquals("java/lang/Math.max(JJ)J", max.toString());
+		assertNull(ConstantPool.resolve(method.instructions.get(1)));
+		assertNull(ConstantPool.resolve(method.instructions.get(2)));
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(info);
+		facade.pushLongOperand(3);
+		facade.pushLongOperand(5);
+		max.invoke(facade);
+		assertEquals(5, facade.popLongOperand());
+	}
+
+	@Test
+	public void throwOnlyExceptionsOfIntrinsicsInTheGuest() {
+		MethodNode method = method("main", new MethodInsnNode(
+				Opcodes.INVOKESTATIC, "java/lang/Math", "floorDiv", "(II)I",
+				false));
+		method.maxStack = 2;
+		MethodInfo info = new MethodInfo("Caller", null, method);
+		Intrinsic floorDiv = (Intrinsic)ConstantPool.resolve(
+				method.instructions.get(0));
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(info);
+		try {
+			floorDiv.invoke(facade);
+			fail("Popped arguments from an empty stack");
+		} catch (RuntimeException e) {
+			assertNull(facade.getUncaughtException());
+		}
+
+		facade.pushIntegerOperand(1);
+		facade.pushIntegerOperand(0);
+		floorDiv.invoke(facade);
+		assertEquals(ArithmeticException.class,
+				facade.getUncaughtException().getType());
+	}
+
+	@Test
+	public void linkCopiesPerRegistry() throws IOException {
+		ClassNode node = clazz("Counter", "java/lang/Object", method("main",
+				new FieldInsnNode(Opcodes.GETSTATIC, "Counter", "count", "I"),
+				new InsnNode(Opcodes.RETURN)),
+				method("<clinit>", new InsnNode(Opcodes.RETURN)));
+		node.visitField(Opcodes.ACC_STATIC, "count", "I", null, null)
+				.visitEnd();
+		MemoryClassSource source = new MemoryClassSource();
+		source.define(node);
+
+		// Each registry resolves, and initializes, its own class
+		AbstractInsnNode previous = null;
+		for (int i = 0; i < 2; i++) {
+			RuntimeClass clazz = new ClassRegistry(source).getClass("Counter");
+			MethodInfo main = clazz.getMethod("main", "()V");
+			AbstractInsnNode getstatic = main.getFirstInstruction();
+			assertNotSame(previous, getstatic);
+			previous = getstatic;
+			assertSame(clazz.getStaticField("count"),
+					ConstantPool.resolve(getstatic));
+			assertEquals(Traps.INIT_BARRIER, getstatic.getOpcode());
+
+			JvmFacadeImpl facade = new JvmFacadeImpl();
+			facade.pushFrame(main);
+			facade.jump(getstatic);
+			new JvmInterpreterImpl(facade, new InsnVisitorImpl(facade)).next();
+			assertSame(clazz.getClassInitializer(),
+					facade.popFrame().getMethod());
+			assertTrue(clazz.isInitialized());
+		}
+	}
+
+	private static MethodNode method(String name, AbstractInsnNode... insns) {
+		MethodNode result = new MethodNode(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, name, "()V", null, null);
+		for (AbstractInsnNode insn : insns) {
+			result.instructions.add(insn);
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked") // Raw lists of ASM 5
+	private static ClassNode clazz(String name, String superName,
+			MethodNode... methods) {
+		ClassNode result = new ClassNode();
+		result.version = Opcodes.V1_7;
+		result.access = Opcodes.ACC_PUBLIC;
+		result.name = name;
+		result.superName = superName;
+		for (MethodNode method : methods) {
+			result.methods.add(method);
+		}
+		return result;
+	}
+
+}
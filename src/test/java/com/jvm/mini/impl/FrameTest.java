@@ -0,0 +1,98 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class FrameTest {
+
+	@Test
+	public void wideOperandsOccupyTwoSlots() {
+		Frame frame = new Frame(6, 0, null, null);
+		frame.pushLong(Long.MIN_VALUE);
+		frame.pushInteger(-1);
+		frame.pushDouble(-0d);
+
+		assertEquals(5, frame.getStackSize());
+		assertEquals("JID", frame.getOperandTypes());
+		assertEquals(Long.valueOf(Long.MIN_VALUE), frame.getOperand(0));
+		assertNull(frame.getOperand(1));
+		assertEquals(Double.doubleToRawLongBits(-0d),
+				Double.doubleToRawLongBits(frame.popDouble()));
+		assertEquals(Integer.valueOf(-1), frame.pop(Integer.class));
+		assertEquals(Long.MIN_VALUE, frame.popLong());
+		assertEquals(0, frame.getStackSize());
+	}
+
+	@Test
+	public void describeReferenceOperands() {
+		Frame frame = new Frame(5, 0, null, null);
+		frame.push("guest");
+		frame.push(new int[0]);
+		frame.push(OutputBridge.getStandardOutput());
+		frame.push(null);
+		frame.pushInteger(1);
+
+		assertEquals("LLLLI", frame.getOperandTypes());
+	}
+
+	@Test
+	public void preserveNaNPayloads() {
+		float f = Float.intBitsToFloat(0x7FC00123);
+		double d = Double.longBitsToDouble(0x7FF8000000000123L);
+		Frame frame = new Frame(3, 3, null, null);
+		frame.storeFloat(0, f);
+		frame.storeDouble(1, d);
+		frame.pushFloat(frame.loadFloat(0));
+		frame.pushDouble(frame.loadDouble(1));
+
+		assertEquals(0x7FF8000000000123L,
+				Double.doubleToRawLongBits(frame.popDouble()));
+		assertEquals(0x7FC00123, Float.floatToRawIntBits(frame.popFloat()));
+	}
+
+	@Test
+	public void overwriteHalfOfWideLocal() {
+		Frame frame = new Frame(0, 3, null, null);
+		frame.storeLong(0, 42L);
+		frame.storeInteger(1, 7);
+
+		assertNull(frame.getLocal(0));
+		assertEquals(Integer.valueOf(7), frame.getLocal(1));
+	}
+
+	@Test
+	public void releaseReferencesOverwrittenByWideLocal() {
+		Frame frame = new Frame(0, 2, null, null);
+		frame.store(1, new Object());
+		frame.storeDouble(0, 1.0);
+
+		assertNull(frame.reference(1));
+	}
+
+	@Test(expected = ClassCastException.class)
+	public void rejectMismatchedType() {
+		Frame frame = new Frame(2, 0, null, null);
+		frame.pushLong(1L);
+		frame.popDouble();
+	}
+
+	@Test(expected = ClassCastException.class)
+	public void keepBoxedPrimitivesAsReferences() {
+		Frame frame = new Frame(1, 1, null, null);
+		frame.store(0, Integer.valueOf(1));
+		frame.push(frame.getLocal(0));
+
+		assertEquals("L", frame.getOperandTypes());
+		frame.popInteger();
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectUnderflowIntoLocals() {
+		Frame frame = new Frame(1, 1, null, null);
+		frame.storeInteger(0, 1);
+		frame.popInteger();
+	}
+
+}
@@ -0,0 +1,169 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import com.jvm.mini.api.CompiledCode;
+import com.jvm.mini.api.InsnVisitor;
+import com.jvm.mini.api.JvmFacade;
+
+public class HandleCompilerTest {
+
+	@Test
+	public void executeBlocksUntilFrameIsLeft() {
+		MethodInfo method = countdown();
+		final int[] visitors = new int[1];
+		HandleCompiler compiler = new HandleCompiler(
+				new HandleCompiler.VisitorFactory() {
+					@Override
+					public InsnVisitor newVisitor(JvmFacade facade) {
+						visitors[0]++;
+						return visitor(facade);
+					}
+				});
+		CompiledCode code = compiler.compile(method);
+
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(1, 0);
+		Frame caller = facade.getCurrentFrame();
+		for (int run = 1; run <= 2; run++) {
+			facade.pushFrame(method);
+			Frame frame = facade.getCurrentFrame();
+			facade.storeInteger(0, 3);
+			facade.pushIntegerOperand(7);
+			facade.pushIntegerOperand(12);
+			facade.jump(method.getFirstInstruction());
+			code.execute(facade);
+
+			// Looped three times, then returned bitCount(max(7, 12))
+			assertSame(caller, facade.getCurrentFrame());
+			assertEquals(Integer.valueOf(0), frame.getLocal(0));
+			assertEquals(1, frame.getStackSize());
+			assertEquals(Integer.valueOf(2), frame.getOperand(0));
+		}
+		assertEquals(1, visitors[0]);
+	}
+
+	@Test
+	public void compileLoopsOnly() {
+		MethodInfo method = countdown();
+		AbstractInsnNode header = method.getFirstInstruction();
+		CompiledCode code = new HandleCompiler(
+				new HandleCompiler.VisitorFactory() {
+					@Override
+					public InsnVisitor newVisitor(JvmFacade facade) {
+						return visitor(facade);
+					}
+				}).compileLoop(method, header);
+		assertNotNull(code);
+
+		// Leaves the loop at its exit, without calling the intrinsics
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(method);
+		facade.storeInteger(0, 2);
+		facade.jump(header);
+		code.execute(facade);
+		assertSame(method.getInstruction(10), facade.peekInstruction());
+		assertEquals(Integer.valueOf(0), facade.getCurrentFrame().getLocal(0));
+		assertNull(new HandleCompiler().compileLoop(method,
+				method.getInstruction(10)));
+	}
+
+	/*
+	 * Creates a method counting local 0 down to zero, after which it
+	 * returns, having replaced the two ints on its operand stack by the bit
+	 * count of their maximum:
+	 *
+	 *  0: iload_0
+	 *  1: ifeq 10
+	 *  4: iinc 0 -1
+	 *  7: goto 0
+	 * 10: invokestatic Math.max(II)I
+	 * 13: invokestatic Integer.bitCount(I)I
+	 * 16: return
+	 */
+	private static MethodInfo countdown() {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "countdown",
+				"()V", null, null);
+		LabelNode header = new LabelNode();
+		LabelNode exit = new LabelNode();
+		node.instructions.add(header);
+		node.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+		node.instructions.add(new JumpInsnNode(Opcodes.IFEQ, exit));
+		node.instructions.add(new IincInsnNode(0, -1));
+		node.instructions.add(new JumpInsnNode(Opcodes.GOTO, header));
+		node.instructions.add(exit);
+		node.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC,
+				"java/lang/Math", "max", "(II)I", false));
+		node.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC,
+				"java/lang/Integer", "bitCount", "(I)I", false));
+		node.instructions.add(new InsnNode(Opcodes.RETURN));
+		node.maxStack = 3;
+		node.maxLocals = 1;
+		return new MethodInfo("Handles", null, node);
+	}
+
+	/*
+	 * Creates a visitor executing the instructions of the countdown method,
+	 * which the skeleton interpreter does not all implement. Returning pops
+	 * the frame, leaving its operands in place.
+	 */
+	private static InsnVisitor visitor(final JvmFacade facade) {
+		final InsnVisitor intrinsics = new InsnVisitorImpl(facade);
+		return (InsnVisitor)Proxy.newProxyInstance(
+				InsnVisitor.class.getClassLoader(),
+				new Class<?>[] {InsnVisitor.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						switch (method.getName()) {
+						case "iload":
+							facade.pushIntegerOperand(facade.loadInteger(
+									((Integer)args[0]).intValue()));
+							break;
+						case "ifEq":
+							if (facade.popIntegerOperand() == 0) {
+								facade.jump((AbstractInsnNode)args[0]);
+							}
+							break;
+						case "iinc":
+							int var = ((Integer)args[0]).intValue();
+							facade.storeInteger(var, facade.loadInteger(var)
+									+ ((Integer)args[1]).intValue());
+							break;
+						case "goTo":
+							facade.jump((AbstractInsnNode)args[0]);
+							break;
+						case "invokeintrinsic":
+							intrinsics.invokeintrinsic((Intrinsic)args[0]);
+							break;
+						case "voidReturn":
+							facade.popFrame();
+							break;
+						default:
+							throw new UnsupportedOperationException(
+									method.getName());
+						}
+						return null;
+					}
+				});
+	}
+
+}
@@ -0,0 +1,205 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.util.Instructions;
+import com.jvm.mini.util.Traps;
+
+public class JvmFacadeImplTest {
+
+	private static final String OWNER = "com/jvm/mini/Exceptions";
+
+	@Test
+	public void throwCaughtInSameMethod() {
+		MethodNode method = tryCatch("main", "java/lang/RuntimeException");
+		JvmFacade facade = start(method);
+		facade.readInstruction(); // aconst_null
+		facade.readInstruction(); // athrow
+		facade.throwException(null);
+
+		assertSame(handlerOf(method), facade.peekInstruction());
+		GuestException e = (GuestException)facade.popReferenceOperand();
+		assertSame(NullPointerException.class, e.getType());
+		assertNull(facade.getUncaughtException());
+	}
+
+	@Test
+	public void throwCaughtInCaller() {
+		MethodNode caller = tryCatch("main", null);
+		MethodNode callee = tryCatch("callee", "java/lang/ArithmeticException");
+		JvmFacade facade = start(caller);
+		facade.readInstruction(); // aconst_null, standing in for a call
+		facade.pushFrame(new MethodInfo(OWNER, null, callee));
+		facade.jump(callee.instructions.get(1));
+		facade.readInstruction(); // aconst_null
+		facade.readInstruction(); // athrow
+		facade.throwException(new GuestException(IllegalStateException.class));
+
+		assertSame(handlerOf(caller), facade.peekInstruction());
+		GuestException e = (GuestException)facade.popReferenceOperand();
+		StackTraceElement[] trace = e.getStackTrace();
+		assertEquals(2, trace.length);
+		assertEquals("callee", trace[0].getMethodName());
+		assertEquals("main", trace[1].getMethodName());
+	}
+
+	@Test
+	public void throwUncaught() {
+		JvmFacade facade = start(tryCatch("main", "java/lang/Error"));
+		facade.readInstruction(); // aconst_null
+		facade.readInstruction(); // athrow
+		facade.throwException(null);
+
+		assertNull(facade.peekInstruction());
+		GuestException e = facade.getUncaughtException();
+		assertSame(NullPointerException.class, e.getType());
+		assertEquals("com.jvm.mini.Exceptions",
+				e.getStackTrace()[0].getClassName());
+	}
+
+	@Test
+	public void initializeSuperclassesFirst() throws IOException {
+		MemoryClassSource source = new MemoryClassSource();
+		source.define(clazz("Base", "java/lang/Object", returning("<clinit>")));
+		source.define(clazz("Derived", "Base", returning("<clinit>")));
+		RuntimeClass derived = new ClassRegistry(source).getClass("Derived");
+		MethodInfo main = new MethodInfo(OWNER, null, returning("main"));
+		JvmFacade facade = start(main);
+
+		assertFalse(facade.initialize(derived));
+		assertEquals("Base.<clinit>()V",
+				facade.getCurrentFrame().getMethod().toString());
+		facade.popFrame();
+		assertTrue(derived.getSuperclass().isInitialized());
+		assertFalse(derived.isInitialized());
+		facade.popFrame();
+		assertTrue(derived.isInitialized());
+		assertSame(main.getFirstInstruction(), facade.peekInstruction());
+		assertTrue(facade.initialize(derived));
+	}
+
+	@Test
+	public void failInitializerThrowing() throws IOException {
+		MemoryClassSource source = new MemoryClassSource();
+		source.define(clazz("Failing", "java/lang/Object",
+				returning("<clinit>")));
+		RuntimeClass failing = new ClassRegistry(source).getClass("Failing");
+		MethodInfo main = new MethodInfo(OWNER, null, returning("main"));
+		JvmFacade facade = start(main);
+		facade.initialize(failing);
+		facade.readInstruction(); // return, standing in for a division by 0
+		facade.throwException(new GuestException(ArithmeticException.class));
+
+		assertSame(ExceptionInInitializerError.class,
+				facade.getUncaughtException().getType());
+		JvmFacade other = start(main);
+		assertFalse(other.initialize(failing));
+		assertSame(NoClassDefFoundError.class,
+				other.getUncaughtException().getType());
+	}
+
+	@Test
+	public void removeBarrierAfterInitialization() throws IOException {
+		MemoryClassSource source = new MemoryClassSource();
+		ClassNode node = source.define(clazz("Constants", "java/lang/Object",
+				returning("run")));
+		node.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "ANSWER", "I",
+				null, Integer.valueOf(42)).visitEnd();
+		RuntimeClass constants = new ClassRegistry(source).getClass(
+				"Constants");
+		MethodNode method = returning("main");
+		AbstractInsnNode getstatic = new FieldInsnNode(Opcodes.GETSTATIC,
+				"Constants", "ANSWER", "I");
+		method.instructions.insert(getstatic);
+		JvmFacade facade = start(new MethodInfo(constants.getConstantPool(),
+				method));
+
+		assertEquals(Traps.INIT_BARRIER, getstatic.getOpcode());
+		Instructions.switchOnInsn(new InsnVisitorImpl(facade),
+				facade.readInstruction());
+		assertTrue(constants.isInitialized());
+		assertEquals(Opcodes.GETSTATIC, getstatic.getOpcode());
+		assertEquals(42, constants.getStaticField("ANSWER").getInteger());
+	}
+
+	private static JvmFacade start(MethodInfo method) {
+		JvmFacade facade = new JvmFacadeImpl();
+		facade.pushFrame(method);
+		facade.jump(method.getFirstInstruction());
+		return facade;
+	}
+
+	private static JvmFacade start(MethodNode method) {
+		JvmFacade facade = new JvmFacadeImpl();
+		facade.pushFrame(new MethodInfo(OWNER, null, method));
+		facade.jump(method.instructions.get(1)); // Skip the start label
+		return facade;
+	}
+
+	private static AbstractInsnNode handlerOf(MethodNode method) {
+		TryCatchBlockNode block = (TryCatchBlockNode)method.tryCatchBlocks.get(0);
+		return block.handler.getNext();
+	}
+
+	private static MethodNode returning(String name) {
+		MethodNode method = new MethodNode(Opcodes.ACC_STATIC, name, "()V",
+				null, null);
+		method.instructions.add(new InsnNode(Opcodes.RETURN));
+		return method;
+	}
+
+	@SuppressWarnings("unchecked") // Raw lists of ASM 5
+	private static ClassNode clazz(String name, String superName,
+			MethodNode method) {
+		ClassNode result = new ClassNode();
+		result.version = Opcodes.V1_7;
+		result.name = name;
+		result.superName = superName;
+		result.methods.add(method);
+		return result;
+	}
+
+	/*
+	 * Creates a method of the form
+	 *
+	 * try { throw null; } catch (type e) { }
+	 */
+	@SuppressWarnings("unchecked") // Raw lists of ASM 5
+	private static MethodNode tryCatch(String name, String type) {
+		MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC
+				+ Opcodes.ACC_STATIC, name, "()V", null, null);
+		LabelNode start = new LabelNode();
+		LabelNode end = new LabelNode();
+		LabelNode handler = new LabelNode();
+		method.instructions.add(start);
+		method.instructions.add(new InsnNode(Opcodes.ACONST_NULL));
+		method.instructions.add(new InsnNode(Opcodes.ATHROW));
+		method.instructions.add(end);
+		method.instructions.add(handler);
+		method.instructions.add(new InsnNode(Opcodes.POP));
+		method.instructions.add(new InsnNode(Opcodes.RETURN));
+		method.tryCatchBlocks.add(new TryCatchBlockNode(start, end, handler,
+				type));
+		method.maxStack = 1;
+		method.maxLocals = 0;
+		return method;
+	}
+
+}
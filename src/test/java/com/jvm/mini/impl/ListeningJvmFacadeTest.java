@@ -0,0 +1,80 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.api.ExecutionListener;
+import com.jvm.mini.api.JvmFacade;
+
+public class ListeningJvmFacadeTest {
+
+	@Test
+	public void reportBranchesOnlyForJumpInstructions() {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "loop", "()V",
+				null, null);
+		LabelNode start = new LabelNode();
+		node.instructions.add(start);
+		node.instructions.add(new IincInsnNode(0, 1));
+		node.instructions.add(new JumpInsnNode(Opcodes.GOTO, start));
+		node.instructions.add(new InsnNode(Opcodes.RETURN));
+		node.maxLocals = 1;
+		MethodInfo method = new MethodInfo("Loop", null, node);
+		final List<String> events = new ArrayList<>();
+		ExecutionListener listener = new ExecutionListener() {
+			@Override
+			public void beforeInstruction(JvmFacade facade,
+					AbstractInsnNode insn) {
+				events.add("before");
+			}
+
+			@Override
+			public void framePushed(JvmFacade facade, Frame frame) {
+				events.add("pushed " + frame.getDepth());
+			}
+
+			@Override
+			public void framePopped(JvmFacade facade, Frame frame) {
+				events.add("popped " + frame.getDepth());
+			}
+
+			@Override
+			public void branchTaken(JvmFacade facade, AbstractInsnNode branch,
+					AbstractInsnNode target) {
+				events.add("branch " + facade.getCurrentFrame().getMethod()
+						.getInstructions().indexOf(target));
+			}
+
+			@Override
+			public void objectAllocated(JvmFacade facade, Object object) {
+				events.add("allocated");
+			}
+		};
+		ListeningJvmFacade facade = new ListeningJvmFacade(new JvmFacadeImpl(),
+				new ExecutionListener[] {listener});
+
+		// Entering the method is no branch, while a goto back into it is
+		facade.pushFrame(method);
+		AbstractInsnNode header = method.getFirstInstruction();
+		facade.jump(header);
+		assertSame(header, facade.readInstruction());
+		facade.readInstruction();
+		facade.jump(header);
+		facade.popFrame();
+
+		assertEquals(Arrays.asList("pushed 1", "branch 1", "popped 1"), events);
+	}
+
+}
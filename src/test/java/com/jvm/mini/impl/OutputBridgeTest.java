@@ -0,0 +1,72 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.OutputBridge.FlushPolicy;
+
+public class OutputBridgeTest {
+
+	private static final String NL = System.lineSeparator();
+
+	@Test
+	public void writeInBatches() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputBridge bridge = new OutputBridge(Channels.newChannel(bytes), 16,
+				FlushPolicy.EXIT);
+		bridge.print("héllo ");
+		bridge.println(42);
+		bridge.flush(); // Ignored until exit
+		assertEquals(0, bytes.size());
+		bridge.print("0123456789");
+		assertEquals(16, bytes.size());
+
+		bridge.drain();
+		assertEquals("héllo 42" + NL + "0123456789",
+				new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void bindGuestPrintStream() {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "main", "()V",
+				null, null);
+		node.instructions.add(new FieldInsnNode(Opcodes.GETSTATIC,
+				"java/lang/System", "err", "Ljava/io/PrintStream;"));
+		node.instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL,
+				"java/io/PrintStream", "println", "(Ljava/lang/String;)V",
+				false));
+		node.instructions.add(new InsnNode(Opcodes.RETURN));
+		node.maxStack = 2;
+		MethodInfo method = new MethodInfo("Printer", null, node);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputBridge err = new OutputBridge(Channels.newChannel(bytes),
+				OutputBridge.DEFAULT_BUFFER_SIZE, FlushPolicy.LINE);
+
+		assertSame(StandardStream.ERR, ConstantPool.resolve(
+				node.instructions.get(0)));
+		Intrinsic println = (Intrinsic)ConstantPool.resolve(
+				node.instructions.get(1));
+		assertTrue(println.isVirtual());
+		JvmFacadeImpl facade = new JvmFacadeImpl(LiveHostInput.INSTANCE,
+				OutputBridge.getStandardOutput(), err);
+		facade.pushFrame(method);
+		facade.pushOperand(facade.getOutput(StandardStream.ERR));
+		facade.pushOperand("guest");
+		println.invoke(facade);
+		assertEquals("guest" + NL,
+				new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.api.ExecutionAdapter;
+import com.jvm.mini.api.ExecutionListener;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.impl.ResourceQuota.Resource;
+
+public class QuotaJvmFacadeTest {
+
+	@Test
+	public void checkInstructionsAtBranches() {
+		MethodInfo method = method();
+		QuotaJvmFacade facade = new QuotaJvmFacade(new JvmFacadeImpl(),
+				new ResourceQuota(2, 10, 10));
+		facade.pushFrame(method);
+		AbstractInsnNode first = method.getFirstInstruction();
+		for (int i = 0; i < 2; i++) {
+			facade.jump(first);
+			facade.readInstruction(); // Not a safepoint
+		}
+		facade.jump(first);
+		facade.readInstruction();
+		assertEquals(3, facade.getInstructions());
+		try {
+			facade.jump(first);
+			fail();
+		} catch (QuotaExceededException e) {
+			assertEquals(Resource.INSTRUCTIONS, e.getResource());
+		}
+	}
+
+	@Test
+	public void limitStackDepth() {
+		MethodInfo method = method();
+		QuotaJvmFacade facade = new QuotaJvmFacade(new JvmFacadeImpl(),
+				new ResourceQuota(10, 2, 10));
+		facade.pushFrame(method);
+		facade.pushFrame(method);
+		try {
+			facade.pushFrame(method);
+			fail();
+		} catch (QuotaExceededException e) {
+			assertEquals(Resource.STACK_DEPTH, e.getResource());
+			assertEquals(2, e.getLimit());
+		}
+	}
+
+	@Test
+	public void countAllocationsOfTheRuntime() throws IOException {
+		ClassNode node = new ClassNode();
+		node.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "Broken", null,
+				"java/lang/Object", null);
+		MethodVisitor clinit = node.visitMethod(Opcodes.ACC_STATIC,
+				"<clinit>", "()V", null, null);
+		clinit.visitCode();
+		clinit.visitInsn(Opcodes.RETURN);
+		clinit.visitMaxs(0, 0);
+		clinit.visitEnd();
+		node.visitEnd();
+		RuntimeClass broken = new ClassRegistry(null).define(node);
+		QuotaJvmFacade quota = new QuotaJvmFacade(new JvmFacadeImpl(),
+				new ResourceQuota(10, 10, 3));
+		final List<Object> allocated = new ArrayList<>();
+		JvmFacade facade = new ListeningJvmFacade(quota,
+				new ExecutionListener[] {new ExecutionAdapter() {
+					@Override
+					public void objectAllocated(JvmFacade facade,
+							Object object) {
+						allocated.add(object);
+					}
+				}});
+
+		// A NullPointerException thrown by the class initializer, wrapped
+		// by an ExceptionInInitializerError
+		facade.initialize(broken);
+		facade.throwException(null);
+		assertEquals(2, quota.getAllocations());
+
+		// A NoClassDefFoundError for the erroneous class
+		facade.initialize(broken);
+		assertEquals(3, quota.getAllocations());
+		assertEquals(NoClassDefFoundError.class,
+				((GuestException)allocated.get(2)).getType());
+
+		// An exception raised by an intrinsic, exceeding the quota
+		MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "run", "()V",
+				null, null);
+		method.maxStack = 2;
+		facade.pushFrame(new MethodInfo("Quota", null, method));
+		facade.pushIntegerOperand(1);
+		facade.pushIntegerOperand(0);
+		try {
+			Intrinsic.forMethod("java/lang/Math", "floorDiv", "(II)I")
+					.invoke(facade);
+			fail();
+		} catch (QuotaExceededException e) {
+			assertEquals(Resource.ALLOCATIONS, e.getResource());
+		}
+		assertEquals(4, allocated.size());
+	}
+
+	private static MethodInfo method() {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "run", "()V",
+				null, null);
+		node.instructions.add(new InsnNode(Opcodes.RETURN));
+		return new MethodInfo("Quota", null, node);
+	}
+
+}
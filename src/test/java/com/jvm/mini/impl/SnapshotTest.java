@@ -0,0 +1,112 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.OutputBridge.FlushPolicy;
+
+public class SnapshotTest {
+
+	@Test
+	public void restoreStackAndStatics() throws IOException {
+		byte[] classFile = classFile();
+		RuntimeClass clazz = new ClassRegistry(source(classFile))
+				.getClass("Snap");
+		MethodInfo main = clazz.getMethod("main", "([Ljava/lang/String;)V");
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.initialize(clazz);
+		String[] args = {"interned", new String("fresh")};
+		clazz.getStaticField("count").setInteger(-7);
+		clazz.getStaticField("names").setReference(args);
+		int[] counts = new int[10000]; // Grown upon restoring
+		counts[counts.length - 1] = -1;
+		clazz.getStaticField("counts").setReference(counts);
+		facade.pushFrame(main);
+		facade.store(0, args);
+		facade.pushLongOperand(Long.MIN_VALUE);
+		facade.pushOperand(facade.getOutput(StandardStream.OUT));
+		facade.pushDoubleOperand(-0.0);
+		facade.jump(main.getInstructions().get(1));
+		ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+		Snapshot.checkpoint(facade, clazz.getRegistry(), snapshot);
+
+		ClassRegistry registry = new ClassRegistry(source(classFile));
+		OutputBridge out = new OutputBridge(Channels.newChannel(
+				new ByteArrayOutputStream()), OutputBridge.MIN_BUFFER_SIZE,
+				FlushPolicy.EXIT);
+		JvmFacadeImpl restored = Snapshot.restore(new ByteArrayInputStream(
+				snapshot.toByteArray()), registry, LiveHostInput.INSTANCE, out,
+				OutputBridge.getStandardError());
+		RuntimeClass copy = registry.getClass("Snap");
+		MethodInfo resumed = restored.getCurrentFrame().getMethod();
+		assertTrue(copy.isInitialized());
+		assertEquals(-7, copy.getStaticField("count").getInteger());
+		String[] names = (String[])copy.getStaticField("names").getReference();
+		assertArrayEquals(args, names);
+		assertNotSame(args, names);
+		assertSame("interned", names[0]);
+		assertNotSame("fresh", names[1]);
+		assertArrayEquals(counts,
+				(int[])copy.getStaticField("counts").getReference());
+		assertSame(copy.getMethod("main", "([Ljava/lang/String;)V"), resumed);
+		assertSame(resumed.getInstructions().get(1),
+				restored.peekInstruction());
+		assertEquals(Double.doubleToRawLongBits(-0.0),
+				Double.doubleToRawLongBits(restored.popDoubleOperand()));
+		assertSame(out, restored.popReferenceOperand());
+		assertEquals(Long.MIN_VALUE, restored.popLongOperand());
+		assertSame(names, restored.getCurrentFrame().getLocal(0));
+	}
+
+	private static MemoryClassSource source(byte[] classFile) {
+		MemoryClassSource result = new MemoryClassSource();
+		result.define(classFile);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked") // Raw lists of ASM 5
+	private static byte[] classFile() {
+		ClassNode node = new ClassNode();
+		node.version = Opcodes.V1_7;
+		node.access = Opcodes.ACC_PUBLIC;
+		node.name = "Snap";
+		node.superName = "java/lang/Object";
+		node.fields.add(new FieldNode(Opcodes.ACC_STATIC, "count", "I", null,
+				null));
+		node.fields.add(new FieldNode(Opcodes.ACC_STATIC, "names",
+				"[Ljava/lang/String;", null, null));
+		node.fields.add(new FieldNode(Opcodes.ACC_STATIC, "counts", "[I", null,
+				null));
+		node.fields.add(new FieldNode(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+				"NAME", "Ljava/lang/String;", null, "interned"));
+		MethodNode main = new MethodNode(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null,
+				null);
+		main.instructions.add(new InsnNode(Opcodes.ICONST_1));
+		main.instructions.add(new InsnNode(Opcodes.POP));
+		main.instructions.add(new InsnNode(Opcodes.RETURN));
+		main.maxStack = 5;
+		main.maxLocals = 1;
+		node.methods.add(main);
+		ClassWriter writer = new ClassWriter(0);
+		node.accept(writer);
+		return writer.toByteArray();
+	}
+
+}
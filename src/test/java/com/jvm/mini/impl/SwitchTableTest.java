@@ -0,0 +1,87 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+public class SwitchTableTest {
+
+	@Test
+	public void tableswitch() {
+		LabelNode[] labels = labels(3);
+		TableSwitchInsnNode insn = new TableSwitchInsnNode(-1, 0, labels[0],
+				labels[1], labels[2]);
+		SwitchTable table = SwitchTable.forInsn(insn);
+
+		assertSame(labels[1].getNext(), table.getTarget(-1));
+		assertSame(labels[2].getNext(), table.getTarget(0));
+		assertSame(table.getDefault(), table.getTarget(1));
+		assertSame(table.getDefault(), table.getTarget(Integer.MIN_VALUE));
+		assertSame(table.getDefault(), table.getTarget(Integer.MAX_VALUE));
+		assertEquals(3, table.getTargets().length);
+		assertSame(table, SwitchTable.forInsn(insn));
+	}
+
+	@Test
+	public void lookupswitchDense() {
+		assertLookups(new int[] { 7, 3, 4, 6 });
+	}
+
+	@Test
+	public void lookupswitchSparse() {
+		assertLookups(new int[] { Integer.MAX_VALUE, 0, Integer.MIN_VALUE });
+	}
+
+	@Test
+	public void lookupswitchHashed() {
+		int[] keys = new int[100];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = (i - 50) * 1000003;
+		}
+		assertLookups(keys);
+	}
+
+	// Checks each key to map to its own target, and neighbours to the default
+	private static void assertLookups(int[] keys) {
+		LabelNode[] labels = labels(keys.length + 1);
+		LabelNode[] targets = new LabelNode[keys.length];
+		System.arraycopy(labels, 1, targets, 0, keys.length);
+		SwitchTable table = SwitchTable.forInsn(new LookupSwitchInsnNode(
+				labels[0], keys, targets));
+
+		for (int i = 0; i < keys.length; i++) {
+			assertSame(targets[i].getNext(), table.getTarget(keys[i]));
+			for (int neighbour : new int[] { keys[i] - 1, keys[i] + 1 }) {
+				AbstractInsnNode expected = table.getDefault();
+				for (int j = 0; j < keys.length; j++) {
+					if (keys[j] == neighbour) {
+						expected = targets[j].getNext();
+					}
+				}
+				assertSame(expected, table.getTarget(neighbour));
+			}
+		}
+		assertSame(labels[0].getNext(), table.getDefault());
+	}
+
+	// Returns labels each followed by a distinct instruction
+	private static LabelNode[] labels(int count) {
+		InsnList insns = new InsnList();
+		LabelNode[] result = new LabelNode[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = new LabelNode();
+			insns.add(result[i]);
+			insns.add(new InsnNode(Opcodes.NOP));
+		}
+		return result;
+	}
+
+}
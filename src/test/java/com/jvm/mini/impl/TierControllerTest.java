@@ -0,0 +1,154 @@
+package com.jvm.mini.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.api.CompiledCode;
+import com.jvm.mini.api.ExecutionTier;
+import com.jvm.mini.api.JvmFacade;
+import com.jvm.mini.api.MethodCompiler;
+
+public class TierControllerTest {
+
+	// Runs compilations on the calling thread
+	private static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Test
+	public void promoteAfterInvocations() {
+		MethodInfo method = loop();
+		CompiledCode code = new CompiledCode() {
+			@Override
+			public void execute(JvmFacade facade) {
+			}
+		};
+		TierController controller = new TierController(DIRECT, 2, 100,
+				compiler(code));
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(method);
+		controller.framePushed(facade, facade.getCurrentFrame());
+		assertNull(controller.getCode(method));
+		controller.framePushed(facade, facade.getCurrentFrame());
+
+		assertSame(code, controller.getCode(method));
+		TierController.Profile profile = controller.getProfiles().get(0);
+		assertEquals(1, profile.getCompilations());
+		assertEquals(0, profile.getInvocations());
+		assertFalse(profile.isCompiling());
+	}
+
+	@Test
+	public void replaceHotLoopOnStack() {
+		final MethodInfo method = loop();
+		final AbstractInsnNode exit = method.getInstructions().getLast();
+		final int[] counter = new int[1];
+		CompiledCode code = new CompiledCode() {
+			@Override
+			public void execute(JvmFacade facade) {
+				counter[0] = facade.loadInteger(0);
+				facade.jump(exit);
+			}
+		};
+		TierController controller = new TierController(DIRECT, 100, 2,
+				compiler(code));
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(method);
+		facade.storeInteger(0, 7);
+		AbstractInsnNode header = method.getInstruction(1);
+		AbstractInsnNode branch = exit.getPrevious();
+		facade.jump(header);
+		controller.branchTaken(facade, branch, header);
+		controller.branchTaken(facade, branch, header);
+		assertFalse(controller.enter(facade));
+		controller.branchTaken(facade, branch, header);
+
+		// The transfer waits for the interpreter to enter the controller
+		assertEquals(0, counter[0]);
+		assertTrue(controller.enter(facade));
+		assertEquals(7, counter[0]);
+		assertSame(exit, facade.peekInstruction());
+		assertFalse(controller.enter(facade));
+		TierController.Profile profile = controller.getProfiles().get(0);
+		assertEquals(1, profile.getLoopCompilations());
+		assertEquals(3, profile.getBackEdges());
+		assertNull(controller.getCode(method));
+	}
+
+	@Test
+	public void keepRejectedLoopsInterpreted() {
+		MethodInfo method = loop();
+		TierController controller = new TierController(DIRECT, 100, 2,
+				compiler(null));
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(method);
+		AbstractInsnNode header = method.getInstruction(1);
+		AbstractInsnNode branch = method.getInstructions().getLast()
+				.getPrevious();
+		for (int i = 0; i < 3; i++) {
+			controller.branchTaken(facade, branch, header);
+		}
+
+		// Forward branches to the header are no back edges
+		controller.branchTaken(facade, method.getFirstInstruction(), header);
+
+		assertEquals(ExecutionTier.INTERPRETER, controller.getTier(method));
+		TierController.Profile profile = controller.getProfiles().get(0);
+		assertEquals(0, profile.getLoopCompilations());
+		assertEquals(3, profile.getBackEdges());
+	}
+
+	// Creates a method incrementing local 0 in an infinite loop, with its
+	// header at offset 1 following a nop, and followed by an unreachable
+	// return
+	private static MethodInfo loop() {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "loop", "()V",
+				null, null);
+		LabelNode start = new LabelNode();
+		node.instructions.add(new InsnNode(Opcodes.NOP));
+		node.instructions.add(start);
+		node.instructions.add(new IincInsnNode(0, 1));
+		node.instructions.add(new JumpInsnNode(Opcodes.GOTO, start));
+		node.instructions.add(new InsnNode(Opcodes.RETURN));
+		node.maxLocals = 1;
+		return new MethodInfo("Loop", null, node);
+	}
+
+	private static MethodCompiler compiler(final CompiledCode code) {
+		return new MethodCompiler() {
+			@Override
+			public ExecutionTier getTier() {
+				return ExecutionTier.INTERPRETER;
+			}
+
+			@Override
+			public CompiledCode compile(MethodInfo method) {
+				return code;
+			}
+
+			@Override
+			public CompiledCode compileLoop(MethodInfo method,
+					AbstractInsnNode header) {
+				return code;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.jvm.mini.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.MethodInfo;
+
+public class BenchmarkTest {
+
+	@Test
+	public void reportStatistics() {
+		MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null,
+				null);
+		method.instructions.add(new IntInsnNode(Opcodes.BIPUSH, 42));
+		method.instructions.add(new InsnNode(Opcodes.RETURN));
+		method.maxStack = 1;
+		method.maxLocals = 1;
+		Benchmark.Report report = new Benchmark(new MethodInfo("Bench", null,
+				method), new String[0], 2, 10).run();
+
+		assertEquals(10, report.getIterations());
+		assertEquals(2, report.getInstructionsPerIteration());
+		assertTrue(report.getNanos(1) <= report.getNanos(50));
+		assertTrue(report.getNanos(99) <= report.getNanos(100));
+		assertNull(report.getUncaughtException());
+	}
+
+}
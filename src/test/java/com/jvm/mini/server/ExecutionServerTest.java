@@ -0,0 +1,86 @@
+package com.jvm.mini.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.MemoryClassSource;
+import com.jvm.mini.tools.MetricsRegistry;
+
+public class ExecutionServerTest {
+
+	@Test
+	public void answerRequests() throws IOException {
+		try (ExecutionServer server = new ExecutionServer(
+				new ClassCache(source()), new MetricsRegistry(), 0, 1)) {
+			server.start();
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+						server.getPort());
+					PrintWriter out = new PrintWriter(socket.getOutputStream(),
+						true);
+					BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream()))) {
+				out.println("clear");
+				assertEquals("OK", in.readLine());
+				out.println("run Hello");
+				assertEquals("OK instructions=1", in.readLine().replaceFirst(
+						" nanos=\\d+$", ""));
+				out.println("run com.jvm.mini.Missing");
+				assertTrue(in.readLine().startsWith("ERROR"));
+				out.println("quit");
+				assertNull(in.readLine());
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void keepNoWorkerForIdleConnections() throws IOException {
+		try (ExecutionServer server = new ExecutionServer(
+				new ClassCache(source()), new MetricsRegistry(), 0, 1);
+				Socket idle = new Socket(InetAddress.getLoopbackAddress(),
+						server.getPort())) {
+			server.start();
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+						server.getPort());
+					PrintWriter out = new PrintWriter(socket.getOutputStream(),
+						true);
+					BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream()))) {
+				out.println("run Hello");
+				assertTrue(in.readLine().startsWith("OK"));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked") // Raw lists of ASM 5
+	private static MemoryClassSource source() {
+		ClassNode node = new ClassNode();
+		node.version = Opcodes.V1_7;
+		node.access = Opcodes.ACC_PUBLIC;
+		node.name = "Hello";
+		node.superName = "java/lang/Object";
+		MethodNode main = new MethodNode(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null,
+				null);
+		main.instructions.add(new InsnNode(Opcodes.RETURN));
+		main.maxLocals = 1;
+		node.methods.add(main);
+		MemoryClassSource result = new MemoryClassSource();
+		result.define(node);
+		return result;
+	}
+
+}
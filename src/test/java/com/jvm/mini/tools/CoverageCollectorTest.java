@@ -0,0 +1,133 @@
+package com.jvm.mini.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.MemoryClassSource;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.impl.RuntimeClass;
+import com.jvm.mini.util.Traps;
+
+public class CoverageCollectorTest {
+
+	@Test
+	public void recordBlocksAndWriteLcov() {
+		MethodInfo method = method();
+		AbstractInsnNode[] leaders = method.getBlockLeaders();
+		assertEquals(3, leaders.length);
+		CoverageCollector collector = new CoverageCollector();
+		collector.instrument(method);
+		for (AbstractInsnNode leader : leaders) {
+			assertEquals(Traps.BREAKPOINT, leader.getOpcode());
+		}
+
+		// Take the branch, skipping the middle block
+		collector.trap(leaders[0]);
+		collector.trap(leaders[2]);
+		assertArrayEquals(new long[] {0b101}, collector.getBitmap(method));
+		assertEquals(Opcodes.BIPUSH, leaders[0].getOpcode());
+		assertEquals(Traps.BREAKPOINT, leaders[1].getOpcode());
+		assertEquals(Opcodes.RETURN, leaders[2].getOpcode());
+		StringWriter lcov = new StringWriter();
+		collector.writeLcov(lcov);
+		assertEquals(lines("TN:", "SF:pkg/Cov.java", "FN:3,main()V",
+				"FNDA:1,main()V", "FNF:1", "FNH:1", "DA:3,1", "DA:4,0",
+				"DA:5,1", "LF:3", "LH:2", "end_of_record"), lcov.toString());
+
+		// Resetting re-arms the probes hit
+		collector.reset();
+		assertArrayEquals(new long[] {0}, collector.getBitmap(method));
+		for (AbstractInsnNode leader : leaders) {
+			assertEquals(Traps.BREAKPOINT, leader.getOpcode());
+			collector.trap(leader);
+		}
+		assertArrayEquals(new long[] {0b111}, collector.getBitmap(method));
+	}
+
+	@Test
+	public void instrumentAllMethodsOfLoadedClasses() throws IOException {
+		MemoryClassSource source = new MemoryClassSource();
+		source.define(clazz("First"));
+		source.define(clazz("Second"));
+		ClassRegistry registry = new ClassRegistry(source);
+		RuntimeClass first = registry.getClass("First");
+		CoverageCollector collector = new CoverageCollector();
+		collector.instrument(registry);
+		RuntimeClass second = registry.getClass("Second");
+
+		for (RuntimeClass clazz : Arrays.asList(first, second)) {
+			for (String name : Arrays.asList("main", "helper")) {
+				MethodInfo method = clazz.getMethod(name, "()V");
+				assertArrayEquals(new long[] {0}, collector.getBitmap(method));
+				assertEquals(Traps.BREAKPOINT,
+						method.getFirstInstruction().getOpcode());
+			}
+		}
+	}
+
+	// Creates a class declaring methods main and helper, each only returning
+	private static ClassNode clazz(String name) {
+		ClassNode result = new ClassNode();
+		result.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, name, null,
+				"java/lang/Object", null);
+		for (String method : Arrays.asList("main", "helper")) {
+			MethodVisitor visitor = result.visitMethod(Opcodes.ACC_STATIC,
+					method, "()V", null, null);
+			visitor.visitCode();
+			visitor.visitInsn(Opcodes.RETURN);
+			visitor.visitMaxs(0, 0);
+			visitor.visitEnd();
+		}
+		result.visitEnd();
+		return result;
+	}
+
+	// Creates a method of three blocks on lines 3 to 5, the first branching
+	// over the second
+	private static MethodInfo method() {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "main", "()V",
+				null, null);
+		LabelNode line3 = new LabelNode();
+		LabelNode line4 = new LabelNode();
+		LabelNode line5 = new LabelNode();
+		node.instructions.add(line3);
+		node.instructions.add(new LineNumberNode(3, line3));
+		node.instructions.add(new IntInsnNode(Opcodes.BIPUSH, 0));
+		node.instructions.add(new JumpInsnNode(Opcodes.IFEQ, line5));
+		node.instructions.add(line4);
+		node.instructions.add(new LineNumberNode(4, line4));
+		node.instructions.add(new IntInsnNode(Opcodes.BIPUSH, 1));
+		node.instructions.add(new InsnNode(Opcodes.POP));
+		node.instructions.add(line5);
+		node.instructions.add(new LineNumberNode(5, line5));
+		node.instructions.add(new InsnNode(Opcodes.RETURN));
+		node.maxStack = 1;
+		return new MethodInfo("pkg/Cov", "Cov.java", node);
+	}
+
+	private static String lines(String... lines) {
+		StringBuilder result = new StringBuilder();
+		for (String line : lines) {
+			result.append(line).append(System.lineSeparator());
+		}
+		return result.toString();
+	}
+
+}
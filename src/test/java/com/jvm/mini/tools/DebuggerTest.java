@@ -0,0 +1,121 @@
+package com.jvm.mini.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.ClassRegistry;
+import com.jvm.mini.impl.InsnVisitorImpl;
+import com.jvm.mini.impl.JvmFacadeImpl;
+import com.jvm.mini.impl.JvmInterpreterImpl;
+import com.jvm.mini.impl.MemoryClassSource;
+import com.jvm.mini.impl.MethodInfo;
+
+public class DebuggerTest {
+
+	@Test
+	public void stepAndBreakInOverloads() throws Exception {
+		MethodInfo main = method("()V");
+		MethodInfo overload = method("(I)V");
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(main);
+		facade.jump(main.getFirstInstruction());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Debugger(facade, Arrays.asList(main, overload), new StringReader(
+				"break main 4\n"
+				+ "break main()V 4\n"
+				+ "step\n"
+				+ "continue\n"
+				+ "clear main()V 4\n"
+				+ "continue\n"), new PrintStream(out, true, "UTF-8"))
+			.run(new JvmInterpreterImpl(facade, new InsnVisitorImpl(facade)));
+
+		String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(output, output.contains("Suspended at main+0: BIPUSH 0"));
+		assertTrue(output, output.contains("Ambiguous method: main"));
+		assertTrue(output, output.contains("Breakpoint set at main()V+4"));
+		assertTrue(output, output.contains("Suspended at main+2: BIPUSH 1"));
+		assertTrue(output, output.contains("Suspended at main+4: BIPUSH 2"));
+		assertTrue(output, output.contains("Breakpoint cleared"));
+		assertTrue(output, output.endsWith("Program terminated."
+				+ System.lineSeparator()));
+
+		// No traps remain
+		for (AbstractInsnNode insn = main.getFirstInstruction(); insn != null;
+				insn = insn.getNext()) {
+			assertTrue(insn.getOpcode() == Opcodes.BIPUSH
+					|| insn.getOpcode() == Opcodes.RETURN);
+		}
+		assertEquals(4, main.getOffset(main.getInstructions().get(2)));
+	}
+
+	@Test
+	public void breakInMethodsOfTheRegistry() throws Exception {
+		MemoryClassSource source = new MemoryClassSource();
+		source.define(clazz("Debug"));
+		source.define(clazz("Other"));
+		ClassRegistry classes = new ClassRegistry(source);
+		MethodInfo main = classes.getClass("Debug").getMethod("main", "()V");
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(main);
+		facade.jump(main.getFirstInstruction());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Debugger(facade, classes, new StringReader(
+				"break Other.main 2\n"
+				+ "break main 4\n"
+				+ "break Debug.main 4\n"
+				+ "continue\n"
+				+ "quit\n"), new PrintStream(out, true, "UTF-8"))
+			.run(new JvmInterpreterImpl(facade, new InsnVisitorImpl(facade)));
+
+		String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(output, output.contains("Breakpoint set at Other.main+2"));
+		assertTrue(output, output.contains("Ambiguous method: main"));
+		assertTrue(output, output.contains("Breakpoint set at Debug.main+4"));
+		assertTrue(output, output.contains("Suspended at main+4: BIPUSH 2"));
+		assertEquals(Opcodes.BIPUSH, classes.getClass("Other")
+				.getMethod("main", "()V").getInstructions().get(1).getOpcode());
+	}
+
+	// Creates a class declaring the method main of node
+	private static ClassNode clazz(String name) {
+		ClassNode result = new ClassNode();
+		result.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, name, null,
+				"java/lang/Object", null);
+		result.methods.add(node("()V"));
+		result.visitEnd();
+		return result;
+	}
+
+	// Creates a method main pushing three constants, none of which the
+	// skeleton interpreter acts on, so that execution proceeds linearly
+	private static MethodInfo method(String desc) {
+		return new MethodInfo("Debug", null, node(desc));
+	}
+
+	private static MethodNode node(String desc) {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "main", desc,
+				null, null);
+		for (int i = 0; i < 3; i++) {
+			node.instructions.add(new IntInsnNode(Opcodes.BIPUSH, i));
+		}
+		node.instructions.add(new InsnNode(Opcodes.RETURN));
+		node.maxStack = 3;
+		node.maxLocals = 1;
+		return node;
+	}
+
+}
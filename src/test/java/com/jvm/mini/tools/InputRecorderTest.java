@@ -0,0 +1,59 @@
+package com.jvm.mini.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.jvm.mini.api.HostInput;
+import com.jvm.mini.api.HostInput.Kind;
+import com.jvm.mini.api.HostInput.Source;
+
+public class InputRecorderTest {
+
+	@Test
+	public void replayRecording() throws IOException {
+		ByteArrayOutputStream recording = new ByteArrayOutputStream();
+		try (HostInput recorder = new InputRecorder(recording)) {
+			assertEquals(-3L, recorder.readLong(Kind.TIME, constant(-3L)));
+			assertEquals("été", recorder.readString(Kind.ARGUMENT,
+					"été"));
+			assertEquals(Long.MIN_VALUE, recorder.readLong(Kind.HOST_CALL,
+					constant(Long.MIN_VALUE)));
+		}
+
+		try (HostInput replayer = new InputReplayer(
+				new ByteArrayInputStream(recording.toByteArray()))) {
+			assertEquals(-3L, replayer.readLong(Kind.TIME, constant(0L)));
+			assertEquals("été", replayer.readString(Kind.ARGUMENT,
+					null));
+			assertEquals(Long.MIN_VALUE, replayer.readLong(Kind.HOST_CALL,
+					constant(0L)));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void detectDivergence() throws IOException {
+		ByteArrayOutputStream recording = new ByteArrayOutputStream();
+		try (HostInput recorder = new InputRecorder(recording)) {
+			recorder.readLong(Kind.TIME, constant(42L));
+		}
+		try (HostInput replayer = new InputReplayer(
+				new ByteArrayInputStream(recording.toByteArray()))) {
+			replayer.readLong(Kind.SCHEDULE, constant(0L));
+		}
+	}
+
+	private static Source constant(final long value) {
+		return new Source() {
+			@Override
+			public long read() {
+				return value;
+			}
+		};
+	}
+
+}
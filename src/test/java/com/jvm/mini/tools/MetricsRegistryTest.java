@@ -0,0 +1,40 @@
+package com.jvm.mini.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.jvm.mini.api.ExecutionTier;
+import com.jvm.mini.tools.MetricsRegistry.Counter;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void aggregateStripes() throws InterruptedException {
+		final MetricsRegistry registry = new MetricsRegistry();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int depth = t + 1;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						registry.increment(Counter.INSTRUCTIONS);
+					}
+					registry.recordDepth(depth);
+					registry.addTime(ExecutionTier.INTERPRETER, 10);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(4000, registry.getInstructions());
+		assertEquals(0, registry.getFramesPushed());
+		assertEquals(4, registry.getMaxStackDepth());
+		assertEquals(40, registry.getTime(ExecutionTier.INTERPRETER));
+	}
+
+}
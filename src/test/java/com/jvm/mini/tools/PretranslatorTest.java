@@ -0,0 +1,94 @@
+package com.jvm.mini.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.ClassPath;
+import com.jvm.mini.impl.JarClassSource;
+
+public class PretranslatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void translateSupportedClass() throws IOException {
+		File dir = folder.newFolder("classes");
+		writeClass(dir, "Supported", Opcodes.BIPUSH);
+		File jar = new File(folder.getRoot(), "guest.jar");
+
+		Pretranslator translator = new Pretranslator(ClassPath.parse(
+				dir.toString()));
+		assertEquals(1, translator.translate(jar));
+		assertTrue(translator.getErrors().isEmpty());
+
+		ClassNode node = new JarClassSource(jar).loadClass("Supported");
+		MethodNode main = (MethodNode)node.methods.get(0);
+		assertTrue(main.localVariables.isEmpty());
+		assertEquals(2, main.instructions.size());
+	}
+
+	@Test
+	public void rejectUnsupportedInstructions() throws IOException {
+		File dir = folder.newFolder("classes");
+		writeClass(dir, "Supported", Opcodes.BIPUSH);
+		writeClass(dir, "Unsupported", Opcodes.NOP);
+		File jar = new File(folder.getRoot(), "guest.jar");
+
+		Pretranslator translator = new Pretranslator(ClassPath.parse(
+				dir.toString()));
+		assertEquals(-1, translator.translate(jar));
+		assertEquals(1, translator.getErrors().size());
+		assertTrue(translator.getErrors().get(0).startsWith(
+				"Unsupported.main([Ljava/lang/String;)V"));
+		assertFalse(jar.exists());
+	}
+
+	// Writes a class whose main method executes the given opcode
+	private static void writeClass(File dir, String name, int opcode)
+			throws IOException {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, name, null,
+				"java/lang/Object", null);
+		MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null,
+				null);
+		mv.visitCode();
+		Label start = new Label();
+		mv.visitLabel(start);
+		if (opcode == Opcodes.BIPUSH) {
+			mv.visitIntInsn(opcode, 42);
+		} else {
+			mv.visitInsn(opcode);
+		}
+		mv.visitInsn(Opcodes.RETURN);
+		Label end = new Label();
+		mv.visitLabel(end);
+		mv.visitLocalVariable("args", "[Ljava/lang/String;", null, start, end,
+				0);
+		mv.visitMaxs(1, 1);
+		mv.visitEnd();
+		writer.visitEnd();
+		try (OutputStream out = new FileOutputStream(new File(dir,
+				name + ".class"))) {
+			out.write(writer.toByteArray());
+		}
+	}
+
+}
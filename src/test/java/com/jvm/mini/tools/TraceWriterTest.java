@@ -0,0 +1,84 @@
+package com.jvm.mini.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Map;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.jvm.mini.impl.JvmFacadeImpl;
+import com.jvm.mini.impl.MethodInfo;
+import com.jvm.mini.tools.TraceReader.Record;
+
+public class TraceWriterTest {
+
+	@Test
+	public void readAcrossBlocks() throws IOException {
+		MethodNode node = new MethodNode(Opcodes.ACC_STATIC, "main", "()V",
+				null, null);
+		node.instructions.add(new IntInsnNode(Opcodes.BIPUSH, 2));
+		node.instructions.add(new InsnNode(Opcodes.I2L));
+		node.instructions.add(new InsnNode(Opcodes.POP2));
+		node.maxStack = 2;
+		MethodInfo method = new MethodInfo("Tracing", null, node);
+		JvmFacadeImpl facade = new JvmFacadeImpl();
+		facade.pushFrame(method);
+
+		// Enough records to span several blocks
+		int count = TraceWriter.BLOCK_SIZE;
+		ByteArrayOutputStream trace = new ByteArrayOutputStream();
+		try (TraceWriter writer = new TraceWriter(Channels.newChannel(trace))) {
+			for (int i = 0; i < count; i++) {
+				writer.beforeInstruction(facade, node.instructions.get(0));
+				facade.pushIntegerOperand(i);
+				writer.beforeInstruction(facade, node.instructions.get(1));
+				facade.popIntegerOperand();
+				facade.pushLongOperand(-i);
+				writer.beforeInstruction(facade, node.instructions.get(2));
+				facade.popLongOperand();
+			}
+		}
+
+		try (TraceReader reader = read(trace)) {
+			for (int i = 0; i < count; i++) {
+				assertRecord(reader.read(), 0, Opcodes.BIPUSH, "", "");
+				assertRecord(reader.read(), 2, Opcodes.I2L, "I",
+						Integer.valueOf(i));
+				assertRecord(reader.read(), 3, Opcodes.POP2, "J",
+						Long.valueOf(-i));
+			}
+			assertNull(reader.read());
+		}
+		try (TraceReader reader = read(trace)) {
+			Map<String, Long> mix = new TraceQuery("main", "I2L").mix(reader);
+			assertEquals(1, mix.size());
+			assertEquals(Long.valueOf(count), mix.get("I2L"));
+		}
+	}
+
+	private static TraceReader read(ByteArrayOutputStream trace)
+			throws IOException {
+		return new TraceReader(Channels.newChannel(new ByteArrayInputStream(
+				trace.toByteArray())));
+	}
+
+	private static void assertRecord(Record record, int pc, int opcode,
+			String operandTypes, Object top) {
+		assertEquals("Tracing.main()V", record.getMethod());
+		assertEquals(pc, record.getPc());
+		assertEquals(opcode, record.getOpcode());
+		assertEquals(1, record.getDepth());
+		assertEquals(operandTypes, record.getOperandTypes());
+		assertEquals(top, record.getTop());
+	}
+
+}